@@ -1,7 +1,9 @@
 import client.NetworkClient;
 import client.RemoteInteractiveModeController;
 import client.RemoteSecuritySystemController;
+import config.ConfigManager;
 import controllers.ClientCommandLineController;
+import network.BinaryProtocol;
 import views.ConsoleInputHandler;
 import views.ConsoleView;
 
@@ -17,6 +19,8 @@ public class Client {
     private static final String CONFIG_FILE = "application.properties";
     private static String HOST;
     private static int PORT;
+    private static String PROTOCOL = "json";
+    private static String COMPRESSION = "none";
     private static volatile boolean isShuttingDown = false;
 
     public static void main(String[] args) {
@@ -26,7 +30,7 @@ public class Client {
         System.out.println("Подключение к серверу " + HOST + ":" + PORT);
 
         // Создаем сетевой клиент
-        NetworkClient networkClient = new NetworkClient(HOST, PORT);
+        NetworkClient networkClient = new NetworkClient(HOST, PORT, BinaryProtocol.NAME.equals(PROTOCOL), COMPRESSION);
 
         // Пытаемся подключиться
         if (!networkClient.connect()) {
@@ -82,6 +86,11 @@ public class Client {
     }
 
     private static void loadConfiguration() {
+        // Настройки соединения клиента, как и пул соединений с таймаутами, задаются в config.properties
+        ConfigManager config = ConfigManager.getInstance();
+        PROTOCOL = config.getString("client.protocol", "json").trim();
+        COMPRESSION = config.getString("client.compression", "none").trim();
+
         Properties props = new Properties();
 
         // Попытка загрузить из classpath (внутри JAR)
@@ -4,31 +4,55 @@ import models.CSVLogger;
 import models.EventType;
 import models.TextFileParser;
 import server.ClientHandler;
+import server.MetricsEndpoint;
+import server.NioServerEngine;
+import server.ServerMetrics;
+import server.SubscriptionManager;
+
+import network.NetworkConstant;
+import network.ProtocolJson;
+import network.Response;
 
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.PrintWriter;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 public class Server {
     private static final String CONFIG_FILE = "application.properties";
     private static int PORT;
     private static String DATA_FILE;
+    private static String ENGINE = "blocking";
+    private static Properties SETTINGS = new Properties();
 
     private final SecuritySystemController systemController;
     private final CSVLogger csvLogger;
     private final ExecutorService threadPool;
+    private final ServerMetrics metrics = ServerMetrics.getInstance();
+    private final int maxSessions;
+    private final int sessionQueueLimit;
+    private final String busyResponse = ProtocolJson.gson().toJson(Response.error(NetworkConstant.MESSAGE_SERVER_BUSY));
+    private volatile NioServerEngine nioEngine;
+    private volatile MetricsEndpoint metricsEndpoint;
     private volatile boolean running;
 
     public Server(SecuritySystemController controller, CSVLogger csvLogger) {
         this.systemController = controller;
         this.csvLogger = csvLogger;
-        this.threadPool = Executors.newCachedThreadPool();
+        this.maxSessions = Math.max(1, getSetting("server.sessions.max", 256));
+        this.sessionQueueLimit = Math.max(0, getSetting("server.sessions.queue", 64));
+        this.threadPool = createClientExecutor(maxSessions, sessionQueueLimit);
         this.running = true;
+        csvLogger.addEventListener(SubscriptionManager.getInstance());
     }
 
     public void start() {
@@ -36,21 +60,22 @@ public class Server {
         System.out.println("Загрузка конфигурации из " + CONFIG_FILE);
 
         csvLogger.logSystemEvent(EventType.SERVER_STARTED, "Порт: " + PORT);
+        startMetricsEndpoint();
+
+        if ("nio".equalsIgnoreCase(ENGINE)) {
+            startNio();
+        } else {
+            startBlocking();
+        }
+    }
 
+    /**
+     * Классический движок: поток на каждое подключение
+     */
+    private void startBlocking() {
         try (ServerSocket serverSocket = new ServerSocket(PORT)) {
-            System.out.println("Сервер запущен на порту: " + PORT);
-            System.out.println("Файл данных: " + DATA_FILE);
-            System.out.println("Файл логов: " + csvLogger.getLogFilePath());
-
-            // Загрузка систем из файла
-            if (systemController.loadSystemsFromFile(DATA_FILE, false)) {
-                int count = systemController.getSystemCount();
-                System.out.println("Загружено систем: " + count);
-                csvLogger.logSystemEvent(EventType.FILE_LOADED,
-                        "Файл: " + DATA_FILE + ", Загружено: " + count);
-            } else {
-                System.out.println("Предупреждение: не удалось загрузить системы из файла");
-            }
+            printStartupInfo();
+            loadInitialSystems();
 
             System.out.println("Ожидание подключений клиентов...\n");
 
@@ -59,8 +84,7 @@ public class Server {
                     Socket clientSocket = serverSocket.accept();
                     System.out.println("Новое подключение: " + clientSocket.getInetAddress());
 
-                    ClientHandler handler = new ClientHandler(clientSocket, systemController, csvLogger);
-                    threadPool.execute(handler);
+                    dispatch(clientSocket);
 
                 } catch (IOException e) {
                     if (running) {
@@ -79,9 +103,145 @@ public class Server {
         }
     }
 
+    /**
+     * Передает подключение исполнителю. Если активных и ожидающих сессий уже
+     * server.sessions.max + server.sessions.queue, клиенту сразу отправляется отказ и соединение закрывается
+     */
+    private void dispatch(Socket clientSocket) {
+        if (metrics.getActiveSessions() + metrics.getQueuedSessions() >= maxSessions + sessionQueueLimit) {
+            rejectSession(clientSocket);
+            return;
+        }
+
+        ClientHandler handler = new ClientHandler(clientSocket, systemController, csvLogger);
+        metrics.sessionQueued();
+        try {
+            threadPool.execute(() -> {
+                metrics.sessionStarted();
+                try {
+                    handler.run();
+                } finally {
+                    metrics.sessionFinished();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            metrics.sessionDequeued();
+            rejectSession(clientSocket);
+        }
+    }
+
+    private void rejectSession(Socket clientSocket) {
+        metrics.sessionRejected();
+        String address = clientSocket.getInetAddress().getHostAddress() + ":" + clientSocket.getPort();
+        try (Socket socket = clientSocket;
+             PrintWriter out = new PrintWriter(socket.getOutputStream(), true)) {
+            out.println(busyResponse);
+        } catch (IOException e) {
+            // клиент уже отключился
+        }
+        csvLogger.logSystemEvent(EventType.WARNING, "Подключение отклонено, сервер перегружен: " + address);
+    }
+
+    /**
+     * Движок на неблокирующих каналах: несколько потоков ввода-вывода и ограниченный пул обработчиков
+     */
+    private void startNio() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        nioEngine = new NioServerEngine(PORT, systemController, csvLogger,
+                getSetting("server.nio.io.threads", Math.max(1, cores / 2)),
+                getSetting("server.nio.worker.threads", cores * 2),
+                getSetting("server.nio.worker.queue", 10000),
+                maxSessions + sessionQueueLimit);
+        printStartupInfo();
+        System.out.println("Движок: nio");
+        loadInitialSystems();
+        System.out.println("Ожидание подключений клиентов...\n");
+        try {
+            nioEngine.start();
+        } catch (IOException e) {
+            System.err.println("Ошибка запуска сервера: " + e.getMessage());
+            csvLogger.logSystemEvent(EventType.COMMAND_FAILED,
+                    "Ошибка запуска сервера: " + e.getMessage());
+        } finally {
+            shutdown();
+        }
+    }
+
+    /**
+     * Страница метрик на локальном порту metrics.port; 0 - не запускается
+     */
+    private void startMetricsEndpoint() {
+        int metricsPort = getSetting("metrics.port", 0);
+        if (metricsPort <= 0) {
+            return;
+        }
+        try {
+            metricsEndpoint = new MetricsEndpoint(metricsPort, systemController, csvLogger);
+            metricsEndpoint.start();
+            System.out.println("Метрики: http://127.0.0.1:" + metricsPort + "/metrics");
+        } catch (IOException e) {
+            System.err.println("Не удалось запустить страницу метрик: " + e.getMessage());
+        }
+    }
+
+    private void printStartupInfo() {
+        System.out.println("Сервер запущен на порту: " + PORT);
+        System.out.println("Файл данных: " + DATA_FILE);
+        System.out.println("Файл логов: " + csvLogger.getLogFilePath());
+    }
+
+    private void loadInitialSystems() {
+        // Загрузка систем из файла
+        if (systemController.loadSystemsFromFile(DATA_FILE, false)) {
+            int count = systemController.getSystemCount();
+            System.out.println("Загружено систем: " + count);
+            csvLogger.logSystemEvent(EventType.FILE_LOADED,
+                    "Файл: " + DATA_FILE + ", Загружено: " + count);
+        } else {
+            System.out.println("Предупреждение: не удалось загрузить системы из файла");
+        }
+    }
+
+    /**
+     * Исполнитель для ClientHandler: при server.executor=virtual и JDK 21+ каждый клиент
+     * обслуживается виртуальным потоком, иначе - ограниченным пулом платформенных потоков
+     * (maxSessions потоков и очередь queueLimit сессий). Фабрика виртуальных потоков берется
+     * через reflection, чтобы сборка оставалась совместимой с JDK 17
+     */
+    private static ExecutorService createClientExecutor(int maxSessions, int queueLimit) {
+        if ("virtual".equalsIgnoreCase(SETTINGS.getProperty("server.executor", "platform").trim())) {
+            try {
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                System.out.println("Виртуальные потоки недоступны (нужен JDK 21+), используется пул потоков");
+            }
+        }
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(maxSessions, maxSessions, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueLimit)));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static int getSetting(String key, int defaultValue) {
+        try {
+            return Integer.parseInt(SETTINGS.getProperty(key, String.valueOf(defaultValue)).trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
     public void shutdown() {
         running = false;
+        if (nioEngine != null) {
+            nioEngine.shutdown();
+        }
         threadPool.shutdown();
+        MetricsEndpoint endpoint = metricsEndpoint;
+        if (endpoint != null) {
+            metricsEndpoint = null;
+            endpoint.stop();
+        }
+        System.out.println(metrics);
         systemController.close();
         csvLogger.logSystemEvent(EventType.SERVER_STOPPED, "Сервер остановлен");
         csvLogger.close();
@@ -96,6 +256,8 @@ public class Server {
                 props.load(is);
                 PORT = Integer.parseInt(props.getProperty("port", "5000"));
                 DATA_FILE = props.getProperty("datafile", "security_systems.txt");
+                ENGINE = props.getProperty("server.engine", "blocking").trim();
+                SETTINGS = props;
                 return;
             }
         } catch (IOException | NumberFormatException e) {
@@ -106,6 +268,8 @@ public class Server {
             props.load(fis);
             PORT = Integer.parseInt(props.getProperty("port", "5000"));
             DATA_FILE = props.getProperty("datafile", "security_systems.txt");
+            ENGINE = props.getProperty("server.engine", "blocking").trim();
+            SETTINGS = props;
             return;
         } catch (IOException | NumberFormatException e) {
             System.err.println("Ошибка загрузки конфигурации: " + e.getMessage());
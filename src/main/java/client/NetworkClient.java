@@ -1,88 +1,490 @@
 package client;
 
 import com.google.gson.Gson;
+import config.ConfigManager;
+import network.BinaryProtocol;
+import network.CompressionCodec;
+import network.NetworkConstant;
+import network.ProtocolJson;
 import network.Request;
 import network.Response;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
-import java.net.Socket;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
+/**
+ * Клиент сервера: небольшой пул соединений ({@link ServerConnection}). Поток, впервые отправляющий запрос,
+ * закрепляется за наименее загруженным живым соединением, поэтому поток мониторинга и интерфейс не ждут
+ * ответов друг друга, а запросы одного потока, в том числе отправленные без ожидания ответа,
+ * сервер выполняет в порядке отправки. После потери соединения поток закрепляется за другим.
+ * По умолчанию обмен идет строками JSON; при binaryProtocol каждое соединение согласует двоичный протокол
+ * ({@link BinaryProtocol}), а если сервер отказал - остается на JSON. Так же согласуется сжатие ({@link CompressionCodec}).
+ * <p>
+ * Фоновый поток пула проверяет соединения: запросы, не получившие ответа за свой таймаут (client.read.timeout.ms,
+ * для загрузки и сохранения файла - client.file.timeout.ms), завершает ошибкой, простаивающие соединения
+ * проверяет командой PING и закрывает, если просрочен запрос, а ответов не было дольше таймаута чтения.
+ * Потерянные соединения восстанавливаются с экспоненциальной задержкой, подписки переоформляются на живом соединении.
+ */
 public class NetworkClient {
+    private static final long MAINTENANCE_PERIOD_MS = 250;
+
     private final String host;
     private final int port;
-    private Socket socket;
-    private PrintWriter out;
-    private BufferedReader in;
     private final Gson gson;
-    private boolean connected;
+    private final boolean binaryRequested;
+    private final String compressionRequested;
+    private final int connectTimeoutMs;
+    private final int readTimeoutMs;
+    private final int fileTimeoutMs;
+    private final long healthIntervalNanos;
+    private final long reconnectInitialMs;
+    private final long reconnectMaxMs;
+    private final Slot[] slots;
+    // Общий для соединений счетчик: id запроса уникален во всем пуле
+    private final AtomicLong nextId = new AtomicLong();
+    // Подписки по id исходного запроса SUBSCRIBE; переоформляются после потери соединения
+    private final Map<Long, PushRegistration> subscriptions = new ConcurrentHashMap<>();
+    // Соединение, за которым закреплен поток
+    private final ThreadLocal<ServerConnection> affinity = new ThreadLocal<>();
+    private ScheduledExecutorService maintenance;
+    private volatile boolean closed;
 
     public NetworkClient(String host, int port) {
+        this(host, port, false);
+    }
+
+    /**
+     * @param binaryProtocol согласовать двоичный протокол при подключении
+     */
+    public NetworkClient(String host, int port, boolean binaryProtocol) {
+        this(host, port, binaryProtocol, null);
+    }
+
+    /**
+     * @param binaryProtocol согласовать двоичный протокол при подключении
+     * @param compression    алгоритм сжатия ответов (например, deflate); null или none - без сжатия
+     */
+    public NetworkClient(String host, int port, boolean binaryProtocol, String compression) {
         this.host = host;
         this.port = port;
-        this.gson = new Gson();
-        this.connected = false;
+        this.gson = ProtocolJson.gson();
+        this.binaryRequested = binaryProtocol;
+        this.compressionRequested = compression;
+        ConfigManager config = ConfigManager.getInstance();
+        this.connectTimeoutMs = config.getInt("client.connect.timeout.ms", 5000);
+        this.readTimeoutMs = config.getInt("client.read.timeout.ms", 30000);
+        this.fileTimeoutMs = config.getInt("client.file.timeout.ms", 300000);
+        this.healthIntervalNanos = TimeUnit.MILLISECONDS.toNanos(config.getInt("client.health.interval.ms", 15000));
+        this.reconnectInitialMs = config.getInt("client.reconnect.initial.ms", 500);
+        this.reconnectMaxMs = config.getInt("client.reconnect.max.ms", 30000);
+        this.slots = new Slot[Math.max(1, config.getInt("client.pool.size", 2))];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = new Slot();
+        }
     }
 
+    /**
+     * Открывает соединения пула
+     *
+     * @return false, если не открылось ни одного; недостающие соединения открываются в фоне
+     */
     public boolean connect() {
-        try {
-            socket = new Socket(host, port);
-            out = new PrintWriter(socket.getOutputStream(), true);
-            in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-            connected = true;
-            System.out.println("Подключено к серверу " + host + ":" + port);
-            return true;
-        } catch (IOException e) {
-            System.err.println("Ошибка подключения к серверу: " + e.getMessage());
-            connected = false;
+        closed = false;
+        IOException lastError = null;
+        boolean connected = false;
+        for (Slot slot : slots) {
+            try {
+                slot.open();
+                connected = true;
+            } catch (IOException e) {
+                lastError = e;
+            }
+        }
+        if (!connected) {
+            System.err.println("Ошибка подключения к серверу: " + lastError.getMessage());
             return false;
         }
+        startMaintenance();
+        System.out.println("Подключено к серверу " + host + ":" + port);
+        return true;
     }
 
-    public Response sendRequest(Request request) throws IOException {
-        if (!connected) {
-            throw new IOException("Нет подключения к серверу");
+    private synchronized void startMaintenance() {
+        if (maintenance != null) {
+            return;
         }
+        maintenance = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "network-client-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        maintenance.scheduleWithFixedDelay(this::maintain, MAINTENANCE_PERIOD_MS, MAINTENANCE_PERIOD_MS,
+                TimeUnit.MILLISECONDS);
+    }
 
+    /**
+     * Проверка пула: переподключение, таймауты чтения, PING простаивающих соединений, восстановление подписок
+     */
+    private void maintain() {
         try {
-            // Отправка запроса
-            String jsonRequest = gson.toJson(request);
-            out.println(jsonRequest);
+            for (Slot slot : slots) {
+                ServerConnection connection = slot.connection;
+                if (connection == null || !connection.isOpen()) {
+                    slot.reconnectIfDue();
+                    continue;
+                }
+                int expired = connection.expireOverdue();
+                if (connection.pendingCount() > 0) {
+                    // Сервер еще выполняет запросы, срок которых не истек
+                    continue;
+                }
+                if (expired > 0 && connection.silentNanos() > TimeUnit.MILLISECONDS.toNanos(readTimeoutMs)) {
+                    connection.close(new SocketTimeoutException("Сервер не отвечает " + readTimeoutMs + " мс"));
+                } else if (connection.silentNanos() > healthIntervalNanos) {
+                    // Ответ или его просрочку увидит следующая проверка
+                    connection.send(new Request(NetworkConstant.PING), nextId, null, false, readTimeoutMs);
+                }
+            }
+            restoreSubscriptions();
+        } catch (RuntimeException e) {
+            System.err.println("Ошибка проверки соединений: " + e.getMessage());
+        }
+    }
 
-            // Получение ответа
-            String jsonResponse = in.readLine();
+    /**
+     * Соединение, за которым закреплен текущий поток; если его нет или оно потеряно, поток закрепляется
+     * за наименее загруженным живым соединением
+     */
+    private ServerConnection checkout() throws IOException {
+        ServerConnection pinned = affinity.get();
+        if (pinned != null && pinned.isOpen()) {
+            return pinned;
+        }
+        ServerConnection connection = connectionForNewCaller();
+        affinity.set(connection);
+        return connection;
+    }
 
-            if (jsonResponse == null || jsonResponse.trim().isEmpty()) {
-                throw new IOException("Сервер закрыл соединение или вернул пустой ответ");
+    /**
+     * Наименее загруженное живое соединение. Если живых нет, сразу пробует переподключиться,
+     * не дожидаясь фоновой проверки, но не раньше срока очередной попытки
+     */
+    private ServerConnection connectionForNewCaller() throws IOException {
+        ServerConnection connection = leastLoaded();
+        if (connection != null) {
+            return connection;
+        }
+        if (!closed) {
+            for (Slot slot : slots) {
+                if (slot.reconnectIfDue()) {
+                    return slot.connection;
+                }
             }
+        }
+        throw new IOException("Нет подключения к серверу");
+    }
 
-            return gson.fromJson(jsonResponse, Response.class);
+    /**
+     * Таймаут ответа: загрузка и сохранение файла на сервере могут идти дольше обычного запроса
+     */
+    private int timeoutFor(Request request) {
+        String command = request.getCommand();
+        return NetworkConstant.LOAD_SYSTEMS_FROM_FILE.equals(command)
+                || NetworkConstant.SAVE_SYSTEMS_TO_FILE.equals(command) ? fileTimeoutMs : readTimeoutMs;
+    }
 
-        } catch (IOException e) {
-            connected = false;
-            throw e;
+    private ServerConnection leastLoaded() {
+        ServerConnection best = null;
+        for (Slot slot : slots) {
+            ServerConnection connection = slot.connection;
+            if (connection != null && connection.isOpen()
+                    && (best == null || connection.pendingCount() < best.pendingCount())) {
+                best = connection;
+            }
         }
+        return best;
     }
 
-    public void disconnect() {
+    private void onConnectionClosed(ServerConnection connection) {
+        if (closed) {
+            return;
+        }
+        for (Slot slot : slots) {
+            if (slot.connection == connection) {
+                slot.lost();
+            }
+        }
+    }
+
+    private long backoffMillis(int failures) {
+        long delay = Math.min(reconnectMaxMs, reconnectInitialMs << Math.min(failures - 1, 20));
+        // Случайная половина задержки, чтобы клиенты не переподключались к перезапущенному серверу разом
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    public boolean isBinaryProtocol() {
+        ServerConnection connection = leastLoaded();
+        return connection != null && connection.isBinary();
+    }
+
+    /**
+     * Отправляет запрос и ждет ответа на него
+     */
+    public Response sendRequest(Request request) throws IOException {
+        return await(sendAsync(request));
+    }
+
+    /**
+     * Отправляет запрос с потоковым ответом и ждет итогового ответа
+     *
+     * @see #sendStreaming
+     */
+    public Response sendRequestStreaming(Request request, Consumer<Response> onPart) throws IOException {
+        return await(sendStreaming(request, onPart));
+    }
+
+    /**
+     * Отправляет запрос подписки и ждет ответа на него. onPush получает события (more=true с id запроса)
+     * и после ответа, пока подписка не снята {@link #unsubscribe}. После потери соединения подписка
+     * переоформляется на другом; перед этим вызывается onInterrupted - события за время разрыва потеряны
+     *
+     * @return ответ на запрос подписки; id запроса - ключ для {@link #unsubscribe}
+     */
+    public Response sendRequestSubscription(Request request, Consumer<Response> onPush, Runnable onInterrupted)
+            throws IOException {
+        ServerConnection connection = checkout();
+        Response response = await(connection.send(request, nextId, onPush, true, readTimeoutMs));
+        if (response.isSuccess()) {
+            subscriptions.put(request.getId(),
+                    new PushRegistration(request, onPush, onInterrupted, connection, response));
+        }
+        return response;
+    }
+
+    /**
+     * Снимает подписку, оформленную {@link #sendRequestSubscription}
+     *
+     * @param requestId id исходного запроса SUBSCRIBE
+     */
+    public void unsubscribe(long requestId) throws IOException {
+        PushRegistration registration = subscriptions.remove(requestId);
+        if (registration == null) {
+            return;
+        }
+        ServerConnection connection;
+        Response subscribed;
+        synchronized (registration) {
+            registration.closed = true;
+            connection = registration.connection;
+            subscribed = registration.response;
+        }
+        connection.removePushListener(registration.request.getId());
+        if (connection.isOpen() && subscribed.getData() instanceof Number subscriptionId) {
+            await(connection.send(unsubscribeRequest(subscriptionId), nextId, null, false, readTimeoutMs));
+        }
+    }
+
+    /**
+     * Текущий ответ сервера на подписку; после переоформления в нем новый id подписки
+     *
+     * @param requestId id исходного запроса SUBSCRIBE
+     */
+    public Response getSubscriptionResponse(long requestId) {
+        PushRegistration registration = subscriptions.get(requestId);
+        return registration != null ? registration.response : null;
+    }
+
+    private static Request unsubscribeRequest(Number subscriptionId) {
+        Request request = new Request(NetworkConstant.UNSUBSCRIBE);
+        request.addParam(NetworkConstant.PARAM_SUBSCRIPTION_ID, subscriptionId.longValue());
+        return request;
+    }
+
+    /**
+     * Переоформляет подписки, чье соединение потеряно. Ответ обрабатывается асинхронно,
+     * до него подписка помечена, чтобы не отправлять запрос повторно
+     */
+    private void restoreSubscriptions() {
+        for (PushRegistration registration : subscriptions.values()) {
+            if (registration.restoring || registration.connection.isOpen()) {
+                continue;
+            }
+            ServerConnection connection = leastLoaded();
+            if (connection == null) {
+                return;
+            }
+            registration.restoring = true;
+            registration.onInterrupted.run();
+            connection.send(registration.request, nextId, registration.onPush, true, readTimeoutMs)
+                    .whenComplete((response, error) -> restored(registration, connection, response, error));
+        }
+    }
+
+    private void restored(PushRegistration registration, ServerConnection connection, Response response,
+                          Throwable error) {
+        boolean unsubscribe;
+        synchronized (registration) {
+            registration.restoring = false;
+            if (error != null || !response.isSuccess()) {
+                // Следующая проверка пула попробует снова
+                return;
+            }
+            registration.connection = connection;
+            registration.response = response;
+            unsubscribe = registration.closed;
+        }
+        if (unsubscribe && response.getData() instanceof Number subscriptionId) {
+            // Подписку сняли, пока она переоформлялась
+            connection.removePushListener(registration.request.getId());
+            connection.send(unsubscribeRequest(subscriptionId), nextId, null, false, readTimeoutMs);
+        }
+    }
+
+    private static Response await(CompletableFuture<Response> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Ожидание ответа прервано");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new IOException(cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * Отправляет запрос, не дожидаясь ответа. Поле id запроса заполняется автоматически.
+     * Запросы одного потока выполняются сервером в порядке отправки.
+     *
+     * @return ответ сервера; при обрыве соединения или таймауте ответа завершается с IOException
+     */
+    public CompletableFuture<Response> sendAsync(Request request) {
+        return sendStreaming(request, null);
+    }
+
+    /**
+     * Отправляет запрос с потоковым ответом. Промежуточные части (more=true) передаются onPart
+     * в потоке чтения по мере поступления, поэтому следующие части не читаются, пока onPart не вернет управление.
+     *
+     * @return итоговый ответ
+     */
+    public CompletableFuture<Response> sendStreaming(Request request, Consumer<Response> onPart) {
         try {
-            if (in != null) in.close();
-            if (out != null) out.close();
-            if (socket != null) socket.close();
-            connected = false;
-            System.out.println("Отключено от сервера");
+            return checkout().send(request, nextId, onPart, false, timeoutFor(request));
         } catch (IOException e) {
-            System.err.println("Ошибка при закрытии соединения: " + e.getMessage());
+            return CompletableFuture.failedFuture(e);
         }
     }
 
+    public void disconnect() {
+        closed = true;
+        synchronized (this) {
+            if (maintenance != null) {
+                maintenance.shutdownNow();
+                maintenance = null;
+            }
+        }
+        subscriptions.clear();
+        for (Slot slot : slots) {
+            ServerConnection connection = slot.connection;
+            if (connection != null) {
+                connection.close(new IOException("Соединение закрыто"));
+            }
+        }
+        System.out.println("Отключено от сервера");
+    }
+
     public boolean isConnected() {
-        return connected && socket != null && !socket.isClosed();
+        return leastLoaded() != null;
     }
 
     public Gson getGson() {
         return gson;
     }
+
+    /**
+     * Место соединения в пуле с расписанием переподключения
+     */
+    private final class Slot {
+        volatile ServerConnection connection;
+        private int failures;
+        private long nextAttemptNanos;
+        private boolean wasLost;
+
+        synchronized void open() throws IOException {
+            ServerConnection opened = new ServerConnection(host, port, connectTimeoutMs, readTimeoutMs,
+                    binaryRequested, compressionRequested, gson, NetworkClient.this::onConnectionClosed);
+            connection = opened;
+            opened.start();
+        }
+
+        /**
+         * @return true, если соединение живо или восстановлено
+         */
+        synchronized boolean reconnectIfDue() {
+            if (connection != null && connection.isOpen()) {
+                return true;
+            }
+            if (closed || System.nanoTime() - nextAttemptNanos < 0) {
+                return false;
+            }
+            try {
+                open();
+            } catch (IOException e) {
+                failures++;
+                nextAttemptNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoffMillis(failures));
+                return false;
+            }
+            if (wasLost) {
+                System.out.println("Соединение с сервером " + host + ":" + port + " восстановлено");
+                wasLost = false;
+            }
+            failures = 0;
+            return true;
+        }
+
+        /**
+         * Первая попытка переподключения - сразу, следующие - с растущей задержкой
+         */
+        synchronized void lost() {
+            wasLost = true;
+            nextAttemptNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * Подписка вместе с запросом для ее переоформления
+     */
+    private static final class PushRegistration {
+        final Request request;
+        final Consumer<Response> onPush;
+        final Runnable onInterrupted;
+        volatile ServerConnection connection;
+        volatile Response response;
+        volatile boolean restoring;
+        boolean closed;
+
+        PushRegistration(Request request, Consumer<Response> onPush, Runnable onInterrupted,
+                         ServerConnection connection, Response response) {
+            this.request = request;
+            this.onPush = onPush;
+            this.onInterrupted = onInterrupted;
+            this.connection = connection;
+            this.response = response;
+        }
+    }
 }
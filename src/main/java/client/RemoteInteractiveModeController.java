@@ -275,17 +275,24 @@ public class RemoteInteractiveModeController {
         view.waitForEnter();
     }
 
+    /**
+     * Список систем запрашивается один раз, дальше обновляется событиями подписки;
+     * состояние перерисовывается не чаще раза в интервал и только при изменениях
+     */
     private void continuousMonitoring() throws IOException {
         int interval = ConsoleInputHandler.getIntInput("Интервал (секунды): ", 1, 3600);
+        SystemMonitor monitor = new SystemMonitor(remoteController);
+        monitor.start();
         continuousMonitoring = true;
         view.displayMessage("Мониторинг запущен. Нажмите Enter для остановки.");
 
         Thread monitorThread = new Thread(() -> {
             while (continuousMonitoring) {
                 try {
-                    List<SecuritySystem> systems = remoteController.getAllSystems();
-                    String currentFile = remoteController.getCurrentFileName();
-                    view.displaySystemState(systems, currentFile);
+                    List<SecuritySystem> systems = monitor.pollChanges();
+                    if (systems != null) {
+                        view.displaySystemState(systems, remoteController.getCurrentFileName());
+                    }
                     Thread.sleep(interval * 1000L);
                 } catch (InterruptedException e) {
                     break;
@@ -299,6 +306,7 @@ public class RemoteInteractiveModeController {
         monitorThread.start();
         view.waitForEnter();
         continuousMonitoring = false;
+        monitor.close();
         view.displayMessage("Мониторинг остановлен.");
     }
 
@@ -2,9 +2,12 @@ package client;
 
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
+import config.ConfigManager;
 import models.*;
 import models.dto.EmergencyEvent;
+import models.dto.SystemChangeEvent;
 import models.dto.SystemStatusReport;
+import network.BatchResult;
 import network.NetworkConstant;
 import network.Request;
 import network.Response;
@@ -12,23 +15,67 @@ import network.Response;
 import java.io.IOException;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 /**
  * Прокси-контроллер для работы с удаленным сервером
  * Реализует тот же интерфейс, что и SecuritySystemController,
- * но вместо локальной работы отправляет запросы на сервер
+ * но вместо локальной работы отправляет запросы на сервер.
+ * Список систем, отчеты и имя файла читаются через кэш ({@link SystemCache}),
+ * который поддерживается событиями подписки и сверяется с сервером по версиям,
+ * поэтому повторные чтения не идут в сеть, а сверка передает только изменения
  */
 public class RemoteSecuritySystemController {
+    private static final int STREAM_CHUNK_SIZE = 1000;
+    // События, которые не меняют системы и не должны сбрасывать кэш
+    private static final EnumSet<EventType> CACHE_EVENTS =
+            EnumSet.complementOf(EnumSet.of(EventType.STATE_UPDATE, EventType.INFO));
+
     private final NetworkClient networkClient;
     private final Gson gson;
     private String currentFileName;
+    // null - кэш отключен
+    private final SystemCache cache;
+    private final long cacheTtlNanos;
+    private volatile long fileNameLoadedAt;
+    private final AtomicBoolean cacheSubscribed = new AtomicBoolean();
 
     public RemoteSecuritySystemController(NetworkClient networkClient) {
+        this(networkClient, ConfigManager.getInstance().getBoolean("client.cache.enabled", true)
+                ? ConfigManager.getInstance().getInt("client.cache.ttl.ms", 60000)
+                : 0);
+    }
+
+    /**
+     * @param cacheTtlMillis время жизни записей кэша; 0 отключает кэш
+     */
+    public RemoteSecuritySystemController(NetworkClient networkClient, long cacheTtlMillis) {
         this.networkClient = networkClient;
         this.gson = networkClient.getGson();
         this.currentFileName = "";
+        this.cache = cacheTtlMillis > 0 ? new SystemCache(cacheTtlMillis) : null;
+        this.cacheTtlNanos = cacheTtlMillis * 1_000_000L;
+    }
+
+    /**
+     * Подписка, по событиям которой обновляется кэш. Без нее (сервер не поддерживает SUBSCRIBE)
+     * кэш работает только по ttl
+     */
+    private void ensureCacheSubscription() {
+        // Монитор кэша здесь не берется: на нем же события применяет поток чтения ответов
+        if (!cacheSubscribed.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            subscribe(null, null, CACHE_EVENTS, cache::onEvent);
+        } catch (IOException e) {
+            System.err.println("Подписка на изменения недоступна, кэш обновляется по времени: " + e.getMessage());
+        }
     }
 
     public void addSystem(SecuritySystem system) throws IOException {
@@ -37,6 +84,7 @@ public class RemoteSecuritySystemController {
         request.addParam(NetworkConstant.PARAM_SYSTEM_TYPE, system.getClass().getSimpleName());
 
         Response response = networkClient.sendRequest(request);
+        invalidateCache();
         if (!response.isSuccess()) {
             throw new IOException(response.getMessage());
         }
@@ -47,6 +95,7 @@ public class RemoteSecuritySystemController {
         request.addParam(NetworkConstant.PARAM_INDEX, index);
 
         Response response = networkClient.sendRequest(request);
+        invalidateCache();
         return response.isSuccess();
     }
 
@@ -55,10 +104,23 @@ public class RemoteSecuritySystemController {
         request.addParam(NetworkConstant.PARAM_SYSTEM_ID, id);
 
         Response response = networkClient.sendRequest(request);
+        invalidateCache();
         return response.isSuccess();
     }
 
+    private void invalidateCache() {
+        if (cache != null) {
+            cache.markDirty();
+        }
+    }
+
     public SecuritySystem getSystem(int index) throws IOException {
+        if (cache != null) {
+            SecuritySystem cached = cache.system(index);
+            if (cached != null) {
+                return cached;
+            }
+        }
         Request request = new Request(NetworkConstant.GET_SYSTEM);
         request.addParam(NetworkConstant.PARAM_INDEX, index);
 
@@ -69,36 +131,168 @@ public class RemoteSecuritySystemController {
         return null;
     }
 
+    /**
+     * Устаревшая копия из кэша сверяется с сервером по версии и передается заново, только если изменилась
+     */
     public SecuritySystem getSystemById(String id) throws IOException {
+        SecuritySystem previous = null;
+        if (cache != null) {
+            SecuritySystem cached = cache.systemById(id);
+            if (cached != null) {
+                return cached;
+            }
+            previous = cache.systemToRevalidate(id);
+        }
         Request request = new Request(NetworkConstant.GET_SYSTEM_BY_ID);
         request.addParam(NetworkConstant.PARAM_SYSTEM_ID, id);
+        if (previous != null && previous.getVersion() > 0) {
+            request.addParam(NetworkConstant.PARAM_IF_NEWER_THAN, previous.getVersion());
+        }
 
         Response response = networkClient.sendRequest(request);
+        if (previous != null && response.isSuccess()
+                && NetworkConstant.MESSAGE_NOT_MODIFIED.equals(response.getMessage())) {
+            return previous;
+        }
         if (response.isSuccess() && response.getData() != null) {
             return parseSecuritySystem(response.getData());
         }
         return null;
     }
 
+    /**
+     * Весь список систем. Сервер передает его частями, поэтому ни одна сторона
+     * не строит ответ целиком в одной строке
+     */
     public List<SecuritySystem> getAllSystems() throws IOException {
+        if (cache == null) {
+            List<SecuritySystem> systems = new ArrayList<>();
+            forEachSystem(systems::add);
+            return systems;
+        }
+        ensureCacheSubscription();
+        List<SecuritySystem> cached = cache.systems();
+        if (cached != null) {
+            return cached;
+        }
+        List<SecuritySystem> changed = new ArrayList<>();
+        long since = cache.beginLoad();
+        SystemChanges changes;
+        try {
+            changes = forEachChange(since, changed::add);
+        } catch (IOException e) {
+            cache.abortLoad();
+            throw e;
+        }
+        return cache.endLoad(changed, changes);
+    }
+
+    /**
+     * Обходит все системы сервера потоковым запросом, не накапливая их в памяти.
+     * action вызывается в потоке чтения соединения по мере поступления частей
+     */
+    public void forEachSystem(Consumer<SecuritySystem> action) throws IOException {
         Request request = new Request(NetworkConstant.GET_ALL_SYSTEMS);
-        Response response = networkClient.sendRequest(request);
+        request.addParam(NetworkConstant.PARAM_STREAM, true);
+        request.addParam(NetworkConstant.PARAM_LIMIT, STREAM_CHUNK_SIZE);
 
-        if (response.isSuccess() && response.getData() != null) {
-            List<SecuritySystem> systems = new ArrayList<>();
+        Response response = networkClient.sendRequestStreaming(request,
+                part -> parseSystems(part.getData(), action));
+        if (!response.isSuccess()) {
+            throw new IOException(response.getMessage());
+        }
+    }
 
-            @SuppressWarnings("unchecked")
-            List<Object> dataList = (List<Object>) response.getData();
+    /**
+     * Изменения списка систем после версии since (0 - весь список): измененные и новые системы
+     * передаются в action по мере поступления частей, в потоке чтения соединения
+     *
+     * @return удаленные системы и версия для следующего запроса
+     */
+    public SystemChanges forEachChange(long since, Consumer<SecuritySystem> action) throws IOException {
+        Request request = new Request(NetworkConstant.GET_ALL_SYSTEMS);
+        request.addParam(NetworkConstant.PARAM_IF_NEWER_THAN, since);
+        request.addParam(NetworkConstant.PARAM_STREAM, true);
+        request.addParam(NetworkConstant.PARAM_LIMIT, STREAM_CHUNK_SIZE);
 
-            for (Object obj : dataList) {
-                SecuritySystem system = parseSecuritySystem(obj);
-                if (system != null) {
-                    systems.add(system);
-                }
+        Response response = networkClient.sendRequestStreaming(request,
+                part -> parseSystems(part.getData(), action));
+        if (!response.isSuccess()) {
+            throw new IOException(response.getMessage());
+        }
+        if (!(response.getData() instanceof Map<?, ?> result)) {
+            // Сервер без версий не знает ifNewerThan и передает весь список
+            return new SystemChanges(List.of(), 0, true);
+        }
+        List<String> removedIds = new ArrayList<>();
+        if (result.get(NetworkConstant.DELTA_REMOVED) instanceof List<?> ids) {
+            for (Object id : ids) {
+                removedIds.add(String.valueOf(id));
+            }
+        }
+        return new SystemChanges(removedIds, ((Number) result.get(NetworkConstant.DELTA_VERSION)).longValue(),
+                Boolean.TRUE.equals(result.get(NetworkConstant.DELTA_FULL)));
+    }
+
+    /**
+     * Страница списка систем по смещению
+     */
+    public SystemsPage getSystemsPage(int offset, int limit) throws IOException {
+        Request request = new Request(NetworkConstant.GET_ALL_SYSTEMS);
+        request.addParam(NetworkConstant.PARAM_OFFSET, offset);
+        request.addParam(NetworkConstant.PARAM_LIMIT, limit);
+        return requestPage(request);
+    }
+
+    /**
+     * Страница списка систем, следующих за системой с порядковым ключом afterKey
+     * ({@link SystemsPage#getNextAfterKey}). Продолжается и после удаления этой системы
+     */
+    public SystemsPage getSystemsPageAfter(long afterKey, int limit) throws IOException {
+        Request request = new Request(NetworkConstant.GET_ALL_SYSTEMS);
+        request.addParam(NetworkConstant.PARAM_AFTER_KEY, afterKey);
+        request.addParam(NetworkConstant.PARAM_LIMIT, limit);
+        return requestPage(request);
+    }
+
+    /**
+     * Страница списка систем, следующих за системой afterId. Если эта система удалена, сервер отвечает ошибкой
+     */
+    public SystemsPage getSystemsPageAfter(String afterId, int limit) throws IOException {
+        Request request = new Request(NetworkConstant.GET_ALL_SYSTEMS);
+        request.addParam(NetworkConstant.PARAM_AFTER_ID, afterId);
+        request.addParam(NetworkConstant.PARAM_LIMIT, limit);
+        return requestPage(request);
+    }
+
+    private SystemsPage requestPage(Request request) throws IOException {
+        Response response = networkClient.sendRequest(request);
+        if (!response.isSuccess() || !(response.getData() instanceof Map<?, ?> page)) {
+            throw new IOException(response.getMessage());
+        }
+        List<SecuritySystem> systems = new ArrayList<>();
+        parseSystems(page.get(NetworkConstant.PAGE_SYSTEMS), systems::add);
+        Object nextOffset = page.get(NetworkConstant.PAGE_NEXT_OFFSET);
+        Object nextAfterId = page.get(NetworkConstant.PAGE_NEXT_AFTER_ID);
+        Object nextAfterKey = page.get(NetworkConstant.PAGE_NEXT_AFTER_KEY);
+        return new SystemsPage(systems,
+                ((Number) page.get(NetworkConstant.PAGE_OFFSET)).intValue(),
+                ((Number) page.get(NetworkConstant.PAGE_TOTAL)).intValue(),
+                nextOffset != null ? ((Number) nextOffset).intValue() : -1,
+                nextAfterId != null ? nextAfterId.toString() : null,
+                nextAfterKey != null ? ((Number) nextAfterKey).longValue() : -1);
+    }
+
+    private void parseSystems(Object data, Consumer<SecuritySystem> action) {
+        if (!(data instanceof List<?> list)) {
+            return;
+        }
+        for (Object obj : list) {
+            SecuritySystem system = parseSecuritySystem(obj);
+            if (system != null) {
+                action.accept(system);
             }
-            return systems;
         }
-        return new ArrayList<>();
     }
 
     public boolean loadSystemsFromFile(String fileName, boolean append) throws IOException {
@@ -107,8 +301,10 @@ public class RemoteSecuritySystemController {
         request.addParam(NetworkConstant.PARAM_APPEND, append);
 
         Response response = networkClient.sendRequest(request);
+        invalidateCache();
         if (response.isSuccess()) {
             this.currentFileName = fileName;
+            fileNameLoadedAt = System.nanoTime();
         }
         return response.isSuccess();
     }
@@ -120,10 +316,17 @@ public class RemoteSecuritySystemController {
         Response response = networkClient.sendRequest(request);
         if (response.isSuccess()) {
             this.currentFileName = fileName;
+            fileNameLoadedAt = System.nanoTime();
         }
     }
 
+    /**
+     * Имя файла не рассылается событиями, поэтому кэшируется только на ttl
+     */
     public String getCurrentFileName() throws IOException {
+        if (cache != null && fileNameLoadedAt != 0 && System.nanoTime() - fileNameLoadedAt < cacheTtlNanos) {
+            return currentFileName;
+        }
         try {
             Request request = new Request(NetworkConstant.GET_CURRENT_FILE_NAME);
             Response response = networkClient.sendRequest(request);
@@ -134,6 +337,7 @@ public class RemoteSecuritySystemController {
                 } else {
                     this.currentFileName = "";
                 }
+                fileNameLoadedAt = System.nanoTime();
                 return this.currentFileName;
             } else {
                 System.err.println("Ошибка получения имени файла: " + response.getMessage());
@@ -151,6 +355,9 @@ public class RemoteSecuritySystemController {
         request.addParam(NetworkConstant.PARAM_INDEX, index);
 
         Response response = networkClient.sendRequest(request);
+        if (response.isSuccess() && cache != null) {
+            updateCached(response, SecuritySystem::armSystem);
+        }
         return response.isSuccess();
     }
 
@@ -159,6 +366,9 @@ public class RemoteSecuritySystemController {
         request.addParam(NetworkConstant.PARAM_INDEX, index);
 
         Response response = networkClient.sendRequest(request);
+        if (response.isSuccess() && cache != null) {
+            updateCached(response, SecuritySystem::disarmSystem);
+        }
         return response.isSuccess();
     }
 
@@ -168,6 +378,9 @@ public class RemoteSecuritySystemController {
         request.addParam(NetworkConstant.PARAM_MODE, mode);
 
         Response response = networkClient.sendRequest(request);
+        if (response.isSuccess() && cache != null) {
+            updateCached(response, system -> system.setSecurityMode(mode));
+        }
         return response.isSuccess();
     }
 
@@ -176,6 +389,7 @@ public class RemoteSecuritySystemController {
         request.addParam(NetworkConstant.PARAM_INDEX, index);
 
         Response response = networkClient.sendRequest(request);
+        invalidateReport(index);
         if (response.isSuccess() && response.getData() != null) {
             return (Boolean) response.getData();
         }
@@ -187,20 +401,56 @@ public class RemoteSecuritySystemController {
         request.addParam(NetworkConstant.PARAM_INDEX, index);
 
         Response response = networkClient.sendRequest(request);
+        invalidateReport(index);
+        if (response.isSuccess() && response.getData() instanceof EmergencyEvent event) {
+            return event;
+        }
         if (response.isSuccess() && response.getData() != null) {
-            String json = gson.toJson(response.getData());
-            return gson.fromJson(json, EmergencyEvent.class);
+            return gson.fromJson(gson.toJsonTree(response.getData()), EmergencyEvent.class);
         }
         return null;
     }
 
+    private void invalidateReport(int index) {
+        if (cache != null) {
+            cache.invalidateReport(index);
+        }
+    }
+
+    /**
+     * Устаревший отчет из кэша сверяется с сервером по версии и передается заново, только если изменился
+     */
     public SystemStatusReport getStatusReport(int index) throws IOException {
+        SecuritySystem system = cache != null ? cache.system(index) : null;
+        SystemStatusReport previous = null;
+        if (system != null) {
+            SystemStatusReport cached = cache.report(system.getSystemId());
+            if (cached != null) {
+                return cached;
+            }
+            previous = cache.reportToRevalidate(system.getSystemId());
+        }
         Request request = new Request(NetworkConstant.GET_STATUS_REPORT);
         request.addParam(NetworkConstant.PARAM_INDEX, index);
+        if (system != null) {
+            request.addParam(NetworkConstant.PARAM_SYSTEM_ID, system.getSystemId());
+        }
+        if (previous != null && previous.getVersion() > 0) {
+            request.addParam(NetworkConstant.PARAM_IF_NEWER_THAN, previous.getVersion());
+        }
 
         Response response = networkClient.sendRequest(request);
+        if (previous != null && response.isSuccess()
+                && NetworkConstant.MESSAGE_NOT_MODIFIED.equals(response.getMessage())) {
+            cache.putReport(system.getSystemId(), previous);
+            return previous;
+        }
         if (response.isSuccess() && response.getData() != null) {
-            return parseStatusReport(response.getData());
+            SystemStatusReport report = parseStatusReport(response.getData());
+            if (system != null && report != null && system.getSystemId().equals(report.getSystemId())) {
+                cache.putReport(system.getSystemId(), report);
+            }
+            return report;
         }
         return null;
     }
@@ -210,6 +460,7 @@ public class RemoteSecuritySystemController {
         request.addParam(NetworkConstant.PARAM_INDEX, index);
 
         Response response = networkClient.sendRequest(request);
+        invalidateReport(index);
         return response.isSuccess();
     }
 
@@ -218,6 +469,7 @@ public class RemoteSecuritySystemController {
         request.addParam(NetworkConstant.PARAM_INDEX, index);
 
         Response response = networkClient.sendRequest(request);
+        invalidateReport(index);
         if (response.isSuccess() && response.getData() != null) {
             return (Boolean) response.getData();
         }
@@ -236,15 +488,33 @@ public class RemoteSecuritySystemController {
     }
 
     public int getSystemCount() throws IOException {
+        if (cache != null) {
+            int cached = cache.size();
+            if (cached >= 0) {
+                return cached;
+            }
+        }
         Request request = new Request(NetworkConstant.GET_SYSTEM_COUNT);
         Response response = networkClient.sendRequest(request);
 
         if (response.isSuccess() && response.getData() != null) {
-            return ((Double) response.getData()).intValue();
+            return ((Number) response.getData()).intValue();
         }
         return 0;
     }
 
+    /**
+     * Метрики сервера по разделам (sessions, network, registry, csv, parser, subscriptions, commands)
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> getMetrics() throws IOException {
+        Response response = networkClient.sendRequest(new Request(NetworkConstant.METRICS));
+        if (!response.isSuccess() || !(response.getData() instanceof Map<?, ?> metrics)) {
+            throw new IOException(response.getMessage());
+        }
+        return (Map<String, Object>) metrics;
+    }
+
     public List<String> getCsvLogs(String systemId, int limit) throws IOException {
         Request request = new Request(NetworkConstant.GET_CSV_LOGS);
         request.addParam(NetworkConstant.PARAM_SYSTEM_ID, systemId);
@@ -282,6 +552,142 @@ public class RemoteSecuritySystemController {
         }
     }
 
+    /**
+     * Выполняет список команд одним запросом BATCH
+     */
+    public List<BatchResult> executeBatch(List<Request> commands) throws IOException {
+        Request request = new Request(NetworkConstant.BATCH);
+        request.addParam(NetworkConstant.PARAM_COMMANDS, commands);
+        return sendBatch(request);
+    }
+
+    /**
+     * Выполняет одну команду для каждой системы списка одним запросом BATCH
+     *
+     * @param params общие параметры подкоманд (например, mode) или null
+     */
+    public List<BatchResult> executeBatch(String command, List<String> systemIds, Map<String, Object> params)
+            throws IOException {
+        Request request = new Request(NetworkConstant.BATCH);
+        if (params != null) {
+            request.getParams().putAll(params);
+        }
+        request.addParam(NetworkConstant.PARAM_BATCH_COMMAND, command);
+        request.addParam(NetworkConstant.PARAM_SYSTEM_IDS, systemIds);
+        return sendBatch(request);
+    }
+
+    public List<BatchResult> armSystems(List<String> systemIds) throws IOException {
+        return updateCached(executeBatch(NetworkConstant.ARM_SYSTEM, systemIds, null), SecuritySystem::armSystem);
+    }
+
+    public List<BatchResult> disarmSystems(List<String> systemIds) throws IOException {
+        return updateCached(executeBatch(NetworkConstant.DISARM_SYSTEM, systemIds, null), SecuritySystem::disarmSystem);
+    }
+
+    public List<BatchResult> setSecurityMode(List<String> systemIds, String mode) throws IOException {
+        return updateCached(executeBatch(NetworkConstant.SET_SECURITY_MODE, systemIds,
+                Map.of(NetworkConstant.PARAM_MODE, mode)), system -> system.setSecurityMode(mode));
+    }
+
+    /**
+     * Команда по индексу: сервер возвращает id системы, которую он нашел по этому индексу.
+     * Индекс в кэше мог устареть, поэтому запись ищется по id, а без него кэш сверяется заново
+     */
+    private void updateCached(Response response, Consumer<SecuritySystem> change) {
+        if (response.getData() instanceof String systemId) {
+            cache.update(systemId, change);
+        } else {
+            cache.markDirty();
+        }
+    }
+
+    private List<BatchResult> updateCached(List<BatchResult> results, Consumer<SecuritySystem> change) {
+        if (cache != null) {
+            for (BatchResult result : results) {
+                if (result.isSuccess() && result.getSystemId() != null) {
+                    cache.update(result.getSystemId(), change);
+                }
+            }
+        }
+        return results;
+    }
+
+    private List<BatchResult> sendBatch(Request request) throws IOException {
+        Response response = networkClient.sendRequest(request);
+        if (!response.isSuccess()) {
+            throw new IOException(response.getMessage());
+        }
+        if (response.getData() == null) {
+            return new ArrayList<>();
+        }
+        if (response.getData() instanceof List<?> list && (list.isEmpty() || list.get(0) instanceof BatchResult)) {
+            @SuppressWarnings("unchecked")
+            List<BatchResult> results = (List<BatchResult>) list;
+            return results;
+        }
+        Type listType = new TypeToken<List<BatchResult>>(){}.getType();
+        return gson.fromJson(gson.toJson(response.getData()), listType);
+    }
+
+    /**
+     * Подписывается на изменения систем. Пустой или null фильтр не ограничивает события.
+     * onEvent вызывается в потоке чтения соединения и не должен отправлять запросы с ожиданием ответа
+     *
+     * @param systemTypes простые имена классов систем, например HomeAlarmSystem
+     */
+    public Subscription subscribe(Collection<String> systemIds, Collection<String> systemTypes,
+                                  Collection<EventType> eventTypes, Consumer<SystemChangeEvent> onEvent)
+            throws IOException {
+        Request request = new Request(NetworkConstant.SUBSCRIBE);
+        if (systemIds != null && !systemIds.isEmpty()) {
+            request.addParam(NetworkConstant.PARAM_SYSTEM_IDS, new ArrayList<>(systemIds));
+        }
+        if (systemTypes != null && !systemTypes.isEmpty()) {
+            request.addParam(NetworkConstant.PARAM_SYSTEM_TYPES, new ArrayList<>(systemTypes));
+        }
+        if (eventTypes != null && !eventTypes.isEmpty()) {
+            List<String> names = new ArrayList<>(eventTypes.size());
+            for (EventType eventType : eventTypes) {
+                names.add(eventType.name());
+            }
+            request.addParam(NetworkConstant.PARAM_EVENT_TYPES, names);
+        }
+        EventNumbering numbering = new EventNumbering(onEvent);
+        Response response = networkClient.sendRequestSubscription(request, push -> {
+            if (push.getData() instanceof SystemChangeEvent event) {
+                numbering.deliver(event);
+            }
+        }, numbering::interrupted);
+        if (!response.isSuccess() || !(response.getData() instanceof Number)) {
+            throw new IOException(response.getMessage());
+        }
+        return new Subscription(networkClient, request.getId());
+    }
+
+    /**
+     * Сквозная нумерация событий подписки. Переоформленная после разрыва подписка нумерует события
+     * с начала, поэтому номера сдвигаются с пропуском: получатель видит потерю событий, как при их отбрасывании сервером
+     */
+    private static final class EventNumbering {
+        private final Consumer<SystemChangeEvent> onEvent;
+        private long offset;
+        private long lastDelivered;
+
+        EventNumbering(Consumer<SystemChangeEvent> onEvent) {
+            this.onEvent = onEvent;
+        }
+
+        synchronized void deliver(SystemChangeEvent event) {
+            lastDelivered = offset + event.getSequence();
+            onEvent.accept(offset == 0 ? event : event.withSequence(lastDelivered));
+        }
+
+        synchronized void interrupted() {
+            offset = lastDelivered + 1;
+        }
+    }
+
     public boolean hasSystem(int index) throws IOException {
         return index >= 0 && index < getSystemCount();
     }
@@ -290,27 +696,15 @@ public class RemoteSecuritySystemController {
         networkClient.disconnect();
     }
 
-    // Вспомогательные методы для парсинга
+    // Вспомогательные методы для парсинга.
+    // Ответы разбираются общими адаптерами ProtocolJson (или двоичным протоколом) сразу в нужные классы;
+    // разбор из Map нужен только для ответов без поля type
     private SecuritySystem parseSecuritySystem(Object data) {
+        if (data instanceof SecuritySystem system) {
+            return system;
+        }
         try {
-            String json = gson.toJson(data);
-
-            // Определяем тип системы по JSON
-            @SuppressWarnings("unchecked")
-            Map<String, Object> map = gson.fromJson(json, Map.class);
-
-            // Проверяем специфичные поля для определения типа
-            if (map.containsKey("doorSensorsActive") || map.containsKey("windowSensorsActive")) {
-                return gson.fromJson(json, HomeAlarmSystem.class);
-            } else if (map.containsKey("failedAttempts") || map.containsKey("fingerprintEnabled")) {
-                return gson.fromJson(json, BiometricLock.class);
-            } else if (map.containsKey("shockSensorActive") || map.containsKey("panicModeDuration")) {
-                return gson.fromJson(json, CarAlarmSystem.class);
-            }
-
-            // По умолчанию пробуем как SecuritySystem
-            return gson.fromJson(json, SecuritySystem.class);
-
+            return gson.fromJson(gson.toJsonTree(data), SecuritySystem.class);
         } catch (Exception e) {
             System.err.println("Ошибка парсинга системы: " + e.getMessage());
             return null;
@@ -318,23 +712,11 @@ public class RemoteSecuritySystemController {
     }
 
     private SystemStatusReport parseStatusReport(Object data) {
+        if (data instanceof SystemStatusReport report) {
+            return report;
+        }
         try {
-            String json = gson.toJson(data);
-
-            // Определяем тип отчета
-            @SuppressWarnings("unchecked")
-            Map<String, Object> map = gson.fromJson(json, Map.class);
-
-            if (map.containsKey("doorSensorsActive")) {
-                return gson.fromJson(json, models.dto.HomeAlarmStatusReport.class);
-            } else if (map.containsKey("failedAttempts")) {
-                return gson.fromJson(json, models.dto.BiometricLockStatusReport.class);
-            } else if (map.containsKey("shockSensorActive")) {
-                return gson.fromJson(json, models.dto.CarAlarmStatusReport.class);
-            }
-
-            return gson.fromJson(json, SystemStatusReport.class);
-
+            return gson.fromJson(gson.toJsonTree(data), SystemStatusReport.class);
         } catch (Exception e) {
             System.err.println("Ошибка парсинга отчета: " + e.getMessage());
             return null;
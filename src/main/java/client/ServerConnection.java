@@ -0,0 +1,395 @@
+package client;
+
+import com.google.gson.Gson;
+import network.BinaryProtocol;
+import network.CompressionCodec;
+import network.NetworkConstant;
+import network.ProtocolInputStream;
+import network.Request;
+import network.Response;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Одно соединение пула {@link NetworkClient}. Запросы можно отправлять, не дожидаясь ответов на предыдущие:
+ * каждому запросу присваивается id, а отдельный поток чтения сопоставляет с ним ответ сервера.
+ * Двоичный протокол и сжатие согласуются сразу после подключения, до запуска потока чтения.
+ */
+class ServerConnection {
+    private final Socket socket;
+    private final Gson gson;
+    private final Consumer<ServerConnection> onClosed;
+    private PrintWriter out;
+    private ProtocolInputStream in;
+    private DataOutputStream frameOut;
+    private volatile CompressionCodec compression;
+    private volatile boolean binary;
+    private final AtomicBoolean closed = new AtomicBoolean();
+    // Последнее чтение или первая отправка после простоя; по нему пул находит мертвые соединения
+    private volatile long lastActivityNanos;
+    private final Object writeLock = new Object();
+    // Ожидающие ответа запросы по возрастанию id, то есть в порядке отправки
+    private final ConcurrentNavigableMap<Long, PendingRequest> pending = new ConcurrentSkipListMap<>();
+    // Получатели промежуточных частей потоковых ответов
+    private final Map<Long, Consumer<Response>> partListeners = new ConcurrentHashMap<>();
+    // Получатели событий подписок по id запроса SUBSCRIBE; живут дольше самого запроса
+    private final Map<Long, Consumer<Response>> pushListeners = new ConcurrentHashMap<>();
+
+    /**
+     * Подключается и согласует протокол; поток чтения запускает {@link #start}
+     *
+     * @param readTimeoutMs ограничение ожидания ответов при согласовании
+     * @param onClosed      вызывается один раз при закрытии соединения по любой причине
+     */
+    ServerConnection(String host, int port, int connectTimeoutMs, int readTimeoutMs, boolean binaryRequested,
+                     String compressionRequested, Gson gson, Consumer<ServerConnection> onClosed) throws IOException {
+        this.gson = gson;
+        this.onClosed = onClosed;
+        this.socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(host, port), connectTimeoutMs);
+            socket.setSoTimeout(readTimeoutMs);
+            OutputStream rawOut = socket.getOutputStream();
+            out = new PrintWriter(new OutputStreamWriter(rawOut, StandardCharsets.UTF_8), true);
+            in = new ProtocolInputStream(socket.getInputStream());
+            if (binaryRequested) {
+                negotiateBinary(rawOut);
+            }
+            if (compressionRequested != null && !CompressionCodec.NONE.equalsIgnoreCase(compressionRequested)) {
+                negotiateCompression(compressionRequested);
+            }
+            // Дальше поток чтения ждет без ограничения: подписка может молчать долго,
+            // а просроченные запросы находит проверка пула
+            socket.setSoTimeout(0);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+        lastActivityNanos = System.nanoTime();
+    }
+
+    void start() {
+        Thread reader = new Thread(this::readResponses, "network-client-reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Запрос SET_PROTOCOL отправляется до запуска потока чтения, поэтому после ответа
+     * в потоке соединения нет ничего, кроме будущих кадров
+     */
+    private void negotiateBinary(OutputStream rawOut) throws IOException {
+        Request request = new Request(NetworkConstant.SET_PROTOCOL);
+        request.addParam(NetworkConstant.PARAM_PROTOCOL, BinaryProtocol.NAME);
+        out.println(gson.toJson(request));
+        String line = in.readLine();
+        if (line == null) {
+            throw new IOException("Сервер закрыл соединение");
+        }
+        Response response = gson.fromJson(line, Response.class);
+        if (response.isSuccess()) {
+            frameOut = BinaryProtocol.frameOutput(rawOut);
+            binary = true;
+        } else {
+            System.err.println("Двоичный протокол недоступен, используется JSON: " + response.getMessage());
+        }
+    }
+
+    /**
+     * SET_COMPRESSION также отправляется до запуска потока чтения. Алгоритм запоминается заранее:
+     * сервер может сжать уже ответ на эту команду
+     */
+    private void negotiateCompression(String compressionRequested) throws IOException {
+        CompressionCodec codec = CompressionCodec.forName(compressionRequested);
+        if (codec == null) {
+            System.err.println("Неизвестный алгоритм сжатия, сжатие отключено: " + compressionRequested);
+            return;
+        }
+        compression = codec;
+        Request request = new Request(NetworkConstant.SET_COMPRESSION);
+        request.addParam(NetworkConstant.PARAM_CODEC, codec.name());
+        Response response;
+        if (binary) {
+            BinaryProtocol.writeFrame(frameOut, BinaryProtocol.FLAGS_NONE, BinaryProtocol.encodeRequest(request));
+            BinaryProtocol.Frame frame = BinaryProtocol.readFrame(new DataInputStream(in));
+            if (frame == null) {
+                throw new IOException("Сервер закрыл соединение");
+            }
+            response = decodeFrame(frame);
+        } else {
+            out.println(gson.toJson(request));
+            String line = in.readLine();
+            if (line == null) {
+                throw new IOException("Сервер закрыл соединение");
+            }
+            response = decodeLine(line);
+        }
+        if (!response.isSuccess()) {
+            compression = null;
+            System.err.println("Сжатие недоступно: " + response.getMessage());
+        }
+    }
+
+    private Response decodeLine(String line) throws IOException {
+        if (!line.startsWith(CompressionCodec.LINE_PREFIX)) {
+            return gson.fromJson(line, Response.class);
+        }
+        byte[] json = decompress(Base64.getDecoder().decode(line.substring(CompressionCodec.LINE_PREFIX.length())));
+        return gson.fromJson(new String(json, StandardCharsets.UTF_8), Response.class);
+    }
+
+    private Response decodeFrame(BinaryProtocol.Frame frame) throws IOException {
+        byte[] payload = frame.getPayload();
+        if ((frame.getFlags() & BinaryProtocol.FLAG_COMPRESSED) != 0) {
+            payload = decompress(payload);
+        }
+        return BinaryProtocol.decodeResponse(payload);
+    }
+
+    private byte[] decompress(byte[] data) throws IOException {
+        CompressionCodec codec = compression;
+        if (codec == null) {
+            throw new IOException("Получен сжатый ответ, но сжатие не согласовано");
+        }
+        return codec.decompress(data);
+    }
+
+    boolean isBinary() {
+        return binary;
+    }
+
+    boolean isOpen() {
+        return !closed.get();
+    }
+
+    int pendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Сколько соединение ничего не получало при ожидающих ответа запросах или просто простаивало
+     */
+    long silentNanos() {
+        return System.nanoTime() - lastActivityNanos;
+    }
+
+    /**
+     * Завершает ошибкой запросы, не получившие ответа за свой таймаут. Соединение остается открытым:
+     * поздний ответ сервера просто не найдет запроса
+     *
+     * @return сколько запросов просрочено
+     */
+    int expireOverdue() {
+        long now = System.nanoTime();
+        int expired = 0;
+        for (Map.Entry<Long, PendingRequest> entry : pending.entrySet()) {
+            PendingRequest request = entry.getValue();
+            if (now - request.deadlineNanos > 0 && pending.remove(entry.getKey(), request)) {
+                partListeners.remove(entry.getKey());
+                request.future.completeExceptionally(new SocketTimeoutException("Сервер не ответил на "
+                        + request.command + " за " + TimeUnit.NANOSECONDS.toMillis(request.timeoutNanos) + " мс"));
+                expired++;
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * @param ids       общий для пула счетчик id запросов
+     * @param onPart    получатель частей потокового ответа или событий подписки; может быть null
+     * @param push      onPart получает события подписки и после итогового ответа
+     * @param timeoutMs сколько ждать ответа; для потокового ответа - каждой следующей части
+     */
+    CompletableFuture<Response> send(Request request, AtomicLong ids, Consumer<Response> onPart, boolean push,
+                                     long timeoutMs) {
+        CompletableFuture<Response> future = new CompletableFuture<>();
+        if (closed.get()) {
+            future.completeExceptionally(new IOException("Соединение закрыто"));
+            return future;
+        }
+
+        boolean failed = false;
+        long id;
+        // id выдается под той же блокировкой, что и запись, поэтому запросы уходят в порядке id
+        synchronized (writeLock) {
+            id = ids.incrementAndGet();
+            request.setId(id);
+            if (onPart != null) {
+                (push ? pushListeners : partListeners).put(id, onPart);
+            }
+            if (pending.isEmpty()) {
+                lastActivityNanos = System.nanoTime();
+            }
+            pending.put(id, new PendingRequest(request.getCommand(), future,
+                    TimeUnit.MILLISECONDS.toNanos(timeoutMs)));
+            if (binary) {
+                try {
+                    BinaryProtocol.writeFrame(frameOut, BinaryProtocol.FLAGS_NONE, BinaryProtocol.encodeRequest(request));
+                } catch (IOException e) {
+                    failed = true;
+                }
+            } else {
+                out.println(gson.toJson(request));
+                failed = out.checkError();
+            }
+        }
+        if (failed) {
+            close(new IOException("Сервер закрыл соединение"));
+        }
+        if (closed.get() && pending.remove(id) != null) {
+            // Соединение закрылось между проверкой и записью, и close мог не увидеть этот запрос
+            future.completeExceptionally(new IOException("Соединение закрыто"));
+        }
+        return future;
+    }
+
+    void removePushListener(long requestId) {
+        pushListeners.remove(requestId);
+    }
+
+    /**
+     * Поток чтения: сопоставляет ответы с ожидающими запросами
+     */
+    private void readResponses() {
+        try {
+            if (binary) {
+                DataInputStream frames = new DataInputStream(in);
+                BinaryProtocol.Frame frame;
+                while ((frame = BinaryProtocol.readFrame(frames)) != null) {
+                    lastActivityNanos = System.nanoTime();
+                    complete(decodeFrame(frame));
+                }
+            } else {
+                String jsonResponse;
+                while ((jsonResponse = in.readLine()) != null) {
+                    lastActivityNanos = System.nanoTime();
+                    if (!jsonResponse.trim().isEmpty()) {
+                        complete(decodeLine(jsonResponse));
+                    }
+                }
+            }
+            close(new IOException("Сервер закрыл соединение или вернул пустой ответ"));
+        } catch (Exception e) {
+            close(new IOException("Ошибка соединения: " + e.getMessage(), e));
+        }
+    }
+
+    private void complete(Response response) {
+        if (response.isMore()) {
+            Consumer<Response> listener = response.getId() != null ? partListeners.get(response.getId()) : null;
+            if (listener == null && response.getId() != null) {
+                Consumer<Response> pushListener = pushListeners.get(response.getId());
+                if (pushListener != null) {
+                    try {
+                        pushListener.accept(response);
+                    } catch (RuntimeException e) {
+                        System.err.println("Ошибка обработки события подписки: " + e.getMessage());
+                    }
+                }
+                return;
+            }
+            if (listener != null) {
+                PendingRequest streaming = pending.get(response.getId());
+                if (streaming != null) {
+                    // Ответ идет: таймаут отсчитывается заново от каждой части
+                    streaming.extend();
+                }
+                try {
+                    listener.accept(response);
+                } catch (RuntimeException e) {
+                    // Остальные части этого ответа будут пропущены, запрос завершается ошибкой получателя
+                    partListeners.remove(response.getId());
+                    PendingRequest failed = pending.remove(response.getId());
+                    if (failed != null) {
+                        failed.future.completeExceptionally(e);
+                    }
+                }
+            }
+            return;
+        }
+        PendingRequest request;
+        if (response.getId() != null) {
+            partListeners.remove(response.getId());
+            if (!response.isSuccess()) {
+                pushListeners.remove(response.getId());
+            }
+            request = pending.remove(response.getId());
+        } else {
+            // Сервер помечает id каждый ответ на разобранный запрос. Ответ без id (например, на строку,
+            // которую сервер не разобрал) однозначен, только если ожидается ровно один запрос;
+            // иначе он достался бы не тому вызывающему, а настоящий ответ был бы отброшен
+            request = null;
+            Map.Entry<Long, PendingRequest> only = pending.firstEntry();
+            if (only != null && pending.size() == 1 && pending.remove(only.getKey(), only.getValue())) {
+                request = only.getValue();
+            } else {
+                System.err.println("Пропущен ответ без id: " + response.getMessage());
+            }
+        }
+        if (request != null) {
+            request.future.complete(response);
+        }
+    }
+
+    /**
+     * Закрывает соединение и завершает ожидающие запросы ошибкой reason; повторные вызовы ничего не делают
+     */
+    void close(IOException reason) {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            // Сокет закрывается первым, чтобы разблокировать поток чтения
+            socket.close();
+        } catch (IOException e) {
+            // Соединение и так потеряно
+        }
+        Map.Entry<Long, PendingRequest> entry;
+        while ((entry = pending.pollFirstEntry()) != null) {
+            partListeners.remove(entry.getKey());
+            entry.getValue().future.completeExceptionally(reason);
+        }
+        pushListeners.clear();
+        onClosed.accept(this);
+    }
+
+    /**
+     * Запрос, ожидающий ответа, и срок, до которого ответ (или очередная часть потокового ответа) должен прийти
+     */
+    private static final class PendingRequest {
+        final String command;
+        final CompletableFuture<Response> future;
+        final long timeoutNanos;
+        volatile long deadlineNanos;
+
+        PendingRequest(String command, CompletableFuture<Response> future, long timeoutNanos) {
+            this.command = command;
+            this.future = future;
+            this.timeoutNanos = timeoutNanos;
+            this.deadlineNanos = System.nanoTime() + timeoutNanos;
+        }
+
+        void extend() {
+            deadlineNanos = System.nanoTime() + timeoutNanos;
+        }
+    }
+}
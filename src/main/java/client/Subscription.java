@@ -0,0 +1,32 @@
+package client;
+
+import network.Response;
+
+import java.io.IOException;
+
+/**
+ * Действующая подписка на изменения систем; close снимает ее на сервере.
+ * После потери соединения пул переоформляет подписку, и ее id на сервере меняется
+ */
+public class Subscription implements AutoCloseable {
+    private final NetworkClient networkClient;
+    private final long requestId;
+
+    Subscription(NetworkClient networkClient, long requestId) {
+        this.networkClient = networkClient;
+        this.requestId = requestId;
+    }
+
+    /**
+     * @return текущий id подписки на сервере или -1, если подписка снята
+     */
+    public long getId() {
+        Response response = networkClient.getSubscriptionResponse(requestId);
+        return response != null && response.getData() instanceof Number id ? id.longValue() : -1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        networkClient.unsubscribe(requestId);
+    }
+}
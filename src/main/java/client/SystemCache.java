@@ -0,0 +1,256 @@
+package client;
+
+import models.EventType;
+import models.SecuritySystem;
+import models.dto.SystemChangeEvent;
+import models.dto.SystemStatusReport;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Кэш списка систем и статусных отчетов для {@link RemoteSecuritySystemController}.
+ * Общие поля систем (охрана, режим, батарея) обновляются событиями подписки на месте. После прочих событий,
+ * пропуска номера события или истечения ttl список сверяется с сервером запросом изменений после
+ * последней синхронизированной версии, поэтому повторно передаются только изменившиеся системы.
+ * Отчеты сверяются так же по своей версии. Объекты систем общие с кэшем и не должны изменяться вызывающим
+ */
+class SystemCache {
+    // События с полным состоянием всего, что они меняют
+    private static final Set<EventType> STATE_EVENTS = EnumSet.of(
+            EventType.SYSTEM_ARMED, EventType.SYSTEM_DISARMED, EventType.MODE_CHANGED, EventType.BATTERY_DROPPED);
+
+    private final long ttlNanos;
+    private List<SecuritySystem> systems;
+    private final Map<String, SecuritySystem> byId = new HashMap<>();
+    private long systemsLoadedAt;
+    // Версия сервера, с которой запрашивать изменения списка; 0 - только полная загрузка
+    private long syncVersion;
+    // Список мог разойтись с сервером и требует сверки
+    private boolean dirty;
+    private final Map<String, CachedReport> reports = new HashMap<>();
+    // Номер последнего события подписки
+    private long lastSequence;
+    private boolean loading;
+    private final List<SystemChangeEvent> buffered = new ArrayList<>();
+
+    SystemCache(long ttlMillis) {
+        this.ttlNanos = ttlMillis * 1_000_000L;
+    }
+
+    private boolean fresh(long loadedAt) {
+        return System.nanoTime() - loadedAt < ttlNanos;
+    }
+
+    /**
+     * @return копия списка систем или null, если его нужно сверить с сервером
+     */
+    synchronized List<SecuritySystem> systems() {
+        if (!valid()) {
+            return null;
+        }
+        return new ArrayList<>(systems);
+    }
+
+    private boolean valid() {
+        return systems != null && !loading && !dirty && fresh(systemsLoadedAt);
+    }
+
+    /**
+     * Отмечает начало загрузки: события до ее завершения применяются поверх результата
+     *
+     * @return версия, изменения после которой нужно запросить; 0 - весь список
+     */
+    synchronized long beginLoad() {
+        loading = true;
+        dirty = false;
+        buffered.clear();
+        return systems != null ? syncVersion : 0;
+    }
+
+    /**
+     * Применяет изменения после версии, полученной из {@link #beginLoad}
+     *
+     * @param changed измененные и новые системы в порядке списка сервера
+     * @return копия обновленного списка
+     */
+    synchronized List<SecuritySystem> endLoad(List<SecuritySystem> changed, SystemChanges changes) {
+        if (systems == null || changes.isFull()) {
+            systems = new ArrayList<>(changed);
+        } else {
+            merge(changed, changes.getRemovedIds());
+        }
+        byId.clear();
+        for (SecuritySystem system : systems) {
+            byId.putIfAbsent(system.getSystemId(), system);
+        }
+        syncVersion = changes.getVersion();
+        systemsLoadedAt = System.nanoTime();
+        loading = false;
+        for (SystemChangeEvent event : buffered) {
+            apply(event);
+        }
+        buffered.clear();
+        return new ArrayList<>(systems);
+    }
+
+    /**
+     * Удаленные системы убираются, измененные заменяются на месте, новые добавляются в конец -
+     * туда же, куда их добавляет сервер. Система, удаленная и добавленная заново, переезжает в конец
+     */
+    private void merge(List<SecuritySystem> changed, List<String> removedIds) {
+        Set<String> removed = new HashSet<>(removedIds);
+        Map<String, SecuritySystem> updated = new LinkedHashMap<>();
+        for (SecuritySystem system : changed) {
+            updated.put(system.getSystemId(), system);
+        }
+        List<SecuritySystem> merged = new ArrayList<>(systems.size() + updated.size());
+        for (SecuritySystem system : systems) {
+            String id = system.getSystemId();
+            if (removed.contains(id)) {
+                continue;
+            }
+            SecuritySystem replacement = updated.remove(id);
+            merged.add(replacement != null ? replacement : system);
+        }
+        merged.addAll(updated.values());
+        systems = merged;
+    }
+
+    synchronized void abortLoad() {
+        loading = false;
+        // События, пришедшие во время загрузки, потеряны
+        dirty = !buffered.isEmpty();
+        buffered.clear();
+    }
+
+    synchronized SecuritySystem system(int index) {
+        return valid() && index >= 0 && index < systems.size() ? systems.get(index) : null;
+    }
+
+    synchronized SecuritySystem systemById(String systemId) {
+        return valid() ? byId.get(systemId) : null;
+    }
+
+    /**
+     * @return последняя известная копия системы, в том числе требующая сверки, для условного запроса по ее версии
+     */
+    synchronized SecuritySystem systemToRevalidate(String systemId) {
+        return byId.get(systemId);
+    }
+
+    /**
+     * @return число систем или -1, если список нужно сверить
+     */
+    synchronized int size() {
+        return valid() ? systems.size() : -1;
+    }
+
+    /**
+     * Применяет результат собственной команды, не дожидаясь события сервера.
+     * Версия остается серверной: локальные сеттеры сдвигают ее по часам клиента
+     */
+    synchronized void update(String systemId, Consumer<SecuritySystem> change) {
+        SecuritySystem system = byId.get(systemId);
+        if (system != null) {
+            long version = system.getVersion();
+            change.accept(system);
+            system.setVersion(version);
+        }
+        expireReport(systemId);
+    }
+
+    /**
+     * Состав списка изменился: при следующем чтении он сверяется с сервером
+     */
+    synchronized void markDirty() {
+        dirty = true;
+    }
+
+    synchronized void invalidateReport(int index) {
+        if (systems != null && index >= 0 && index < systems.size()) {
+            expireReport(systems.get(index).getSystemId());
+        }
+    }
+
+    /**
+     * @return отчет, не требующий сверки, или null
+     */
+    synchronized SystemStatusReport report(String systemId) {
+        CachedReport cached = reports.get(systemId);
+        return cached != null && !cached.expired && fresh(cached.loadedAt) ? cached.report : null;
+    }
+
+    /**
+     * @return последний полученный отчет, в том числе устаревший, для условного запроса по его версии
+     */
+    synchronized SystemStatusReport reportToRevalidate(String systemId) {
+        CachedReport cached = reports.get(systemId);
+        return cached != null ? cached.report : null;
+    }
+
+    synchronized void putReport(String systemId, SystemStatusReport report) {
+        reports.put(systemId, new CachedReport(report, System.nanoTime()));
+    }
+
+    private void expireReport(String systemId) {
+        CachedReport cached = reports.get(systemId);
+        if (cached != null) {
+            cached.expired = true;
+        }
+    }
+
+    /**
+     * Событие подписки; вызывается в потоке чтения соединения, поэтому без сетевых запросов
+     */
+    synchronized void onEvent(SystemChangeEvent event) {
+        if (event.getSequence() != lastSequence + 1) {
+            // Сервер отбросил часть событий: изменения найдет сверка по версии
+            dirty = true;
+        }
+        lastSequence = event.getSequence();
+        if (loading) {
+            buffered.add(event);
+        } else {
+            apply(event);
+        }
+    }
+
+    private void apply(SystemChangeEvent event) {
+        String systemId = event.getSystemId();
+        expireReport(systemId);
+        if (systems == null) {
+            return;
+        }
+        SecuritySystem system = byId.get(systemId);
+        if (system == null) {
+            // Новая система: в событии нет ее полного описания
+            dirty |= event.getEventType() != EventType.SYSTEM_REMOVED;
+        } else if (SystemMonitor.isOutdated(system, event)) {
+            // Событие, отложенное на время загрузки, старше полученного состояния
+        } else if (event.getEventType() == EventType.SYSTEM_REMOVED) {
+            byId.remove(systemId);
+            systems.remove(system);
+        } else if (!STATE_EVENTS.contains(event.getEventType()) || !SystemMonitor.applyState(system, event)) {
+            dirty = true;
+        }
+    }
+
+    private static final class CachedReport {
+        final SystemStatusReport report;
+        final long loadedAt;
+        boolean expired;
+
+        CachedReport(SystemStatusReport report, long loadedAt) {
+            this.report = report;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
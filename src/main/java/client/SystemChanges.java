@@ -0,0 +1,40 @@
+package client;
+
+import java.util.List;
+
+/**
+ * Итог запроса изменений списка систем ({@link RemoteSecuritySystemController#forEachChange});
+ * сами измененные системы передаются по мере поступления
+ */
+public class SystemChanges {
+    private final List<String> removedIds;
+    private final long version;
+    private final boolean full;
+
+    public SystemChanges(List<String> removedIds, long version, boolean full) {
+        this.removedIds = removedIds;
+        this.version = version;
+        this.full = full;
+    }
+
+    /**
+     * ID систем, удаленных после запрошенной версии
+     */
+    public List<String> getRemovedIds() {
+        return removedIds;
+    }
+
+    /**
+     * Версия для следующего запроса изменений; 0, если сервер не поддерживает версии
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Переданы все системы: прежнюю копию списка нужно заменить целиком
+     */
+    public boolean isFull() {
+        return full;
+    }
+}
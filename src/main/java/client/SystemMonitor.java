@@ -0,0 +1,182 @@
+package client;
+
+import models.EventType;
+import models.SecuritySystem;
+import models.dto.SystemChangeEvent;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Локальная копия списка систем для мониторинга. Полный список запрашивается один раз,
+ * дальше копия обновляется событиями подписки; при пропуске событий или появлении систем,
+ * которых в копии нет, запрашиваются только изменения после последней синхронизированной версии
+ */
+public class SystemMonitor implements AutoCloseable {
+    private static final Set<EventType> MONITORED_EVENTS = EnumSet.of(
+            EventType.SYSTEM_ADDED, EventType.SYSTEM_REMOVED, EventType.SYSTEM_LOADED,
+            EventType.SYSTEM_ARMED, EventType.SYSTEM_DISARMED, EventType.MODE_CHANGED,
+            EventType.EMERGENCY_SIMULATED, EventType.INTRUSION_DETECTED, EventType.PANIC_MODE_ACTIVATED,
+            EventType.IMPACT_DETECTED, EventType.BATTERY_DROPPED);
+
+    private final RemoteSecuritySystemController remoteController;
+    private final Map<String, SecuritySystem> systems = new LinkedHashMap<>();
+    // События, пришедшие во время загрузки полного списка; применяются поверх него
+    private final List<SystemChangeEvent> buffered = new ArrayList<>();
+    private Subscription subscription;
+    private long lastSequence;
+    // Версия сервера, с которой запрашивать изменения; 0 - весь список
+    private long syncVersion;
+    private boolean loading;
+    private boolean resyncNeeded = true;
+    private boolean changed;
+
+    public SystemMonitor(RemoteSecuritySystemController remoteController) {
+        this.remoteController = remoteController;
+    }
+
+    /**
+     * Подписывается на изменения; полный список загружается при первом {@link #pollChanges}
+     */
+    public void start() throws IOException {
+        subscription = remoteController.subscribe(null, null, MONITORED_EVENTS, this::onEvent);
+    }
+
+    /**
+     * @return текущий список систем, если он изменился с прошлого вызова, иначе null
+     */
+    public List<SecuritySystem> pollChanges() throws IOException {
+        boolean reload;
+        long since;
+        synchronized (this) {
+            reload = resyncNeeded;
+            since = syncVersion;
+            if (reload) {
+                resyncNeeded = false;
+                loading = true;
+            }
+        }
+        if (reload) {
+            // Загрузка вне блокировки: события в это время читает тот же поток соединения
+            List<SecuritySystem> loaded = new ArrayList<>();
+            SystemChanges changes;
+            try {
+                // Мимо кэша контроллера: копия изменяет свои объекты систем
+                changes = remoteController.forEachChange(since, loaded::add);
+            } catch (IOException e) {
+                synchronized (this) {
+                    loading = false;
+                    resyncNeeded = true;
+                    buffered.clear();
+                }
+                throw e;
+            }
+            synchronized (this) {
+                if (changes.isFull()) {
+                    systems.clear();
+                } else {
+                    // Удаленная и добавленная заново система переезжает в конец, как на сервере
+                    for (String systemId : changes.getRemovedIds()) {
+                        systems.remove(systemId);
+                    }
+                }
+                for (SecuritySystem system : loaded) {
+                    systems.put(system.getSystemId(), system);
+                }
+                syncVersion = changes.getVersion();
+                loading = false;
+                for (SystemChangeEvent event : buffered) {
+                    apply(event);
+                }
+                buffered.clear();
+                changed = true;
+            }
+        }
+        synchronized (this) {
+            if (!changed) {
+                return null;
+            }
+            changed = false;
+            return new ArrayList<>(systems.values());
+        }
+    }
+
+    private synchronized void onEvent(SystemChangeEvent event) {
+        if (event.getSequence() != lastSequence + 1) {
+            // Сервер отбросил часть событий: копия могла устареть
+            resyncNeeded = true;
+        }
+        lastSequence = event.getSequence();
+        if (loading) {
+            buffered.add(event);
+        } else {
+            apply(event);
+        }
+    }
+
+    private void apply(SystemChangeEvent event) {
+        SecuritySystem system = systems.get(event.getSystemId());
+        if (system != null && isOutdated(system, event)) {
+            // Событие, отложенное на время загрузки, старше полученного состояния
+            return;
+        }
+        if (event.getEventType() == EventType.SYSTEM_REMOVED) {
+            changed |= systems.remove(event.getSystemId()) != null;
+            return;
+        }
+        if (system == null) {
+            // В событии нет полного описания новой системы
+            resyncNeeded = true;
+            return;
+        }
+        if (!applyState(system, event)) {
+            resyncNeeded = true;
+        }
+        changed = true;
+    }
+
+    /**
+     * Событие описывает более раннее состояние, чем уже известное. Без версий (старый сервер) - никогда
+     */
+    static boolean isOutdated(SecuritySystem system, SystemChangeEvent event) {
+        return event.getVersion() != 0 && event.getVersion() < system.getVersion();
+    }
+
+    /**
+     * Переносит в систему общие поля и версию из события
+     *
+     * @return false, если режим из события неизвестен клиенту
+     */
+    static boolean applyState(SecuritySystem system, SystemChangeEvent event) {
+        if (event.isArmed() != system.isArmed()) {
+            if (event.isArmed()) {
+                system.armSystem();
+            } else {
+                system.disarmSystem();
+            }
+        }
+        system.setLocation(event.getLocation());
+        system.setBatteryLevel(event.getBatteryLevel());
+        system.setSignalStrength(event.getSignalStrength());
+        try {
+            system.setSecurityMode(event.getSecurityMode());
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        system.setVersion(event.getVersion());
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (subscription != null) {
+            subscription.close();
+            subscription = null;
+        }
+    }
+}
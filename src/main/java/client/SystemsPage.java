@@ -0,0 +1,68 @@
+package client;
+
+import models.SecuritySystem;
+
+import java.util.List;
+
+/**
+ * Страница списка систем с курсорами следующей страницы
+ */
+public class SystemsPage {
+    private final List<SecuritySystem> systems;
+    private final int offset;
+    private final int total;
+    private final int nextOffset;
+    private final String nextAfterId;
+    private final long nextAfterKey;
+
+    public SystemsPage(List<SecuritySystem> systems, int offset, int total, int nextOffset, String nextAfterId,
+                       long nextAfterKey) {
+        this.systems = systems;
+        this.offset = offset;
+        this.total = total;
+        this.nextOffset = nextOffset;
+        this.nextAfterId = nextAfterId;
+        this.nextAfterKey = nextAfterKey;
+    }
+
+    public List<SecuritySystem> getSystems() {
+        return systems;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * Количество систем на сервере в момент запроса страницы
+     */
+    public int getTotal() {
+        return total;
+    }
+
+    /**
+     * @return смещение следующей страницы или -1, если страница последняя
+     */
+    public int getNextOffset() {
+        return nextOffset;
+    }
+
+    /**
+     * @return ID последней системы страницы для запроса следующей или null, если страница последняя
+     */
+    public String getNextAfterId() {
+        return nextAfterId;
+    }
+
+    /**
+     * @return порядковый ключ последней системы страницы для запроса следующей
+     * или -1, если страница последняя или сервер ключей не передает
+     */
+    public long getNextAfterKey() {
+        return nextAfterKey;
+    }
+
+    public boolean hasNext() {
+        return nextOffset >= 0;
+    }
+}
@@ -1,9 +1,12 @@
 package controllers;
 
 import client.RemoteSecuritySystemController;
+import client.SystemMonitor;
+import models.SecuritySystem;
 import views.ConsoleView;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -167,17 +170,28 @@ public class ClientCommandLineController {
         }
     }
 
+    /**
+     * Состояние выводится не чаще раза в интервал и только если за это время пришли события подписки
+     */
     private void startContinuousMonitoring(int interval) {
+        SystemMonitor monitor = new SystemMonitor(remoteController);
+        try {
+            monitor.start();
+        } catch (IOException e) {
+            view.displayError("Ошибка подписки на изменения: " + e.getMessage());
+            return;
+        }
         isMonitoring = true;
         scheduler.scheduleAtFixedRate(() -> {
             if (isMonitoring) {
                 try {
+                    List<SecuritySystem> systems = monitor.pollChanges();
+                    if (systems == null) {
+                        return;
+                    }
                     System.out.println("\n========================================");
                     System.out.println("Время: " + java.time.LocalDateTime.now());
-                    view.displaySystemState(
-                            remoteController.getAllSystems(),
-                            remoteController.getCurrentFileName()
-                    );
+                    view.displaySystemState(systems, remoteController.getCurrentFileName());
                     System.out.println("========================================");
                 } catch (IOException e) {
                     view.displayError("Ошибка связи с сервером: " + e.getMessage());
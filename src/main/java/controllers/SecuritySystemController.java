@@ -7,23 +7,24 @@ import models.dto.SystemStatusReport;
 
 import java.io.FileWriter;
 import java.io.PrintWriter;
-import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 
 public class SecuritySystemController {
 
-    private final List<SecuritySystem> systems;
+    private final SystemRegistry systems;
     private final TextFileParser textFileParser;
     private final CSVLogger csvLogger;
-    private String currentFileName;
+    private volatile String currentFileName;
+    // Последняя успешная загрузка файла: время разбора и число систем
+    private volatile long lastLoadNanos;
+    private volatile int lastLoadCount;
 
     public SecuritySystemController(
             TextFileParser textFileParser,
             CSVLogger csvLogger,
             String initialFileName
     ) {
-        this.systems = new ArrayList<>();
+        this.systems = new SystemRegistry();
         this.textFileParser = textFileParser;
         this.csvLogger = csvLogger;
         this.currentFileName = initialFileName;
@@ -36,8 +37,8 @@ public class SecuritySystemController {
     }
 
     public boolean removeSystem(int index) {
-        if (index >= 0 && index < systems.size()) {
-            SecuritySystem removed = systems.remove(index);
+        SecuritySystem removed = systems.remove(index);
+        if (removed != null) {
             csvLogger.logEvent(removed, EventType.SYSTEM_REMOVED);
             return true;
         }
@@ -45,24 +46,49 @@ public class SecuritySystemController {
     }
 
     public SecuritySystem getSystem(int index) {
-        return (index >= 0 && index < systems.size()) ? systems.get(index) : null;
+        return systems.get(index);
     }
 
-    public List<SecuritySystem> getAllSystems() {
-        return new ArrayList<>(systems);
+    /**
+     * Возвращает неизменяемый снимок списка систем, безопасный для обхода из любого потока
+     */
+    public SystemRegistry.Snapshot getAllSystems() {
+        return systems.snapshot();
+    }
+
+    /**
+     * Порядковый ключ системы для курсора постраничного чтения, см. {@link SystemRegistry.Snapshot#positionAfter}
+     * @return -1, если система не найдена
+     */
+    public long getOrderKey(String systemId) {
+        return systems.orderKeyOf(systemId);
+    }
+
+    /**
+     * Снимок списка с удалениями после версии since, см. {@link SystemRegistry#changesSince}
+     */
+    public SystemRegistry.Changes getChangesSince(long since) {
+        return systems.changesSince(since);
     }
 
     public boolean loadSystemsFromFile(String fileName, boolean append) {
         try {
-            if (!append) {
-                systems.clear();
+            long started = System.nanoTime();
+            List<SecuritySystem> loadedSystems = textFileParser.readFromFile(fileName);
+            lastLoadNanos = System.nanoTime() - started;
+            lastLoadCount = loadedSystems.size();
+            for (SecuritySystem system : loadedSystems) {
+                system.setCsvLogger(csvLogger);
+            }
+
+            if (append) {
+                systems.addAll(loadedSystems);
+            } else {
+                systems.replaceAll(loadedSystems);
                 csvLogger.logSystemEvent(EventType.INFO, "Очистка существующих систем");
             }
 
-            List<SecuritySystem> loadedSystems = textFileParser.readFromFile(fileName);
             for (SecuritySystem system : loadedSystems) {
-                system.setCsvLogger(csvLogger);
-                systems.add(system);
                 csvLogger.logEvent(system, EventType.SYSTEM_LOADED, "Из файла: " + fileName);
             }
 
@@ -75,6 +101,14 @@ public class SecuritySystemController {
         }
     }
 
+    public long getLastLoadNanos() {
+        return lastLoadNanos;
+    }
+
+    public int getLastLoadCount() {
+        return lastLoadCount;
+    }
+
     public void setFileName(String fileName) {
         String oldFile = this.currentFileName;
         this.currentFileName = fileName;
@@ -171,8 +205,9 @@ public class SecuritySystemController {
     }
 
     public void logAllSystemsState() {
-        csvLogger.logSystemEvent(EventType.INFO, "Логирование состояния всех систем (" + systems.size() + " всего)");
-        for (SecuritySystem system : systems) {
+        List<SecuritySystem> snapshot = systems.snapshot();
+        csvLogger.logSystemEvent(EventType.INFO, "Логирование состояния всех систем (" + snapshot.size() + " всего)");
+        for (SecuritySystem system : snapshot) {
             csvLogger.logSystemState(system);
         }
     }
@@ -196,16 +231,13 @@ public class SecuritySystemController {
 
     public String getAllAsString() {
         StringBuilder sb = new StringBuilder();
-        for (SecuritySystem sys : systems) {
+        for (SecuritySystem sys : systems.snapshot()) {
             sb.append(sys.toString()).append("\n");
         }
         return sb.toString();
     }
     public SecuritySystem getSystemById(String id) {
-        for (SecuritySystem sys : systems) {
-            if (sys.getSystemId().equals(id)) return sys;
-        }
-        return null;
+        return systems.getById(id);
     }
     public TextFileParser getTextFileParser() {
         return textFileParser;
@@ -213,7 +245,7 @@ public class SecuritySystemController {
 
     public Boolean saveSystemsToFile(String filename) {
         try (PrintWriter out = new PrintWriter(new FileWriter(filename))) {
-            for (SecuritySystem s : systems) {
+            for (SecuritySystem s : systems.snapshot()) {
                 out.println(s.toString()); // toString с форматом "тип поля=знач..."
             }
             return true;
@@ -223,13 +255,10 @@ public class SecuritySystemController {
     }
 
     public boolean removeSystemById(String id) {
-        Iterator<SecuritySystem> it = systems.iterator();
-        while (it.hasNext()) {
-            SecuritySystem sys = it.next();
-            if (sys.getSystemId().equals(id)) {
-                it.remove();
-                return true;
-            }
+        SecuritySystem removed = systems.removeById(id);
+        if (removed != null) {
+            csvLogger.logEvent(removed, EventType.SYSTEM_REMOVED);
+            return true;
         }
         return false;
     }
@@ -0,0 +1,559 @@
+package controllers;
+
+import models.SecuritySystem;
+
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Потокобезопасный реестр систем безопасности.
+ * Хранит упорядоченный список (для команд по индексу) и хеш-индекс ID -> система,
+ * чтобы операции по ID выполнялись за O(1) без перебора всего списка.
+ * При дублирующихся ID индекс указывает на первую систему в списке, как и прежний линейный поиск.
+ * <p>
+ * Чтение не блокируется: список публикуется как неизменяемый снимок, индекс хранится в ConcurrentHashMap.
+ * Снимок разбит на куски не длиннее {@link #CHUNK_SIZE}, поэтому изменение копирует один кусок и каталог кусков,
+ * а не весь список. Каждая система получает порядковый ключ, возрастающий вдоль списка: по нему удаление
+ * находит кусок и позицию двоичным поиском. Изменения состава сериализуются одной блокировкой.
+ * <p>
+ * Для разностной синхронизации ({@link #changesSince}) реестр помнит последние удаления с их версиями.
+ * Добавленные системы получают новую версию, чтобы попасть в разницу даже если созданы задолго до добавления
+ */
+public class SystemRegistry {
+    static final int CHUNK_SIZE = 1024;
+    // Сколько последних удалений хранится; клиент, отставший сильнее, получает полный список
+    private static final int TOMBSTONE_LIMIT = 4096;
+
+    private volatile Layout layout;
+    private final Map<String, SecuritySystem> systemsById;
+    // Порядковые ключи систем. Изменяются только под writeLock
+    private final Map<SecuritySystem, Long> orderKeys;
+    private long lastOrderKey;
+    // Количество "лишних" систем с уже занятым ID, чтобы не перебирать список при каждом удалении.
+    // Изменяется только под writeLock
+    private final Map<String, Integer> duplicateCounts;
+    private final ReentrantLock writeLock;
+    // Удаления по возрастанию версий и версия, до которой они могли быть забыты. Изменяются под writeLock
+    private final ArrayDeque<Tombstone> tombstones;
+    private long tombstoneHorizon;
+
+    public SystemRegistry() {
+        this.layout = Layout.EMPTY;
+        this.systemsById = new ConcurrentHashMap<>();
+        this.orderKeys = new IdentityHashMap<>();
+        this.duplicateCounts = new HashMap<>();
+        this.writeLock = new ReentrantLock();
+        this.tombstones = new ArrayDeque<>();
+    }
+
+    public void add(SecuritySystem system) {
+        writeLock.lock();
+        try {
+            system.touch();
+            index(system);
+            LayoutBuilder builder = new LayoutBuilder(layout);
+            builder.append(system, nextOrderKey(system));
+            layout = builder.build();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Добавляет несколько систем за одну публикацию снимка
+     */
+    public void addAll(Collection<? extends SecuritySystem> added) {
+        if (added.isEmpty()) {
+            return;
+        }
+        writeLock.lock();
+        try {
+            LayoutBuilder builder = new LayoutBuilder(layout);
+            for (SecuritySystem system : added) {
+                system.touch();
+                index(system);
+                builder.append(system, nextOrderKey(system));
+            }
+            layout = builder.build();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Атомарно заменяет все содержимое реестра
+     */
+    public void replaceAll(Collection<? extends SecuritySystem> replacement) {
+        writeLock.lock();
+        try {
+            forgetRemovals();
+            systemsById.clear();
+            orderKeys.clear();
+            duplicateCounts.clear();
+            LayoutBuilder builder = new LayoutBuilder(Layout.EMPTY);
+            for (SecuritySystem system : replacement) {
+                index(system);
+                builder.append(system, nextOrderKey(system));
+            }
+            layout = builder.build();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public SecuritySystem get(int index) {
+        Layout current = layout;
+        return (index >= 0 && index < current.size) ? current.get(index) : null;
+    }
+
+    public SecuritySystem getById(String id) {
+        return id != null ? systemsById.get(id) : null;
+    }
+
+    /**
+     * Удаляет систему по позиции в списке
+     * @return удаленная система или null, если индекс вне диапазона
+     */
+    public SecuritySystem remove(int index) {
+        writeLock.lock();
+        try {
+            Layout current = layout;
+            if (index < 0 || index >= current.size) {
+                return null;
+            }
+            int chunk = current.chunkAt(index);
+            int position = index - current.starts[chunk];
+            SecuritySystem removed = current.chunks[chunk].systems[position];
+            layout = current.without(chunk, position);
+            unindex(removed);
+            return removed;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Удаляет систему по ID; позиция находится по порядковому ключу, без перебора списка
+     * @return удаленная система или null, если система не найдена
+     */
+    public SecuritySystem removeById(String id) {
+        writeLock.lock();
+        try {
+            SecuritySystem removed = getById(id);
+            if (removed == null) {
+                return null;
+            }
+            long key = orderKeys.get(removed);
+            Layout current = layout;
+            int chunk = current.chunkByKey(key);
+            int position = Arrays.binarySearch(current.chunks[chunk].keys, key);
+            layout = current.without(chunk, position);
+            unindex(removed);
+            return removed;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public void clear() {
+        writeLock.lock();
+        try {
+            forgetRemovals();
+            layout = Layout.EMPTY;
+            systemsById.clear();
+            orderKeys.clear();
+            duplicateCounts.clear();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public int size() {
+        return layout.size;
+    }
+
+    /**
+     * Неизменяемый снимок списка на момент вызова. Не копирует данные
+     * и не видит последующих изменений, поэтому безопасен для обхода из любого потока.
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(layout);
+    }
+
+    /**
+     * Порядковый ключ системы с данным ID
+     * @return -1, если система не найдена
+     */
+    public long orderKeyOf(String id) {
+        writeLock.lock();
+        try {
+            SecuritySystem system = getById(id);
+            Long key = system != null ? orderKeys.get(system) : null;
+            return key != null ? key : -1;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Изменения после версии since: список, согласованный с удалениями, и текущая версия.
+     * Отбор измененных систем из списка - дело вызывающего, сравнение версий с since
+     *
+     * @param since версия предыдущей синхронизации; 0 - полный список
+     */
+    public Changes changesSince(long since) {
+        writeLock.lock();
+        try {
+            // Версия читается первой: все изменения не новее нее уже видны в списке.
+            // Блокировка реестра нужна только для согласованности с удалениями, изменения систем она не ждет
+            long version = SecuritySystem.currentVersion();
+            boolean full = since <= 0 || since < tombstoneHorizon;
+            List<String> removedIds = new ArrayList<>();
+            if (!full) {
+                Iterator<Tombstone> newestFirst = tombstones.descendingIterator();
+                while (newestFirst.hasNext()) {
+                    Tombstone tombstone = newestFirst.next();
+                    if (tombstone.version <= since) {
+                        break;
+                    }
+                    removedIds.add(tombstone.systemId);
+                }
+            }
+            return new Changes(snapshot(), removedIds, version, full);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private long nextOrderKey(SecuritySystem system) {
+        long key = ++lastOrderKey;
+        orderKeys.put(system, key);
+        return key;
+    }
+
+    private void index(SecuritySystem system) {
+        if (systemsById.putIfAbsent(system.getSystemId(), system) != null) {
+            duplicateCounts.merge(system.getSystemId(), 1, Integer::sum);
+            // Разница по ID не различает одноименные системы
+            forgetRemovals();
+        }
+    }
+
+    /**
+     * Убирает систему из индекса. Если в списке осталась система с тем же ID,
+     * индекс переключается на нее, чтобы поиск по ID вел себя как раньше.
+     */
+    private void unindex(SecuritySystem removed) {
+        orderKeys.remove(removed);
+        String id = removed.getSystemId();
+        boolean hadDuplicates = duplicateCounts.containsKey(id);
+        if (hadDuplicates) {
+            duplicateCounts.computeIfPresent(id, (key, count) -> count > 1 ? count - 1 : null);
+            // Разница по ID не различает одноименные системы
+            forgetRemovals();
+        } else {
+            tombstones.addLast(new Tombstone(SecuritySystem.nextVersion(), id));
+            if (tombstones.size() > TOMBSTONE_LIMIT) {
+                tombstoneHorizon = tombstones.removeFirst().version;
+            }
+        }
+        if (!systemsById.remove(id, removed) || !hadDuplicates) {
+            return;
+        }
+        // Перебор только для одноименных систем, которых в нормальном реестре нет
+        for (SecuritySystem system : snapshot()) {
+            if (id.equals(system.getSystemId())) {
+                systemsById.put(id, system);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Клиенты, синхронизированные до этого момента, получат полный список
+     */
+    private void forgetRemovals() {
+        tombstones.clear();
+        tombstoneHorizon = SecuritySystem.nextVersion();
+    }
+
+    /**
+     * Неизменяемый кусок списка: системы и их порядковые ключи
+     */
+    private static final class Chunk {
+        final SecuritySystem[] systems;
+        final long[] keys;
+
+        Chunk(SecuritySystem[] systems, long[] keys) {
+            this.systems = systems;
+            this.keys = keys;
+        }
+    }
+
+    /**
+     * Неизменяемое состояние списка: куски по порядку и позиция первой системы каждого куска
+     */
+    private static final class Layout {
+        static final Layout EMPTY = new Layout(new Chunk[0], new int[0], 0);
+
+        final Chunk[] chunks;
+        final int[] starts;
+        final int size;
+
+        Layout(Chunk[] chunks, int[] starts, int size) {
+            this.chunks = chunks;
+            this.starts = starts;
+            this.size = size;
+        }
+
+        static Layout of(Chunk[] chunks) {
+            int[] starts = new int[chunks.length];
+            int size = 0;
+            for (int i = 0; i < chunks.length; i++) {
+                starts[i] = size;
+                size += chunks[i].systems.length;
+            }
+            return new Layout(chunks, starts, size);
+        }
+
+        SecuritySystem get(int index) {
+            int chunk = chunkAt(index);
+            return chunks[chunk].systems[index - starts[chunk]];
+        }
+
+        /**
+         * Кусок, содержащий позицию index
+         */
+        int chunkAt(int index) {
+            int found = Arrays.binarySearch(starts, index);
+            return found >= 0 ? found : -found - 2;
+        }
+
+        /**
+         * Кусок, содержащий систему с порядковым ключом key
+         */
+        int chunkByKey(long key) {
+            int low = 0;
+            int high = chunks.length - 1;
+            while (low < high) {
+                int middle = (low + high + 1) >>> 1;
+                if (chunks[middle].keys[0] <= key) {
+                    low = middle;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * Копирует один кусок без элемента и каталог кусков; опустевший кусок выбрасывается
+         */
+        Layout without(int chunk, int position) {
+            Chunk source = chunks[chunk];
+            int length = source.systems.length - 1;
+            if (length == 0) {
+                Chunk[] updated = new Chunk[chunks.length - 1];
+                System.arraycopy(chunks, 0, updated, 0, chunk);
+                System.arraycopy(chunks, chunk + 1, updated, chunk, chunks.length - chunk - 1);
+                return of(updated);
+            }
+            SecuritySystem[] systems = new SecuritySystem[length];
+            long[] keys = new long[length];
+            System.arraycopy(source.systems, 0, systems, 0, position);
+            System.arraycopy(source.systems, position + 1, systems, position, length - position);
+            System.arraycopy(source.keys, 0, keys, 0, position);
+            System.arraycopy(source.keys, position + 1, keys, position, length - position);
+            Chunk[] updated = chunks.clone();
+            updated[chunk] = new Chunk(systems, keys);
+            int[] starts = this.starts.clone();
+            for (int i = chunk + 1; i < starts.length; i++) {
+                starts[i]--;
+            }
+            return new Layout(updated, starts, size - 1);
+        }
+    }
+
+    /**
+     * Дописывает системы в конец: последний неполный кусок копируется один раз, дальше заполняются новые
+     */
+    private static final class LayoutBuilder {
+        private final List<Chunk> chunks;
+        private SecuritySystem[] tail;
+        private long[] tailKeys;
+        private int tailLength;
+
+        LayoutBuilder(Layout base) {
+            this.chunks = new ArrayList<>(Arrays.asList(base.chunks));
+            if (!chunks.isEmpty() && chunks.get(chunks.size() - 1).systems.length < CHUNK_SIZE) {
+                Chunk last = chunks.remove(chunks.size() - 1);
+                tail = Arrays.copyOf(last.systems, CHUNK_SIZE);
+                tailKeys = Arrays.copyOf(last.keys, CHUNK_SIZE);
+                tailLength = last.systems.length;
+            }
+        }
+
+        void append(SecuritySystem system, long key) {
+            if (tail == null) {
+                tail = new SecuritySystem[CHUNK_SIZE];
+                tailKeys = new long[CHUNK_SIZE];
+                tailLength = 0;
+            }
+            tail[tailLength] = system;
+            tailKeys[tailLength] = key;
+            if (++tailLength == CHUNK_SIZE) {
+                chunks.add(new Chunk(tail, tailKeys));
+                tail = null;
+            }
+        }
+
+        Layout build() {
+            if (tail != null && tailLength > 0) {
+                chunks.add(new Chunk(Arrays.copyOf(tail, tailLength), Arrays.copyOf(tailKeys, tailLength)));
+                tail = null;
+            }
+            return Layout.of(chunks.toArray(new Chunk[0]));
+        }
+    }
+
+    /**
+     * Список поверх неизменяемого состояния; обход идет по кускам без поиска позиции.
+     * Порядковые ключи систем снимка служат курсором постраничного чтения
+     */
+    public static final class Snapshot extends AbstractList<SecuritySystem> implements RandomAccess {
+        private final Layout layout;
+
+        Snapshot(Layout layout) {
+            this.layout = layout;
+        }
+
+        /**
+         * Порядковый ключ системы в позиции index
+         */
+        public long orderKey(int index) {
+            Objects.checkIndex(index, layout.size);
+            int chunk = layout.chunkAt(index);
+            return layout.chunks[chunk].keys[index - layout.starts[chunk]];
+        }
+
+        /**
+         * Позиция первой системы с ключом больше key; size(), если таких нет.
+         * Ищется двоичным поиском, как в {@link #removeById}. Системе с ключом key не обязательно
+         * оставаться в списке: после ее удаления чтение продолжается со следующей
+         */
+        public int positionAfter(long key) {
+            if (layout.chunks.length == 0) {
+                return 0;
+            }
+            int chunk = layout.chunkByKey(key);
+            int found = Arrays.binarySearch(layout.chunks[chunk].keys, key);
+            return layout.starts[chunk] + (found >= 0 ? found + 1 : -found - 1);
+        }
+
+        @Override
+        public SecuritySystem get(int index) {
+            Objects.checkIndex(index, layout.size);
+            return layout.get(index);
+        }
+
+        @Override
+        public int size() {
+            return layout.size;
+        }
+
+        @Override
+        public Iterator<SecuritySystem> iterator() {
+            return new Iterator<>() {
+                private int chunk;
+                private int position;
+
+                @Override
+                public boolean hasNext() {
+                    return chunk < layout.chunks.length;
+                }
+
+                @Override
+                public SecuritySystem next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    SecuritySystem[] systems = layout.chunks[chunk].systems;
+                    SecuritySystem system = systems[position];
+                    if (++position == systems.length) {
+                        chunk++;
+                        position = 0;
+                    }
+                    return system;
+                }
+            };
+        }
+    }
+
+    private static final class Tombstone {
+        final long version;
+        final String systemId;
+
+        Tombstone(long version, String systemId) {
+            this.version = version;
+            this.systemId = systemId;
+        }
+    }
+
+    /**
+     * Результат {@link #changesSince}
+     */
+    public static final class Changes {
+        private final List<SecuritySystem> systems;
+        private final List<String> removedIds;
+        private final long version;
+        private final boolean full;
+
+        Changes(List<SecuritySystem> systems, List<String> removedIds, long version, boolean full) {
+            this.systems = systems;
+            this.removedIds = removedIds;
+            this.version = version;
+            this.full = full;
+        }
+
+        /**
+         * Снимок всего списка на момент запроса
+         */
+        public List<SecuritySystem> getSystems() {
+            return systems;
+        }
+
+        /**
+         * ID систем, удаленных после since; пуст при полном списке
+         */
+        public List<String> getRemovedIds() {
+            return removedIds;
+        }
+
+        /**
+         * Версия, с которой запрашивать следующие изменения
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         * Удаления после since не сохранились: клиент должен заменить весь список
+         */
+        public boolean isFull() {
+            return full;
+        }
+    }
+}
@@ -81,6 +81,7 @@ public class BiometricLock extends SecuritySystem {
     @Override
     public void calibrateSensors() {
         this.failedAttempts = 0;
+        touch();
         if (csvLogger != null) {
             csvLogger.logEvent(this, EventType.CALIBRATION_COMPLETE);
         }
@@ -103,6 +104,7 @@ public class BiometricLock extends SecuritySystem {
         } else {
             failedAttempts = 0;
         }
+        touch();
         if (csvLogger != null) {
             csvLogger.logEvent(this, authenticated ? EventType.AUTH_SUCCESS : EventType.AUTH_FAILED);
         }
@@ -111,6 +113,7 @@ public class BiometricLock extends SecuritySystem {
 
     public void addUser(String fingerprint, String name) {
         authorizedUsers.put(fingerprint, name);
+        touch();
         if (csvLogger != null) {
             csvLogger.logEvent(this, EventType.USER_ADDED);
         }
@@ -118,13 +121,17 @@ public class BiometricLock extends SecuritySystem {
 
     public void removeUser(String fingerprintId) {
         String userName = authorizedUsers.remove(fingerprintId);
-        if (userName != null && csvLogger != null) {
-            csvLogger.logEvent(this, EventType.CONFIG_CHANGED);
+        if (userName != null) {
+            touch();
+            if (csvLogger != null) {
+                csvLogger.logEvent(this, EventType.CONFIG_CHANGED);
+            }
         }
     }
 
     public void lockDoor() {
         this.lockStatus = "Заблокирован";
+        touch();
         if (csvLogger != null) {
             csvLogger.logEvent(this, EventType.DOOR_LOCKED);
         }
@@ -132,6 +139,7 @@ public class BiometricLock extends SecuritySystem {
 
     public void unlockDoor() {
         this.lockStatus = "Открыт";
+        touch();
         if (csvLogger != null) {
             csvLogger.logEvent(this, EventType.DOOR_UNLOCKED);
         }
@@ -139,6 +147,7 @@ public class BiometricLock extends SecuritySystem {
 
     public void toggleFingerprintScanner() {
         this.fingerprintEnabled = !this.fingerprintEnabled;
+        touch();
         if (csvLogger != null) {
             csvLogger.logEvent(this, EventType.SENSOR_TOGGLED);
         }
@@ -146,6 +155,7 @@ public class BiometricLock extends SecuritySystem {
 
     public void setAutoLockDelay(int seconds) {
         this.autoLockDelay = seconds;
+        touch();
         if (csvLogger != null) {
             csvLogger.logEvent(this, EventType.CONFIG_CHANGED);
         }
@@ -179,6 +189,7 @@ public class BiometricLock extends SecuritySystem {
     // Сеттеры
     public void setFailedAttempts(int attempts) {
         this.failedAttempts = Math.max(0, attempts);
+        touch();
         if (csvLogger != null) {
             csvLogger.logEvent(this, EventType.CONFIG_CHANGED);
         }
@@ -186,6 +197,7 @@ public class BiometricLock extends SecuritySystem {
 
     public void setFingerprintEnabled(boolean enabled) {
         this.fingerprintEnabled = enabled;
+        touch();
         if (csvLogger != null) {
             csvLogger.logEvent(this, EventType.SENSOR_TOGGLED);
         }
@@ -193,6 +205,7 @@ public class BiometricLock extends SecuritySystem {
 
     public void setFaceRecognitionEnabled(boolean enabled) {
         this.faceRecognitionEnabled = enabled;
+        touch();
         if (csvLogger != null) {
             csvLogger.logEvent(this, EventType.SENSOR_TOGGLED);
         }
@@ -201,6 +214,7 @@ public class BiometricLock extends SecuritySystem {
     public void setLockStatus(String status) {
         if (status != null && !status.isBlank()) {
             this.lockStatus = status;
+            touch();
             if (csvLogger != null) {
                 csvLogger.logEvent(this, EventType.CONFIG_CHANGED);
             }
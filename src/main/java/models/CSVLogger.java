@@ -2,54 +2,263 @@ package models;
 
 import config.ConfigManager;
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 public class CSVLogger {
+    /**
+     * Поведение асинхронного режима при переполнении очереди
+     */
+    public enum BackpressurePolicy {
+        /** Вызывающий поток ждет освобождения места */
+        BLOCK,
+        /** Отбрасывается самая старая запись в очереди */
+        DROP_OLDEST,
+        /** Отбрасываются информационные события, остальные ждут как при BLOCK */
+        DROP_INFO
+    }
+
+    /**
+     * Получатель событий систем. Вызывается в потоке, изменившем систему, до записи в журнал,
+     * поэтому не должен блокироваться
+     */
+    public interface EventListener {
+        void onEvent(SecuritySystem system, EventType eventType, String details);
+    }
+
+    // systemId служебных записей сервера, не относящихся к устройствам
+    static final String SERVICE_SYSTEM_ID = "SYSTEM";
+
+    // События, которые можно потерять при перегрузке в режиме DROP_INFO
+    private static final Set<EventType> INFO_LEVEL_EVENTS = EnumSet.of(
+            EventType.INFO, EventType.STATE_UPDATE, EventType.CONNECTIVITY_CHECK,
+            EventType.COMMAND_RECEIVED, EventType.COMMAND_EXECUTED);
+
     private final ConfigManager config = ConfigManager.getInstance();
-    private PrintWriter writer;
+    private final Clock clock = Clock.systemDefaultZone();
+    // Используется под блокировкой в синхронном режиме или только потоком записи в асинхронном
+    private final CsvLineEncoder encoder = new CsvLineEncoder(clock.getZone());
+    private OutputStream writer;
+    // Индекс записей по systemId и позиция следующей строки в файле; меняются только писателем
+    private volatile CsvLogIndex index;
+    private long writePosition;
+    // Закрытые сегменты журнала; null, если ротация отключена
+    private final CsvLogSegments segments;
+    private final long segmentMaxBytes;
+    private final boolean segmentDaily;
+    // Границы активного сегмента; меняются только писателем
+    private LocalDateTime activeFirst;
+    private Instant activeLast;
+    private long activeDayEnd = Long.MAX_VALUE;
     private int logInterval = 10;
     private final String logFilePath;
 
+    private final boolean async;
+    private final BlockingQueue<LogRecord> queue;
+    private final BackpressurePolicy backpressure;
+    private final long flushIntervalMs;
+    private final int batchSize;
+    private final AtomicLong droppedRecords = new AtomicLong();
+    private final AtomicLong flushCount = new AtomicLong();
+    private final AtomicLong flushNanos = new AtomicLong();
+    private volatile long maxFlushNanos;
+    private Thread writerThread;
+    private volatile boolean closed;
+    // Синхронная запись и закрытие. ReentrantLock, а не synchronized: запись в файл под монитором
+    // закрепляла бы виртуальный поток обработчика клиента за несущим потоком
+    private final ReentrantLock writeLock = new ReentrantLock();
+    // Ротация сегмента - под блокировкой записи, запросы журнала - под блокировкой чтения:
+    // запрос видит записи либо в активном файле, либо уже в закрытом сегменте манифеста
+    private final ReentrantReadWriteLock rollLock = new ReentrantReadWriteLock();
+    private final List<EventListener> listeners = new CopyOnWriteArrayList<>();
+
     public CSVLogger(String s) {
         this.logFilePath = config.getString("file.csv.log");
-        initializeWriter();
+        this.async = config.getBoolean("csv.async.enabled", false);
+        this.queue = async ? new ArrayBlockingQueue<>(config.getInt("csv.async.queue.capacity", 65536)) : null;
+        this.backpressure = parseBackpressure(config.getString("csv.async.backpressure", "BLOCK"));
+        this.flushIntervalMs = config.getInt("csv.async.flush.interval.ms", 200);
+        this.batchSize = config.getInt("csv.async.batch.size", 1024);
+        this.segments = config.getBoolean("csv.segment.enabled", false)
+                ? new CsvLogSegments(Path.of(logFilePath), config.getBoolean("csv.segment.compress", true),
+                        config.getInt("csv.segment.compress.keep.plain", 4))
+                : null;
+        this.segmentMaxBytes = config.getInt("csv.segment.max.mb", 64) * 1024L * 1024L;
+        this.segmentDaily = config.getBoolean("csv.segment.daily", true);
+        loadSegments();
+        openActiveSegment();
+        if (async && writer != null) {
+            startWriterThread();
+        }
+    }
+
+    private void loadSegments() {
+        if (segments == null) {
+            return;
+        }
+        try {
+            segments.load();
+        } catch (IOException e) {
+            System.err.println(config.getString("error.prefix") + " CSV manifest: " + e.getMessage());
+        }
     }
 
-    private void initializeWriter() {
+    /**
+     * Открывает активный файл журнала на дозапись; новый файл начинается с заголовка
+     */
+    private void openActiveSegment() {
         try {
             File file = new File(logFilePath);
             boolean fileExists = file.exists();
-            writer = new PrintWriter(new FileWriter(logFilePath, true));
+            openIndex();
+            int bufferSize = async ? config.getInt("csv.async.buffer.size", 65536) : 8192;
+            writer = new BufferedOutputStream(new FileOutputStream(logFilePath, true), bufferSize);
+            writePosition = file.length();
             if (!fileExists) {
-                writer.println(config.getString("csv.header"));
+                encoder.reset().append(config.getString("csv.header")).newLine().writeTo(writer);
+                writePosition += encoder.length();
+                writer.flush();
+            } else if (segments != null) {
+                restoreActiveRange();
             }
         } catch (Exception e) {
             System.err.println(config.getString("error.prefix") + " CSV: " + e.getMessage());
         }
     }
 
-    public void logEvent(SecuritySystem system, EventType eventType, String additionalInfo) {
-        if (writer != null) {
-            String timestamp = LocalDateTime.now().toString();
-            String description = eventType.getDescription();
-            if (additionalInfo != null && !additionalInfo.isEmpty()) {
-                description += ": " + additionalInfo;
+    /**
+     * Восстанавливает время первой и последней записи активного файла, оставшегося с прошлого запуска
+     */
+    private void restoreActiveRange() throws IOException {
+        Path file = Path.of(logFilePath);
+        String firstLine;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            reader.readLine();
+            firstLine = reader.readLine();
+        }
+        if (firstLine == null) {
+            return;
+        }
+        List<String> lastLines = CsvLogReader.readLastLines(file, 1, true);
+        LocalDateTime first = CsvLogSegments.parseTimestamp(firstLine);
+        LocalDateTime last = lastLines.isEmpty() ? null : CsvLogSegments.parseTimestamp(lastLines.get(0));
+        if (last == null) {
+            last = LocalDateTime.now(clock);
+        }
+        startSegmentRange(first != null ? first : last);
+        activeLast = last.atZone(clock.getZone()).toInstant();
+    }
+
+    private void startSegmentRange(LocalDateTime first) {
+        activeFirst = first;
+        activeDayEnd = segmentDaily
+                ? first.toLocalDate().plusDays(1).atStartOfDay(clock.getZone()).toEpochSecond()
+                : Long.MAX_VALUE;
+    }
+
+    /**
+     * Закрывает активный сегмент, если он превысил размер или запись относится к следующим суткам.
+     * Вызывается только писателем перед записью строки
+     */
+    private void rollIfNeeded(Instant timestamp) {
+        if (activeFirst == null) {
+            startSegmentRange(LocalDateTime.ofInstant(timestamp, clock.getZone()));
+        } else if (writePosition >= segmentMaxBytes || timestamp.getEpochSecond() >= activeDayEnd) {
+            rollSegment();
+            startSegmentRange(LocalDateTime.ofInstant(timestamp, clock.getZone()));
+        }
+        activeLast = timestamp;
+    }
+
+    /**
+     * Переименовывает активный файл и его индекс в закрытый сегмент и начинает новый файл.
+     * Запросы журнала ждут, пока сегмент не окажется в манифесте, а новый файл не будет открыт.
+     * При ошибке писатель продолжает дописывать текущий файл
+     */
+    private void rollSegment() {
+        Path active = Path.of(logFilePath);
+        rollLock.writeLock().lock();
+        try {
+            writer.close();
+            CsvLogIndex closedIndex = index;
+            index = null;
+            if (closedIndex != null) {
+                closedIndex.close();
+            }
+            Path closed = segments.nextSegmentPath(activeFirst);
+            Files.move(active, closed);
+            CsvLogIndex.moveFiles(active, closed);
+            segments.addClosed(closed, activeFirst, LocalDateTime.ofInstant(activeLast, clock.getZone()),
+                    writePosition);
+        } catch (IOException e) {
+            System.err.println(config.getString("error.prefix") + " CSV rotation: " + e.getMessage());
+        } finally {
+            activeFirst = null;
+            openActiveSegment();
+            rollLock.writeLock().unlock();
+        }
+    }
+
+    private void openIndex() {
+        try {
+            CsvLogIndex logIndex = new CsvLogIndex(Path.of(logFilePath));
+            if (logIndex.open(true)) {
+                System.out.println("Индекс журнала перестроен: " + logFilePath);
             }
+            index = logIndex;
+        } catch (IOException e) {
+            // Без индекса запросы по systemId работают полным сканированием
+            System.err.println(config.getString("error.prefix") + " CSV index: " + e.getMessage());
+        }
+    }
 
-            String line = String.format("%s,%s,%s,%s,%s,%d,%d,%s,%s",
-                    timestamp,
+    private static BackpressurePolicy parseBackpressure(String value) {
+        try {
+            return BackpressurePolicy.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return BackpressurePolicy.BLOCK;
+        }
+    }
+
+    public void addEventListener(EventListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeEventListener(EventListener listener) {
+        listeners.remove(listener);
+    }
+
+    public void logEvent(SecuritySystem system, EventType eventType, String additionalInfo) {
+        for (EventListener listener : listeners) {
+            listener.onEvent(system, eventType, additionalInfo);
+        }
+        if (writer != null) {
+            submit(new LogRecord(
+                    clock.instant(),
                     system.getSystemId(),
                     system.getLocation(),
                     system.getSecurityMode(),
                     system.isArmed(),
                     system.getBatteryLevel(),
                     system.getSignalStrength(),
-                    eventType.name(),
-                    description);
-            writer.println(line);
-            writer.flush();
+                    eventType,
+                    additionalInfo));
         }
     }
 
@@ -59,24 +268,16 @@ public class CSVLogger {
 
     public void logSystemEvent(EventType eventType, String details) {
         if (writer != null) {
-            String timestamp = LocalDateTime.now().toString();
-            String description = eventType.getDescription();
-            if (details != null && !details.isEmpty()) {
-                description += ": " + details;
-            }
-
-            String line = String.format("%s,%s,%s,%s,%s,%d,%d,%s,%s",
-                    timestamp,
-                    "SYSTEM",
+            submit(new LogRecord(
+                    clock.instant(),
+                    SERVICE_SYSTEM_ID,
                     "N/A",
                     "N/A",
                     false,
                     0,
                     0,
-                    eventType.name(),
-                    description);
-            writer.println(line);
-            writer.flush();
+                    eventType,
+                    details));
         }
     }
 
@@ -84,6 +285,173 @@ public class CSVLogger {
         logEvent(system, EventType.STATE_UPDATE);
     }
 
+    /**
+     * В синхронном режиме пишет запись сразу, в асинхронном ставит в очередь
+     * для потока записи с учетом политики переполнения
+     */
+    private void submit(LogRecord record) {
+        if (closed) {
+            return;
+        }
+        if (!async) {
+            writeAndFlush(record);
+            return;
+        }
+        if (queue.offer(record)) {
+            return;
+        }
+        switch (backpressure) {
+            case DROP_OLDEST -> {
+                while (!queue.offer(record)) {
+                    if (queue.poll() != null) {
+                        droppedRecords.incrementAndGet();
+                    }
+                }
+            }
+            case DROP_INFO -> {
+                if (INFO_LEVEL_EVENTS.contains(record.eventType)) {
+                    droppedRecords.incrementAndGet();
+                } else {
+                    putBlocking(record);
+                }
+            }
+            default -> putBlocking(record);
+        }
+    }
+
+    private void putBlocking(LogRecord record) {
+        try {
+            while (!closed) {
+                if (queue.offer(record, flushIntervalMs, TimeUnit.MILLISECONDS)) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        droppedRecords.incrementAndGet();
+    }
+
+    private void writeAndFlush(LogRecord record) {
+        writeLock.lock();
+        try {
+            writeRecord(record);
+            flushWriter();
+        } catch (IOException e) {
+            System.err.println(config.getString("error.prefix") + " CSV: " + e.getMessage());
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Пишет строку в формате csv.header:
+     * timestamp,systemid,location,securitymode,isarmed,batterylevel,signalstrength,eventtype,eventdescription
+     */
+    private void writeRecord(LogRecord record) throws IOException {
+        if (segments != null) {
+            rollIfNeeded(record.timestamp);
+        }
+        encoder.reset()
+                .appendTimestamp(record.timestamp).append(',')
+                .append(record.systemId).append(',')
+                .append(record.location).append(',')
+                .append(record.securityMode).append(',')
+                .append(record.armed).append(',')
+                .append(record.batteryLevel).append(',')
+                .append(record.signalStrength).append(',')
+                .append(record.eventType.name()).append(',')
+                .append(record.eventType.getDescription());
+        if (record.details != null && !record.details.isEmpty()) {
+            encoder.append(':').append(' ').append(record.details);
+        }
+        encoder.newLine().writeTo(writer);
+
+        long offset = writePosition;
+        writePosition += encoder.length();
+        CsvLogIndex logIndex = index;
+        if (logIndex != null) {
+            logIndex.add(record.systemId, offset, encoder.length());
+        }
+    }
+
+    /**
+     * Сбрасывает журнал на диск раньше индекса: индекс никогда не ссылается на несохраненные строки,
+     * а при сбое между ними отставший индекс будет перестроен при следующем запуске
+     */
+    private void flushWriter() throws IOException {
+        long started = System.nanoTime();
+        writer.flush();
+        CsvLogIndex logIndex = index;
+        if (logIndex != null) {
+            logIndex.flush();
+        }
+        long elapsed = System.nanoTime() - started;
+        flushCount.incrementAndGet();
+        flushNanos.addAndGet(elapsed);
+        // Сбрасывает либо поток записи, либо вызывающий под writeLock, поэтому гонки за максимум нет
+        if (elapsed > maxFlushNanos) {
+            maxFlushNanos = elapsed;
+        }
+    }
+
+    private void startWriterThread() {
+        writerThread = new Thread(this::drainQueue, "csv-logger-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Цикл потока записи: забирает записи пачками, пишет в буфер и сбрасывает его
+     * на диск при заполнении буфера или по истечении интервала
+     */
+    private void drainQueue() {
+        List<LogRecord> batch = new ArrayList<>(batchSize);
+        long lastFlush = System.nanoTime();
+        boolean dirty = false;
+
+        while (true) {
+            try {
+                LogRecord first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    if (closed && queue.isEmpty()) {
+                        break;
+                    }
+                } else {
+                    batch.add(first);
+                    queue.drainTo(batch, batchSize - 1);
+                    for (LogRecord record : batch) {
+                        writeRecord(record);
+                    }
+                    batch.clear();
+                    dirty = true;
+                }
+
+                long now = System.nanoTime();
+                if (dirty && now - lastFlush >= TimeUnit.MILLISECONDS.toNanos(flushIntervalMs)) {
+                    flushWriter();
+                    lastFlush = now;
+                    dirty = false;
+                }
+            } catch (InterruptedException e) {
+                break;
+            } catch (IOException e) {
+                System.err.println(config.getString("error.prefix") + " CSV: " + e.getMessage());
+                batch.clear();
+            }
+        }
+
+        try {
+            LogRecord record;
+            while ((record = queue.poll()) != null) {
+                writeRecord(record);
+            }
+            flushWriter();
+        } catch (IOException e) {
+            System.err.println(config.getString("error.prefix") + " CSV: " + e.getMessage());
+        }
+    }
+
     public void setLogInterval(int seconds) {
         this.logInterval = seconds;
     }
@@ -93,27 +461,71 @@ public class CSVLogger {
     }
 
     public List<String> getRecentLogs(int count) {
-        List<String> logs = new ArrayList<>();
-        try (BufferedReader reader = new BufferedReader(new FileReader(logFilePath))) {
-            String line;
-            List<String> allLogs = new ArrayList<>();
-            reader.readLine();
-            while ((line = reader.readLine()) != null) {
-                allLogs.add(line);
+        return getRecentLogs(count, null);
+    }
+
+    /**
+     * Последние count записей журнала (от старых к новым), не старше since (если задано).
+     * Файлы читаются с конца, поэтому стоимость зависит от count, а не от размера журнала;
+     * закрытые сегменты читаются, только если в активном файле записей не хватило
+     */
+    public List<String> getRecentLogs(int count, LocalDateTime since) {
+        rollLock.readLock().lock();
+        try {
+            List<String> lines = CsvLogReader.readLastLines(Path.of(logFilePath), count, true);
+            int before = lines.size();
+            if (since != null) {
+                lines.removeIf(line -> CsvLogSegments.isBefore(line, since));
+            }
+            if (segments != null && lines.size() == before) {
+                segments.readRecent(lines, count, since);
             }
-            int start = Math.max(0, allLogs.size() - count);
-            logs = allLogs.subList(start, allLogs.size());
+            return lines;
         } catch (Exception e) {
             System.err.println(config.getString("error.prefix") + " " + e.getMessage());
+            return new ArrayList<>();
+        } finally {
+            rollLock.readLock().unlock();
         }
-        return logs;
     }
 
     public List<String> getLogsBySystemId(String systemId, int count) {
-        List<String> logs = new ArrayList<>();
-        try (BufferedReader reader = new BufferedReader(new FileReader(logFilePath))) {
+        return getLogsBySystemId(systemId, count, null);
+    }
+
+    /**
+     * Последние count записей системы, от новых к старым, не старше since (если задано).
+     * Позиции записей берутся из индекса, с диска читаются только совпавшие строки;
+     * закрытые сегменты без записей системы или вне диапазона времени пропускаются
+     */
+    public List<String> getLogsBySystemId(String systemId, int count, LocalDateTime since) {
+        rollLock.readLock().lock();
+        try {
+            CsvLogIndex logIndex = index;
+            List<String> lines = logIndex != null && CsvLogIndex.isIndexed(systemId)
+                    ? logIndex.readLatest(systemId, count)
+                    : scanLogsBySystemId(systemId, count);
+            int before = lines.size();
+            if (since != null) {
+                lines.removeIf(line -> CsvLogSegments.isBefore(line, since));
+            }
+            if (segments != null && lines.size() == before) {
+                segments.readBySystemId(lines, systemId, count, since);
+            }
+            return lines;
+        } catch (Exception e) {
+            System.err.println(config.getString("error.prefix") + " " + e.getMessage());
+            return new ArrayList<>();
+        } finally {
+            rollLock.readLock().unlock();
+        }
+    }
+
+    private List<String> scanLogsBySystemId(String systemId, int count) throws IOException {
+        List<String> systemLogs = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(logFilePath), StandardCharsets.UTF_8))) {
             String line;
-            List<String> systemLogs = new ArrayList<>();
             reader.readLine();
             while ((line = reader.readLine()) != null) {
                 String[] parts = line.split(",");
@@ -121,21 +533,109 @@ public class CSVLogger {
                     systemLogs.add(line);
                 }
             }
-            int start = Math.max(0, systemLogs.size() - count);
-            logs = systemLogs.subList(start, systemLogs.size());
-        } catch (Exception e) {
-            System.err.println(config.getString("error.prefix") + " " + e.getMessage());
         }
+        int start = Math.max(0, systemLogs.size() - count);
+        List<String> logs = new ArrayList<>(systemLogs.subList(start, systemLogs.size()));
+        Collections.reverse(logs);
         return logs;
     }
 
+    /**
+     * Закрывает логгер. В асинхронном режиме дожидается записи всех событий из очереди
+     */
     public void close() {
-        if (writer != null) {
-            writer.close();
+        writeLock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        } finally {
+            writeLock.unlock();
+        }
+        if (writerThread != null) {
+            try {
+                writerThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        writeLock.lock();
+        try {
+            if (writer != null) {
+                try {
+                    writer.close();
+                    if (index != null) {
+                        index.close();
+                    }
+                    if (segments != null) {
+                        segments.close();
+                    }
+                } catch (IOException e) {
+                    System.err.println(config.getString("error.prefix") + " CSV: " + e.getMessage());
+                }
+            }
+        } finally {
+            writeLock.unlock();
         }
     }
 
     public String getLogFilePath() {
         return logFilePath;
     }
+
+    public boolean isAsync() {
+        return async;
+    }
+
+    public int getQueueSize() {
+        return queue != null ? queue.size() : 0;
+    }
+
+    public long getDroppedRecords() {
+        return droppedRecords.get();
+    }
+
+    public long getFlushCount() {
+        return flushCount.get();
+    }
+
+    /**
+     * Суммарное время сброса журнала и индекса на диск
+     */
+    public long getFlushNanos() {
+        return flushNanos.get();
+    }
+
+    public long getMaxFlushNanos() {
+        return maxFlushNanos;
+    }
+
+    /**
+     * Снимок полей события на момент вызова, чтобы поток записи не читал изменяемую систему
+     */
+    private static final class LogRecord {
+        final Instant timestamp;
+        final String systemId;
+        final String location;
+        final String securityMode;
+        final boolean armed;
+        final int batteryLevel;
+        final int signalStrength;
+        final EventType eventType;
+        final String details;
+
+        LogRecord(Instant timestamp, String systemId, String location, String securityMode,
+                  boolean armed, int batteryLevel, int signalStrength, EventType eventType, String details) {
+            this.timestamp = timestamp;
+            this.systemId = systemId;
+            this.location = location;
+            this.securityMode = securityMode;
+            this.armed = armed;
+            this.batteryLevel = batteryLevel;
+            this.signalStrength = signalStrength;
+            this.eventType = eventType;
+            this.details = details;
+        }
+    }
 }
@@ -81,6 +81,7 @@ public class CarAlarmSystem extends SecuritySystem {
         this.shockSensorActive = true;
         this.tiltSensorActive = true;
         this.glassBreakSensorActive = true;
+        touch();
         if (csvLogger != null) {
             csvLogger.logEvent(this, EventType.CALIBRATION_COMPLETE);
         }
@@ -104,6 +105,7 @@ public class CarAlarmSystem extends SecuritySystem {
 
     public void toggleShockSensor() {
         this.shockSensorActive = !this.shockSensorActive;
+        touch();
         if (csvLogger != null) {
             csvLogger.logEvent(this, EventType.SENSOR_TOGGLED);
         }
@@ -111,6 +113,7 @@ public class CarAlarmSystem extends SecuritySystem {
 
     public void toggleTiltSensor() {
         this.tiltSensorActive = !this.tiltSensorActive;
+        touch();
         if (csvLogger != null) {
             csvLogger.logEvent(this, EventType.SENSOR_TOGGLED);
         }
@@ -119,6 +122,7 @@ public class CarAlarmSystem extends SecuritySystem {
     public void setAlarmVolume(String volume) {
         if (volume.equals("Низкая") || volume.equals("Средняя") || volume.equals("Высокая")) {
             this.alarmVolume = volume;
+            touch();
             if (csvLogger != null) {
                 csvLogger.logEvent(this, EventType.CONFIG_CHANGED);
             }
@@ -133,6 +137,7 @@ public class CarAlarmSystem extends SecuritySystem {
 
     public void toggleRemoteStart() {
         this.remoteStartEnabled = !this.remoteStartEnabled;
+        touch();
         if (csvLogger != null) {
             csvLogger.logEvent(this, EventType.CONFIG_CHANGED);
         }
@@ -166,6 +171,7 @@ public class CarAlarmSystem extends SecuritySystem {
     // Сеттеры
     public void setShockSensorActive(boolean active) {
         this.shockSensorActive = active;
+        touch();
         if (csvLogger != null) {
             csvLogger.logEvent(this, EventType.SENSOR_TOGGLED);
         }
@@ -173,6 +179,7 @@ public class CarAlarmSystem extends SecuritySystem {
 
     public void setTiltSensorActive(boolean active) {
         this.tiltSensorActive = active;
+        touch();
         if (csvLogger != null) {
             csvLogger.logEvent(this, EventType.SENSOR_TOGGLED);
         }
@@ -180,6 +187,7 @@ public class CarAlarmSystem extends SecuritySystem {
 
     public void setGlassBreakSensorActive(boolean active) {
         this.glassBreakSensorActive = active;
+        touch();
         if (csvLogger != null) {
             csvLogger.logEvent(this, EventType.SENSOR_TOGGLED);
         }
@@ -187,6 +195,7 @@ public class CarAlarmSystem extends SecuritySystem {
 
     public void setRemoteStartEnabled(boolean enabled) {
         this.remoteStartEnabled = enabled;
+        touch();
         if (csvLogger != null) {
             csvLogger.logEvent(this, EventType.CONFIG_CHANGED);
         }
@@ -195,6 +204,7 @@ public class CarAlarmSystem extends SecuritySystem {
     public void setPanicModeDuration(int duration) {
         if (duration > 0) {
             this.panicModeDuration = duration;
+            touch();
             if (csvLogger != null) {
                 csvLogger.logEvent(this, EventType.CONFIG_CHANGED);
             }
@@ -0,0 +1,205 @@
+package models;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+/**
+ * Кодировщик строк CSV-журнала напрямую в переиспользуемый байтовый буфер (UTF-8).
+ * Формирует ту же строку, что и прежний String.format с LocalDateTime.toString(),
+ * но без промежуточных строк, упаковки чисел и форматтеров.
+ * <p>
+ * Не потокобезопасен: один экземпляр принадлежит одному писателю.
+ */
+final class CsvLineEncoder {
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TRUE = {'t', 'r', 'u', 'e'};
+    private static final byte[] FALSE = {'f', 'a', 'l', 's', 'e'};
+    // Длина "yyyy-MM-ddTHH:mm"
+    private static final int MINUTE_PREFIX_LENGTH = 16;
+
+    private final ZoneId zone;
+    private byte[] buffer;
+    private int length;
+
+    // Кэш форматирования даты: пересчитывается не чаще раза в секунду
+    private long cachedEpochSecond = Long.MIN_VALUE;
+    private final byte[] cachedMinutePrefix = new byte[MINUTE_PREFIX_LENGTH];
+    private int cachedSecondOfMinute;
+    private boolean cachedPrefixValid;
+
+    CsvLineEncoder(ZoneId zone) {
+        this.zone = zone;
+        this.buffer = new byte[256];
+    }
+
+    CsvLineEncoder reset() {
+        length = 0;
+        return this;
+    }
+
+    /**
+     * Время в формате LocalDateTime.toString() для часового пояса кодировщика
+     */
+    CsvLineEncoder appendTimestamp(Instant instant) {
+        long epochSecond = instant.getEpochSecond();
+        int nano = instant.getNano();
+        if (epochSecond != cachedEpochSecond) {
+            cacheSecond(instant);
+        }
+
+        if (!cachedPrefixValid) {
+            // Годы вне диапазона 1000..9999 форматируются штатно
+            return append(LocalDateTime.ofInstant(instant, zone).toString());
+        }
+
+        ensureCapacity(MINUTE_PREFIX_LENGTH + 13);
+        System.arraycopy(cachedMinutePrefix, 0, buffer, length, MINUTE_PREFIX_LENGTH);
+        length += MINUTE_PREFIX_LENGTH;
+
+        if (cachedSecondOfMinute > 0 || nano > 0) {
+            buffer[length++] = ':';
+            appendTwoDigits(cachedSecondOfMinute);
+            if (nano > 0) {
+                buffer[length++] = '.';
+                if (nano % 1_000_000 == 0) {
+                    appendPadded(nano / 1_000_000, 3);
+                } else if (nano % 1000 == 0) {
+                    appendPadded(nano / 1000, 6);
+                } else {
+                    appendPadded(nano, 9);
+                }
+            }
+        }
+        return this;
+    }
+
+    private void cacheSecond(Instant instant) {
+        cachedEpochSecond = instant.getEpochSecond();
+        ZoneOffset offset = zone.getRules().getOffset(instant);
+        LocalDateTime dateTime = LocalDateTime.ofEpochSecond(cachedEpochSecond, 0, offset);
+        int year = dateTime.getYear();
+        cachedPrefixValid = year >= 1000 && year <= 9999;
+        if (!cachedPrefixValid) {
+            return;
+        }
+
+        byte[] p = cachedMinutePrefix;
+        writeDigits(p, 0, year, 4);
+        p[4] = '-';
+        writeDigits(p, 5, dateTime.getMonthValue(), 2);
+        p[7] = '-';
+        writeDigits(p, 8, dateTime.getDayOfMonth(), 2);
+        p[10] = 'T';
+        writeDigits(p, 11, dateTime.getHour(), 2);
+        p[13] = ':';
+        writeDigits(p, 14, dateTime.getMinute(), 2);
+        cachedSecondOfMinute = dateTime.getSecond();
+    }
+
+    CsvLineEncoder append(String value) {
+        if (value == null) {
+            return append("null");
+        }
+        int n = value.length();
+        ensureCapacity(n * 3);
+        for (int i = 0; i < n; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                buffer[length++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[length++] = (byte) (0xC0 | (c >> 6));
+                buffer[length++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer[length++] = (byte) (0xF0 | (codePoint >> 18));
+                buffer[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buffer[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buffer[length++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // Как и стандартный кодировщик, заменяем непарный суррогат на '?'
+                buffer[length++] = '?';
+            } else {
+                buffer[length++] = (byte) (0xE0 | (c >> 12));
+                buffer[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[length++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return this;
+    }
+
+    CsvLineEncoder append(int value) {
+        ensureCapacity(11);
+        if (value == Integer.MIN_VALUE) {
+            return append(Integer.toString(value));
+        }
+        if (value < 0) {
+            buffer[length++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (int v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+        writeDigits(buffer, length, value, digits);
+        length += digits;
+        return this;
+    }
+
+    CsvLineEncoder append(boolean value) {
+        byte[] bytes = value ? TRUE : FALSE;
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, length, bytes.length);
+        length += bytes.length;
+        return this;
+    }
+
+    CsvLineEncoder append(char asciiChar) {
+        ensureCapacity(1);
+        buffer[length++] = (byte) asciiChar;
+        return this;
+    }
+
+    CsvLineEncoder newLine() {
+        ensureCapacity(LINE_SEPARATOR.length);
+        System.arraycopy(LINE_SEPARATOR, 0, buffer, length, LINE_SEPARATOR.length);
+        length += LINE_SEPARATOR.length;
+        return this;
+    }
+
+    int length() {
+        return length;
+    }
+
+    void writeTo(OutputStream out) throws IOException {
+        out.write(buffer, 0, length);
+    }
+
+    private void appendTwoDigits(int value) {
+        writeDigits(buffer, length, value, 2);
+        length += 2;
+    }
+
+    private void appendPadded(int value, int width) {
+        writeDigits(buffer, length, value, width);
+        length += width;
+    }
+
+    private static void writeDigits(byte[] target, int offset, int value, int width) {
+        for (int i = offset + width - 1; i >= offset; i--) {
+            target[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    private void ensureCapacity(int extra) {
+        if (length + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+        }
+    }
+}
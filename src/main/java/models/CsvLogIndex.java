@@ -0,0 +1,550 @@
+package models;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * Вторичный индекс CSV-журнала: systemId -> смещения и длины его записей в файле.
+ * <p>
+ * На диске хранится рядом с журналом (файл .idx) как последовательность записей
+ * [длина ID][ID в UTF-8][смещение][длина строки][позиция предыдущей записи этой системы в .idx].
+ * Записи одной системы связаны в цепочку от новых к старым, поэтому в памяти держится только
+ * позиция последней записи каждой системы, а запрос читает из .idx ровно столько записей, сколько строк нужно.
+ * При закрытии позиции сохраняются в файл .idx.heads, и открытие не перечитывает весь индекс.
+ * В .idx.heads хранится и отпечаток учтенной части журнала (CRC32 ее начала и конца): журнал,
+ * замененный или переписанный с тем же или большим размером, не совпадет с ним, и индекс будет перестроен.
+ * Служебные записи ({@link CSVLogger#SERVICE_SYSTEM_ID}) не индексируются.
+ * Если индекс отсутствует или не совпадает с журналом, он перестраивается параллельным сканированием;
+ * строки, дописанные после индекса, доиндексируются при открытии.
+ */
+final class CsvLogIndex {
+    private static final int MIN_CHUNK_SIZE = 1 << 20;
+    // Куски сканируются окнами по числу потоков, так что размер куска ограничивает и память перестроения
+    private static final int MAX_CHUNK_SIZE = 1 << 22;
+    // Часть записи после ID: смещение, длина строки, позиция предыдущей записи
+    private static final int ENTRY_TAIL_BYTES = Long.BYTES + Integer.BYTES + Long.BYTES;
+    private static final long NO_ENTRY = -1;
+    // Сколько байт начала и конца учтенной части журнала входит в отпечаток
+    private static final int FINGERPRINT_BYTES = 4096;
+
+    private final Path logFile;
+    private final Path indexFile;
+    private final Path headsFile;
+    // Позиции в .idx последних записей систем, уже сброшенных на диск; их читают запросы
+    private final Map<String, Long> heads = new ConcurrentHashMap<>();
+    // Позиции записей, добавленных после последнего сброса; меняются только писателем
+    private final Map<String, Long> pendingHeads = new HashMap<>();
+    private DataOutputStream indexOut;
+    // Длина .idx и конец последней учтенной строки журнала; меняются только писателем
+    private long indexPosition;
+    private long coveredUpTo;
+
+    CsvLogIndex(Path logFile) {
+        this.logFile = logFile;
+        this.indexFile = indexPath(logFile);
+        this.headsFile = indexFile.resolveSibling(indexFile.getFileName() + ".heads");
+    }
+
+    /**
+     * Индексируются только записи устройств: служебных записей сервера слишком много,
+     * а запрашивают их редко, и для них достаточно сканирования
+     */
+    static boolean isIndexed(String systemId) {
+        return systemId != null && !CSVLogger.SERVICE_SYSTEM_ID.equals(systemId);
+    }
+
+    static Path indexPath(Path logFile) {
+        return logFile.resolveSibling(logFile.getFileName() + ".idx");
+    }
+
+    /**
+     * Переносит файлы индекса вслед за переименованным журналом
+     */
+    static void moveFiles(Path fromLog, Path toLog) throws IOException {
+        Path from = indexPath(fromLog);
+        Path to = indexPath(toLog);
+        if (Files.exists(from)) {
+            Files.move(from, to, StandardCopyOption.REPLACE_EXISTING);
+        }
+        Path fromHeads = from.resolveSibling(from.getFileName() + ".heads");
+        Path toHeads = to.resolveSibling(to.getFileName() + ".heads");
+        if (Files.exists(fromHeads)) {
+            Files.move(fromHeads, toHeads, StandardCopyOption.REPLACE_EXISTING);
+        } else {
+            Files.deleteIfExists(toHeads);
+        }
+    }
+
+    /**
+     * Загружает индекс с диска или перестраивает его, если он устарел, и доиндексирует строки после него
+     * @param hasHeader первая строка журнала - заголовок и в индекс не попадает
+     * @return true, если индекс пришлось перестроить по непустому журналу
+     */
+    boolean open(boolean hasHeader) throws IOException {
+        long logSize = Files.exists(logFile) ? Files.size(logFile) : 0;
+        boolean rebuilt = false;
+        if (!load(logSize)) {
+            reset();
+            rebuilt = logSize > 0;
+        }
+        // Отбрасывает недописанную при сбое запись в конце индекса
+        try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            channel.truncate(indexPosition);
+        }
+        indexOut = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(indexFile, StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+        if (coveredUpTo < logSize) {
+            indexRange(coveredUpTo, logSize, hasHeader);
+            flush();
+        }
+        return rebuilt;
+    }
+
+    /**
+     * Загружает индекс закрытого сегмента только для чтения, без перестроения
+     * @param logSize размер несжатого сегмента
+     * @return false, если индекса нет или он не совпадает с сегментом
+     */
+    boolean openReadOnly(long logSize) {
+        if (load(logSize) && coveredUpTo == logSize) {
+            return true;
+        }
+        heads.clear();
+        return false;
+    }
+
+    /**
+     * Учитывает строку журнала. Вызывается только писателем журнала
+     */
+    void add(String systemId, long offset, int length) throws IOException {
+        coveredUpTo = offset + length;
+        if (isIndexed(systemId)) {
+            pendingHeads.put(systemId, writeEntry(systemId, offset, length));
+        }
+    }
+
+    /**
+     * Сбрасывает индекс на диск и открывает запросам добавленные записи
+     */
+    void flush() throws IOException {
+        if (indexOut != null) {
+            indexOut.flush();
+        }
+        if (!pendingHeads.isEmpty()) {
+            heads.putAll(pendingHeads);
+            pendingHeads.clear();
+        }
+    }
+
+    /**
+     * Закрывает индекс и сохраняет позиции последних записей систем для следующего открытия
+     */
+    void close() throws IOException {
+        if (indexOut != null) {
+            flush();
+            indexOut.close();
+            indexOut = null;
+            saveHeads();
+        }
+    }
+
+    /**
+     * Читает последние count записей системы, от новых к старым.
+     * Строки, еще не сброшенные на диск писателем, пропускаются
+     */
+    List<String> readLatest(String systemId, int count) throws IOException {
+        List<String> lines = new ArrayList<>();
+        long[][] latest = latestPositions(systemId, count);
+        if (latest.length == 0) {
+            return lines;
+        }
+        try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.READ)) {
+            long size = channel.size();
+            for (long[] entry : latest) {
+                long offset = entry[0];
+                int length = (int) entry[1];
+                if (offset + length > size) {
+                    continue;
+                }
+                ByteBuffer buffer = ByteBuffer.allocate(length);
+                while (buffer.hasRemaining() && channel.read(buffer, offset + buffer.position()) > 0) {
+                    // дочитываем строку целиком
+                }
+                lines.add(decode(buffer.array(), 0, buffer.position()));
+            }
+        }
+        return lines;
+    }
+
+    boolean contains(String systemId) {
+        return heads.containsKey(systemId);
+    }
+
+    /**
+     * Последние count позиций записей системы, от новых к старым: пары {смещение, длина}.
+     * Позиции читаются из .idx по цепочке записей системы
+     */
+    long[][] latestPositions(String systemId, int count) throws IOException {
+        Long head = heads.get(systemId);
+        if (head == null || count <= 0) {
+            return new long[0][];
+        }
+        List<long[]> positions = new ArrayList<>(Math.min(count, 1024));
+        ByteBuffer entry = ByteBuffer.allocate(ENTRY_TAIL_BYTES);
+        try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+            long pointer = head;
+            while (pointer != NO_ENTRY && positions.size() < count) {
+                entry.clear();
+                while (entry.hasRemaining() && channel.read(entry, pointer + entry.position()) > 0) {
+                    // дочитываем запись целиком
+                }
+                if (entry.hasRemaining()) {
+                    throw new EOFException("Индекс журнала обрезан: " + indexFile);
+                }
+                entry.flip();
+                positions.add(new long[]{entry.getLong(), entry.getInt()});
+                pointer = entry.getLong();
+            }
+        }
+        return positions.toArray(new long[0][]);
+    }
+
+    private void reset() throws IOException {
+        heads.clear();
+        pendingHeads.clear();
+        indexPosition = 0;
+        coveredUpTo = 0;
+        Files.deleteIfExists(headsFile);
+    }
+
+    /**
+     * Загружает позиции из .heads и дочитывает записи .idx, добавленные после его сохранения.
+     * Каждая запись проверяется по цепочке своей системы, поэтому индекс другого формата не пройдет проверку
+     * @return false, если индекс поврежден или ссылается за конец журнала
+     */
+    private boolean load(long logSize) {
+        if (!Files.exists(indexFile)) {
+            return false;
+        }
+        heads.clear();
+        try {
+            long indexSize = Files.size(indexFile);
+            long position = 0;
+            long covered = 0;
+            if (Files.exists(headsFile)) {
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(headsFile)))) {
+                    position = in.readLong();
+                    covered = in.readLong();
+                    long fingerprint = in.readLong();
+                    // Сжатый сегмент не сверяется: его содержимое не меняется после закрытия
+                    if (covered > logSize || Files.exists(logFile) && fingerprint != fingerprint(covered)) {
+                        return false;
+                    }
+                    int count = in.readInt();
+                    for (int i = 0; i < count; i++) {
+                        String systemId = readId(in);
+                        long pointer = in.readLong();
+                        if (pointer < 0 || pointer + ENTRY_TAIL_BYTES > position) {
+                            return false;
+                        }
+                        heads.put(systemId, pointer);
+                    }
+                }
+                if (position > indexSize) {
+                    return false;
+                }
+            }
+
+            String lastId = null;
+            long lastOffset = 0;
+            int lastLength = 0;
+            try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ);
+                 DataInputStream in = new DataInputStream(new BufferedInputStream(
+                         Channels.newInputStream(channel.position(position))))) {
+                while (true) {
+                    String systemId;
+                    long offset;
+                    int length;
+                    long previous;
+                    long pointer;
+                    try {
+                        systemId = readId(in);
+                        pointer = position + Short.BYTES + systemId.getBytes(StandardCharsets.UTF_8).length;
+                        offset = in.readLong();
+                        length = in.readInt();
+                        previous = in.readLong();
+                    } catch (EOFException e) {
+                        // недописанная запись в конце отбрасывается при открытии
+                        break;
+                    }
+                    Long head = heads.get(systemId);
+                    if (offset < covered || length <= 0 || previous != (head != null ? head : NO_ENTRY)) {
+                        return false;
+                    }
+                    heads.put(systemId, pointer);
+                    covered = offset + length;
+                    position = pointer + ENTRY_TAIL_BYTES;
+                    lastId = systemId;
+                    lastOffset = offset;
+                    lastLength = length;
+                }
+            }
+            if (covered > logSize) {
+                return false;
+            }
+            // Записи после .heads отпечатком не покрыты: последняя из них сверяется со строкой журнала
+            if (lastId != null && Files.exists(logFile) && !lineMatches(lastId, lastOffset, lastLength)) {
+                return false;
+            }
+            indexPosition = position;
+            coveredUpTo = covered;
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void saveHeads() throws IOException {
+        Path tmp = headsFile.resolveSibling(headsFile.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeLong(indexPosition);
+            out.writeLong(coveredUpTo);
+            out.writeLong(fingerprint(coveredUpTo));
+            out.writeInt(heads.size());
+            for (Map.Entry<String, Long> head : heads.entrySet()) {
+                byte[] id = head.getKey().getBytes(StandardCharsets.UTF_8);
+                out.writeShort(id.length);
+                out.write(id);
+                out.writeLong(head.getValue());
+            }
+        }
+        Files.move(tmp, headsFile, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * CRC32 первых и последних {@link #FINGERPRINT_BYTES} байт журнала до позиции covered
+     */
+    private long fingerprint(long covered) throws IOException {
+        CRC32 crc = new CRC32();
+        try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.READ)) {
+            long head = Math.min(covered, FINGERPRINT_BYTES);
+            crc.update(readBytes(channel, 0, (int) head));
+            long tail = Math.min(covered - head, FINGERPRINT_BYTES);
+            crc.update(readBytes(channel, covered - tail, (int) tail));
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Строка журнала по смещению из индекса заканчивается переводом строки и относится к этой системе
+     */
+    private boolean lineMatches(String systemId, long offset, int length) throws IOException {
+        byte[] line;
+        try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.READ)) {
+            line = readBytes(channel, offset, length);
+        }
+        if (line.length != length || line[length - 1] != '\n') {
+            return false;
+        }
+        String[] fields = decode(line, 0, length).split(",", 3);
+        return fields.length == 3 && fields[1].equals(systemId);
+    }
+
+    private static byte[] readBytes(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining() && channel.read(buffer, position + buffer.position()) > 0) {
+            // дочитываем диапазон целиком
+        }
+        return buffer.position() == length ? buffer.array() : Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    /**
+     * Индексирует строки журнала в диапазоне [from, to): диапазон делится на куски по границам строк,
+     * куски сканируются параллельно через отображение в память окнами по числу потоков
+     * и дописываются в индекс в порядке файла
+     */
+    private void indexRange(long from, long to, boolean hasHeader) throws IOException {
+        try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.READ)) {
+            List<long[]> chunks = splitIntoChunks(channel, from, to);
+            int window = Runtime.getRuntime().availableProcessors();
+            for (int first = 0; first < chunks.size(); first += window) {
+                List<ChunkIndex> scanned = chunks.subList(first, Math.min(chunks.size(), first + window))
+                        .parallelStream()
+                        .map(chunk -> scanChunk(channel, chunk[0], chunk[1], hasHeader))
+                        .toList();
+                for (ChunkIndex chunk : scanned) {
+                    if (chunk.error != null) {
+                        throw chunk.error;
+                    }
+                    for (int i = 0; i < chunk.size; i++) {
+                        pendingHeads.put(chunk.ids[i], writeEntry(chunk.ids[i], chunk.offsets[i], chunk.lengths[i]));
+                    }
+                }
+            }
+        }
+        coveredUpTo = to;
+    }
+
+    private static List<long[]> splitIntoChunks(FileChannel channel, long from, long to) throws IOException {
+        List<long[]> chunks = new ArrayList<>();
+        int parallelism = Runtime.getRuntime().availableProcessors() * 2;
+        long chunkSize = Math.min(MAX_CHUNK_SIZE, Math.max(MIN_CHUNK_SIZE, (to - from) / parallelism));
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+
+        long start = from;
+        while (start < to) {
+            long end = Math.min(to, start + chunkSize);
+            // Граница куска сдвигается за ближайший перевод строки
+            while (end < to) {
+                probe.clear();
+                int read = channel.read(probe, end);
+                if (read <= 0) {
+                    end = to;
+                    break;
+                }
+                int newline = -1;
+                for (int i = 0; i < read; i++) {
+                    if (probe.get(i) == '\n') {
+                        newline = i;
+                        break;
+                    }
+                }
+                if (newline >= 0) {
+                    end = Math.min(to, end + newline + 1);
+                    break;
+                }
+                end += read;
+            }
+            chunks.add(new long[]{start, end});
+            start = end;
+        }
+        return chunks;
+    }
+
+    private static ChunkIndex scanChunk(FileChannel channel, long start, long end, boolean hasHeader) {
+        ChunkIndex result = new ChunkIndex();
+        try {
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            int length = (int) (end - start);
+            byte[] idBytes = new byte[64];
+            int lineStart = 0;
+            while (lineStart < length) {
+                int commas = 0;
+                int idStart = -1;
+                int idEnd = -1;
+                int pos = lineStart;
+                while (pos < length) {
+                    byte b = map.get(pos);
+                    if (b == '\n') {
+                        break;
+                    }
+                    if (b == ',' && commas < 2) {
+                        commas++;
+                        if (commas == 1) {
+                            idStart = pos + 1;
+                        } else {
+                            idEnd = pos;
+                        }
+                    }
+                    pos++;
+                }
+                int lineEnd = Math.min(pos + 1, length);
+                boolean header = hasHeader && start == 0 && lineStart == 0;
+                if (!header && idEnd > idStart && idStart >= 0) {
+                    int idLength = idEnd - idStart;
+                    if (idBytes.length < idLength) {
+                        idBytes = new byte[idLength];
+                    }
+                    map.get(idStart, idBytes, 0, idLength);
+                    String systemId = new String(idBytes, 0, idLength, StandardCharsets.UTF_8);
+                    if (isIndexed(systemId)) {
+                        result.add(systemId, start + lineStart, lineEnd - lineStart);
+                    }
+                }
+                lineStart = lineEnd;
+            }
+        } catch (IOException e) {
+            result.error = e;
+        }
+        return result;
+    }
+
+    /**
+     * Дописывает запись в индекс, связывая ее с предыдущей записью системы
+     * @return позиция части записи после ID - на нее ссылаются цепочка и heads
+     */
+    private long writeEntry(String systemId, long offset, int length) throws IOException {
+        Long previous = pendingHeads.get(systemId);
+        if (previous == null) {
+            previous = heads.getOrDefault(systemId, NO_ENTRY);
+        }
+        byte[] id = systemId.getBytes(StandardCharsets.UTF_8);
+        indexOut.writeShort(id.length);
+        indexOut.write(id);
+        indexOut.writeLong(offset);
+        indexOut.writeInt(length);
+        indexOut.writeLong(previous);
+        long pointer = indexPosition + Short.BYTES + id.length;
+        indexPosition = pointer + ENTRY_TAIL_BYTES;
+        return pointer;
+    }
+
+    private static String readId(DataInputStream in) throws IOException {
+        int length = in.readUnsignedShort();
+        byte[] id = in.readNBytes(length);
+        if (id.length != length) {
+            throw new EOFException();
+        }
+        return new String(id, StandardCharsets.UTF_8);
+    }
+
+    static String decode(byte[] bytes, int from, int to) {
+        while (to > from && (bytes[to - 1] == '\n' || bytes[to - 1] == '\r')) {
+            to--;
+        }
+        return new String(bytes, from, to - from, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Результат сканирования одного куска журнала
+     */
+    private static final class ChunkIndex {
+        String[] ids = new String[64];
+        long[] offsets = new long[64];
+        int[] lengths = new int[64];
+        int size;
+        IOException error;
+
+        void add(String id, long offset, int length) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                offsets = Arrays.copyOf(offsets, size * 2);
+                lengths = Arrays.copyOf(lengths, size * 2);
+            }
+            ids[size] = id;
+            offsets[size] = offset;
+            lengths[size] = length;
+            size++;
+        }
+    }
+}
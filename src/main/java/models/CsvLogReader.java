@@ -0,0 +1,121 @@
+package models;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Чтение CSV-журнала без загрузки всего файла в память.
+ * Стоимость операций зависит от объема запрошенных строк, а не от размера файла.
+ */
+final class CsvLogReader {
+    private static final int BLOCK_SIZE = 64 * 1024;
+
+    private CsvLogReader() {
+    }
+
+    /**
+     * Возвращает последние count строк файла (от старых к новым).
+     * Файл читается с конца блоками через FileChannel, пока не найдено нужное число переводов строки.
+     * @param skipHeader пропустить первую строку файла (заголовок CSV), если чтение дошло до начала
+     */
+    static List<String> readLastLines(Path file, int count, boolean skipHeader) throws IOException {
+        List<String> lines = new ArrayList<>();
+        if (count <= 0) {
+            return lines;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long start = findTailStart(channel, size, count);
+            boolean includesHeader = start == 0 && skipHeader;
+
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(BLOCK_SIZE, Math.max(1, size - start)));
+            ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+            long position = start;
+            boolean firstLine = true;
+            while (position < size) {
+                buffer.clear();
+                int read = channel.read(buffer, position);
+                if (read <= 0) {
+                    break;
+                }
+                position += read;
+                byte[] bytes = buffer.array();
+                for (int i = 0; i < read; i++) {
+                    if (bytes[i] == '\n') {
+                        if (!(firstLine && includesHeader)) {
+                            lines.add(decodeLine(line));
+                        }
+                        firstLine = false;
+                        line.reset();
+                    } else {
+                        line.write(bytes[i]);
+                    }
+                }
+            }
+            if (line.size() > 0 && !(firstLine && includesHeader)) {
+                lines.add(decodeLine(line));
+            }
+        }
+
+        int excess = lines.size() - count;
+        return excess > 0 ? new ArrayList<>(lines.subList(excess, lines.size())) : lines;
+    }
+
+    /**
+     * Находит смещение начала count-й строки с конца файла (или 0, если строк меньше)
+     */
+    private static long findTailStart(FileChannel channel, long size, int count) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BLOCK_SIZE);
+        long end = size;
+        int newlines = 0;
+        boolean trailingNewlineSkipped = false;
+
+        while (end > 0) {
+            long blockStart = Math.max(0, end - BLOCK_SIZE);
+            int length = (int) (end - blockStart);
+            buffer.clear().limit(length);
+            int read = 0;
+            while (read < length) {
+                int n = channel.read(buffer, blockStart + read);
+                if (n < 0) {
+                    break;
+                }
+                read += n;
+            }
+            byte[] bytes = buffer.array();
+            for (int i = read - 1; i >= 0; i--) {
+                if (bytes[i] != '\n') {
+                    trailingNewlineSkipped = true;
+                    continue;
+                }
+                if (!trailingNewlineSkipped) {
+                    // Перевод строки в самом конце файла не начинает новую строку
+                    trailingNewlineSkipped = true;
+                    continue;
+                }
+                if (++newlines == count) {
+                    return blockStart + i + 1;
+                }
+            }
+            end = blockStart;
+        }
+        return 0;
+    }
+
+    static String decodeLine(ByteArrayOutputStream line) {
+        byte[] bytes = line.toByteArray();
+        int length = bytes.length;
+        if (length > 0 && bytes[length - 1] == '\r') {
+            length--;
+        }
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,525 @@
+package models;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Закрытые сегменты CSV-журнала и их манифест.
+ * <p>
+ * Активный сегмент всегда пишется в файл file.csv.log. При ротации он переименовывается
+ * в "имя.yyyyMMdd-HHmmss.csv" вместе со своим индексом (.idx), а в манифест (.manifest)
+ * добавляется строка "файл,первая запись,последняя запись,размер".
+ * Закрытые сегменты сжимаются gzip в фоновом потоке, но только когда устаревают: последние
+ * keepPlain сегментов остаются несжатыми, чтобы чтение хвоста и записи по индексу шли прямо с диска,
+ * без распаковки всего сегмента. Индекс сегмента хранит смещения в несжатом файле,
+ * поэтому остается пригодным и после сжатия.
+ */
+final class CsvLogSegments {
+    private static final DateTimeFormatter SEGMENT_SUFFIX = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+    private static final String GZIP_SUFFIX = ".gz";
+    private static final int CACHED_INDEXES = 8;
+
+    private final Path activeFile;
+    private final Path manifestFile;
+    private final boolean compress;
+    private final int keepPlain;
+    // Закрытые сегменты от старых к новым, манифест и поток сжатия защищены lock.
+    // ReentrantLock вместо synchronized: под блокировкой идет файловый ввод-вывод,
+    // а synchronized закрепил бы виртуальный поток за несущим
+    private final ReentrantLock lock = new ReentrantLock();
+    private final List<Segment> segments = new ArrayList<>();
+    // Индексы недавно прочитанных сегментов; загрузка индекса с диска идет под indexCacheLock
+    private final ReentrantLock indexCacheLock = new ReentrantLock();
+    private final Map<String, CsvLogIndex> indexCache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CsvLogIndex> eldest) {
+            return size() > CACHED_INDEXES;
+        }
+    };
+    private ExecutorService compressor;
+
+    /**
+     * @param keepPlain сколько последних закрытых сегментов не сжимать
+     */
+    CsvLogSegments(Path activeFile, boolean compress, int keepPlain) {
+        this.activeFile = activeFile;
+        this.manifestFile = activeFile.resolveSibling(activeFile.getFileName() + ".manifest");
+        this.compress = compress;
+        this.keepPlain = Math.max(0, keepPlain);
+    }
+
+    /**
+     * Читает манифест. Сегменты, файлы которых удалены, из манифеста исключаются,
+     * а устаревшие несжатые сегменты повторно ставятся в очередь на сжатие
+     */
+    void load() throws IOException {
+        lock.lock();
+        try {
+            loadManifest();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void loadManifest() throws IOException {
+        if (!Files.exists(manifestFile)) {
+            return;
+        }
+        boolean changed = false;
+        for (String line : Files.readAllLines(manifestFile, StandardCharsets.UTF_8)) {
+            if (line.isBlank() || line.startsWith("#")) {
+                continue;
+            }
+            Segment segment = Segment.parse(line);
+            if (segment == null) {
+                changed = true;
+                continue;
+            }
+            if (!segment.compressed && !Files.exists(plainPath(segment)) && Files.exists(gzipPath(segment))) {
+                segment.compressed = true;
+                changed = true;
+            }
+            if (!Files.exists(segment.compressed ? gzipPath(segment) : plainPath(segment))) {
+                changed = true;
+                continue;
+            }
+            segments.add(segment);
+        }
+        if (changed) {
+            saveManifest();
+        }
+        compressAged();
+    }
+
+    /**
+     * Имя файла для закрываемого сегмента по времени его первой записи
+     */
+    Path nextSegmentPath(LocalDateTime firstRecord) {
+        String name = activeFile.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String stem = dot > 0 ? name.substring(0, dot) : name;
+        String extension = dot > 0 ? name.substring(dot) : "";
+        String base = stem + "." + firstRecord.format(SEGMENT_SUFFIX);
+
+        Path candidate = activeFile.resolveSibling(base + extension);
+        for (int i = 1; Files.exists(candidate) || Files.exists(withSuffix(candidate, GZIP_SUFFIX)); i++) {
+            candidate = activeFile.resolveSibling(base + "-" + i + extension);
+        }
+        return candidate;
+    }
+
+    /**
+     * Регистрирует закрытый сегмент в манифесте и ставит в очередь на сжатие устаревшие сегменты
+     */
+    void addClosed(Path file, LocalDateTime first, LocalDateTime last, long size) throws IOException {
+        Segment segment = new Segment(file.getFileName().toString(), first, last, size, false);
+        lock.lock();
+        try {
+            segments.add(segment);
+            saveManifest();
+            compressAged();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Дописывает к lines (от старых к новым) более ранние строки из закрытых сегментов,
+     * пока строк меньше count. Сегменты, закончившиеся раньше since, не читаются
+     */
+    void readRecent(List<String> lines, int count, LocalDateTime since) throws IOException {
+        for (Segment segment : newestFirst()) {
+            int remaining = count - lines.size();
+            if (remaining <= 0 || (since != null && segment.last.isBefore(since))) {
+                return;
+            }
+            List<String> tail = readTail(segment, remaining);
+            int before = tail.size();
+            if (since != null) {
+                tail.removeIf(line -> isBefore(line, since));
+            }
+            lines.addAll(0, tail);
+            if (tail.size() < before) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Дописывает к lines (от новых к старым) записи системы из закрытых сегментов, пока строк меньше count.
+     * Пропускаются сегменты вне диапазона времени и сегменты, в индексе которых нет systemId
+     */
+    void readBySystemId(List<String> lines, String systemId, int count, LocalDateTime since) throws IOException {
+        for (Segment segment : newestFirst()) {
+            int remaining = count - lines.size();
+            if (remaining <= 0 || (since != null && segment.last.isBefore(since))) {
+                return;
+            }
+            CsvLogIndex index = CsvLogIndex.isIndexed(systemId) ? index(segment) : null;
+            if (index != null && !index.contains(systemId)) {
+                continue;
+            }
+            List<String> found = index != null
+                    ? readIndexed(segment, index, systemId, remaining)
+                    : scanSegment(segment, systemId, remaining);
+            int before = found.size();
+            if (since != null) {
+                found.removeIf(line -> isBefore(line, since));
+            }
+            lines.addAll(found);
+            if (found.size() < before) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Дожидается сжатия уже закрытых сегментов
+     */
+    void close() {
+        ExecutorService executor;
+        lock.lock();
+        try {
+            executor = compressor;
+            compressor = null;
+        } finally {
+            lock.unlock();
+        }
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Время записи из первого поля строки журнала или null, если строка не разбирается
+     */
+    static LocalDateTime parseTimestamp(String line) {
+        int comma = line.indexOf(',');
+        try {
+            return LocalDateTime.parse(comma >= 0 ? line.substring(0, comma) : line);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    static boolean isBefore(String line, LocalDateTime since) {
+        LocalDateTime timestamp = parseTimestamp(line);
+        return timestamp != null && timestamp.isBefore(since);
+    }
+
+    private List<Segment> newestFirst() {
+        lock.lock();
+        try {
+            List<Segment> copy = new ArrayList<>(segments);
+            Collections.reverse(copy);
+            return copy;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private List<String> readTail(Segment segment, int count) throws IOException {
+        if (!segment.compressed) {
+            try {
+                return CsvLogReader.readLastLines(plainPath(segment), count, true);
+            } catch (NoSuchFileException e) {
+                // сегмент сжат во время чтения
+            }
+        }
+        ArrayDeque<String> tail = new ArrayDeque<>(count);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                openGzip(segment), StandardCharsets.UTF_8))) {
+            String line = reader.readLine();
+            while ((line = reader.readLine()) != null) {
+                if (tail.size() == count) {
+                    tail.pollFirst();
+                }
+                tail.addLast(line);
+            }
+        }
+        return new ArrayList<>(tail);
+    }
+
+    /**
+     * Строки по позициям из индекса сегмента, от новых к старым
+     */
+    private List<String> readIndexed(Segment segment, CsvLogIndex index, String systemId, int count) throws IOException {
+        if (!segment.compressed) {
+            try {
+                return index.readLatest(systemId, count);
+            } catch (NoSuchFileException e) {
+                // сегмент сжат во время чтения
+            }
+        }
+
+        long[][] positions = index.latestPositions(systemId, count);
+        Map<Long, Integer> slotByOffset = new HashMap<>();
+        long maxOffset = -1;
+        for (int i = 0; i < positions.length; i++) {
+            slotByOffset.put(positions[i][0], i);
+            maxOffset = Math.max(maxOffset, positions[i][0]);
+        }
+        long lastOffset = maxOffset;
+        String[] found = new String[positions.length];
+        forEachLine(segment, (offset, line) -> {
+            Integer slot = slotByOffset.get(offset);
+            if (slot != null) {
+                found[slot] = CsvLogReader.decodeLine(line);
+            }
+            return offset < lastOffset;
+        });
+
+        List<String> lines = new ArrayList<>(found.length);
+        for (String line : found) {
+            if (line != null) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Полное сканирование сегмента без индекса, результат от новых к старым
+     */
+    private List<String> scanSegment(Segment segment, String systemId, int count) throws IOException {
+        ArrayDeque<String> latest = new ArrayDeque<>(count);
+        forEachLine(segment, (offset, line) -> {
+            if (offset > 0) {
+                String text = CsvLogReader.decodeLine(line);
+                String[] parts = text.split(",");
+                if (parts.length >= 2 && parts[1].equals(systemId)) {
+                    if (latest.size() == count) {
+                        latest.pollLast();
+                    }
+                    latest.addFirst(text);
+                }
+            }
+            return true;
+        });
+        return new ArrayList<>(latest);
+    }
+
+    private void forEachLine(Segment segment, LineVisitor visitor) throws IOException {
+        try (InputStream in = segment.compressed ? openGzip(segment) : openPlain(segment)) {
+            ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+            byte[] buffer = new byte[64 * 1024];
+            long position = 0;
+            long lineStart = 0;
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                for (int i = 0; i < read; i++) {
+                    position++;
+                    if (buffer[i] == '\n') {
+                        if (!visitor.visit(lineStart, line)) {
+                            return;
+                        }
+                        line.reset();
+                        lineStart = position;
+                    } else {
+                        line.write(buffer[i]);
+                    }
+                }
+            }
+            if (line.size() > 0) {
+                visitor.visit(lineStart, line);
+            }
+        }
+    }
+
+    private InputStream openPlain(Segment segment) throws IOException {
+        try {
+            return new BufferedInputStream(Files.newInputStream(plainPath(segment)));
+        } catch (NoSuchFileException e) {
+            return openGzip(segment);
+        }
+    }
+
+    private InputStream openGzip(Segment segment) throws IOException {
+        return new GZIPInputStream(Files.newInputStream(gzipPath(segment)), 64 * 1024);
+    }
+
+    private CsvLogIndex index(Segment segment) {
+        indexCacheLock.lock();
+        try {
+            CsvLogIndex index = indexCache.get(segment.fileName);
+            if (index == null) {
+                CsvLogIndex loaded = new CsvLogIndex(plainPath(segment));
+                if (!loaded.openReadOnly(segment.size)) {
+                    return null;
+                }
+                index = loaded;
+                indexCache.put(segment.fileName, index);
+            }
+            return index;
+        } finally {
+            indexCacheLock.unlock();
+        }
+    }
+
+    /**
+     * Ставит в очередь на сжатие несжатые сегменты старше последних keepPlain. Вызывается под блокировкой lock
+     */
+    private void compressAged() {
+        if (!compress) {
+            return;
+        }
+        for (int i = 0; i < segments.size() - keepPlain; i++) {
+            Segment segment = segments.get(i);
+            if (segment.compressed || segment.compressionScheduled) {
+                continue;
+            }
+            if (compressor == null) {
+                compressor = Executors.newSingleThreadExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "csv-segment-compressor");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            segment.compressionScheduled = true;
+            compressor.execute(() -> compressSegment(segment));
+        }
+    }
+
+    private void compressSegment(Segment segment) {
+        Path plain = plainPath(segment);
+        Path gzip = gzipPath(segment);
+        Path tmp = withSuffix(gzip, ".tmp");
+        try {
+            try (InputStream in = Files.newInputStream(plain);
+                 OutputStream out = new GZIPOutputStream(
+                         new BufferedOutputStream(Files.newOutputStream(tmp)), 64 * 1024)) {
+                in.transferTo(out);
+            }
+            Files.move(tmp, gzip, StandardCopyOption.REPLACE_EXISTING);
+            lock.lock();
+            try {
+                segment.compressed = true;
+                saveManifest();
+            } finally {
+                lock.unlock();
+            }
+            Files.delete(plain);
+        } catch (IOException e) {
+            System.err.println("CSV segment " + segment.fileName + ": " + e.getMessage());
+            lock.lock();
+            try {
+                segment.compressionScheduled = false;
+            } finally {
+                lock.unlock();
+            }
+            try {
+                Files.deleteIfExists(tmp);
+            } catch (IOException ignored) {
+                // временный файл будет перезаписан при следующей попытке
+            }
+        }
+    }
+
+    /**
+     * Перезаписывает манифест целиком через временный файл. Вызывается под блокировкой lock
+     */
+    private void saveManifest() throws IOException {
+        List<String> lines = new ArrayList<>(segments.size() + 1);
+        lines.add("# file,first,last,size");
+        for (Segment segment : segments) {
+            lines.add(segment.format());
+        }
+        Path tmp = withSuffix(manifestFile, ".tmp");
+        Files.write(tmp, lines, StandardCharsets.UTF_8);
+        Files.move(tmp, manifestFile, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private Path plainPath(Segment segment) {
+        return activeFile.resolveSibling(segment.fileName);
+    }
+
+    private Path gzipPath(Segment segment) {
+        return activeFile.resolveSibling(segment.fileName + GZIP_SUFFIX);
+    }
+
+    private static Path withSuffix(Path path, String suffix) {
+        return path.resolveSibling(path.getFileName() + suffix);
+    }
+
+    @FunctionalInterface
+    private interface LineVisitor {
+        /**
+         * @return false, чтобы прекратить чтение
+         */
+        boolean visit(long offset, ByteArrayOutputStream line);
+    }
+
+    /**
+     * Запись манифеста: имя несжатого файла, время первой и последней записи, размер без сжатия
+     */
+    private static final class Segment {
+        final String fileName;
+        final LocalDateTime first;
+        final LocalDateTime last;
+        final long size;
+        volatile boolean compressed;
+        // Сегмент уже в очереди на сжатие. Изменяется под блокировкой lock
+        boolean compressionScheduled;
+
+        Segment(String fileName, LocalDateTime first, LocalDateTime last, long size, boolean compressed) {
+            this.fileName = fileName;
+            this.first = first;
+            this.last = last;
+            this.size = size;
+            this.compressed = compressed;
+        }
+
+        String format() {
+            return (compressed ? fileName + GZIP_SUFFIX : fileName) + "," + first + "," + last + "," + size;
+        }
+
+        static Segment parse(String line) {
+            String[] parts = line.split(",");
+            if (parts.length != 4) {
+                return null;
+            }
+            try {
+                boolean compressed = parts[0].endsWith(GZIP_SUFFIX);
+                String fileName = compressed
+                        ? parts[0].substring(0, parts[0].length() - GZIP_SUFFIX.length())
+                        : parts[0];
+                return new Segment(fileName, LocalDateTime.parse(parts[1]), LocalDateTime.parse(parts[2]),
+                        Long.parseLong(parts[3]), compressed);
+            } catch (DateTimeParseException | NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+}
@@ -32,6 +32,7 @@ public enum EventType {
     DOOR_LOCKED("Дверь заблокирована"),
     DOOR_UNLOCKED("Дверь разблокирована"),
     SENSOR_TOGGLED("Датчик переключен"),
+    BATTERY_DROPPED("Заряд батареи снизился"),
 
     // Конфигурация
     CONFIG_CHANGED("Конфигурация изменена"),
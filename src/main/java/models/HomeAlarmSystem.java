@@ -78,6 +78,7 @@ public class HomeAlarmSystem extends SecuritySystem {
     @Override
     public void calibrateSensors() {
         this.sensitivityLevel = 3;
+        touch();
         if (csvLogger != null) {
             csvLogger.logEvent(this, EventType.CALIBRATION_COMPLETE);
         }
@@ -95,6 +96,7 @@ public class HomeAlarmSystem extends SecuritySystem {
 
     public void toggleDoorSensors() {
         this.doorSensorsActive = !this.doorSensorsActive;
+        touch();
         if (csvLogger != null) {
             csvLogger.logEvent(this, EventType.SENSOR_TOGGLED);
         }
@@ -102,6 +104,7 @@ public class HomeAlarmSystem extends SecuritySystem {
 
     public void toggleWindowSensors() {
         this.windowSensorsActive = !this.windowSensorsActive;
+        touch();
         if (csvLogger != null) {
             csvLogger.logEvent(this, EventType.SENSOR_TOGGLED);
         }
@@ -110,6 +113,7 @@ public class HomeAlarmSystem extends SecuritySystem {
     public void setSensitivity(int level) {
         if (level >= 1 && level <= 5) {
             this.sensitivityLevel = level;
+            touch();
             if (csvLogger != null) {
                 csvLogger.logEvent(this, EventType.CONFIG_CHANGED);
             }
@@ -118,6 +122,7 @@ public class HomeAlarmSystem extends SecuritySystem {
 
     public void toggleSilentMode() {
         this.silentMode = !this.silentMode;
+        touch();
         if (csvLogger != null) {
             csvLogger.logEvent(this, EventType.CONFIG_CHANGED);
         }
@@ -157,6 +162,7 @@ public class HomeAlarmSystem extends SecuritySystem {
     // Сеттеры
     public void setDoorSensorsActive(boolean active) {
         this.doorSensorsActive = active;
+        touch();
         if (csvLogger != null) {
             csvLogger.logEvent(this, EventType.SENSOR_TOGGLED);
         }
@@ -164,6 +170,7 @@ public class HomeAlarmSystem extends SecuritySystem {
 
     public void setWindowSensorsActive(boolean active) {
         this.windowSensorsActive = active;
+        touch();
         if (csvLogger != null) {
             csvLogger.logEvent(this, EventType.SENSOR_TOGGLED);
         }
@@ -171,6 +178,7 @@ public class HomeAlarmSystem extends SecuritySystem {
 
     public void setMotionSensorsActive(boolean active) {
         this.motionSensorsActive = active;
+        touch();
         if (csvLogger != null) {
             csvLogger.logEvent(this, EventType.SENSOR_TOGGLED);
         }
@@ -179,6 +187,7 @@ public class HomeAlarmSystem extends SecuritySystem {
     public void setSensitivityLevel(int level) {
         if (level >= 1 && level <= 5) {
             this.sensitivityLevel = level;
+            touch();
             if (csvLogger != null) {
                 csvLogger.logEvent(this, EventType.CONFIG_CHANGED);
             }
@@ -188,6 +197,7 @@ public class HomeAlarmSystem extends SecuritySystem {
     public void setSilentMode(boolean silent) {
         this.silentMode = silent;
         this.alarmSound = silent ? "Тихий" : "Сирена";
+        touch();
         if (csvLogger != null) {
             csvLogger.logEvent(this, EventType.CONFIG_CHANGED);
         }
@@ -196,6 +206,7 @@ public class HomeAlarmSystem extends SecuritySystem {
     public void setAlarmSound(String sound) {
         if (sound != null && !sound.isBlank()) {
             this.alarmSound = sound;
+            touch();
             if (csvLogger != null) {
                 csvLogger.logEvent(this, EventType.CONFIG_CHANGED);
             }
@@ -0,0 +1,167 @@
+package models;
+
+import config.ConfigManager;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Диагностика чтения файла систем: что выводить в консоль и куда писать отчет о пропущенных свойствах.
+ * <p>
+ * Уровни вывода (parser.diagnostics.level): SILENT - ничего, ERROR - итоговая статистика только
+ * при пропущенных свойствах или объектах, SUMMARY - итоговая статистика всегда, PER_OBJECT - плюс строка на каждый объект, PER_PROPERTY - плюс строка на каждое свойство.
+ * Отчет (parser.diagnostics.report) - CSV-файл с нераспознанными, повторными свойствами и неизвестными типами;
+ * пишется независимо от уровня, если задан путь.
+ */
+public class ParseDiagnostics {
+    public enum Level {
+        SILENT,
+        ERROR,
+        SUMMARY,
+        PER_OBJECT,
+        PER_PROPERTY
+    }
+
+    /**
+     * Причина, по которой свойство или объект попали в отчет
+     */
+    public enum Reason {
+        /** Значение не удалось привести к типу свойства */
+        UNPARSEABLE,
+        /** Повторное вхождение свойства, учитывается только первое */
+        DUPLICATE,
+        /** Объект неизвестного типа пропущен целиком */
+        UNKNOWN_TYPE
+    }
+
+    private static final String REPORT_HEADER = "file,objecttype,systemid,property,reason,value";
+
+    private final ConfigManager config = ConfigManager.getInstance();
+    private volatile Level level;
+    private volatile String reportFile;
+
+    public ParseDiagnostics() {
+        this.level = parseLevel(config.getString("parser.diagnostics.level", "ERROR"));
+        String report = config.getString("parser.diagnostics.report", "");
+        this.reportFile = report.isBlank() ? null : report;
+    }
+
+    private static Level parseLevel(String value) {
+        try {
+            return Level.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return Level.ERROR;
+        }
+    }
+
+    public Level getLevel() {
+        return level;
+    }
+
+    public void setLevel(Level level) {
+        this.level = level;
+    }
+
+    public String getReportFile() {
+        return reportFile;
+    }
+
+    /**
+     * @param reportFile путь к CSV-отчету или null, чтобы отчет не писать
+     */
+    public void setReportFile(String reportFile) {
+        this.reportFile = reportFile;
+    }
+
+    public boolean isEnabled(Level required) {
+        return level.compareTo(required) >= 0;
+    }
+
+    boolean isReportEnabled() {
+        return reportFile != null;
+    }
+
+    void propertyParsed(String property, Object value) {
+        if (isEnabled(Level.PER_PROPERTY)) {
+            System.out.println(config.getString("error.property.found") + " " + property + " = " + value);
+        }
+    }
+
+    void propertyUnparseable(String property, String value) {
+        if (isEnabled(Level.PER_PROPERTY)) {
+            System.out.println(config.getString("error.property.parse") + " " + property + " = " + value);
+        }
+    }
+
+    void objectParsed(SecuritySystem system) {
+        if (isEnabled(Level.PER_OBJECT)) {
+            System.out.println(config.getString("parser.object.read") + " "
+                    + system.getClass().getSimpleName() + " " + system.getSystemId());
+        }
+    }
+
+    void unknownType(String objectType) {
+        if (isEnabled(Level.PER_OBJECT)) {
+            System.out.println(config.getString("error.unknown.type") + " " + objectType);
+        }
+    }
+
+    /**
+     * Завершение чтения: итоговая статистика и отчет о пропущенных свойствах
+     */
+    void finish(TextFileParser parser, List<Issue> issues) {
+        if (isEnabled(Level.SUMMARY) || (isEnabled(Level.ERROR) && parser.hasSkipped())) {
+            parser.printStatistics();
+        }
+        String report = reportFile;
+        if (report != null && issues != null) {
+            writeReport(Path.of(report), parser.getCurrentFileName(), issues);
+        }
+    }
+
+    private void writeReport(Path report, String fileName, List<Issue> issues) {
+        try (BufferedWriter writer = Files.newBufferedWriter(report, StandardCharsets.UTF_8)) {
+            writer.write(REPORT_HEADER);
+            writer.newLine();
+            for (Issue issue : issues) {
+                writer.write(csv(fileName) + "," + csv(issue.objectType) + "," + csv(issue.systemId) + ","
+                        + csv(issue.property) + "," + issue.reason + "," + csv(issue.value));
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            System.err.println(config.getString("error.prefix") + " " + report + ": " + e.getMessage());
+        }
+    }
+
+    private static String csv(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0) {
+            return value;
+        }
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+    /**
+     * Строка отчета
+     */
+    static final class Issue {
+        final String objectType;
+        String systemId;
+        final String property;
+        final Reason reason;
+        final String value;
+
+        Issue(String objectType, String property, Reason reason, String value) {
+            this.objectType = objectType;
+            this.property = property;
+            this.reason = reason;
+            this.value = value;
+        }
+    }
+}
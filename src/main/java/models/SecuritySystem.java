@@ -3,14 +3,28 @@ package models;
 import models.dto.EmergencyEvent;
 import models.dto.SystemStatusReport;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 
 public abstract class SecuritySystem {
+    // Общие часы версий: версия любой системы больше версий всех систем, измененных до нее
+    private static final AtomicLong VERSION_CLOCK = new AtomicLong();
+    private static final AtomicLongFieldUpdater<SecuritySystem> VERSION =
+            AtomicLongFieldUpdater.newUpdater(SecuritySystem.class, "version");
+    private static final AtomicIntegerFieldUpdater<SecuritySystem> TOUCHES =
+            AtomicIntegerFieldUpdater.newUpdater(SecuritySystem.class, "touchesInFlight");
+
     protected String systemId;
     protected String location;
     protected String securityMode;
     protected boolean isArmed;
     protected int batteryLevel;
     protected int signalStrength;
+    // Версия последнего изменения, см. touch()
+    protected volatile long version;
+    // Незавершенные touch() этой системы: версия уже взята из часов, но, возможно, еще не сохранена
+    private transient volatile int touchesInFlight;
 
     protected transient Random random;
     protected transient CSVLogger csvLogger;
@@ -23,6 +37,65 @@ public abstract class SecuritySystem {
         this.batteryLevel = 100;
         this.signalStrength = 5;
         this.random = new Random();
+        touch();
+    }
+
+    /**
+     * Отмечает изменение системы новой версией. Вызывается после записи полей, чтобы читатель,
+     * видящий новую версию, видел и новое состояние. Общей блокировки нет: незавершенный touch()
+     * виден по счетчику этой системы, и {@link #getVersion()} дожидается только его
+     */
+    public void touch() {
+        TOUCHES.incrementAndGet(this);
+        try {
+            long next = nextVersion();
+            long current;
+            // Параллельный touch() мог уже сохранить большую версию - версия не уменьшается
+            while ((current = version) < next && !VERSION.compareAndSet(this, current, next)) {
+                Thread.onSpinWait();
+            }
+        } finally {
+            TOUCHES.decrementAndGet(this);
+        }
+    }
+
+    /**
+     * Новая версия по общим часам, например для отметки удаления системы
+     */
+    public static long nextVersion() {
+        return VERSION_CLOCK.incrementAndGet();
+    }
+
+    /**
+     * Текущее значение часов версий: все изменения с версией не больше него уже произошли,
+     * и {@link #getVersion()}, вызванный после, вернет их версии или более новые
+     */
+    public static long currentVersion() {
+        return VERSION_CLOCK.get();
+    }
+
+    /**
+     * Версия последнего изменения. Если touch() этой системы успел взять версию из часов, но еще
+     * не сохранил ее, ждет его: иначе разностная синхронизация могла бы навсегда пропустить это изменение.
+     * Окно - несколько инструкций, поэтому ожидание активное
+     */
+    public long getVersion() {
+        int spins = 0;
+        while (touchesInFlight > 0) {
+            if (++spins < 64) {
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+        }
+        return version;
+    }
+
+    /**
+     * Восстанавливает версию, полученную от сервера
+     */
+    public void setVersion(long version) {
+        this.version = version;
     }
 
     protected void ensureRandomInitialized() {
@@ -34,6 +107,7 @@ public abstract class SecuritySystem {
     public void armSystem() {
         ensureRandomInitialized();
         this.isArmed = true;
+        touch();
         if (csvLogger != null) {
             csvLogger.logEvent(this, EventType.SYSTEM_ARMED);
         }
@@ -42,6 +116,7 @@ public abstract class SecuritySystem {
     public void disarmSystem() {
         ensureRandomInitialized();
         this.isArmed = false;
+        touch();
         if (csvLogger != null) {
             csvLogger.logEvent(this, EventType.SYSTEM_DISARMED);
         }
@@ -63,6 +138,7 @@ public abstract class SecuritySystem {
         }
 
         this.securityMode = mode;
+        touch();
         if (csvLogger != null) {
             csvLogger.logEvent(this, EventType.MODE_CHANGED);
         }
@@ -71,10 +147,21 @@ public abstract class SecuritySystem {
     public void updateSensorStatus() {
         ensureRandomInitialized();
         if (random.nextDouble() < 0.05) {
+            int previous = batteryLevel;
             batteryLevel = Math.max(0, batteryLevel - random.nextInt(10));
+            if (batteryLevel < previous) {
+                touch();
+                if (csvLogger != null) {
+                    csvLogger.logEvent(this, EventType.BATTERY_DROPPED, previous + "% -> " + batteryLevel + "%");
+                }
+            }
         }
         if (random.nextDouble() < 0.03) {
+            int previous = signalStrength;
             signalStrength = Math.max(1, Math.min(5, signalStrength + (random.nextInt(3) - 1)));
+            if (signalStrength != previous) {
+                touch();
+            }
         }
     }
 
@@ -96,6 +183,7 @@ public abstract class SecuritySystem {
 
     public void setLocation(String location) {
         this.location = location;
+        touch();
     }
 
     public String getSecurityMode() {
@@ -112,6 +200,7 @@ public abstract class SecuritySystem {
 
     public void setBatteryLevel(int level) {
         this.batteryLevel = Math.max(0, Math.min(100, level));
+        touch();
     }
 
     public int getSignalStrength() {
@@ -120,6 +209,7 @@ public abstract class SecuritySystem {
 
     public void setSignalStrength(int strength) {
         this.signalStrength = Math.max(1, Math.min(5, strength));
+        touch();
     }
 
     public void setCsvLogger(CSVLogger csvLogger) {
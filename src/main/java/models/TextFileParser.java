@@ -3,9 +3,20 @@ package models;
 import config.ConfigManager;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -15,6 +26,8 @@ public class TextFileParser {
     private int totalObjectsFound;
     private int totalPropertiesFound;
     private int totalPropertiesMissing;
+    private int totalUnknownTypes;
+    private final ParseDiagnostics diagnostics = new ParseDiagnostics();
 
     private static final Map<String, Set<String>> VALID_SYSTEM_TYPES = Map.of(
             "homealarmsystem", Set.of("id", "location", "securitymode", "isarmed",
@@ -75,6 +88,18 @@ public class TextFileParser {
             )
     );
 
+    // Имена свойств каждого типа для поиска за один проход
+    private static final Map<String, PropertyTrie> PROPERTY_TRIES = buildPropertyTries();
+
+    private static final Pattern INTEGER_PATTERN = Pattern.compile("-?\\d+");
+    private static final Pattern DOUBLE_PATTERN = Pattern.compile("-?\\d+\\.\\d+");
+
+    private static Map<String, PropertyTrie> buildPropertyTries() {
+        Map<String, PropertyTrie> tries = new HashMap<>();
+        VALID_SYSTEM_TYPES.forEach((type, properties) -> tries.put(type, new PropertyTrie(properties)));
+        return Map.copyOf(tries);
+    }
+
     public TextFileParser() {
         this.currentFileName = config.getString("file.default.path");
         this.totalObjectsFound = 0;
@@ -91,24 +116,16 @@ public class TextFileParser {
     }
 
     /**
-     * Основной метод для считывания объектов из файла
+     * Основной метод для считывания объектов из файла.
+     * Большие файлы при включенном parser.parallel.enabled читаются параллельно по кускам
      */
     public List<SecuritySystem> readFromFile(String fileName) {
         List<SecuritySystem> systems = new ArrayList<>();
-        this.currentFileName = fileName;
-        this.totalObjectsFound = 0;
-        this.totalPropertiesFound = 0;
-        this.totalPropertiesMissing = 0;
         try {
-            String fileContent = readFileContent(fileName);
-            List<ParsedObject> parsedObjects = parseFileContent(fileContent);
-            for (ParsedObject parsedObject : parsedObjects) {
-                SecuritySystem system = buildSecuritySystem(parsedObject);
-                if (system != null) {
-                    systems.add(system);
-                    totalObjectsFound++;
-                }
+            if (useParallelLoad(fileName)) {
+                return readFromFileParallel(fileName);
             }
+            readFromFile(fileName, systems::add);
         } catch (IOException e) {
             System.out.println(config.getString("error.file.read") + " " + e.getMessage());
             return new ArrayList<>();
@@ -116,148 +133,315 @@ public class TextFileParser {
         return systems;
     }
 
-    private String readFileContent(String fileName) throws IOException {
-        StringBuilder content = new StringBuilder();
-
+    /**
+     * Потоковое чтение файла за один проход: объекты передаются в consumer по одному, по мере чтения.
+     * В памяти держится только текущая строка и текст текущего объекта
+     * @return число прочитанных объектов
+     */
+    public int readFromFile(String fileName, Consumer<SecuritySystem> consumer) throws IOException {
+        ParseStats stats = newStats();
         try (BufferedReader reader = new BufferedReader(new FileReader(fileName))) {
-            String line;
+            parseObjects(reader, consumer, stats);
+        } finally {
+            publishStatistics(fileName, stats);
+        }
+        diagnostics.finish(this, stats.issues);
+        return stats.objects;
+    }
 
-            while ((line = reader.readLine()) != null) {
-                line = line.trim();
-                if (line.isEmpty()) continue;
+    /**
+     * Параллельное чтение: файл отображается в память, делится на куски по меткам [Тип],
+     * куски разбираются в ForkJoinPool, результаты объединяются в порядке файла
+     */
+    public List<SecuritySystem> readFromFileParallel(String fileName) throws IOException {
+        return readFromFileParallel(fileName,
+                Math.max(1, config.getInt("parser.parallel.chunk.mb", 8)) * 1024L * 1024L);
+    }
 
-                if (!content.isEmpty()) {
-                    content.append(" ");
+    /**
+     * @param chunkSize наименьший размер куска в байтах
+     */
+    List<SecuritySystem> readFromFileParallel(String fileName, long chunkSize) throws IOException {
+        ParseStats stats = newStats();
+        List<SecuritySystem> systems = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(Path.of(fileName), StandardOpenOption.READ)) {
+            List<long[]> chunks = splitAtHeaders(channel, channel.size(), chunkSize);
+
+            int threads = config.getInt("parser.parallel.threads", 0);
+            ForkJoinPool pool = threads > 0 ? new ForkJoinPool(threads) : ForkJoinPool.commonPool();
+            List<ChunkResult> results;
+            try {
+                results = pool.submit(() -> chunks.parallelStream()
+                        .map(chunk -> parseChunk(channel, chunk[0], chunk[1]))
+                        .toList()).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Чтение прервано", e);
+            } catch (ExecutionException e) {
+                throw new IOException(e.getCause());
+            } finally {
+                if (pool != ForkJoinPool.commonPool()) {
+                    pool.shutdown();
+                }
+            }
+
+            for (ChunkResult result : results) {
+                if (result.error != null) {
+                    throw result.error;
                 }
-                content.append(line);
+                systems.addAll(result.systems);
+                stats.add(result.stats);
             }
+        } finally {
+            publishStatistics(fileName, stats);
         }
+        diagnostics.finish(this, stats.issues);
+        return systems;
+    }
+
+    private boolean useParallelLoad(String fileName) {
+        if (!config.getBoolean("parser.parallel.enabled", false)) {
+            return false;
+        }
+        long threshold = config.getInt("parser.parallel.min.file.mb", 16) * 1024L * 1024L;
+        return new File(fileName).length() >= threshold;
+    }
+
+    private void publishStatistics(String fileName, ParseStats stats) {
+        this.currentFileName = fileName;
+        this.totalObjectsFound = stats.objects;
+        this.totalPropertiesFound = stats.propertiesFound;
+        this.totalPropertiesMissing = stats.propertiesMissing;
+        this.totalUnknownTypes = stats.unknownTypes;
+    }
 
-        return content.toString();
+    private ParseStats newStats() {
+        return new ParseStats(diagnostics.isReportEnabled());
     }
 
     /**
-     * Парсинг содержимого файла в объекты
+     * Разбор потока строк: метки [Тип] находятся прямо в строках, текст объекта копится до следующей метки
      */
-    private List<ParsedObject> parseFileContent(String content) {
-        List<ParsedObject> objects = new ArrayList<>();
+    private void parseObjects(BufferedReader reader, Consumer<SecuritySystem> consumer, ParseStats stats)
+            throws IOException {
+        StringBuilder objectContent = new StringBuilder();
+        String objectType = null;
+        boolean firstLine = true;
+        String line;
+
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty()) continue;
+
+            // Строки файла склеиваются через пробел, как если бы файл был одной строкой
+            if (!firstLine && objectType != null) {
+                objectContent.append(' ');
+            }
+            firstLine = false;
+
+            int segmentStart = 0;
+            int bracket = line.indexOf('[');
+            while (bracket >= 0) {
+                int headerEnd = findHeaderEnd(line, bracket);
+                if (headerEnd < 0) {
+                    bracket = line.indexOf('[', bracket + 1);
+                    continue;
+                }
+                if (objectType != null) {
+                    objectContent.append(line, segmentStart, bracket);
+                    emitObject(objectType, objectContent, consumer, stats);
+                }
+                // Создать новый объект
+                objectType = line.substring(bracket + 1, headerEnd).toLowerCase();
+                objectContent.setLength(0);
+                segmentStart = headerEnd + 1;
+                bracket = line.indexOf('[', segmentStart);
+            }
+            if (objectType != null) {
+                objectContent.append(line, segmentStart, line.length());
+            }
+        }
 
-        // Найти все метки объектов
-        Pattern objectPattern = Pattern.compile("\\[([a-zA-Z]+)]");
-        Matcher matcher = objectPattern.matcher(content);
+        // Обработать последний объект
+        if (objectType != null) {
+            emitObject(objectType, objectContent, consumer, stats);
+        }
+    }
 
-        String currentObjectType = null;
-        int objectStart = -1;
+    private ChunkResult parseChunk(FileChannel channel, long start, long end) {
+        ChunkResult result = new ChunkResult(diagnostics.isReportEnabled());
+        try {
+            ByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    new ByteBufferInputStream(map), Charset.defaultCharset()));
+            parseObjects(reader, result.systems::add, result.stats);
+        } catch (IOException e) {
+            result.error = e;
+        }
+        return result;
+    }
 
-        while (matcher.find()) {
-            if (currentObjectType != null) {
-                // Finish previous object
-                int objectEnd = matcher.start();
-                String objectContent = content.substring(objectStart, objectEnd);
-                ParsedObject parsedObject = parseObjectContent(currentObjectType, objectContent);
-                if (parsedObject != null) {
-                    objects.add(parsedObject);
+    /**
+     * Делит файл на куски не меньше chunkSize; каждый следующий кусок начинается с метки [Тип].
+     * Метка объекта не может содержать перевод строки, поэтому граница по ней не разрывает ни один объект
+     */
+    private static List<long[]> splitAtHeaders(FileChannel channel, long size, long chunkSize) throws IOException {
+        List<long[]> chunks = new ArrayList<>();
+        long start = 0;
+        while (start < size) {
+            long end = start + chunkSize >= size ? size : findHeader(channel, start + chunkSize, size);
+            chunks.add(new long[]{start, end});
+            start = end;
+        }
+        return chunks;
+    }
+
+    /**
+     * Смещение первой метки [Тип] не раньше from или size, если меток больше нет
+     */
+    private static long findHeader(FileChannel channel, long from, long size) throws IOException {
+        ByteBuffer window = ByteBuffer.allocate(64 * 1024);
+        long position = from;
+        while (position < size) {
+            window.clear();
+            int read = channel.read(window, position);
+            if (read <= 0) {
+                break;
+            }
+            long next = position + read;
+            for (int i = 0; i < read; i++) {
+                if (window.get(i) != '[') continue;
+                int pos = i + 1;
+                while (pos < read && isAsciiLetter((char) window.get(pos))) {
+                    pos++;
+                }
+                if (pos == read && i > 0 && next < size) {
+                    // Метка обрезана концом окна: дочитываем с ее начала
+                    next = position + i;
+                    break;
+                }
+                if (pos < read && pos > i + 1 && window.get(pos) == ']') {
+                    return position + i;
                 }
             }
+            position = next;
+        }
+        return size;
+    }
 
-            // Создать новый объект
-            currentObjectType = matcher.group(1).toLowerCase();
-            objectStart = matcher.end();
+    /**
+     * Метка объекта [Тип]: позиция закрывающей скобки или -1, если с этой '[' метка не начинается
+     */
+    private static int findHeaderEnd(String line, int bracket) {
+        int pos = bracket + 1;
+        while (pos < line.length() && isAsciiLetter(line.charAt(pos))) {
+            pos++;
         }
+        return pos > bracket + 1 && pos < line.length() && line.charAt(pos) == ']' ? pos : -1;
+    }
 
-        // Обработать последний объект
-        if (currentObjectType != null && objectStart != -1) {
-            String objectContent = content.substring(objectStart);
-            ParsedObject parsedObject = parseObjectContent(currentObjectType, objectContent);
-            if (parsedObject != null) {
-                objects.add(parsedObject);
+    private static boolean isAsciiLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private void emitObject(String objectType, CharSequence content, Consumer<SecuritySystem> consumer,
+                            ParseStats stats) {
+        ParsedObject parsedObject = parseObjectContent(objectType, content, stats);
+        if (parsedObject == null) {
+            return;
+        }
+        SecuritySystem system = buildSecuritySystem(parsedObject);
+        if (parsedObject.issues != null) {
+            for (ParseDiagnostics.Issue issue : parsedObject.issues) {
+                issue.systemId = system != null ? system.getSystemId() : null;
+                stats.issues.add(issue);
             }
         }
-
-        return objects;
+        if (system != null) {
+            stats.objects++;
+            diagnostics.objectParsed(system);
+            consumer.accept(system);
+        }
     }
 
     /**
      * Парсинг свойств объекта
      */
-    private ParsedObject parseObjectContent(String objectType, String content) {
-        String normalizedObjectType = objectType.toLowerCase();
-        if (!VALID_SYSTEM_TYPES.containsKey(normalizedObjectType)) {
-            System.out.println(config.getString("error.unknown.type") + " " + objectType);
+    private ParsedObject parseObjectContent(String objectType, CharSequence content, ParseStats stats) {
+        PropertyTrie properties = PROPERTY_TRIES.get(objectType);
+        if (properties == null) {
+            stats.unknownTypes++;
+            diagnostics.unknownType(objectType);
+            if (stats.issues != null) {
+                stats.issues.add(new ParseDiagnostics.Issue(objectType, null, ParseDiagnostics.Reason.UNKNOWN_TYPE, null));
+            }
             return null;
         }
-        ParsedObject parsedObject = new ParsedObject(normalizedObjectType);
-        Set<String> validProperties = VALID_SYSTEM_TYPES.get(normalizedObjectType);
-        parseFusedProperties(parsedObject, normalizedObjectType, content, validProperties);
+        ParsedObject parsedObject = new ParsedObject(objectType, stats.issues != null);
+        parseFusedProperties(parsedObject, objectType, content, properties, stats);
         return parsedObject;
     }
 
     /**
-     * Парсинг свойств объекта без разделителя типа свойство:значение
+     * Парсинг свойств объекта без разделителя типа свойство:значение.
+     * Текст просматривается один раз: в каждой позиции ищется самое длинное имя свойства,
+     * значение свойства - текст до следующего найденного имени. Учитывается первое вхождение свойства,
+     * даже если значение у него пустое: повторные вхождения попадают в отчет как DUPLICATE
      */
-    private void parseFusedProperties(ParsedObject parsedObject, String objectType, String content, Set<String> validProperties) {
-        String normalizedContent = content.toLowerCase();
-        for (String property : validProperties) {
-            int propertyIndex = normalizedContent.indexOf(property.toLowerCase());
-            if (propertyIndex == -1) continue;
-            int valueStart = propertyIndex + property.length();
-            if (valueStart >= content.length()) continue;
-
-            while (valueStart < content.length() &&
-                    (content.charAt(valueStart) == ':' || Character.isWhitespace(content.charAt(valueStart)))) {
-                valueStart++;
+    private void parseFusedProperties(ParsedObject parsedObject, String objectType, CharSequence content,
+                                      PropertyTrie properties, ParseStats stats) {
+        Set<String> seen = new HashSet<>();
+        String currentProperty = null;
+        int valueStart = 0;
+        int length = content.length();
+        int pos = 0;
+
+        while (pos < length) {
+            String property = properties.match(content, pos);
+            if (property == null) {
+                pos++;
+                continue;
             }
-
-            if (valueStart >= content.length()) continue;
-
-            String valueContent = extractValueUntilNextProperty(content, valueStart, validProperties);
-            if (!valueContent.isEmpty()) {
-                Object parsedValue = parseValue(objectType, property, valueContent);
-                if (parsedValue != null) {
-                    parsedObject.properties.put(property, parsedValue);
-                    totalPropertiesFound++;
-                    System.out.println(config.getString("error.property.found") + " " + property + " = " + parsedValue);
-                } else {
-                    totalPropertiesMissing++;
-                    System.out.println(config.getString("error.property.parse") + " " + property + " = " + valueContent);
-                }
+            if (currentProperty != null) {
+                acceptProperty(parsedObject, objectType, currentProperty, content, valueStart, pos, seen, stats);
             }
+            currentProperty = property;
+            pos += property.length();
+            valueStart = pos;
         }
-    }
-
-
-    private String extractValueUntilNextProperty(String content, int startPosition, Set<String> validProperties) {
-        if (startPosition >= content.length()) {
-            return "";
+        if (currentProperty != null) {
+            acceptProperty(parsedObject, objectType, currentProperty, content, valueStart, length, seen, stats);
         }
+    }
 
-        StringBuilder value = new StringBuilder();
-        String remainingContent = content.substring(startPosition).toLowerCase();
-
-        int valueStart = startPosition;
-        while (valueStart < content.length() && content.charAt(valueStart) == ':') {
+    private void acceptProperty(ParsedObject parsedObject, String objectType, String property,
+                                CharSequence content, int valueStart, int valueEnd, Set<String> seen,
+                                ParseStats stats) {
+        while (valueStart < valueEnd &&
+                (content.charAt(valueStart) == ':' || Character.isWhitespace(content.charAt(valueStart)))) {
             valueStart++;
         }
-
-        if (valueStart >= content.length()) {
-            return "";
-        }
-
-        int nextPropertyPos = -1;
-        for (String property : validProperties) {
-            int pos = remainingContent.indexOf(property);
-            if (pos != -1 && (nextPropertyPos == -1 || pos < nextPropertyPos)) {
-                nextPropertyPos = pos;
+        String valueContent = content.subSequence(valueStart, valueEnd).toString().trim();
+        if (!seen.add(property)) {
+            if (!valueContent.isEmpty()) {
+                parsedObject.addIssue(property, ParseDiagnostics.Reason.DUPLICATE, valueContent);
             }
+            return;
+        }
+        if (valueContent.isEmpty()) {
+            return;
         }
 
-        if (nextPropertyPos != -1) {
-            value.append(content, valueStart, startPosition + nextPropertyPos);
+        Object parsedValue = parseValue(objectType, property, valueContent);
+        if (parsedValue != null) {
+            parsedObject.properties.put(property, parsedValue);
+            stats.propertiesFound++;
+            diagnostics.propertyParsed(property, parsedValue);
         } else {
-            value.append(content.substring(valueStart));
+            stats.propertiesMissing++;
+            diagnostics.propertyUnparseable(property, valueContent);
+            parsedObject.addIssue(property, ParseDiagnostics.Reason.UNPARSEABLE, valueContent);
         }
-
-        return value.toString().trim();
     }
 
     private Object parseValue(String objectType, String property, String valueContent) {
@@ -289,8 +473,7 @@ public class TextFileParser {
         }
 
         // Find last valid number occurrence
-        Pattern numberPattern = Pattern.compile("-?\\d+");
-        Matcher matcher = numberPattern.matcher(value);
+        Matcher matcher = INTEGER_PATTERN.matcher(value);
 
         Integer lastValidNumber = null;
         while (matcher.find()) {
@@ -310,8 +493,7 @@ public class TextFileParser {
         }
 
         // Find last valid floating point number
-        Pattern doublePattern = Pattern.compile("-?\\d+\\.\\d+");
-        Matcher matcher = doublePattern.matcher(value);
+        Matcher matcher = DOUBLE_PATTERN.matcher(value);
 
         Double lastValidDouble = null;
         while (matcher.find()) {
@@ -523,16 +705,138 @@ public class TextFileParser {
     }
 
 
+    /**
+     * Префиксное дерево имен свойств одного типа (имена - строчные латинские буквы).
+     * Поиск в позиции текста стоит не больше длины самого длинного имени
+     */
+    private static final class PropertyTrie {
+        private final Node root = new Node();
+
+        PropertyTrie(Set<String> properties) {
+            for (String property : properties) {
+                Node node = root;
+                for (int i = 0; i < property.length(); i++) {
+                    int c = property.charAt(i) - 'a';
+                    if (node.children[c] == null) {
+                        node.children[c] = new Node();
+                    }
+                    node = node.children[c];
+                }
+                node.property = property;
+            }
+        }
+
+        /**
+         * Самое длинное имя свойства, начинающееся в позиции from (без учета регистра), или null
+         */
+        String match(CharSequence text, int from) {
+            Node node = root;
+            String longest = null;
+            for (int pos = from; pos < text.length(); pos++) {
+                char c = Character.toLowerCase(text.charAt(pos));
+                if (c < 'a' || c > 'z' || (node = node.children[c - 'a']) == null) {
+                    break;
+                }
+                if (node.property != null) {
+                    longest = node.property;
+                }
+            }
+            return longest;
+        }
+
+        private static final class Node {
+            final Node[] children = new Node[26];
+            String property;
+        }
+    }
+
+    /**
+     * Счетчики одного чтения; при параллельной загрузке у каждого куска свои
+     */
+    private static final class ParseStats {
+        int objects;
+        int propertiesFound;
+        int propertiesMissing;
+        int unknownTypes;
+        // Строки отчета диагностики; null, если отчет не нужен
+        final List<ParseDiagnostics.Issue> issues;
+
+        ParseStats(boolean collectIssues) {
+            this.issues = collectIssues ? new ArrayList<>() : null;
+        }
+
+        void add(ParseStats other) {
+            objects += other.objects;
+            propertiesFound += other.propertiesFound;
+            propertiesMissing += other.propertiesMissing;
+            unknownTypes += other.unknownTypes;
+            if (issues != null && other.issues != null) {
+                issues.addAll(other.issues);
+            }
+        }
+    }
+
+    /**
+     * Результат разбора одного куска файла
+     */
+    private static final class ChunkResult {
+        final List<SecuritySystem> systems = new ArrayList<>();
+        final ParseStats stats;
+        IOException error;
+
+        ChunkResult(boolean collectIssues) {
+            this.stats = new ParseStats(collectIssues);
+        }
+    }
+
+    /**
+     * Чтение отображенного в память куска файла как потока байтов
+     */
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+    }
+
     /**
      * Хранит информацию о спаршенных объектах
      */
     private static class ParsedObject {
         String type;
         Map<String, Object> properties;
+        // Пропущенные свойства для отчета диагностики; null, если отчет не нужен
+        List<ParseDiagnostics.Issue> issues;
 
-        ParsedObject(String type) {
+        ParsedObject(String type, boolean collectIssues) {
             this.type = type;
             this.properties = new HashMap<>();
+            this.issues = collectIssues ? new ArrayList<>() : null;
+        }
+
+        void addIssue(String property, ParseDiagnostics.Reason reason, String value) {
+            if (issues != null) {
+                issues.add(new ParseDiagnostics.Issue(type, property, reason, value));
+            }
         }
     }
 
@@ -542,6 +846,9 @@ public class TextFileParser {
         System.out.println(config.getString("parser.stats.objects") + " " + totalObjectsFound);
         System.out.println(config.getString("parser.stats.properties.success") + " " + totalPropertiesFound);
         System.out.println(config.getString("parser.stats.properties.missing") + " " + totalPropertiesMissing);
+        if (totalUnknownTypes > 0) {
+            System.out.println(config.getString("parser.stats.unknown.types") + " " + totalUnknownTypes);
+        }
         if (totalObjectsFound > 0) {
             double successRate = (double) totalPropertiesFound / (totalPropertiesFound + totalPropertiesMissing) * 100;
             System.out.printf(config.getString("parser.stats.success.rate") + " %.1f%%\n", successRate);
@@ -549,6 +856,17 @@ public class TextFileParser {
     }
 
 
+    /**
+     * При последнем чтении не найдены свойства или пропущены объекты неизвестного типа
+     */
+    boolean hasSkipped() {
+        return totalPropertiesMissing > 0 || totalUnknownTypes > 0;
+    }
+
+    public ParseDiagnostics getDiagnostics() {
+        return diagnostics;
+    }
+
     public String getCurrentFileName() {
         return currentFileName;
     }
@@ -23,6 +23,19 @@ public class EmergencyEvent {
         this.requiresResponse = requiresResponse;
     }
 
+    /**
+     * Восстановление события с исходным временем, например при получении по сети
+     */
+    public EmergencyEvent(String systemId, String systemType, String eventType,
+                          String description, LocalDateTime timestamp, boolean requiresResponse) {
+        this.systemId = systemId;
+        this.systemType = systemType;
+        this.eventType = eventType;
+        this.description = description;
+        this.timestamp = timestamp;
+        this.requiresResponse = requiresResponse;
+    }
+
     public String getSystemId() {
         return systemId;
     }
@@ -0,0 +1,105 @@
+package models.dto;
+
+import models.EventType;
+
+import java.time.LocalDateTime;
+
+/**
+ * Изменение состояния системы, рассылаемое подписчикам SUBSCRIBE.
+ * Содержит состояние системы сразу после события; sequence нумерует события
+ * одной подписки подряд, поэтому пропуск номера означает потерянные события
+ */
+public class SystemChangeEvent {
+    private final long sequence;
+    private final LocalDateTime timestamp;
+    private final String systemId;
+    private final String systemType;
+    private final String location;
+    private final String securityMode;
+    private final boolean armed;
+    private final int batteryLevel;
+    private final int signalStrength;
+    private final EventType eventType;
+    private final String details;
+    // Версия системы после события
+    private final long version;
+
+    public SystemChangeEvent(long sequence, LocalDateTime timestamp, String systemId, String systemType,
+                             String location, String securityMode, boolean armed, int batteryLevel,
+                             int signalStrength, EventType eventType, String details, long version) {
+        this.sequence = sequence;
+        this.timestamp = timestamp;
+        this.systemId = systemId;
+        this.systemType = systemType;
+        this.location = location;
+        this.securityMode = securityMode;
+        this.armed = armed;
+        this.batteryLevel = batteryLevel;
+        this.signalStrength = signalStrength;
+        this.eventType = eventType;
+        this.details = details;
+        this.version = version;
+    }
+
+    /**
+     * Копия события с номером в последовательности конкретной подписки
+     */
+    public SystemChangeEvent withSequence(long sequence) {
+        return new SystemChangeEvent(sequence, timestamp, systemId, systemType, location, securityMode,
+                armed, batteryLevel, signalStrength, eventType, details, version);
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public LocalDateTime getTimestamp() {
+        return timestamp;
+    }
+
+    public String getSystemId() {
+        return systemId;
+    }
+
+    public String getSystemType() {
+        return systemType;
+    }
+
+    public String getLocation() {
+        return location;
+    }
+
+    public String getSecurityMode() {
+        return securityMode;
+    }
+
+    public boolean isArmed() {
+        return armed;
+    }
+
+    public int getBatteryLevel() {
+        return batteryLevel;
+    }
+
+    public int getSignalStrength() {
+        return signalStrength;
+    }
+
+    public EventType getEventType() {
+        return eventType;
+    }
+
+    public String getDetails() {
+        return details;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("[%s] %s %s (%s): %s", timestamp, systemId, eventType.getDescription(),
+                location, details == null || details.isEmpty() ? securityMode : details);
+    }
+}
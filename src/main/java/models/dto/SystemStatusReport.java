@@ -10,6 +10,8 @@ public abstract class SystemStatusReport {
     protected final boolean isArmed;
     protected final int batteryLevel;
     protected final int signalStrength;
+    // Версия системы на момент снятия отчета; заполняется сервером
+    protected long version;
 
     public SystemStatusReport(String systemId, String location, String securityMode,
                               boolean isArmed, int batteryLevel, int signalStrength) {
@@ -44,4 +46,12 @@ public abstract class SystemStatusReport {
     public int getSignalStrength() {
         return signalStrength;
     }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
 }
@@ -0,0 +1,55 @@
+package network;
+
+/**
+ * Результат одного элемента пакетной команды BATCH
+ */
+public class BatchResult {
+    private int index;
+    private String command;
+    private String systemId;
+    private boolean success;
+    private String message;
+    private Object data;
+
+    public BatchResult() {
+    }
+
+    public BatchResult(int index, String command, String systemId, Response response) {
+        this.index = index;
+        this.command = command;
+        this.systemId = systemId;
+        this.success = response.isSuccess();
+        this.message = response.getMessage();
+        this.data = response.getData();
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public String getCommand() {
+        return command;
+    }
+
+    public String getSystemId() {
+        return systemId;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public Object getData() {
+        return data;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchResult{index=" + index + ", command='" + command + "', systemId='" + systemId
+                + "', success=" + success + ", message='" + message + "'}";
+    }
+}
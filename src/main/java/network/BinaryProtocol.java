@@ -0,0 +1,509 @@
+package network;
+
+import models.BiometricLock;
+import models.CarAlarmSystem;
+import models.EventType;
+import models.HomeAlarmSystem;
+import models.SecuritySystem;
+import models.dto.BiometricLockStatusReport;
+import models.dto.CarAlarmStatusReport;
+import models.dto.HomeAlarmStatusReport;
+import models.dto.SystemChangeEvent;
+import models.dto.SystemStatusReport;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Двоичный протокол - альтернатива строкам JSON, включается командой SET_PROTOCOL.
+ * <p>
+ * Кадр: длина полезной нагрузки (int), байт флагов, полезная нагрузка. Запрос и ответ кодируются вручную;
+ * значения параметров и данных ответа - с байтом типа. Системы безопасности и отчеты о состоянии пишутся
+ * компактно полями, прочие объекты - строкой JSON.
+ */
+public final class BinaryProtocol {
+    public static final String NAME = "binary";
+    public static final byte FLAGS_NONE = 0;
+    /** Полезная нагрузка сжата согласованным {@link CompressionCodec} */
+    public static final byte FLAG_COMPRESSED = 1;
+    public static final int MAX_FRAME_BYTES = 64 * 1024 * 1024;
+
+    private static final byte T_NULL = 0;
+    private static final byte T_STRING = 1;
+    private static final byte T_BOOLEAN = 2;
+    private static final byte T_INT = 3;
+    private static final byte T_LONG = 4;
+    private static final byte T_DOUBLE = 5;
+    private static final byte T_LIST = 6;
+    private static final byte T_MAP = 7;
+    private static final byte T_HOME_ALARM = 8;
+    private static final byte T_CAR_ALARM = 9;
+    private static final byte T_BIOMETRIC_LOCK = 10;
+    private static final byte T_HOME_REPORT = 11;
+    private static final byte T_CAR_REPORT = 12;
+    private static final byte T_BIOMETRIC_REPORT = 13;
+    private static final byte T_BATCH_RESULT = 14;
+    private static final byte T_JSON = 15;
+    private static final byte T_CHANGE_EVENT = 16;
+
+    private BinaryProtocol() {
+    }
+
+    // ============= КАДРЫ =============
+
+    public static void writeFrame(DataOutputStream out, byte flags, byte[] payload) throws IOException {
+        out.writeInt(payload.length);
+        out.writeByte(flags);
+        out.write(payload);
+        out.flush();
+    }
+
+    /**
+     * Читает один кадр
+     *
+     * @return полезная нагрузка или null, если поток закончился между кадрами
+     */
+    public static Frame readFrame(DataInputStream in) throws IOException {
+        int length;
+        try {
+            length = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        if (length < 0 || length > MAX_FRAME_BYTES) {
+            throw new IOException("Недопустимая длина кадра: " + length);
+        }
+        byte flags = in.readByte();
+        byte[] payload = new byte[length];
+        in.readFully(payload);
+        return new Frame(flags, payload);
+    }
+
+    public static final class Frame {
+        private final byte flags;
+        private final byte[] payload;
+
+        Frame(byte flags, byte[] payload) {
+            this.flags = flags;
+            this.payload = payload;
+        }
+
+        public byte getFlags() {
+            return flags;
+        }
+
+        public byte[] getPayload() {
+            return payload;
+        }
+    }
+
+    // ============= ЗАПРОС И ОТВЕТ =============
+
+    public static byte[] encodeRequest(Request request) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        writeId(out, request.getId());
+        writeString(out, request.getCommand());
+        writeValue(out, request.getParams());
+        return bytes.toByteArray();
+    }
+
+    @SuppressWarnings("unchecked")
+    public static Request decodeRequest(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        Long id = readId(in);
+        String command = readString(in);
+        Object params = readValue(in);
+        Request request = new Request(command, params instanceof Map<?, ?>
+                ? (Map<String, Object>) params : new LinkedHashMap<>());
+        request.setId(id);
+        return request;
+    }
+
+    public static byte[] encodeResponse(Response response) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        writeId(out, response.getId());
+        out.writeBoolean(response.isSuccess());
+        out.writeBoolean(response.isMore());
+        writeString(out, response.getMessage());
+        writeValue(out, response.getData());
+        return bytes.toByteArray();
+    }
+
+    public static Response decodeResponse(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        Long id = readId(in);
+        boolean success = in.readBoolean();
+        boolean more = in.readBoolean();
+        String message = readString(in);
+        Response response = new Response(success, message, readValue(in));
+        response.setId(id);
+        response.setMore(more);
+        return response;
+    }
+
+    private static void writeId(DataOutputStream out, Long id) throws IOException {
+        out.writeBoolean(id != null);
+        if (id != null) {
+            out.writeLong(id);
+        }
+    }
+
+    private static Long readId(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readLong() : null;
+    }
+
+    // ============= ЗНАЧЕНИЯ =============
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(T_NULL);
+        } else if (value instanceof String s) {
+            out.writeByte(T_STRING);
+            writeString(out, s);
+        } else if (value instanceof Boolean b) {
+            out.writeByte(T_BOOLEAN);
+            out.writeBoolean(b);
+        } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            out.writeByte(T_INT);
+            out.writeInt(((Number) value).intValue());
+        } else if (value instanceof Long l) {
+            out.writeByte(T_LONG);
+            out.writeLong(l);
+        } else if (value instanceof Double || value instanceof Float) {
+            out.writeByte(T_DOUBLE);
+            out.writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof Collection<?> list) {
+            out.writeByte(T_LIST);
+            out.writeInt(list.size());
+            for (Object element : list) {
+                writeValue(out, element);
+            }
+        } else if (value instanceof Map<?, ?> map) {
+            out.writeByte(T_MAP);
+            out.writeInt(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                writeString(out, String.valueOf(entry.getKey()));
+                writeValue(out, entry.getValue());
+            }
+        } else if (value instanceof SecuritySystem system) {
+            writeSystem(out, system);
+        } else if (value instanceof SystemStatusReport report) {
+            writeReport(out, report);
+        } else if (value instanceof BatchResult result) {
+            out.writeByte(T_BATCH_RESULT);
+            out.writeInt(result.getIndex());
+            writeString(out, result.getCommand());
+            writeString(out, result.getSystemId());
+            out.writeBoolean(result.isSuccess());
+            writeString(out, result.getMessage());
+            writeValue(out, result.getData());
+        } else if (value instanceof SystemChangeEvent event) {
+            out.writeByte(T_CHANGE_EVENT);
+            out.writeLong(event.getSequence());
+            writeString(out, event.getTimestamp() != null ? event.getTimestamp().toString() : null);
+            writeString(out, event.getSystemId());
+            writeString(out, event.getSystemType());
+            writeString(out, event.getLocation());
+            writeString(out, event.getSecurityMode());
+            out.writeBoolean(event.isArmed());
+            out.writeByte(event.getBatteryLevel());
+            out.writeByte(event.getSignalStrength());
+            writeString(out, event.getEventType().name());
+            writeString(out, event.getDetails());
+            out.writeLong(event.getVersion());
+        } else {
+            out.writeByte(T_JSON);
+            writeString(out, ProtocolJson.gson().toJson(value));
+        }
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case T_NULL:
+                return null;
+            case T_STRING:
+                return readString(in);
+            case T_BOOLEAN:
+                return in.readBoolean();
+            case T_INT:
+                return in.readInt();
+            case T_LONG:
+                return in.readLong();
+            case T_DOUBLE:
+                return in.readDouble();
+            case T_LIST: {
+                int size = in.readInt();
+                List<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(readValue(in));
+                }
+                return list;
+            }
+            case T_MAP: {
+                int size = in.readInt();
+                Map<String, Object> map = new LinkedHashMap<>();
+                for (int i = 0; i < size; i++) {
+                    map.put(readString(in), readValue(in));
+                }
+                return map;
+            }
+            case T_HOME_ALARM:
+            case T_CAR_ALARM:
+            case T_BIOMETRIC_LOCK:
+                return readSystem(in, type);
+            case T_HOME_REPORT:
+            case T_CAR_REPORT:
+            case T_BIOMETRIC_REPORT:
+                return readReport(in, type);
+            case T_BATCH_RESULT: {
+                int index = in.readInt();
+                String command = readString(in);
+                String systemId = readString(in);
+                boolean success = in.readBoolean();
+                String message = readString(in);
+                Object data = readValue(in);
+                return new BatchResult(index, command, systemId, new Response(success, message, data));
+            }
+            case T_CHANGE_EVENT: {
+                long sequence = in.readLong();
+                String timestamp = readString(in);
+                return new SystemChangeEvent(sequence, timestamp != null ? LocalDateTime.parse(timestamp) : null,
+                        readString(in), readString(in), readString(in), readString(in), in.readBoolean(),
+                        in.readByte(), in.readByte(), EventType.valueOf(readString(in)), readString(in), in.readLong());
+            }
+            case T_JSON:
+                return ProtocolJson.gson().fromJson(readString(in), Object.class);
+            default:
+                throw new IOException("Неизвестный тип значения: " + type);
+        }
+    }
+
+    private static void writeSystem(DataOutputStream out, SecuritySystem system) throws IOException {
+        if (system instanceof HomeAlarmSystem) {
+            out.writeByte(T_HOME_ALARM);
+        } else if (system instanceof CarAlarmSystem) {
+            out.writeByte(T_CAR_ALARM);
+        } else if (system instanceof BiometricLock) {
+            out.writeByte(T_BIOMETRIC_LOCK);
+        } else {
+            out.writeByte(T_JSON);
+            writeString(out, ProtocolJson.gson().toJson(system));
+            return;
+        }
+        // Версия пишется раньше полей, как и в JSON
+        out.writeLong(system.getVersion());
+        writeString(out, system.getSystemId());
+        writeString(out, system.getLocation());
+        writeString(out, system.getSecurityMode());
+        out.writeBoolean(system.isArmed());
+        out.writeByte(system.getBatteryLevel());
+        out.writeByte(system.getSignalStrength());
+
+        if (system instanceof HomeAlarmSystem home) {
+            out.writeBoolean(home.isDoorSensorsActive());
+            out.writeBoolean(home.isWindowSensorsActive());
+            out.writeBoolean(home.isMotionSensorsActive());
+            out.writeByte(home.getSensitivityLevel());
+            out.writeBoolean(home.isSilentMode());
+            writeString(out, home.getAlarmSound());
+        } else if (system instanceof CarAlarmSystem car) {
+            out.writeBoolean(car.isShockSensorActive());
+            out.writeBoolean(car.isTiltSensorActive());
+            out.writeBoolean(car.isGlassBreakSensorActive());
+            out.writeBoolean(car.isRemoteStartEnabled());
+            writeString(out, car.getAlarmVolume());
+            out.writeInt(car.getPanicModeDuration());
+        } else if (system instanceof BiometricLock lock) {
+            Map<String, String> users = lock.getAuthorizedUsers();
+            out.writeInt(users.size());
+            for (Map.Entry<String, String> user : users.entrySet()) {
+                writeString(out, user.getKey());
+                writeString(out, user.getValue());
+            }
+            out.writeInt(lock.getFailedAttempts());
+            out.writeBoolean(lock.isFingerprintEnabled());
+            out.writeBoolean(lock.isFaceRecognitionEnabled());
+            writeString(out, lock.getLockStatus());
+            out.writeInt(lock.getAutoLockDelay());
+        }
+    }
+
+    /**
+     * Восстанавливает систему через конструктор и сеттеры. У созданной системы нет CSVLogger,
+     * поэтому сеттеры не пишут событий в журнал
+     */
+    private static SecuritySystem readSystem(DataInputStream in, byte type) throws IOException {
+        long version = in.readLong();
+        String systemId = readString(in);
+        String location = readString(in);
+        String securityMode = readString(in);
+        boolean armed = in.readBoolean();
+        int batteryLevel = in.readByte();
+        int signalStrength = in.readByte();
+
+        SecuritySystem system;
+        if (type == T_HOME_ALARM) {
+            HomeAlarmSystem home = new HomeAlarmSystem(systemId, location);
+            home.setDoorSensorsActive(in.readBoolean());
+            home.setWindowSensorsActive(in.readBoolean());
+            home.setMotionSensorsActive(in.readBoolean());
+            home.setSensitivityLevel(in.readByte());
+            // setSilentMode меняет звук тревоги, поэтому звук восстанавливается после него
+            home.setSilentMode(in.readBoolean());
+            home.setAlarmSound(readString(in));
+            system = home;
+        } else if (type == T_CAR_ALARM) {
+            CarAlarmSystem car = new CarAlarmSystem(systemId, location);
+            car.setShockSensorActive(in.readBoolean());
+            car.setTiltSensorActive(in.readBoolean());
+            car.setGlassBreakSensorActive(in.readBoolean());
+            car.setRemoteStartEnabled(in.readBoolean());
+            String volume = readString(in);
+            if (volume != null) {
+                car.setAlarmVolume(volume);
+            }
+            car.setPanicModeDuration(in.readInt());
+            system = car;
+        } else {
+            BiometricLock lock = new BiometricLock(systemId, location);
+            int users = in.readInt();
+            for (int i = 0; i < users; i++) {
+                lock.addUser(readString(in), readString(in));
+            }
+            lock.setFailedAttempts(in.readInt());
+            lock.setFingerprintEnabled(in.readBoolean());
+            lock.setFaceRecognitionEnabled(in.readBoolean());
+            lock.setLockStatus(readString(in));
+            lock.setAutoLockDelay(in.readInt());
+            system = lock;
+        }
+
+        if (securityMode != null) {
+            system.setSecurityMode(securityMode);
+        }
+        if (armed) {
+            system.armSystem();
+        }
+        system.setBatteryLevel(batteryLevel);
+        system.setSignalStrength(signalStrength);
+        system.setVersion(version);
+        return system;
+    }
+
+    private static void writeReport(DataOutputStream out, SystemStatusReport report) throws IOException {
+        if (report instanceof HomeAlarmStatusReport) {
+            out.writeByte(T_HOME_REPORT);
+        } else if (report instanceof CarAlarmStatusReport) {
+            out.writeByte(T_CAR_REPORT);
+        } else if (report instanceof BiometricLockStatusReport) {
+            out.writeByte(T_BIOMETRIC_REPORT);
+        } else {
+            out.writeByte(T_JSON);
+            writeString(out, ProtocolJson.gson().toJson(report));
+            return;
+        }
+        out.writeLong(report.getVersion());
+        writeString(out, report.getSystemId());
+        writeString(out, report.getLocation());
+        writeString(out, report.getSecurityMode());
+        out.writeBoolean(report.isArmed());
+        out.writeByte(report.getBatteryLevel());
+        out.writeByte(report.getSignalStrength());
+
+        if (report instanceof HomeAlarmStatusReport home) {
+            out.writeBoolean(home.isDoorSensorsActive());
+            out.writeBoolean(home.isWindowSensorsActive());
+            out.writeBoolean(home.isMotionSensorsActive());
+            out.writeByte(home.getSensitivityLevel());
+            out.writeBoolean(home.isSilentMode());
+            writeString(out, home.getAlarmSound());
+        } else if (report instanceof CarAlarmStatusReport car) {
+            out.writeBoolean(car.isShockSensorActive());
+            out.writeBoolean(car.isTiltSensorActive());
+            out.writeBoolean(car.isGlassBreakSensorActive());
+            out.writeBoolean(car.isRemoteStartEnabled());
+            writeString(out, car.getAlarmVolume());
+            out.writeInt(car.getPanicModeDuration());
+        } else if (report instanceof BiometricLockStatusReport lock) {
+            out.writeInt(lock.getAuthorizedUsersCount());
+            out.writeInt(lock.getFailedAttempts());
+            out.writeBoolean(lock.isFingerprintEnabled());
+            out.writeBoolean(lock.isFaceRecognitionEnabled());
+            writeString(out, lock.getLockStatus());
+            out.writeInt(lock.getAutoLockDelay());
+        }
+    }
+
+    private static SystemStatusReport readReport(DataInputStream in, byte type) throws IOException {
+        long version = in.readLong();
+        SystemStatusReport report = readReportFields(in, type);
+        report.setVersion(version);
+        return report;
+    }
+
+    private static SystemStatusReport readReportFields(DataInputStream in, byte type) throws IOException {
+        String systemId = readString(in);
+        String location = readString(in);
+        String securityMode = readString(in);
+        boolean armed = in.readBoolean();
+        int batteryLevel = in.readByte();
+        int signalStrength = in.readByte();
+
+        if (type == T_HOME_REPORT) {
+            return new HomeAlarmStatusReport(systemId, location, securityMode, armed, batteryLevel, signalStrength,
+                    in.readBoolean(), in.readBoolean(), in.readBoolean(), in.readByte(),
+                    in.readBoolean(), readString(in));
+        } else if (type == T_CAR_REPORT) {
+            return new CarAlarmStatusReport(systemId, location, securityMode, armed, batteryLevel, signalStrength,
+                    in.readBoolean(), in.readBoolean(), in.readBoolean(), in.readBoolean(),
+                    readString(in), in.readInt());
+        }
+        return new BiometricLockStatusReport(systemId, location, securityMode, armed, batteryLevel, signalStrength,
+                in.readInt(), in.readInt(), in.readBoolean(), in.readBoolean(),
+                readString(in), in.readInt());
+    }
+
+    // Строка: длина в байтах UTF-8 (-1 для null) и сами байты; в отличие от writeUTF без ограничения 64 КБ
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Буферизованный поток для записи кадров; {@link #writeFrame} сбрасывает его после каждого кадра
+     */
+    public static DataOutputStream frameOutput(OutputStream out) {
+        return new DataOutputStream(new BufferedOutputStream(out, 64 * 1024));
+    }
+}
@@ -0,0 +1,32 @@
+package network;
+
+import java.io.IOException;
+
+/**
+ * Алгоритм сжатия ответов, согласуемый командой SET_COMPRESSION.
+ * Сжатый ответ JSON передается строкой {@link #LINE_PREFIX} + Base64, сжатый кадр двоичного протокола
+ * помечается флагом {@link BinaryProtocol#FLAG_COMPRESSED}
+ */
+public interface CompressionCodec {
+    String LINE_PREFIX = "Z";
+    String NONE = "none";
+
+    /**
+     * Имя для параметра codec команды SET_COMPRESSION
+     */
+    String name();
+
+    byte[] compress(byte[] data) throws IOException;
+
+    byte[] decompress(byte[] data) throws IOException;
+
+    /**
+     * @return алгоритм по имени или null, если такой не поддерживается
+     */
+    static CompressionCodec forName(String name) {
+        if (DeflateCodec.NAME.equalsIgnoreCase(name)) {
+            return new DeflateCodec();
+        }
+        return null;
+    }
+}
@@ -40,6 +40,28 @@ public class NetworkConstant {
     public static final String PING = "PING";
     public static final String GET_SYSTEM_COUNT = "GET_SYSTEM_COUNT";
 
+    // Метрики сервера: сессии, трафик, журнал, подписки, число вызовов и задержки по командам
+    public static final String METRICS = "METRICS";
+
+    // Переключение протокола соединения (json или binary), отправляется строкой JSON
+    public static final String SET_PROTOCOL = "SET_PROTOCOL";
+    public static final String PROTOCOL_JSON = "json";
+
+    // Сжатие ответов соединения выше порога (параметры codec и threshold)
+    public static final String SET_COMPRESSION = "SET_COMPRESSION";
+
+    // Подписка на изменения систем: события приходят частями (more=true) с id запроса SUBSCRIBE
+    public static final String SUBSCRIBE = "SUBSCRIBE";
+    public static final String UNSUBSCRIBE = "UNSUBSCRIBE";
+
+    // Пакетная команда: список подкоманд или одна команда для списка систем
+    public static final String BATCH = "BATCH";
+
+    // Сообщение об отказе в обслуживании при перегрузке сервера
+    public static final String MESSAGE_SERVER_BUSY = "Сервер перегружен, повторите запрос позже";
+    // Ответ на условный запрос (ifNewerThan), если данные не изменились; data пусто, кроме GET_ALL_SYSTEMS
+    public static final String MESSAGE_NOT_MODIFIED = "Не изменилось";
+
     // Ключи параметров
     public static final String PARAM_INDEX = "index";
     public static final String PARAM_SYSTEM_ID = "systemId";
@@ -49,6 +71,34 @@ public class NetworkConstant {
     public static final String PARAM_FILE_NAME = "fileName";
     public static final String PARAM_APPEND = "append";
     public static final String PARAM_LIMIT = "limit";
+    public static final String PARAM_SINCE = "since";
     public static final String PARAM_INTERVAL = "interval";
     public static final String PARAM_LOCATION = "location";
+    public static final String PARAM_COMMANDS = "commands";
+    public static final String PARAM_BATCH_COMMAND = "batchCommand";
+    public static final String PARAM_SYSTEM_IDS = "systemIds";
+    public static final String PARAM_PROTOCOL = "protocol";
+    public static final String PARAM_CODEC = "codec";
+    public static final String PARAM_THRESHOLD = "threshold";
+    public static final String PARAM_OFFSET = "offset";
+    public static final String PARAM_AFTER_ID = "afterId";
+    public static final String PARAM_AFTER_KEY = "afterKey";
+    public static final String PARAM_STREAM = "stream";
+    public static final String PARAM_SYSTEM_TYPES = "systemTypes";
+    public static final String PARAM_EVENT_TYPES = "eventTypes";
+    public static final String PARAM_SUBSCRIPTION_ID = "subscriptionId";
+    public static final String PARAM_IF_NEWER_THAN = "ifNewerThan";
+
+    // Поля страницы списка систем (ответ GET_ALL_SYSTEMS с offset, afterKey, afterId или limit)
+    public static final String PAGE_SYSTEMS = "systems";
+    public static final String PAGE_OFFSET = "offset";
+    public static final String PAGE_TOTAL = "total";
+    public static final String PAGE_NEXT_OFFSET = "nextOffset";
+    public static final String PAGE_NEXT_AFTER_ID = "nextAfterId";
+    public static final String PAGE_NEXT_AFTER_KEY = "nextAfterKey";
+
+    // Поля изменений списка систем (ответ GET_ALL_SYSTEMS с ifNewerThan); системы - в PAGE_SYSTEMS
+    public static final String DELTA_REMOVED = "removed";
+    public static final String DELTA_VERSION = "version";
+    public static final String DELTA_FULL = "full";
 }
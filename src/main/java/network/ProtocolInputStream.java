@@ -0,0 +1,113 @@
+package network;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Буферизованный поток соединения, из которого можно читать и строки JSON, и двоичные кадры.
+ * В отличие от BufferedReader не забирает из потока байты сверх прочитанной строки,
+ * поэтому после смены протокола следующий кадр читается из того же буфера.
+ * Не потокобезопасен: читать должен один поток.
+ */
+public class ProtocolInputStream extends InputStream {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private final ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+    private int position;
+    private int limit;
+
+    public ProtocolInputStream(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Читает строку в UTF-8 до перевода строки
+     *
+     * @return строка без \n и \r или null в конце потока
+     */
+    public String readLine() throws IOException {
+        line.reset();
+        while (true) {
+            if (position == limit && !fill()) {
+                return line.size() > 0 ? decode(line.toByteArray(), line.size()) : null;
+            }
+            int start = position;
+            while (position < limit && buffer[position] != '\n') {
+                position++;
+            }
+            if (position < limit) {
+                // Строка целиком в буфере - без промежуточного копирования
+                int end = position++;
+                if (line.size() == 0) {
+                    return decode(buffer, start, end);
+                }
+                line.write(buffer, start, end - start);
+                return decode(line.toByteArray(), line.size());
+            }
+            line.write(buffer, start, position - start);
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return buffer[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] target, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (position == limit) {
+            // Большие чтения идут мимо буфера
+            if (length >= buffer.length) {
+                return in.read(target, offset, length);
+            }
+            if (!fill()) {
+                return -1;
+            }
+        }
+        int count = Math.min(length, limit - position);
+        System.arraycopy(buffer, position, target, offset, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (limit - position) + in.available();
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private boolean fill() throws IOException {
+        int read = in.read(buffer, 0, buffer.length);
+        if (read <= 0) {
+            return false;
+        }
+        position = 0;
+        limit = read;
+        return true;
+    }
+
+    private static String decode(byte[] bytes, int length) {
+        return decode(bytes, 0, length);
+    }
+
+    private static String decode(byte[] bytes, int start, int end) {
+        if (end > start && bytes[end - 1] == '\r') {
+            end--;
+        }
+        return new String(bytes, start, end - start, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,734 @@
+package network;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import models.BiometricLock;
+import models.CarAlarmSystem;
+import models.EventType;
+import models.HomeAlarmSystem;
+import models.SecuritySystem;
+import models.dto.BiometricLockStatusReport;
+import models.dto.CarAlarmStatusReport;
+import models.dto.EmergencyEvent;
+import models.dto.HomeAlarmStatusReport;
+import models.dto.SystemChangeEvent;
+import models.dto.SystemStatusReport;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Общий экземпляр Gson протокола JSON с адаптерами, написанными вручную, без рефлексии.
+ * <p>
+ * Системы, отчеты о состоянии, события тревоги и результаты пакета пишутся с первым полем type
+ * (простое имя класса). При чтении ответа поле data разбирается за один проход: объект с известным type
+ * сразу создается нужного класса, остальное - списки, Map, строки, числа (Double) и boolean, как у Gson.
+ * Остальные поля совпадают с тем, что писал Gson через рефлексию, поэтому старые клиенты ответы понимают.
+ */
+public final class ProtocolJson {
+    public static final String TYPE_FIELD = "type";
+
+    private static final String HOME_ALARM = HomeAlarmSystem.class.getSimpleName();
+    private static final String CAR_ALARM = CarAlarmSystem.class.getSimpleName();
+    private static final String BIOMETRIC_LOCK = BiometricLock.class.getSimpleName();
+    private static final String HOME_REPORT = HomeAlarmStatusReport.class.getSimpleName();
+    private static final String CAR_REPORT = CarAlarmStatusReport.class.getSimpleName();
+    private static final String BIOMETRIC_REPORT = BiometricLockStatusReport.class.getSimpleName();
+    private static final String EMERGENCY_EVENT = EmergencyEvent.class.getSimpleName();
+    private static final String BATCH_RESULT = BatchResult.class.getSimpleName();
+    private static final String CHANGE_EVENT = SystemChangeEvent.class.getSimpleName();
+
+    private static final SecuritySystemAdapter SYSTEM_ADAPTER = new SecuritySystemAdapter();
+    private static final StatusReportAdapter REPORT_ADAPTER = new StatusReportAdapter();
+    private static final EmergencyEventAdapter EVENT_ADAPTER = new EmergencyEventAdapter();
+    private static final BatchResultAdapter BATCH_ADAPTER = new BatchResultAdapter();
+    private static final ChangeEventAdapter CHANGE_ADAPTER = new ChangeEventAdapter();
+
+    private static final Gson GSON = new GsonBuilder()
+            .registerTypeHierarchyAdapter(SecuritySystem.class, SYSTEM_ADAPTER.nullSafe())
+            .registerTypeHierarchyAdapter(SystemStatusReport.class, REPORT_ADAPTER.nullSafe())
+            .registerTypeAdapter(EmergencyEvent.class, EVENT_ADAPTER.nullSafe())
+            .registerTypeAdapter(BatchResult.class, BATCH_ADAPTER.nullSafe())
+            .registerTypeAdapter(SystemChangeEvent.class, CHANGE_ADAPTER.nullSafe())
+            .registerTypeAdapter(Response.class, new ResponseAdapter().nullSafe())
+            .create();
+
+    private ProtocolJson() {
+    }
+
+    /**
+     * Потокобезопасный общий экземпляр
+     */
+    public static Gson gson() {
+        return GSON;
+    }
+
+    // ============= ЗНАЧЕНИЯ БЕЗ ОБЪЯВЛЕННОГО ТИПА =============
+
+    private static void writeValue(JsonWriter out, Object value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+        } else {
+            GSON.toJson(value, value.getClass(), out);
+        }
+    }
+
+    private static Object readValue(JsonReader in) throws IOException {
+        switch (in.peek()) {
+            case BEGIN_ARRAY: {
+                List<Object> list = new ArrayList<>();
+                in.beginArray();
+                while (in.hasNext()) {
+                    list.add(readValue(in));
+                }
+                in.endArray();
+                return list;
+            }
+            case BEGIN_OBJECT:
+                return readObject(in);
+            case STRING:
+                return in.nextString();
+            case NUMBER:
+                return in.nextDouble();
+            case BOOLEAN:
+                return in.nextBoolean();
+            case NULL:
+                in.nextNull();
+                return null;
+            default:
+                throw new JsonParseException("Неожиданный элемент JSON: " + in.peek());
+        }
+    }
+
+    /**
+     * Объект с известным type в первом поле создается сразу нужного класса, иначе читается в Map
+     */
+    private static Object readObject(JsonReader in) throws IOException {
+        in.beginObject();
+        Map<String, Object> map = new LinkedHashMap<>();
+        if (in.hasNext()) {
+            String name = in.nextName();
+            if (TYPE_FIELD.equals(name) && in.peek() == JsonToken.STRING) {
+                String type = in.nextString();
+                Object typed = readTypedFields(in, type);
+                if (typed != null) {
+                    return typed;
+                }
+                map.put(name, type);
+            } else {
+                map.put(name, readValue(in));
+            }
+        }
+        while (in.hasNext()) {
+            map.put(in.nextName(), readValue(in));
+        }
+        in.endObject();
+        return map;
+    }
+
+    /**
+     * Дочитывает поля объекта известного типа и закрывающую скобку
+     *
+     * @return объект или null, если тип неизвестен (тогда поток не тронут)
+     */
+    private static Object readTypedFields(JsonReader in, String type) throws IOException {
+        if (HOME_ALARM.equals(type) || CAR_ALARM.equals(type) || BIOMETRIC_LOCK.equals(type)) {
+            return SYSTEM_ADAPTER.readFields(in, type);
+        }
+        if (HOME_REPORT.equals(type) || CAR_REPORT.equals(type) || BIOMETRIC_REPORT.equals(type)) {
+            return REPORT_ADAPTER.readFields(in, type);
+        }
+        if (EMERGENCY_EVENT.equals(type)) {
+            return EVENT_ADAPTER.readFields(in);
+        }
+        if (BATCH_RESULT.equals(type)) {
+            return BATCH_ADAPTER.readFields(in);
+        }
+        if (CHANGE_EVENT.equals(type)) {
+            return CHANGE_ADAPTER.readFields(in);
+        }
+        return null;
+    }
+
+    private static String nextStringOrNull(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextString();
+    }
+
+    // ============= ОТВЕТ =============
+
+    private static final class ResponseAdapter extends TypeAdapter<Response> {
+        @Override
+        public void write(JsonWriter out, Response response) throws IOException {
+            out.beginObject();
+            if (response.getId() != null) {
+                out.name("id").value(response.getId());
+            }
+            out.name("success").value(response.isSuccess());
+            if (response.getMessage() != null) {
+                out.name("message").value(response.getMessage());
+            }
+            if (response.getData() != null) {
+                out.name("data");
+                writeValue(out, response.getData());
+            }
+            if (response.isMore()) {
+                out.name("more").value(true);
+            }
+            out.endObject();
+        }
+
+        @Override
+        public Response read(JsonReader in) throws IOException {
+            Response response = new Response();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "id" -> response.setId(in.nextLong());
+                    case "success" -> response.setSuccess(in.nextBoolean());
+                    case "message" -> response.setMessage(nextStringOrNull(in));
+                    case "data" -> response.setData(readValue(in));
+                    case "more" -> response.setMore(in.nextBoolean());
+                    default -> in.skipValue();
+                }
+            }
+            in.endObject();
+            return response;
+        }
+    }
+
+    // ============= СИСТЕМЫ БЕЗОПАСНОСТИ =============
+
+    private static final class SecuritySystemAdapter extends TypeAdapter<SecuritySystem> {
+        @Override
+        public void write(JsonWriter out, SecuritySystem system) throws IOException {
+            out.beginObject();
+            out.name(TYPE_FIELD).value(system.getClass().getSimpleName());
+            // Версия читается раньше полей: при параллельном изменении она может только отстать от состояния
+            out.name("version").value(system.getVersion());
+            out.name("systemId").value(system.getSystemId());
+            out.name("location").value(system.getLocation());
+            out.name("securityMode").value(system.getSecurityMode());
+            out.name("isArmed").value(system.isArmed());
+            out.name("batteryLevel").value(system.getBatteryLevel());
+            out.name("signalStrength").value(system.getSignalStrength());
+
+            if (system instanceof HomeAlarmSystem home) {
+                out.name("doorSensorsActive").value(home.isDoorSensorsActive());
+                out.name("windowSensorsActive").value(home.isWindowSensorsActive());
+                out.name("motionSensorsActive").value(home.isMotionSensorsActive());
+                out.name("sensitivityLevel").value(home.getSensitivityLevel());
+                out.name("silentMode").value(home.isSilentMode());
+                out.name("alarmSound").value(home.getAlarmSound());
+            } else if (system instanceof CarAlarmSystem car) {
+                out.name("shockSensorActive").value(car.isShockSensorActive());
+                out.name("tiltSensorActive").value(car.isTiltSensorActive());
+                out.name("glassBreakSensorActive").value(car.isGlassBreakSensorActive());
+                out.name("remoteStartEnabled").value(car.isRemoteStartEnabled());
+                out.name("alarmVolume").value(car.getAlarmVolume());
+                out.name("panicModeDuration").value(car.getPanicModeDuration());
+            } else if (system instanceof BiometricLock lock) {
+                out.name("authorizedUsers").beginObject();
+                // Пользователь без имени тоже пишется, иначе при чтении он пропадет
+                boolean serializeNulls = out.getSerializeNulls();
+                out.setSerializeNulls(true);
+                for (Map.Entry<String, String> user : lock.getAuthorizedUsers().entrySet()) {
+                    out.name(user.getKey()).value(user.getValue());
+                }
+                out.setSerializeNulls(serializeNulls);
+                out.endObject();
+                out.name("failedAttempts").value(lock.getFailedAttempts());
+                out.name("fingerprintEnabled").value(lock.isFingerprintEnabled());
+                out.name("faceRecognitionEnabled").value(lock.isFaceRecognitionEnabled());
+                out.name("lockStatus").value(lock.getLockStatus());
+                out.name("autoLockDelay").value(lock.getAutoLockDelay());
+            }
+            out.endObject();
+        }
+
+        @Override
+        public SecuritySystem read(JsonReader in) throws IOException {
+            in.beginObject();
+            return readFields(in, null);
+        }
+
+        /**
+         * Без поля type (ответ старого сервера) тип определяется по набору полей
+         */
+        SecuritySystem readFields(JsonReader in, String type) throws IOException {
+            SystemFields f = new SystemFields();
+            f.type = type;
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (in.peek() == JsonToken.NULL) {
+                    in.nextNull();
+                    continue;
+                }
+                switch (name) {
+                    case TYPE_FIELD -> f.type = in.nextString();
+                    case "systemId" -> f.systemId = in.nextString();
+                    case "location" -> f.location = in.nextString();
+                    case "securityMode" -> f.securityMode = in.nextString();
+                    case "isArmed" -> f.armed = in.nextBoolean();
+                    case "batteryLevel" -> f.batteryLevel = in.nextInt();
+                    case "signalStrength" -> f.signalStrength = in.nextInt();
+                    case "version" -> f.version = in.nextLong();
+                    case "doorSensorsActive" -> f.doorSensorsActive = in.nextBoolean();
+                    case "windowSensorsActive" -> f.windowSensorsActive = in.nextBoolean();
+                    case "motionSensorsActive" -> f.motionSensorsActive = in.nextBoolean();
+                    case "sensitivityLevel" -> f.sensitivityLevel = in.nextInt();
+                    case "silentMode" -> f.silentMode = in.nextBoolean();
+                    case "alarmSound" -> f.alarmSound = in.nextString();
+                    case "shockSensorActive" -> f.shockSensorActive = in.nextBoolean();
+                    case "tiltSensorActive" -> f.tiltSensorActive = in.nextBoolean();
+                    case "glassBreakSensorActive" -> f.glassBreakSensorActive = in.nextBoolean();
+                    case "remoteStartEnabled" -> f.remoteStartEnabled = in.nextBoolean();
+                    case "alarmVolume" -> f.alarmVolume = in.nextString();
+                    case "panicModeDuration" -> f.panicModeDuration = in.nextInt();
+                    case "authorizedUsers" -> {
+                        f.authorizedUsers = new LinkedHashMap<>();
+                        in.beginObject();
+                        while (in.hasNext()) {
+                            f.authorizedUsers.put(in.nextName(), nextStringOrNull(in));
+                        }
+                        in.endObject();
+                    }
+                    case "failedAttempts" -> f.failedAttempts = in.nextInt();
+                    case "fingerprintEnabled" -> f.fingerprintEnabled = in.nextBoolean();
+                    case "faceRecognitionEnabled" -> f.faceRecognitionEnabled = in.nextBoolean();
+                    case "lockStatus" -> f.lockStatus = in.nextString();
+                    case "autoLockDelay" -> f.autoLockDelay = in.nextInt();
+                    default -> in.skipValue();
+                }
+            }
+            in.endObject();
+            return f.build();
+        }
+    }
+
+    /**
+     * Прочитанные поля системы любого типа. Система собирается конструктором и сеттерами
+     * после чтения всех полей, потому что порядок полей в JSON не гарантирован
+     */
+    private static final class SystemFields {
+        String type;
+        String systemId;
+        String location;
+        String securityMode;
+        boolean armed;
+        Integer batteryLevel;
+        Integer signalStrength;
+        long version;
+        Boolean doorSensorsActive;
+        Boolean windowSensorsActive;
+        Boolean motionSensorsActive;
+        Integer sensitivityLevel;
+        Boolean silentMode;
+        String alarmSound;
+        Boolean shockSensorActive;
+        Boolean tiltSensorActive;
+        Boolean glassBreakSensorActive;
+        Boolean remoteStartEnabled;
+        String alarmVolume;
+        Integer panicModeDuration;
+        Map<String, String> authorizedUsers;
+        Integer failedAttempts;
+        Boolean fingerprintEnabled;
+        Boolean faceRecognitionEnabled;
+        String lockStatus;
+        Integer autoLockDelay;
+
+        private String resolveType() {
+            if (type != null) {
+                return type;
+            }
+            if (doorSensorsActive != null || windowSensorsActive != null) {
+                return HOME_ALARM;
+            }
+            if (failedAttempts != null || fingerprintEnabled != null) {
+                return BIOMETRIC_LOCK;
+            }
+            if (shockSensorActive != null || panicModeDuration != null) {
+                return CAR_ALARM;
+            }
+            throw new JsonParseException("Не удалось определить тип системы " + systemId);
+        }
+
+        SecuritySystem build() {
+            String resolved = resolveType();
+            SecuritySystem system;
+            if (HOME_ALARM.equals(resolved)) {
+                HomeAlarmSystem home = new HomeAlarmSystem(systemId, location);
+                if (doorSensorsActive != null) home.setDoorSensorsActive(doorSensorsActive);
+                if (windowSensorsActive != null) home.setWindowSensorsActive(windowSensorsActive);
+                if (motionSensorsActive != null) home.setMotionSensorsActive(motionSensorsActive);
+                if (sensitivityLevel != null) home.setSensitivityLevel(sensitivityLevel);
+                // setSilentMode меняет звук тревоги, поэтому звук восстанавливается после него
+                if (silentMode != null) home.setSilentMode(silentMode);
+                home.setAlarmSound(alarmSound);
+                system = home;
+            } else if (CAR_ALARM.equals(resolved)) {
+                CarAlarmSystem car = new CarAlarmSystem(systemId, location);
+                if (shockSensorActive != null) car.setShockSensorActive(shockSensorActive);
+                if (tiltSensorActive != null) car.setTiltSensorActive(tiltSensorActive);
+                if (glassBreakSensorActive != null) car.setGlassBreakSensorActive(glassBreakSensorActive);
+                if (remoteStartEnabled != null) car.setRemoteStartEnabled(remoteStartEnabled);
+                if (alarmVolume != null) car.setAlarmVolume(alarmVolume);
+                if (panicModeDuration != null) car.setPanicModeDuration(panicModeDuration);
+                system = car;
+            } else if (BIOMETRIC_LOCK.equals(resolved)) {
+                BiometricLock lock = new BiometricLock(systemId, location);
+                if (authorizedUsers != null) {
+                    for (Map.Entry<String, String> user : authorizedUsers.entrySet()) {
+                        lock.addUser(user.getKey(), user.getValue());
+                    }
+                }
+                if (failedAttempts != null) lock.setFailedAttempts(failedAttempts);
+                if (fingerprintEnabled != null) lock.setFingerprintEnabled(fingerprintEnabled);
+                if (faceRecognitionEnabled != null) lock.setFaceRecognitionEnabled(faceRecognitionEnabled);
+                lock.setLockStatus(lockStatus);
+                if (autoLockDelay != null) lock.setAutoLockDelay(autoLockDelay);
+                system = lock;
+            } else {
+                throw new JsonParseException("Неизвестный тип системы: " + resolved);
+            }
+
+            if (securityMode != null) {
+                system.setSecurityMode(securityMode);
+            }
+            if (armed) {
+                system.armSystem();
+            }
+            if (batteryLevel != null) system.setBatteryLevel(batteryLevel);
+            if (signalStrength != null) system.setSignalStrength(signalStrength);
+            // Сеттеры выше сдвинули версию по локальным часам, поэтому версия сервера ставится последней
+            system.setVersion(version);
+            return system;
+        }
+    }
+
+    // ============= ОТЧЕТЫ О СОСТОЯНИИ =============
+
+    private static final class StatusReportAdapter extends TypeAdapter<SystemStatusReport> {
+        @Override
+        public void write(JsonWriter out, SystemStatusReport report) throws IOException {
+            out.beginObject();
+            out.name(TYPE_FIELD).value(report.getClass().getSimpleName());
+            if (report instanceof HomeAlarmStatusReport home) {
+                out.name("doorSensorsActive").value(home.isDoorSensorsActive());
+                out.name("windowSensorsActive").value(home.isWindowSensorsActive());
+                out.name("motionSensorsActive").value(home.isMotionSensorsActive());
+                out.name("sensitivityLevel").value(home.getSensitivityLevel());
+                out.name("silentMode").value(home.isSilentMode());
+                out.name("alarmSound").value(home.getAlarmSound());
+            } else if (report instanceof CarAlarmStatusReport car) {
+                out.name("shockSensorActive").value(car.isShockSensorActive());
+                out.name("tiltSensorActive").value(car.isTiltSensorActive());
+                out.name("glassBreakSensorActive").value(car.isGlassBreakSensorActive());
+                out.name("remoteStartEnabled").value(car.isRemoteStartEnabled());
+                out.name("alarmVolume").value(car.getAlarmVolume());
+                out.name("panicModeDuration").value(car.getPanicModeDuration());
+            } else if (report instanceof BiometricLockStatusReport lock) {
+                out.name("authorizedUsersCount").value(lock.getAuthorizedUsersCount());
+                out.name("failedAttempts").value(lock.getFailedAttempts());
+                out.name("fingerprintEnabled").value(lock.isFingerprintEnabled());
+                out.name("faceRecognitionEnabled").value(lock.isFaceRecognitionEnabled());
+                out.name("lockStatus").value(lock.getLockStatus());
+                out.name("autoLockDelay").value(lock.getAutoLockDelay());
+            }
+            out.name("systemId").value(report.getSystemId());
+            out.name("location").value(report.getLocation());
+            out.name("securityMode").value(report.getSecurityMode());
+            out.name("isArmed").value(report.isArmed());
+            out.name("batteryLevel").value(report.getBatteryLevel());
+            out.name("signalStrength").value(report.getSignalStrength());
+            out.name("version").value(report.getVersion());
+            out.endObject();
+        }
+
+        @Override
+        public SystemStatusReport read(JsonReader in) throws IOException {
+            in.beginObject();
+            return readFields(in, null);
+        }
+
+        SystemStatusReport readFields(JsonReader in, String type) throws IOException {
+            ReportFields f = new ReportFields();
+            f.type = type;
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (in.peek() == JsonToken.NULL) {
+                    in.nextNull();
+                    continue;
+                }
+                switch (name) {
+                    case TYPE_FIELD -> f.type = in.nextString();
+                    case "systemId" -> f.systemId = in.nextString();
+                    case "location" -> f.location = in.nextString();
+                    case "securityMode" -> f.securityMode = in.nextString();
+                    case "isArmed" -> f.armed = in.nextBoolean();
+                    case "batteryLevel" -> f.batteryLevel = in.nextInt();
+                    case "signalStrength" -> f.signalStrength = in.nextInt();
+                    case "version" -> f.version = in.nextLong();
+                    case "doorSensorsActive" -> f.doorSensorsActive = in.nextBoolean();
+                    case "windowSensorsActive" -> f.windowSensorsActive = in.nextBoolean();
+                    case "motionSensorsActive" -> f.motionSensorsActive = in.nextBoolean();
+                    case "sensitivityLevel" -> f.sensitivityLevel = in.nextInt();
+                    case "silentMode" -> f.silentMode = in.nextBoolean();
+                    case "alarmSound" -> f.alarmSound = in.nextString();
+                    case "shockSensorActive" -> f.shockSensorActive = in.nextBoolean();
+                    case "tiltSensorActive" -> f.tiltSensorActive = in.nextBoolean();
+                    case "glassBreakSensorActive" -> f.glassBreakSensorActive = in.nextBoolean();
+                    case "remoteStartEnabled" -> f.remoteStartEnabled = in.nextBoolean();
+                    case "alarmVolume" -> f.alarmVolume = in.nextString();
+                    case "panicModeDuration" -> f.panicModeDuration = in.nextInt();
+                    case "authorizedUsersCount" -> f.authorizedUsersCount = in.nextInt();
+                    case "failedAttempts" -> f.failedAttempts = in.nextInt();
+                    case "fingerprintEnabled" -> f.fingerprintEnabled = in.nextBoolean();
+                    case "faceRecognitionEnabled" -> f.faceRecognitionEnabled = in.nextBoolean();
+                    case "lockStatus" -> f.lockStatus = in.nextString();
+                    case "autoLockDelay" -> f.autoLockDelay = in.nextInt();
+                    default -> in.skipValue();
+                }
+            }
+            in.endObject();
+            return f.build();
+        }
+    }
+
+    /**
+     * Прочитанные поля отчета любого типа; отчеты неизменяемы и создаются конструктором после чтения всех полей
+     */
+    private static final class ReportFields {
+        String type;
+        String systemId;
+        String location;
+        String securityMode;
+        boolean armed;
+        int batteryLevel;
+        int signalStrength;
+        Boolean doorSensorsActive;
+        boolean windowSensorsActive;
+        boolean motionSensorsActive;
+        int sensitivityLevel;
+        boolean silentMode;
+        String alarmSound;
+        Boolean shockSensorActive;
+        boolean tiltSensorActive;
+        boolean glassBreakSensorActive;
+        boolean remoteStartEnabled;
+        String alarmVolume;
+        int panicModeDuration;
+        int authorizedUsersCount;
+        Integer failedAttempts;
+        boolean fingerprintEnabled;
+        boolean faceRecognitionEnabled;
+        String lockStatus;
+        int autoLockDelay;
+        long version;
+
+        SystemStatusReport build() {
+            SystemStatusReport report = create();
+            report.setVersion(version);
+            return report;
+        }
+
+        private SystemStatusReport create() {
+            String resolved = type;
+            if (resolved == null) {
+                resolved = doorSensorsActive != null ? HOME_REPORT
+                        : failedAttempts != null ? BIOMETRIC_REPORT
+                        : shockSensorActive != null ? CAR_REPORT : null;
+            }
+            if (HOME_REPORT.equals(resolved)) {
+                return new HomeAlarmStatusReport(systemId, location, securityMode, armed, batteryLevel, signalStrength,
+                        Boolean.TRUE.equals(doorSensorsActive), windowSensorsActive, motionSensorsActive,
+                        sensitivityLevel, silentMode, alarmSound);
+            }
+            if (CAR_REPORT.equals(resolved)) {
+                return new CarAlarmStatusReport(systemId, location, securityMode, armed, batteryLevel, signalStrength,
+                        Boolean.TRUE.equals(shockSensorActive), tiltSensorActive, glassBreakSensorActive,
+                        remoteStartEnabled, alarmVolume, panicModeDuration);
+            }
+            if (BIOMETRIC_REPORT.equals(resolved)) {
+                return new BiometricLockStatusReport(systemId, location, securityMode, armed, batteryLevel,
+                        signalStrength, authorizedUsersCount, failedAttempts != null ? failedAttempts : 0,
+                        fingerprintEnabled, faceRecognitionEnabled, lockStatus, autoLockDelay);
+            }
+            throw new JsonParseException("Не удалось определить тип отчета " + systemId);
+        }
+    }
+
+    // ============= СОБЫТИЕ ТРЕВОГИ И РЕЗУЛЬТАТ ПАКЕТА =============
+
+    private static final class EmergencyEventAdapter extends TypeAdapter<EmergencyEvent> {
+        @Override
+        public void write(JsonWriter out, EmergencyEvent event) throws IOException {
+            out.beginObject();
+            out.name(TYPE_FIELD).value(EMERGENCY_EVENT);
+            out.name("systemId").value(event.getSystemId());
+            out.name("systemType").value(event.getSystemType());
+            out.name("eventType").value(event.getEventType());
+            out.name("description").value(event.getDescription());
+            out.name("timestamp").value(event.getTimestamp() != null ? event.getTimestamp().toString() : null);
+            out.name("requiresResponse").value(event.isRequiresResponse());
+            out.endObject();
+        }
+
+        @Override
+        public EmergencyEvent read(JsonReader in) throws IOException {
+            in.beginObject();
+            return readFields(in);
+        }
+
+        EmergencyEvent readFields(JsonReader in) throws IOException {
+            String systemId = null;
+            String systemType = null;
+            String eventType = null;
+            String description = null;
+            LocalDateTime timestamp = null;
+            boolean requiresResponse = false;
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "systemId" -> systemId = nextStringOrNull(in);
+                    case "systemType" -> systemType = nextStringOrNull(in);
+                    case "eventType" -> eventType = nextStringOrNull(in);
+                    case "description" -> description = nextStringOrNull(in);
+                    case "timestamp" -> {
+                        String value = nextStringOrNull(in);
+                        timestamp = value != null ? LocalDateTime.parse(value) : null;
+                    }
+                    case "requiresResponse" -> requiresResponse = in.nextBoolean();
+                    default -> in.skipValue();
+                }
+            }
+            in.endObject();
+            return new EmergencyEvent(systemId, systemType, eventType, description, timestamp, requiresResponse);
+        }
+    }
+
+    private static final class BatchResultAdapter extends TypeAdapter<BatchResult> {
+        @Override
+        public void write(JsonWriter out, BatchResult result) throws IOException {
+            out.beginObject();
+            out.name(TYPE_FIELD).value(BATCH_RESULT);
+            out.name("index").value(result.getIndex());
+            out.name("command").value(result.getCommand());
+            out.name("systemId").value(result.getSystemId());
+            out.name("success").value(result.isSuccess());
+            out.name("message").value(result.getMessage());
+            if (result.getData() != null) {
+                out.name("data");
+                writeValue(out, result.getData());
+            }
+            out.endObject();
+        }
+
+        @Override
+        public BatchResult read(JsonReader in) throws IOException {
+            in.beginObject();
+            return readFields(in);
+        }
+
+        BatchResult readFields(JsonReader in) throws IOException {
+            int index = 0;
+            String command = null;
+            String systemId = null;
+            boolean success = false;
+            String message = null;
+            Object data = null;
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "index" -> index = in.nextInt();
+                    case "command" -> command = nextStringOrNull(in);
+                    case "systemId" -> systemId = nextStringOrNull(in);
+                    case "success" -> success = in.nextBoolean();
+                    case "message" -> message = nextStringOrNull(in);
+                    case "data" -> data = readValue(in);
+                    default -> in.skipValue();
+                }
+            }
+            in.endObject();
+            return new BatchResult(index, command, systemId, new Response(success, message, data));
+        }
+    }
+
+    // ============= СОБЫТИЕ ПОДПИСКИ =============
+
+    private static final class ChangeEventAdapter extends TypeAdapter<SystemChangeEvent> {
+        @Override
+        public void write(JsonWriter out, SystemChangeEvent event) throws IOException {
+            out.beginObject();
+            out.name(TYPE_FIELD).value(CHANGE_EVENT);
+            out.name("sequence").value(event.getSequence());
+            out.name("timestamp").value(event.getTimestamp() != null ? event.getTimestamp().toString() : null);
+            out.name("systemId").value(event.getSystemId());
+            out.name("systemType").value(event.getSystemType());
+            out.name("location").value(event.getLocation());
+            out.name("securityMode").value(event.getSecurityMode());
+            out.name("isArmed").value(event.isArmed());
+            out.name("batteryLevel").value(event.getBatteryLevel());
+            out.name("signalStrength").value(event.getSignalStrength());
+            out.name("eventType").value(event.getEventType().name());
+            out.name("details").value(event.getDetails());
+            out.name("version").value(event.getVersion());
+            out.endObject();
+        }
+
+        @Override
+        public SystemChangeEvent read(JsonReader in) throws IOException {
+            in.beginObject();
+            return readFields(in);
+        }
+
+        SystemChangeEvent readFields(JsonReader in) throws IOException {
+            long sequence = 0;
+            LocalDateTime timestamp = null;
+            String systemId = null;
+            String systemType = null;
+            String location = null;
+            String securityMode = null;
+            boolean armed = false;
+            int batteryLevel = 0;
+            int signalStrength = 0;
+            EventType eventType = EventType.INFO;
+            String details = null;
+            long version = 0;
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "sequence" -> sequence = in.nextLong();
+                    case "timestamp" -> {
+                        String value = nextStringOrNull(in);
+                        timestamp = value != null ? LocalDateTime.parse(value) : null;
+                    }
+                    case "systemId" -> systemId = nextStringOrNull(in);
+                    case "systemType" -> systemType = nextStringOrNull(in);
+                    case "location" -> location = nextStringOrNull(in);
+                    case "securityMode" -> securityMode = nextStringOrNull(in);
+                    case "isArmed" -> armed = in.nextBoolean();
+                    case "batteryLevel" -> batteryLevel = in.nextInt();
+                    case "signalStrength" -> signalStrength = in.nextInt();
+                    case "eventType" -> eventType = EventType.valueOf(in.nextString());
+                    case "details" -> details = nextStringOrNull(in);
+                    case "version" -> version = in.nextLong();
+                    default -> in.skipValue();
+                }
+            }
+            in.endObject();
+            return new SystemChangeEvent(sequence, timestamp, systemId, systemType, location, securityMode,
+                    armed, batteryLevel, signalStrength, eventType, details, version);
+        }
+    }
+}
@@ -7,6 +7,8 @@ import java.util.Map;
  * Запрос от клиента к серверу
  */
 public class Request {
+    /** Идентификатор запроса, повторяется в ответе; null - клиент ответы не сопоставляет */
+    private Long id;
     private String command;
     private Map<String, Object> params;
 
@@ -24,6 +26,14 @@ public class Request {
         this.params = params;
     }
 
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
     public String getCommand() {
         return command;
     }
@@ -50,6 +60,6 @@ public class Request {
 
     @Override
     public String toString() {
-        return "Request{command='" + command + "', params=" + params + "}";
+        return "Request{id=" + id + ", command='" + command + "', params=" + params + "}";
     }
 }
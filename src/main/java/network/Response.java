@@ -4,9 +4,13 @@ package network;
  * Ответ сервера клиенту
  */
 public class Response {
+    /** Идентификатор запроса, на который дан ответ */
+    private Long id;
     private boolean success;
     private String message;
     private Object data;
+    /** true - промежуточная часть потокового ответа, за ней последуют другие с тем же id */
+    private Boolean more;
 
     public Response() {
     }
@@ -34,6 +38,14 @@ public class Response {
         return new Response(false, message);
     }
 
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
     public boolean isSuccess() {
         return success;
     }
@@ -58,8 +70,16 @@ public class Response {
         this.data = data;
     }
 
+    public boolean isMore() {
+        return Boolean.TRUE.equals(more);
+    }
+
+    public void setMore(boolean more) {
+        this.more = more ? Boolean.TRUE : null;
+    }
+
     @Override
     public String toString() {
-        return "Response{success=" + success + ", message='" + message + "', data=" + data + "}";
+        return "Response{id=" + id + ", success=" + success + ", message='" + message + "', data=" + data + "}";
     }
 }
@@ -1,78 +1,163 @@
 package server;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import config.ConfigManager;
 import controllers.SecuritySystemController;
+import controllers.SystemRegistry;
 import models.*;
 import models.dto.EmergencyEvent;
 import models.dto.SystemStatusReport;
+import network.BatchResult;
+import network.BinaryProtocol;
+import network.CompressionCodec;
 import network.NetworkConstant;
 import network.Request;
+import network.ProtocolInputStream;
+import network.ProtocolJson;
 import network.Response;
 
-import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.UncheckedIOException;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 public class ClientHandler implements Runnable {
+    private static final int DEFAULT_PAGE_SIZE = 1000;
+    // Ответы короче порога не сжимаются: PING и ARM не должны платить за сжатие задержкой
+    private static final int DEFAULT_COMPRESSION_THRESHOLD = 8 * 1024;
+    // Исходящая очередь событий подписок блокирующего движка
+    private static final int PUSH_QUEUE_CAPACITY = 1024;
+
+    private static final CommandRegistry COMMANDS = new CommandRegistry()
+            .register(NetworkConstant.PING, (handler, params) -> Response.success("PONG"))
+            .register(NetworkConstant.GET_ALL_SYSTEMS, ClientHandler::handleGetAllSystems)
+            .registerForSystem(NetworkConstant.GET_SYSTEM, ClientHandler::handleGetSystem)
+            .registerForSystem(NetworkConstant.GET_SYSTEM_BY_ID, ClientHandler::handleGetSystem)
+            .register(NetworkConstant.ADD_SYSTEM, ClientHandler::handleAddSystem)
+            .register(NetworkConstant.REMOVE_SYSTEM, ClientHandler::handleRemoveSystem)
+            .registerForSystem(NetworkConstant.REMOVE_SYSTEM_BY_ID, ClientHandler::handleRemoveSystemById)
+            .registerForSystem(NetworkConstant.ARM_SYSTEM, ClientHandler::handleArmSystem)
+            .registerForSystem(NetworkConstant.DISARM_SYSTEM, ClientHandler::handleDisarmSystem)
+            .registerForSystem(NetworkConstant.SET_SECURITY_MODE, ClientHandler::handleSetSecurityMode)
+            .registerForSystem(NetworkConstant.PERFORM_SELF_TEST, ClientHandler::handlePerformSelfTest)
+            .registerForSystem(NetworkConstant.SIMULATE_EMERGENCY, ClientHandler::handleSimulateEmergency)
+            .registerForSystem(NetworkConstant.GET_STATUS_REPORT, ClientHandler::handleGetStatusReport)
+            .registerForSystem(NetworkConstant.CALIBRATE_SENSORS, ClientHandler::handleCalibrateSensors)
+            .registerForSystem(NetworkConstant.CHECK_CONNECTIVITY, ClientHandler::handleCheckConnectivity)
+            .register(NetworkConstant.LOAD_SYSTEMS_FROM_FILE, ClientHandler::handleLoadSystemsFromFile)
+            .register(NetworkConstant.SET_FILE_NAME, ClientHandler::handleSetFileName)
+            .register(NetworkConstant.GET_CURRENT_FILE_NAME, ClientHandler::handleGetCurrentFileName)
+            .register(NetworkConstant.GET_SYSTEM_COUNT, (handler, params) ->
+                    Response.success("Количество систем", handler.systemController.getSystemCount()))
+            .register(NetworkConstant.METRICS, (handler, params) -> Response.success("Метрики сервера",
+                    MetricsReport.collect(handler.systemController, handler.csvLogger)))
+            .register(NetworkConstant.LOG_ALL_SYSTEMS_STATE, ClientHandler::handleLogAllSystemsState)
+            .register(NetworkConstant.GET_CSV_LOGS, ClientHandler::handleGetCsvLogs)
+            .register(NetworkConstant.GET_RECENT_LOGS, ClientHandler::handleGetRecentLogs)
+            .register(NetworkConstant.SET_CSV_LOG_INTERVAL, ClientHandler::handleSetCsvLogInterval)
+            .register(NetworkConstant.SAVE_SYSTEMS_TO_FILE, ClientHandler::handleSaveSystemsToFile)
+            .register(NetworkConstant.BATCH, ClientHandler::handleBatch)
+            .register(NetworkConstant.SET_PROTOCOL, ClientHandler::handleSetProtocol)
+            .register(NetworkConstant.SET_COMPRESSION, ClientHandler::handleSetCompression)
+            .register(NetworkConstant.SUBSCRIBE, ClientHandler::handleSubscribe)
+            .register(NetworkConstant.UNSUBSCRIBE, ClientHandler::handleUnsubscribe);
+
     private final Socket clientSocket;
     private final SecuritySystemController systemController;
     private final CSVLogger csvLogger;
+    private final ConfigManager config = ConfigManager.getInstance();
     private final Gson gson;
     private String clientAddress;
+    private boolean binaryProtocol;
+    private volatile CompressionCodec compression;
+    private volatile int compressionThreshold = DEFAULT_COMPRESSION_THRESHOLD;
+    // Отправка промежуточных частей потокового ответа; задается транспортом соединения
+    private volatile Consumer<Response> partialSender;
+    // Неблокирующая отправка событий подписок: false - исходящая очередь соединения переполнена
+    private volatile Predicate<Response> pushSender;
+    // Закрытие соединения, которым владеет движок сервера (у блокирующего движка - свой сокет)
+    private volatile Runnable sessionCloser;
+    // События подписок блокирующего движка пишет собственный поток соединения, чтобы медленный клиент
+    // задерживал только себя, а не общие потоки рассылки
+    private final BlockingQueue<Response> pushQueue = new ArrayBlockingQueue<>(PUSH_QUEUE_CAPACITY);
+    private Thread pushWriter;
+    private boolean disconnected;
+    // Запись в сокет блокирующего движка: ответы и события подписок из других потоков.
+    // ReentrantLock, а не synchronized: запись может ждать медленного клиента,
+    // а synchronized закрепил бы виртуальный поток за несущим
+    private final ReentrantLock writeLock = new ReentrantLock();
 
     public ClientHandler(Socket socket, SecuritySystemController controller, CSVLogger csvLogger) {
+        this(socket, socket.getInetAddress().getHostAddress() + ":" + socket.getPort(), controller, csvLogger);
+    }
+
+    /**
+     * Обработчик без собственного сокета: строки запросов передает движок сервера через {@link #handleLine}
+     */
+    public ClientHandler(String clientAddress, SecuritySystemController controller, CSVLogger csvLogger) {
+        this(null, clientAddress, controller, csvLogger);
+    }
+
+    private ClientHandler(Socket socket, String clientAddress, SecuritySystemController controller,
+                          CSVLogger csvLogger) {
         this.clientSocket = socket;
         this.systemController = controller;
         this.csvLogger = csvLogger;
-        this.gson = new Gson();
-        this.clientAddress = socket.getInetAddress().getHostAddress() + ":" + socket.getPort();
+        this.gson = ProtocolJson.gson();
+        this.clientAddress = clientAddress;
+    }
+
+    /**
+     * Зарегистрированные команды со счетчиками вызовов и задержками
+     */
+    static Collection<CommandRegistry.Command> commands() {
+        return COMMANDS.commands();
     }
 
     @Override
     public void run() {
         try (
-                BufferedReader in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-                PrintWriter out = new PrintWriter(clientSocket.getOutputStream(), true)
+                ProtocolInputStream in =
+                        new ProtocolInputStream(new CountingInputStream(clientSocket.getInputStream()));
+                OutputStream rawOut = new CountingOutputStream(clientSocket.getOutputStream())
         ) {
-            log("Клиент подключен");
-            csvLogger.logSystemEvent(EventType.CLIENT_CONNECTED, "Адрес: " + clientAddress);
+            onConnect();
 
+            PrintWriter out = new PrintWriter(new OutputStreamWriter(rawOut, StandardCharsets.UTF_8), true);
+            partialSender = part -> writeLine(out, encodeLine(part));
+            pushSender = this::queuePush;
             String inputLine;
-            while ((inputLine = in.readLine()) != null) {
-                try {
-                    Request request = gson.fromJson(inputLine, Request.class);
-                    String command = request.getCommand();
-
-                    log("Получен запрос: " + command);
-                    csvLogger.logSystemEvent(EventType.COMMAND_RECEIVED,
-                            "Команда: " + command + " от " + clientAddress);
-
-                    Response response = processRequest(request);
-
-                    String jsonResponse = gson.toJson(response);
-                    out.println(jsonResponse);
-
-                    if (response.isSuccess()) {
-                        log("Команда выполнена успешно: " + command);
-                        csvLogger.logSystemEvent(EventType.COMMAND_EXECUTED,
-                                "Команда: " + command + " от " + clientAddress);
-                    } else {
-                        log("Ошибка выполнения команды: " + command);
-                        csvLogger.logSystemEvent(EventType.COMMAND_FAILED,
-                                "Команда: " + command + ", Ошибка: " + response.getMessage());
-                    }
-
-                } catch (Exception e) {
-                    log("Ошибка обработки: " + e.getMessage());
-                    csvLogger.logSystemEvent(EventType.COMMAND_FAILED,
-                            "Ошибка обработки от " + clientAddress + ": " + e.getMessage());
-
-                    Response errorResponse = Response.error("Ошибка обработки запроса: " + e.getMessage());
-                    out.println(gson.toJson(errorResponse));
-                }
+            while (!binaryProtocol && (inputLine = in.readLine()) != null) {
+                writeLine(out, handleLine(inputLine));
+            }
+            if (binaryProtocol) {
+                runBinary(new DataInputStream(in), BinaryProtocol.frameOutput(rawOut));
             }
 
         } catch (IOException e) {
@@ -80,149 +165,606 @@ public class ClientHandler implements Runnable {
         } finally {
             try {
                 clientSocket.close();
-                log("Клиент отключен");
-                csvLogger.logSystemEvent(EventType.CLIENT_DISCONNECTED, "Адрес: " + clientAddress);
             } catch (IOException e) {
                 log("Ошибка закрытия сокета: " + e.getMessage());
             }
+            onDisconnect();
         }
     }
 
-    private Response processRequest(Request request) {
-        try {
-            if (request == null || request.getCommand() == null) {
-                return Response.error("Пустой запрос");
+    /**
+     * Цикл двоичного протокола после SET_PROTOCOL: кадр запроса - кадр ответа
+     */
+    private void runBinary(DataInputStream in, DataOutputStream out) throws IOException {
+        partialSender = part -> {
+            try {
+                writeResponseFrame(out, part);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
             }
+        };
+        BinaryProtocol.Frame frame;
+        while ((frame = BinaryProtocol.readFrame(in)) != null) {
+            Response response;
+            try {
+                response = handleRequest(BinaryProtocol.decodeRequest(frame.getPayload()));
+            } catch (IOException e) {
+                log("Ошибка разбора кадра: " + e.getMessage());
+                response = Response.error("Ошибка обработки запроса: " + e.getMessage());
+            }
+            writeResponseFrame(out, response);
+        }
+    }
 
-            String command = request.getCommand();
+    private void writeLine(PrintWriter out, String line) {
+        writeLock.lock();
+        try {
+            out.println(line);
+        } finally {
+            writeLock.unlock();
+        }
+    }
 
-            return switch (command) {
-                case NetworkConstant.PING ->
-                        Response.success("PONG");
+    /**
+     * События подписок пишутся из других потоков, поэтому кадр записывается целиком под writeLock
+     */
+    private void writeResponseFrame(DataOutputStream out, Response response) throws IOException {
+        byte[] payload = BinaryProtocol.encodeResponse(response);
+        CompressionCodec codec = compression;
+        boolean compress = codec != null && payload.length >= compressionThreshold;
+        byte[] frame = compress ? codec.compress(payload) : payload;
+        writeLock.lock();
+        try {
+            BinaryProtocol.writeFrame(out, compress ? BinaryProtocol.FLAG_COMPRESSED : BinaryProtocol.FLAGS_NONE, frame);
+        } finally {
+            writeLock.unlock();
+        }
+    }
 
-                case NetworkConstant.GET_ALL_SYSTEMS ->
-                        handleGetAllSystems();
+    /**
+     * Строка ответа в JSON; если соединение согласовало сжатие и ответ не короче порога -
+     * {@link CompressionCodec#LINE_PREFIX} и сжатый JSON в Base64
+     */
+    public String encodeLine(Response response) {
+        String json = gson.toJson(response);
+        CompressionCodec codec = compression;
+        if (codec == null || json.length() < compressionThreshold) {
+            return json;
+        }
+        try {
+            byte[] compressed = codec.compress(json.getBytes(StandardCharsets.UTF_8));
+            return CompressionCodec.LINE_PREFIX + Base64.getEncoder().encodeToString(compressed);
+        } catch (IOException e) {
+            log("Ошибка сжатия ответа: " + e.getMessage());
+            return json;
+        }
+    }
 
-                case NetworkConstant.GET_SYSTEM ->
-                        handleGetSystem(request);
+    /**
+     * Задает отправку промежуточных частей потоковых ответов для движка, который сам пишет в соединение
+     */
+    public void setPartialSender(Consumer<Response> partialSender) {
+        this.partialSender = partialSender;
+    }
 
-                case NetworkConstant.GET_SYSTEM_BY_ID ->
-                        handleGetSystemById(request);
+    /**
+     * Задает неблокирующую отправку событий подписок для движка, который сам пишет в соединение
+     */
+    public void setPushSender(Predicate<Response> pushSender) {
+        this.pushSender = pushSender;
+    }
 
-                case NetworkConstant.ADD_SYSTEM ->
-                        handleAddSystem(request);
+    /**
+     * Задает закрытие соединения для движка, который сам владеет сокетом
+     */
+    public void setSessionCloser(Runnable sessionCloser) {
+        this.sessionCloser = sessionCloser;
+    }
 
-                case NetworkConstant.REMOVE_SYSTEM ->
-                        handleRemoveSystem(request);
+    public void onConnect() {
+        log("Клиент подключен");
+        csvLogger.logSystemEvent(EventType.CLIENT_CONNECTED, "Адрес: " + clientAddress);
+    }
 
-                case NetworkConstant.REMOVE_SYSTEM_BY_ID ->
-                        handleRemoveSystemById(request);
+    public void onDisconnect() {
+        SubscriptionManager.getInstance().unsubscribeAll(this);
+        synchronized (this) {
+            disconnected = true;
+            if (pushWriter != null) {
+                pushWriter.interrupt();
+            }
+        }
+        log("Клиент отключен");
+        csvLogger.logSystemEvent(EventType.CLIENT_DISCONNECTED, "Адрес: " + clientAddress);
+    }
 
-                case NetworkConstant.ARM_SYSTEM ->
-                        handleArmSystem(request);
+    /**
+     * Обрабатывает одну строку запроса в JSON и возвращает строку ответа в JSON (без перевода строки)
+     */
+    public String handleLine(String inputLine) {
+        Request request;
+        try {
+            request = gson.fromJson(inputLine, Request.class);
+        } catch (Exception e) {
+            log("Ошибка обработки: " + e.getMessage());
+            csvLogger.logSystemEvent(EventType.COMMAND_FAILED,
+                    "Ошибка обработки от " + clientAddress + ": " + e.getMessage());
+            return encodeLine(Response.error("Ошибка обработки запроса: " + e.getMessage()));
+        }
+        return encodeLine(handleRequest(request));
+    }
 
-                case NetworkConstant.DISARM_SYSTEM ->
-                        handleDisarmSystem(request);
+    /**
+     * Выполняет разобранный запрос независимо от протокола: журналирует его и помечает ответ id запроса
+     */
+    private Response handleRequest(Request request) {
+        try {
+            String command = request != null ? request.getCommand() : null;
 
-                case NetworkConstant.SET_SECURITY_MODE ->
-                        handleSetSecurityMode(request);
+            log("Получен запрос: " + command);
+            csvLogger.logSystemEvent(EventType.COMMAND_RECEIVED,
+                    "Команда: " + command + " от " + clientAddress);
 
-                case NetworkConstant.PERFORM_SELF_TEST ->
-                        handlePerformSelfTest(request);
+            Response response = processRequest(request);
+            if (request != null) {
+                response.setId(request.getId());
+            }
 
-                case NetworkConstant.SIMULATE_EMERGENCY ->
-                        handleSimulateEmergency(request);
+            if (response.isSuccess()) {
+                log("Команда выполнена успешно: " + command);
+                String details = "Команда: " + command + " от " + clientAddress;
+                if (NetworkConstant.BATCH.equals(command)) {
+                    // Элементы пакета не журналируются по одному: итог пакета - в этой же записи
+                    details += ", " + response.getMessage();
+                }
+                csvLogger.logSystemEvent(EventType.COMMAND_EXECUTED, details);
+            } else {
+                log("Ошибка выполнения команды: " + command);
+                csvLogger.logSystemEvent(EventType.COMMAND_FAILED,
+                        "Команда: " + command + ", Ошибка: " + response.getMessage());
+            }
+            return response;
 
-                case NetworkConstant.GET_STATUS_REPORT ->
-                        handleGetStatusReport(request);
+        } catch (Exception e) {
+            log("Ошибка обработки: " + e.getMessage());
+            csvLogger.logSystemEvent(EventType.COMMAND_FAILED,
+                    "Ошибка обработки от " + clientAddress + ": " + e.getMessage());
 
-                case NetworkConstant.CALIBRATE_SENSORS ->
-                        handleCalibrateSensors(request);
+            Response errorResponse = Response.error("Ошибка обработки запроса: " + e.getMessage());
+            if (request != null) {
+                errorResponse.setId(request.getId());
+            }
+            return errorResponse;
+        }
+    }
 
-                case NetworkConstant.CHECK_CONNECTIVITY ->
-                        handleCheckConnectivity(request);
+    private Response processRequest(Request request) {
+        try {
+            if (request == null || request.getCommand() == null) {
+                return Response.error("Пустой запрос");
+            }
 
-                case NetworkConstant.LOAD_SYSTEMS_FROM_FILE ->
-                        handleLoadSystemsFromFile(request);
+            CommandRegistry.Command command = COMMANDS.lookup(request.getCommand());
+            if (command == null) {
+                return Response.error("Неизвестная команда: " + request.getCommand());
+            }
+            return command.execute(this, new CommandParams(request));
 
-                case NetworkConstant.SET_FILE_NAME ->
-                        handleSetFileName(request);
+        } catch (UncheckedIOException e) {
+            // Клиент отключился, пока ему передавался потоковый ответ
+            log("Соединение прервано при передаче ответа: " + e.getMessage());
+            closeSession();
+            return Response.error("Соединение прервано: " + e.getMessage());
+        } catch (Exception e) {
+            System.err.println(config.getString("error.prefix") + " " + clientAddress + ": " + e);
+            return Response.error("Ошибка обработки запроса: " + e.getMessage());
+        }
+    }
 
-                case NetworkConstant.GET_CURRENT_FILE_NAME -> {
-                    String fileName = systemController.getCurrentFileName();
-                    yield Response.success("Текущий файл", fileName != null ? fileName : "");
-                }
+    /**
+     * Закрывает соединение клиента: собственный сокет или, у движка NIO, через заданное им действие
+     */
+    private void closeSession() {
+        if (clientSocket == null) {
+            Runnable closer = sessionCloser;
+            if (closer != null) {
+                closer.run();
+            }
+            return;
+        }
+        try {
+            clientSocket.close();
+        } catch (IOException e) {
+            log("Ошибка закрытия сокета: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Система, к которой относится команда: по systemId, а если он не передан - по index
+     *
+     * @throws CommandException если система не указана или не найдена
+     */
+    SecuritySystem resolveSystem(CommandParams params) {
+        String systemId = params.string(NetworkConstant.PARAM_SYSTEM_ID);
+        SecuritySystem system;
+        if (systemId != null) {
+            system = systemController.getSystemById(systemId);
+        } else {
+            Integer index = params.integer(NetworkConstant.PARAM_INDEX);
+            if (index == null) {
+                throw new CommandException("Не указан ID системы");
+            }
+            system = systemController.getSystem(index);
+        }
+        if (system == null) {
+            throw new CommandException("Система не найдена");
+        }
+        return system;
+    }
+
+    // ============= ОБРАБОТЧИКИ КОМАНД =============
 
-                case NetworkConstant.GET_SYSTEM_COUNT ->
-                        Response.success("Количество систем", systemController.getSystemCount());
+    /**
+     * Переход на двоичный протокол. Ответ на эту команду еще уходит строкой JSON,
+     * следующие запросы и ответы - кадрами. Движку NIO двоичный протокол недоступен
+     */
+    private Response handleSetProtocol(CommandParams params) {
+        Object protocol = params.raw(NetworkConstant.PARAM_PROTOCOL);
+        if (NetworkConstant.PROTOCOL_JSON.equals(protocol)) {
+            return binaryProtocol
+                    ? Response.error("Возврат к протоколу JSON не поддерживается")
+                    : Response.success("Протокол: " + NetworkConstant.PROTOCOL_JSON);
+        }
+        if (!BinaryProtocol.NAME.equals(protocol)) {
+            return Response.error("Неизвестный протокол: " + protocol);
+        }
+        if (clientSocket == null) {
+            return Response.error("Двоичный протокол не поддерживается этим сервером");
+        }
+        binaryProtocol = true;
+        return Response.success("Протокол: " + BinaryProtocol.NAME);
+    }
 
-                case NetworkConstant.LOG_ALL_SYSTEMS_STATE ->
-                        handleLogAllSystemsState();
+    /**
+     * Сжатие ответов этого соединения. Параметры: codec (none отключает сжатие)
+     * и необязательный threshold - минимальный размер сжимаемого ответа
+     */
+    private Response handleSetCompression(CommandParams params) {
+        Object name = params.raw(NetworkConstant.PARAM_CODEC);
+        Object threshold = params.raw(NetworkConstant.PARAM_THRESHOLD);
+        if (threshold != null && !(threshold instanceof Number)) {
+            return Response.error("Некорректный порог сжатия: " + threshold);
+        }
+        if (CompressionCodec.NONE.equals(name)) {
+            compression = null;
+            return Response.success("Сжатие отключено");
+        }
+        CompressionCodec codec = name != null ? CompressionCodec.forName(name.toString()) : null;
+        if (codec == null) {
+            return Response.error("Неподдерживаемый алгоритм сжатия: " + name);
+        }
+        if (threshold != null) {
+            compressionThreshold = Math.max(0, ((Number) threshold).intValue());
+        }
+        compression = codec;
+        return Response.success("Сжатие: " + codec.name() + ", от " + compressionThreshold + " байт");
+    }
 
-                case NetworkConstant.GET_CSV_LOGS ->
-                        handleGetCsvLogs(request);
+    /**
+     * Подписка на изменения систем. Необязательные фильтры: systemIds, systemTypes (имена классов систем)
+     * и eventTypes (имена {@link EventType}). Ответ содержит id подписки; события приходят частями
+     * с id этого запроса, пока подписка не снята UNSUBSCRIBE или соединение не закрыто
+     */
+    private Response handleSubscribe(CommandParams params) {
+        Request request = params.getRequest();
+        if (request.getId() == null || pushSender == null) {
+            return Response.error("Подписка требует id запроса");
+        }
+        Set<EventType> eventTypes = null;
+        List<?> eventTypeNames = params.list(NetworkConstant.PARAM_EVENT_TYPES);
+        if (eventTypeNames != null) {
+            eventTypes = EnumSet.noneOf(EventType.class);
+            for (Object name : eventTypeNames) {
+                try {
+                    eventTypes.add(EventType.valueOf(String.valueOf(name)));
+                } catch (IllegalArgumentException e) {
+                    return Response.error("Неизвестный тип события: " + name);
+                }
+            }
+        }
+        long subscriptionId = SubscriptionManager.getInstance().subscribe(this, request.getId(),
+                toStringSet(params.list(NetworkConstant.PARAM_SYSTEM_IDS)),
+                toStringSet(params.list(NetworkConstant.PARAM_SYSTEM_TYPES)),
+                eventTypes, pushSender);
+        log("Подписка " + subscriptionId + " оформлена");
+        return Response.success("Подписка оформлена", subscriptionId);
+    }
 
-                case NetworkConstant.GET_RECENT_LOGS ->
-                        handleGetRecentLogs(request);
+    private Response handleUnsubscribe(CommandParams params) {
+        Long id = params.longValue(NetworkConstant.PARAM_SUBSCRIPTION_ID);
+        if (id == null) {
+            return Response.error("Не указан id подписки");
+        }
+        return SubscriptionManager.getInstance().unsubscribe(this, id)
+                ? Response.success("Подписка отменена")
+                : Response.error("Подписка не найдена: " + id);
+    }
+
+    /**
+     * Ставит событие подписки в очередь потока записи соединения, не дожидаясь записи
+     *
+     * @return false, если очередь переполнена и событие отброшено
+     */
+    private boolean queuePush(Response part) {
+        if (!pushQueue.offer(part)) {
+            return false;
+        }
+        synchronized (this) {
+            if (pushWriter == null && !disconnected) {
+                pushWriter = new Thread(this::writePushes, "push-writer " + clientAddress);
+                pushWriter.setDaemon(true);
+                pushWriter.start();
+            }
+        }
+        return true;
+    }
 
-                case NetworkConstant.SET_CSV_LOG_INTERVAL ->
-                        handleSetCsvLogInterval(request);
+    /**
+     * Поток записи событий подписок. Транспорт может смениться после подписки (SET_PROTOCOL),
+     * поэтому отправитель берется в момент отправки
+     */
+    private void writePushes() {
+        try {
+            while (true) {
+                partialSender.accept(pushQueue.take());
+            }
+        } catch (InterruptedException e) {
+            // соединение закрыто
+        } catch (UncheckedIOException e) {
+            log("Ошибка отправки события подписки: " + e.getMessage());
+            SubscriptionManager.getInstance().unsubscribeAll(this);
+        }
+    }
 
-                case NetworkConstant.SAVE_SYSTEMS_TO_FILE ->
-                        handleSaveSystemsToFile(request);
+    private static Set<String> toStringSet(List<?> list) {
+        if (list == null) {
+            return null;
+        }
+        Set<String> result = new HashSet<>();
+        for (Object element : list) {
+            result.add(String.valueOf(element));
+        }
+        return result;
+    }
 
-                default ->
-                        Response.error("Неизвестная команда: " + command);
-            };
+    /**
+     * Пакетное выполнение. Параметры: либо commands - список объектов {command, params},
+     * либо batchCommand и systemIds - одна команда для каждой системы списка
+     * (остальные параметры запроса, например mode, передаются каждой подкоманде).
+     * Ошибка одного элемента не прерывает пакет; результаты возвращаются списком BatchResult в порядке элементов.
+     * В журнал CSV пакет попадает одной парой записей с числом элементов и ошибок, а не записями на каждый элемент:
+     * синхронный журнал сбрасывает каждую запись на диск.
+     */
+    private Response handleBatch(CommandParams params) {
+        List<?> commands = params.list(NetworkConstant.PARAM_COMMANDS);
+        String batchCommand = params.string(NetworkConstant.PARAM_BATCH_COMMAND);
+        List<?> systemIds = params.list(NetworkConstant.PARAM_SYSTEM_IDS);
+
+        List<BatchResult> results;
+        if (commands != null) {
+            results = runBatchCommands(commands);
+        } else if (batchCommand != null && systemIds != null) {
+            results = runBatchForSystems(batchCommand, systemIds, params.getRequest().getParams());
+        } else {
+            return Response.error("Не указаны подкоманды пакета");
+        }
 
-        } catch (Exception e) {
-            e.printStackTrace();
-            return Response.error("Ошибка обработки запроса: " + e.getMessage());
+        int failed = 0;
+        for (BatchResult result : results) {
+            if (!result.isSuccess()) {
+                failed++;
+            }
         }
+        return Response.success("Пакет выполнен: элементов " + results.size() + ", успешно "
+                + (results.size() - failed) + ", ошибок " + failed, results);
     }
 
-    // ============= ОБРАБОТЧИКИ КОМАНД =============
+    private List<BatchResult> runBatchCommands(List<?> commands) {
+        List<BatchResult> results = new ArrayList<>(commands.size());
+        for (int i = 0; i < commands.size(); i++) {
+            Request item = toBatchItem(commands.get(i));
+            String command = item != null ? item.getCommand() : null;
+            String systemId = item != null && item.getParam(NetworkConstant.PARAM_SYSTEM_ID) instanceof String id
+                    ? id : null;
+            results.add(new BatchResult(i, command, systemId, runBatchItem(item)));
+        }
+        return results;
+    }
 
-    private Response handleGetAllSystems() {
-        List<SecuritySystem> systems = systemController.getAllSystems();
-        return Response.success("Список систем", systems);
+    /**
+     * Одна команда для списка систем. Подзапрос создается один раз, между элементами меняется только systemId
+     */
+    private List<BatchResult> runBatchForSystems(String command, List<?> systemIds, Map<String, Object> shared) {
+        Map<String, Object> params = new HashMap<>(shared);
+        params.remove(NetworkConstant.PARAM_BATCH_COMMAND);
+        params.remove(NetworkConstant.PARAM_SYSTEM_IDS);
+        Request item = new Request(command, params);
+
+        List<BatchResult> results = new ArrayList<>(systemIds.size());
+        for (int i = 0; i < systemIds.size(); i++) {
+            String systemId = systemIds.get(i) != null ? systemIds.get(i).toString() : null;
+            params.put(NetworkConstant.PARAM_SYSTEM_ID, systemId);
+            results.add(new BatchResult(i, command, systemId, runBatchItem(item)));
+        }
+        return results;
     }
 
-    private Response handleGetSystem(Request request) {
-        Object indexObj = request.getParam("index");
-        if (indexObj == null) {
-            return Response.error("Не указан индекс системы");
+    private Response runBatchItem(Request item) {
+        if (item == null || item.getCommand() == null) {
+            return Response.error("Пустой запрос");
         }
-        int index = ((Number) indexObj).intValue();
-        SecuritySystem system = systemController.getSystem(index);
-        if (system != null) {
-            return Response.success("Система получена", system);
+        if (NetworkConstant.BATCH.equals(item.getCommand())) {
+            return Response.error("Вложенный пакет не поддерживается");
+        }
+        return processRequest(item);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Request toBatchItem(Object element) {
+        if (!(element instanceof Map<?, ?> map) || !(map.get("command") instanceof String command)) {
+            return null;
+        }
+        Object params = map.get("params");
+        return new Request(command, params instanceof Map<?, ?>
+                ? new HashMap<>((Map<String, Object>) params) : new HashMap<>());
+    }
+
+    /**
+     * Без параметров - весь список одним ответом, как раньше.
+     * С offset/limit, afterKey/limit или afterId/limit - одна страница ({@link NetworkConstant#PAGE_SYSTEMS}
+     * и курсоры следующей). afterKey - порядковый ключ последней системы прошлой страницы: страница находится
+     * двоичным поиском и продолжается, даже если эта система уже удалена. afterId оставлен для старых клиентов.
+     * С stream=true - список частями по limit систем, каждая часть отдельным ответом с more=true,
+     * затем итоговый ответ с количеством систем.
+     * С ifNewerThan - только изменения после этой версии, см. {@link #systemChanges}
+     */
+    private Response handleGetAllSystems(CommandParams params) {
+        Integer limitParam = params.integer(NetworkConstant.PARAM_LIMIT);
+        int limit = limitParam != null ? limitParam : DEFAULT_PAGE_SIZE;
+        if (limit <= 0) {
+            return Response.error("Размер страницы должен быть положительным");
+        }
+        Long ifNewerThan = params.longValue(NetworkConstant.PARAM_IF_NEWER_THAN);
+        if (ifNewerThan != null) {
+            return systemChanges(params, ifNewerThan, limit);
+        }
+        SystemRegistry.Snapshot systems = systemController.getAllSystems();
+
+        if (params.flag(NetworkConstant.PARAM_STREAM)) {
+            return streamSystems(params, systems, limit);
+        }
+
+        Integer offset = params.integer(NetworkConstant.PARAM_OFFSET);
+        Object afterId = params.raw(NetworkConstant.PARAM_AFTER_ID);
+        Long afterKey = params.longValue(NetworkConstant.PARAM_AFTER_KEY);
+        if (offset == null && afterId == null && afterKey == null && limitParam == null) {
+            return Response.success("Список систем", systems);
+        }
+
+        int start;
+        if (afterKey != null) {
+            start = systems.positionAfter(afterKey);
+        } else if (afterId != null) {
+            long key = systemController.getOrderKey(afterId.toString());
+            if (key < 0) {
+                return Response.error("Система " + afterId + " не найдена, курсор устарел");
+            }
+            start = systems.positionAfter(key);
         } else {
-            return Response.error("Система не найдена");
+            start = offset != null ? offset : 0;
+            if (start < 0) {
+                return Response.error("Смещение не может быть отрицательным");
+            }
         }
+
+        int total = systems.size();
+        start = Math.min(start, total);
+        int end = (int) Math.min(total, (long) start + limit);
+        Map<String, Object> page = new LinkedHashMap<>();
+        // Снимок неизменяем, поэтому страница - представление без копирования
+        page.put(NetworkConstant.PAGE_SYSTEMS, systems.subList(start, end));
+        page.put(NetworkConstant.PAGE_OFFSET, start);
+        page.put(NetworkConstant.PAGE_TOTAL, total);
+        if (end < total) {
+            page.put(NetworkConstant.PAGE_NEXT_OFFSET, end);
+            page.put(NetworkConstant.PAGE_NEXT_AFTER_ID, systems.get(end - 1).getSystemId());
+            page.put(NetworkConstant.PAGE_NEXT_AFTER_KEY, systems.orderKey(end - 1));
+        }
+        return Response.success("Страница списка систем", page);
     }
 
-    private Response handleGetSystemById(Request request) {
-        String systemId = (String) request.getParam("systemId");
-        if (systemId == null) {
-            return Response.error("Не указан ID системы");
+    /**
+     * Изменения списка после версии since: измененные и добавленные системы, ID удаленных и версия
+     * для следующего запроса. Если удаления после since уже забыты, передается весь список с full=true.
+     * С stream=true системы идут частями, как в {@link #streamSystems}, а итоговый ответ содержит остальные поля
+     */
+    private Response systemChanges(CommandParams params, long since, int limit) {
+        SystemRegistry.Changes changes = systemController.getChangesSince(since);
+        List<SecuritySystem> changed = changes.getSystems();
+        if (!changes.isFull()) {
+            changed = new ArrayList<>();
+            for (SecuritySystem system : changes.getSystems()) {
+                if (system.getVersion() > since) {
+                    changed.add(system);
+                }
+            }
         }
-        SecuritySystem system = systemController.getSystemById(systemId);
-        if (system != null) {
-            return Response.success("Система получена", system);
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put(NetworkConstant.DELTA_VERSION, changes.getVersion());
+        result.put(NetworkConstant.DELTA_FULL, changes.isFull());
+        result.put(NetworkConstant.DELTA_REMOVED, changes.getRemovedIds());
+        if (params.flag(NetworkConstant.PARAM_STREAM)) {
+            Response error = sendSystemParts(params.getRequest(), changed, limit);
+            if (error != null) {
+                return error;
+            }
         } else {
-            return Response.error("Система не найдена");
+            result.put(NetworkConstant.PAGE_SYSTEMS, changed);
         }
+        boolean modified = changes.isFull() || !changed.isEmpty() || !changes.getRemovedIds().isEmpty();
+        return Response.success(modified ? "Изменения списка систем" : NetworkConstant.MESSAGE_NOT_MODIFIED, result);
     }
 
-    private Response handleAddSystem(Request request) {
+    private Response streamSystems(CommandParams params, List<SecuritySystem> systems, int chunkSize) {
+        Response error = sendSystemParts(params.getRequest(), systems, chunkSize);
+        return error != null ? error : Response.success("Список систем передан", systems.size());
+    }
+
+    /**
+     * Отправляет список частями с more=true
+     *
+     * @return ответ с ошибкой, если потоковая передача невозможна, иначе null
+     */
+    private Response sendSystemParts(Request request, List<SecuritySystem> systems, int chunkSize) {
+        if (partialSender == null) {
+            return Response.error("Потоковая передача не поддерживается");
+        }
+        if (request.getId() == null) {
+            return Response.error("Для потоковой передачи нужен id запроса");
+        }
+        int total = systems.size();
+        for (int start = 0; start < total; start += chunkSize) {
+            Response part = Response.success("Часть списка систем",
+                    systems.subList(start, (int) Math.min(total, (long) start + chunkSize)));
+            part.setId(request.getId());
+            part.setMore(true);
+            // Отправка блокируется, пока клиент не примет предыдущие части, поэтому память не растет
+            partialSender.accept(part);
+        }
+        return null;
+    }
+
+    private Response handleGetSystem(CommandParams params, SecuritySystem system) {
+        if (notModified(params, system.getVersion())) {
+            return Response.success(NetworkConstant.MESSAGE_NOT_MODIFIED);
+        }
+        return Response.success("Система получена", system);
+    }
+
+    /**
+     * Система передается строкой текстового формата (systemData) или в JSON протокола (systemJson)
+     */
+    private Response handleAddSystem(CommandParams params) {
         try {
-            String systemData = (String) request.getParam("systemData");
-            if (systemData == null) {
+            String systemData = params.string("systemData");
+            String systemJson = params.string(NetworkConstant.PARAM_SYSTEM_JSON);
+            if (systemData == null && systemJson == null) {
                 return Response.error("Не указаны данные системы");
             }
 
-            SecuritySystem system = SecuritySystemStringParser.parse(systemData);
+            SecuritySystem system = systemData != null
+                    ? SecuritySystemStringParser.parse(systemData)
+                    : gson.fromJson(systemJson, SecuritySystem.class);
 
             if (system != null) {
                 systemController.addSystem(system);
@@ -233,17 +775,14 @@ public class ClientHandler implements Runnable {
             } else {
                 return Response.error("Не удалось создать систему из данных");
             }
-        } catch (Exception e) {
+        } catch (JsonParseException | IllegalArgumentException e) {
+            // Неверный JSON системы или недопустимое значение поля, например режима
             return Response.error("Ошибка добавления системы: " + e.getMessage());
         }
     }
 
-    private Response handleRemoveSystem(Request request) {
-        Object indexObj = request.getParam("index");
-        if (indexObj == null) {
-            return Response.error("Не указан индекс системы");
-        }
-        int index = ((Number) indexObj).intValue();
+    private Response handleRemoveSystem(CommandParams params) {
+        int index = params.requireInt(NetworkConstant.PARAM_INDEX, "Не указан индекс системы");
 
         if (systemController.removeSystem(index)) {
             csvLogger.logSystemEvent(EventType.SYSTEM_REMOVED,
@@ -254,228 +793,175 @@ public class ClientHandler implements Runnable {
         }
     }
 
-    private Response handleRemoveSystemById(Request request) {
-        try {
-            String systemId = (String) request.getParam("systemId");
-            if (systemId == null) {
-                return Response.error("Не указан ID системы");
-            }
-
-            SecuritySystem system = systemController.getSystemById(systemId);
-
-            if (system != null) {
-                if (systemController.removeSystemById(systemId)) {
-                    csvLogger.logSystemEvent(EventType.SYSTEM_REMOVED,
-                            "ID: " + systemId + ", Клиент: " + clientAddress);
-                    return Response.success("Система удалена");
-                }
-            }
-            return Response.error("Система не найдена");
-        } catch (Exception e) {
-            return Response.error("Ошибка удаления системы: " + e.getMessage());
-        }
-    }
-
-    private Response handleArmSystem(Request request) {
-        String systemId = (String) request.getParam("systemId");
-        if (systemId == null) {
-            return Response.error("Не указан ID системы");
-        }
-        SecuritySystem system = systemController.getSystemById(systemId);
-        if (system != null) {
-            system.armSystem();
-            return Response.success("Система поставлена на охрану");
+    private Response handleRemoveSystemById(CommandParams params, SecuritySystem system) {
+        String systemId = system.getSystemId();
+        if (systemController.removeSystemById(systemId)) {
+            csvLogger.logSystemEvent(EventType.SYSTEM_REMOVED,
+                    "ID: " + systemId + ", Клиент: " + clientAddress);
+            return Response.success("Система удалена");
         }
         return Response.error("Система не найдена");
     }
 
-    private Response handleDisarmSystem(Request request) {
-        String systemId = (String) request.getParam("systemId");
-        if (systemId == null) {
-            return Response.error("Не указан ID системы");
-        }
-        SecuritySystem system = systemController.getSystemById(systemId);
-        if (system != null) {
-            system.disarmSystem();
-            return Response.success("Система снята с охраны");
-        }
-        return Response.error("Система не найдена");
+    private Response handleArmSystem(CommandParams params, SecuritySystem system) {
+        system.armSystem();
+        return Response.success("Система поставлена на охрану", system.getSystemId());
     }
 
-    private Response handleSetSecurityMode(Request request) {
-        String systemId = (String) request.getParam("systemId");
-        String mode = (String) request.getParam("mode");
-
-        if (systemId == null || mode == null) {
-            return Response.error("Не указаны обязательные параметры");
-        }
-
-        SecuritySystem system = systemController.getSystemById(systemId);
-        if (system != null) {
-            try {
-                system.setSecurityMode(mode);
-                return Response.success("Режим изменен");
-            } catch (IllegalArgumentException e) {
-                return Response.error(e.getMessage());
-            }
-        }
-        return Response.error("Система не найдена");
+    private Response handleDisarmSystem(CommandParams params, SecuritySystem system) {
+        system.disarmSystem();
+        return Response.success("Система снята с охраны", system.getSystemId());
     }
 
-    private Response handlePerformSelfTest(Request request) {
-        String systemId = (String) request.getParam("systemId");
-        if (systemId == null) {
-            return Response.error("Не указан ID системы");
-        }
-        SecuritySystem system = systemController.getSystemById(systemId);
-        if (system != null) {
-            boolean result = system.performSelfTest();
-            return Response.success("Самодиагностика завершена", result);
+    private Response handleSetSecurityMode(CommandParams params, SecuritySystem system) {
+        String mode = params.requireString(NetworkConstant.PARAM_MODE, "Не указаны обязательные параметры");
+        try {
+            system.setSecurityMode(mode);
+            return Response.success("Режим изменен", system.getSystemId());
+        } catch (IllegalArgumentException e) {
+            return Response.error(e.getMessage());
         }
-        return Response.error("Система не найдена");
     }
 
-    private Response handleSimulateEmergency(Request request) {
-        String systemId = (String) request.getParam("systemId");
-        if (systemId == null) {
-            return Response.error("Не указан ID системы");
-        }
-        SecuritySystem system = systemController.getSystemById(systemId);
-        if (system != null) {
-            EmergencyEvent event = system.simulateEmergency();
-            return Response.success("Событие сгенерировано", event);
-        }
-        return Response.error("Система не найдена");
+    private Response handlePerformSelfTest(CommandParams params, SecuritySystem system) {
+        boolean result = system.performSelfTest();
+        return Response.success("Самодиагностика завершена", result);
     }
 
-    private Response handleGetStatusReport(Request request) {
-        String systemId = (String) request.getParam("systemId");
-        if (systemId == null) {
-            return Response.error("Не указан ID системы");
-        }
-        SecuritySystem system = systemController.getSystemById(systemId);
-        if (system != null) {
-            SystemStatusReport report = system.getStatusReport();
-            return Response.success("Отчет получен", report);
-        }
-        return Response.error("Система не найдена");
+    private Response handleSimulateEmergency(CommandParams params, SecuritySystem system) {
+        EmergencyEvent event = system.simulateEmergency();
+        return Response.success("Событие сгенерировано", event);
     }
 
-    private Response handleCalibrateSensors(Request request) {
-        String systemId = (String) request.getParam("systemId");
-        if (systemId == null) {
-            return Response.error("Не указан ID системы");
+    private Response handleGetStatusReport(CommandParams params, SecuritySystem system) {
+        // Версия читается раньше отчета: при параллельном изменении она может только отстать от состояния
+        long version = system.getVersion();
+        if (notModified(params, version)) {
+            return Response.success(NetworkConstant.MESSAGE_NOT_MODIFIED);
         }
-        SecuritySystem system = systemController.getSystemById(systemId);
-        if (system != null) {
-            system.calibrateSensors();
-            return Response.success("Датчики откалиброваны");
-        }
-        return Response.error("Система не найдена");
+        SystemStatusReport report = system.getStatusReport();
+        report.setVersion(version);
+        return Response.success("Отчет получен", report);
     }
 
-    private Response handleCheckConnectivity(Request request) {
-        String systemId = (String) request.getParam("systemId");
-        if (systemId == null) {
-            return Response.error("Не указан ID системы");
-        }
-        SecuritySystem system = systemController.getSystemById(systemId);
-        if (system != null) {
-            boolean connected = system.checkConnectivity();
-            return Response.success("Проверка связи выполнена", connected);
-        }
-        return Response.error("Система не найдена");
+    /**
+     * Условный запрос: у клиента уже есть версия не старше текущей (параметр ifNewerThan)
+     */
+    private static boolean notModified(CommandParams params, long version) {
+        Long known = params.longValue(NetworkConstant.PARAM_IF_NEWER_THAN);
+        return known != null && version <= known;
     }
 
-    private Response handleLoadSystemsFromFile(Request request) {
-        try {
-            String fileName = (String) request.getParam("fileName");
-            Object replaceObj = request.getParam("replace");
-            boolean replace = replaceObj != null && (Boolean) replaceObj;
+    private Response handleCalibrateSensors(CommandParams params, SecuritySystem system) {
+        system.calibrateSensors();
+        return Response.success("Датчики откалиброваны");
+    }
 
-            if (fileName == null) {
-                return Response.error("Не указано имя файла");
-            }
+    private Response handleCheckConnectivity(CommandParams params, SecuritySystem system) {
+        boolean connected = system.checkConnectivity();
+        return Response.success("Проверка связи выполнена", connected);
+    }
 
-            if (systemController.loadSystemsFromFile(fileName, replace)) {
-                int count = systemController.getSystemCount();
-                csvLogger.logSystemEvent(EventType.FILE_LOADED,
-                        "Файл: " + fileName + ", Загружено систем: " + count +
-                                ", Клиент: " + clientAddress);
-                return Response.success("Загружено систем: " + count, count);
-            } else {
-                return Response.error("Не удалось загрузить системы из файла");
-            }
-        } catch (Exception e) {
-            return Response.error("Ошибка загрузки: " + e.getMessage());
+    /**
+     * append=true добавляет системы файла к текущим, без него системы файла заменяют текущие
+     */
+    private Response handleLoadSystemsFromFile(CommandParams params) {
+        String fileName = params.requireString(NetworkConstant.PARAM_FILE_NAME, "Не указано имя файла");
+        boolean append = params.flag(NetworkConstant.PARAM_APPEND);
+
+        // Ошибки чтения контроллер журналирует сам и сообщает результатом false
+        if (systemController.loadSystemsFromFile(fileName, append)) {
+            int count = systemController.getSystemCount();
+            csvLogger.logSystemEvent(EventType.FILE_LOADED,
+                    "Файл: " + fileName + ", Загружено систем: " + count +
+                            ", Клиент: " + clientAddress);
+            return Response.success("Загружено систем: " + count, count);
+        } else {
+            return Response.error("Не удалось загрузить системы из файла");
         }
     }
 
-    private Response handleSaveSystemsToFile(Request request) {
-        try {
-            String fileName = (String) request.getParam("fileName");
-            if (fileName == null) {
-                return Response.error("Не указано имя файла");
-            }
+    private Response handleSaveSystemsToFile(CommandParams params) {
+        String fileName = params.requireString(NetworkConstant.PARAM_FILE_NAME, "Не указано имя файла");
 
-            if (systemController.saveSystemsToFile(fileName)) {
-                csvLogger.logSystemEvent(EventType.FILE_SAVED,
-                        "Файл: " + fileName + ", Сохранено систем: " + systemController.getSystemCount() +
-                                ", Клиент: " + clientAddress);
-                return Response.success("Системы сохранены в файл");
-            } else {
-                return Response.error("Не удалось сохранить системы");
-            }
-        } catch (Exception e) {
-            return Response.error("Ошибка сохранения: " + e.getMessage());
+        if (systemController.saveSystemsToFile(fileName)) {
+            csvLogger.logSystemEvent(EventType.FILE_SAVED,
+                    "Файл: " + fileName + ", Сохранено систем: " + systemController.getSystemCount() +
+                            ", Клиент: " + clientAddress);
+            return Response.success("Системы сохранены в файл");
+        } else {
+            return Response.error("Не удалось сохранить системы");
         }
     }
 
-    private Response handleSetFileName(Request request) {
-        String fileName = (String) request.getParam("fileName");
-        if (fileName == null) {
-            return Response.error("Не указано имя файла");
-        }
+    private Response handleSetFileName(CommandParams params) {
+        String fileName = params.requireString(NetworkConstant.PARAM_FILE_NAME, "Не указано имя файла");
         systemController.setCurrentFileName(fileName);
         return Response.success("Имя файла установлено");
     }
 
-    private Response handleLogAllSystemsState() {
+    private Response handleGetCurrentFileName(CommandParams params) {
+        String fileName = systemController.getCurrentFileName();
+        return Response.success("Текущий файл", fileName != null ? fileName : "");
+    }
+
+    private Response handleLogAllSystemsState(CommandParams params) {
         systemController.logAllSystemsState();
         return Response.success("Состояние систем записано в лог");
     }
 
-    private Response handleGetCsvLogs(Request request) {
-        String systemId = (String) request.getParam("systemId");
-        Object countObj = request.getParam("count");
+    private Response handleGetCsvLogs(CommandParams params) {
+        String systemId = params.string(NetworkConstant.PARAM_SYSTEM_ID);
+        Integer count = getCountParam(params);
 
-        if (systemId == null || countObj == null) {
+        if (systemId == null || count == null) {
             return Response.error("Не указаны обязательные параметры");
         }
 
-        int count = ((Number) countObj).intValue();
-        List<String> logs = systemController.getCsvLogger().getLogsBySystemId(systemId, count);
+        LocalDateTime since;
+        try {
+            since = getSinceParam(params);
+        } catch (DateTimeParseException e) {
+            return Response.error("Неверный формат времени: " + params.raw(NetworkConstant.PARAM_SINCE));
+        }
+        List<String> logs = systemController.getCsvLogger().getLogsBySystemId(systemId, count, since);
         return Response.success("Логи получены", logs);
     }
 
-    private Response handleGetRecentLogs(Request request) {
-        Object countObj = request.getParam("count");
-        if (countObj == null) {
+    private Response handleGetRecentLogs(CommandParams params) {
+        Integer count = getCountParam(params);
+        if (count == null) {
             return Response.error("Не указано количество записей");
         }
 
-        int count = ((Number) countObj).intValue();
-        List<String> logs = systemController.getCsvLogger().getRecentLogs(count);
+        LocalDateTime since;
+        try {
+            since = getSinceParam(params);
+        } catch (DateTimeParseException e) {
+            return Response.error("Неверный формат времени: " + params.raw(NetworkConstant.PARAM_SINCE));
+        }
+        List<String> logs = systemController.getCsvLogger().getRecentLogs(count, since);
         return Response.success("Логи получены", logs);
     }
 
-    private Response handleSetCsvLogInterval(Request request) {
-        Object intervalObj = request.getParam("interval");
-        if (intervalObj == null) {
-            return Response.error("Не указан интервал");
-        }
+    /**
+     * Количество записей журнала: клиент передает его как limit, старые клиенты - как count
+     */
+    private static Integer getCountParam(CommandParams params) {
+        Integer count = params.integer(NetworkConstant.PARAM_LIMIT);
+        return count != null ? count : params.integer("count");
+    }
+
+    /**
+     * Необязательная нижняя граница времени записей журнала (ISO, например 2024-05-01T10:00)
+     */
+    private static LocalDateTime getSinceParam(CommandParams params) {
+        Object since = params.raw(NetworkConstant.PARAM_SINCE);
+        return since != null ? LocalDateTime.parse(since.toString()) : null;
+    }
 
-        int interval = ((Number) intervalObj).intValue();
+    private Response handleSetCsvLogInterval(CommandParams params) {
+        int interval = params.requireInt(NetworkConstant.PARAM_INTERVAL, "Не указан интервал");
         systemController.getCsvLogger().setLogInterval(interval);
         return Response.success("Интервал установлен");
     }
@@ -483,4 +969,53 @@ public class ClientHandler implements Runnable {
     private void log(String message) {
         System.out.println("[" + clientAddress + "] " + message);
     }
+
+    /**
+     * Учитывает принятые байты в {@link ServerMetrics}
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                ServerMetrics.getInstance().bytesReceived(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                ServerMetrics.getInstance().bytesReceived(read);
+            }
+            return read;
+        }
+    }
+
+    /**
+     * Учитывает отправленные байты в {@link ServerMetrics}. Запись массива передается потоку целиком,
+     * а не побайтно, как в {@link FilterOutputStream}
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            ServerMetrics.getInstance().bytesSent(1);
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) throws IOException {
+            out.write(buffer, offset, length);
+            ServerMetrics.getInstance().bytesSent(length);
+        }
+    }
 }
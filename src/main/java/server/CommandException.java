@@ -0,0 +1,12 @@
+package server;
+
+/**
+ * Запрос нельзя выполнить из-за его параметров; сообщение уходит клиенту в ответе с ошибкой
+ */
+class CommandException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    CommandException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,94 @@
+package server;
+
+import network.Request;
+
+import java.util.List;
+
+/**
+ * Типизированное чтение параметров запроса. Параметр неподходящего типа - {@link CommandException}
+ * с понятным клиенту сообщением вместо ClassCastException
+ */
+class CommandParams {
+    private final Request request;
+
+    CommandParams(Request request) {
+        this.request = request;
+    }
+
+    Request getRequest() {
+        return request;
+    }
+
+    Object raw(String name) {
+        return request.getParam(name);
+    }
+
+    String string(String name) {
+        Object value = request.getParam(name);
+        if (value == null || value instanceof String) {
+            return (String) value;
+        }
+        throw invalid(name, value);
+    }
+
+    String requireString(String name, String missingMessage) {
+        String value = string(name);
+        if (value == null) {
+            throw new CommandException(missingMessage);
+        }
+        return value;
+    }
+
+    Integer integer(String name) {
+        Object value = request.getParam(name);
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof Number number) {
+            return number.intValue();
+        }
+        throw invalid(name, value);
+    }
+
+    int requireInt(String name, String missingMessage) {
+        Integer value = integer(name);
+        if (value == null) {
+            throw new CommandException(missingMessage);
+        }
+        return value;
+    }
+
+    Long longValue(String name) {
+        Object value = request.getParam(name);
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof Number number) {
+            return number.longValue();
+        }
+        throw invalid(name, value);
+    }
+
+    /**
+     * @return значение флага; отсутствующий флаг - false
+     */
+    boolean flag(String name) {
+        Object value = request.getParam(name);
+        if (value == null || value instanceof Boolean) {
+            return Boolean.TRUE.equals(value);
+        }
+        throw invalid(name, value);
+    }
+
+    List<?> list(String name) {
+        Object value = request.getParam(name);
+        if (value == null || value instanceof List<?>) {
+            return (List<?>) value;
+        }
+        throw invalid(name, value);
+    }
+
+    private static CommandException invalid(String name, Object value) {
+        return new CommandException("Некорректный параметр " + name + ": " + value);
+    }
+}
@@ -0,0 +1,110 @@
+package server;
+
+import models.SecuritySystem;
+import network.Response;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Таблица команд сервера: имя команды - обработчик. Команды над одной системой регистрируются через
+ * {@link #registerForSystem}: систему по systemId или index находит общий код, обработчик получает ее готовой.
+ * Через {@link Command#execute} проходит каждый запрос, поэтому здесь же ведутся счетчики и гистограммы задержек
+ * по командам
+ */
+final class CommandRegistry {
+
+    @FunctionalInterface
+    interface Handler {
+        Response handle(ClientHandler handler, CommandParams params) throws Exception;
+    }
+
+    @FunctionalInterface
+    interface SystemHandler {
+        Response handle(ClientHandler handler, CommandParams params, SecuritySystem system) throws Exception;
+    }
+
+    private final Map<String, Command> commands = new LinkedHashMap<>();
+
+    CommandRegistry register(String name, Handler handler) {
+        if (commands.putIfAbsent(name, new Command(name, handler)) != null) {
+            throw new IllegalStateException("Команда уже зарегистрирована: " + name);
+        }
+        return this;
+    }
+
+    CommandRegistry registerForSystem(String name, SystemHandler handler) {
+        return register(name, (clientHandler, params) ->
+                handler.handle(clientHandler, params, clientHandler.resolveSystem(params)));
+    }
+
+    /**
+     * @return команда или null, если она неизвестна
+     */
+    Command lookup(String name) {
+        return commands.get(name);
+    }
+
+    Collection<Command> commands() {
+        return Collections.unmodifiableCollection(commands.values());
+    }
+
+    static final class Command {
+        private final String name;
+        private final Handler handler;
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        private Command(String name, Handler handler) {
+            this.name = name;
+            this.handler = handler;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        /**
+         * Ошибка параметров ({@link CommandException}) превращается в ответ с ошибкой, прочие исключения
+         * пробрасываются вызывающему
+         */
+        Response execute(ClientHandler clientHandler, CommandParams params) throws Exception {
+            calls.increment();
+            long started = System.nanoTime();
+            Response response;
+            try {
+                response = handler.handle(clientHandler, params);
+            } catch (CommandException e) {
+                response = Response.error(e.getMessage());
+            } catch (Exception e) {
+                failures.increment();
+                throw e;
+            } finally {
+                latency.recordNanos(System.nanoTime() - started);
+            }
+            if (!response.isSuccess()) {
+                failures.increment();
+            }
+            return response;
+        }
+
+        long getCalls() {
+            return calls.sum();
+        }
+
+        long getFailures() {
+            return failures.sum();
+        }
+
+        /**
+         * Время выполнения обработчика, без разбора запроса и записи ответа
+         */
+        LatencyHistogram getLatency() {
+            return latency;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import controllers.SecuritySystemController;
+import models.CSVLogger;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Страница метрик для сборщика (GET /metrics, текст {@link MetricsReport#format}).
+ * Слушает только локальный адрес: метрики не предназначены для клиентов сервера
+ */
+public class MetricsEndpoint {
+    private static final String PATH = "/metrics";
+
+    private final HttpServer httpServer;
+    private final SecuritySystemController controller;
+    private final CSVLogger csvLogger;
+
+    public MetricsEndpoint(int port, SecuritySystemController controller, CSVLogger csvLogger) throws IOException {
+        this.controller = controller;
+        this.csvLogger = csvLogger;
+        this.httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        httpServer.createContext(PATH, this::handle);
+    }
+
+    public void start() {
+        httpServer.start();
+    }
+
+    public void stop() {
+        httpServer.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = MetricsReport.format(controller, csvLogger).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+}
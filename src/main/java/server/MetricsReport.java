@@ -0,0 +1,144 @@
+package server;
+
+import controllers.SecuritySystemController;
+import models.CSVLogger;
+import models.SecuritySystem;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Снимок метрик сервера: для команды METRICS - вложенные карты по разделам,
+ * для страницы метрик - текст в формате Prometheus, по строке на значение
+ */
+public final class MetricsReport {
+    private static final String PREFIX = "security_";
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+    // Те же перцентили долями, как метка quantile
+    private static final String[] QUANTILES = {"0.5", "0.9", "0.99", "0.999"};
+
+    private MetricsReport() {
+    }
+
+    public static Map<String, Object> collect(SecuritySystemController controller, CSVLogger csvLogger) {
+        Map<String, Object> report = collectCounters(controller, csvLogger);
+        Map<String, Object> commands = section(report, "commands");
+        for (CommandRegistry.Command command : ClientHandler.commands()) {
+            if (command.getCalls() == 0) {
+                continue;
+            }
+            LatencyHistogram latency = command.getLatency();
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("calls", command.getCalls());
+            stats.put("failures", command.getFailures());
+            stats.put("meanMicros", Math.round(latency.getMeanMicros()));
+            for (double percentile : PERCENTILES) {
+                stats.put("p" + percentileName(percentile) + "Micros", latency.getValueAtPercentile(percentile));
+            }
+            stats.put("maxMicros", latency.getMaxMicros());
+            commands.put(command.getName(), stats);
+        }
+        return report;
+    }
+
+    private static Map<String, Object> collectCounters(SecuritySystemController controller, CSVLogger csvLogger) {
+        ServerMetrics metrics = ServerMetrics.getInstance();
+        SubscriptionManager subscriptions = SubscriptionManager.getInstance();
+        Map<String, Object> report = new LinkedHashMap<>();
+
+        Map<String, Object> sessions = section(report, "sessions");
+        sessions.put("active", metrics.getActiveSessions());
+        sessions.put("queued", metrics.getQueuedSessions());
+        sessions.put("accepted", metrics.getAcceptedSessions());
+        sessions.put("rejected", metrics.getRejectedSessions());
+        sessions.put("rejectedRequests", metrics.getRejectedRequests());
+
+        Map<String, Object> network = section(report, "network");
+        network.put("bytesReceived", metrics.getBytesReceived());
+        network.put("bytesSent", metrics.getBytesSent());
+
+        Map<String, Object> registry = section(report, "registry");
+        registry.put("systems", controller.getSystemCount());
+        registry.put("version", SecuritySystem.currentVersion());
+
+        Map<String, Object> csv = section(report, "csv");
+        csv.put("queueSize", csvLogger.getQueueSize());
+        csv.put("droppedRecords", csvLogger.getDroppedRecords());
+        csv.put("flushes", csvLogger.getFlushCount());
+        csv.put("flushMicrosTotal", TimeUnit.NANOSECONDS.toMicros(csvLogger.getFlushNanos()));
+        csv.put("flushMicrosMax", TimeUnit.NANOSECONDS.toMicros(csvLogger.getMaxFlushNanos()));
+
+        Map<String, Object> parser = section(report, "parser");
+        parser.put("lastLoadMicros", TimeUnit.NANOSECONDS.toMicros(controller.getLastLoadNanos()));
+        parser.put("lastLoadSystems", controller.getLastLoadCount());
+
+        Map<String, Object> subscriptionStats = section(report, "subscriptions");
+        subscriptionStats.put("active", subscriptions.getSubscriptionCount());
+        subscriptionStats.put("droppedEvents", subscriptions.getDroppedEvents());
+        return report;
+    }
+
+    /**
+     * Тот же снимок текстом: security_раздел_метрика значение, для команд - метки command и quantile
+     */
+    public static String format(SecuritySystemController controller, CSVLogger csvLogger) {
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<String, Object> section : collectCounters(controller, csvLogger).entrySet()) {
+            for (Map.Entry<String, Object> value : values(section.getValue()).entrySet()) {
+                text.append(PREFIX).append(section.getKey()).append('_').append(snakeCase(value.getKey()))
+                        .append(' ').append(value.getValue()).append('\n');
+            }
+        }
+        for (CommandRegistry.Command command : ClientHandler.commands()) {
+            if (command.getCalls() == 0) {
+                continue;
+            }
+            String label = "{command=\"" + command.getName() + "\"";
+            LatencyHistogram latency = command.getLatency();
+            text.append(PREFIX).append("command_calls").append(label).append("} ").append(command.getCalls())
+                    .append('\n');
+            text.append(PREFIX).append("command_failures").append(label).append("} ").append(command.getFailures())
+                    .append('\n');
+            for (int i = 0; i < PERCENTILES.length; i++) {
+                text.append(PREFIX).append("command_latency_micros").append(label)
+                        .append(",quantile=\"").append(QUANTILES[i]).append("\"} ")
+                        .append(latency.getValueAtPercentile(PERCENTILES[i])).append('\n');
+            }
+            text.append(PREFIX).append("command_latency_micros_mean").append(label).append("} ")
+                    .append(Math.round(latency.getMeanMicros())).append('\n');
+            text.append(PREFIX).append("command_latency_micros_max").append(label).append("} ")
+                    .append(latency.getMaxMicros()).append('\n');
+        }
+        return text.toString();
+    }
+
+    private static Map<String, Object> section(Map<String, Object> report, String name) {
+        Map<String, Object> section = new LinkedHashMap<>();
+        report.put(name, section);
+        return section;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> values(Object section) {
+        return (Map<String, Object>) section;
+    }
+
+    private static String percentileName(double percentile) {
+        return percentile == Math.rint(percentile)
+                ? String.valueOf((long) percentile)
+                : String.valueOf(percentile).replace(".", "");
+    }
+
+    private static String snakeCase(String name) {
+        StringBuilder result = new StringBuilder(name.length() + 4);
+        for (char c : name.toCharArray()) {
+            if (Character.isUpperCase(c)) {
+                result.append('_').append(Character.toLowerCase(c));
+            } else {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,546 @@
+package server;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import controllers.SecuritySystemController;
+import models.CSVLogger;
+import models.EventType;
+import network.NetworkConstant;
+import network.ProtocolJson;
+import network.Request;
+import network.Response;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Движок сервера на неблокирующих каналах: поток приема подключений и несколько потоков ввода-вывода,
+ * каждый со своим Selector.
+ * <p>
+ * Запросы - строки JSON, разделенные переводом строки. Полные строки передаются в ограниченный пул
+ * обработчиков, где выполняются через {@link ClientHandler#handleLine}. Запросы одного подключения
+ * обрабатываются строго по очереди, поэтому ответы приходят в порядке запросов.
+ * Если у подключения накопилось слишком много необработанных строк или неотправленных ответов
+ * (клиент не читает сокет), чтение из него и обработка его запросов приостанавливаются.
+ * Как и в блокирующем движке, подключение сверх maxSessions сразу получает отказ и закрывается.
+ */
+public class NioServerEngine {
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_LINE_BYTES = 16 * 1024 * 1024;
+    private static final int MAX_PENDING_LINES = 256;
+    // Предел неотправленных байт: сверх него чтение и обработка запросов подключения приостанавливаются,
+    // а потоковый ответ ждет, пока клиент заберет отправленное
+    private static final long MAX_QUEUED_BYTES = 1024 * 1024;
+
+    private final int port;
+    private final int maxSessions;
+    private final SecuritySystemController systemController;
+    private final CSVLogger csvLogger;
+    private final Reactor[] reactors;
+    private final ThreadPoolExecutor workers;
+    private final Gson gson = ProtocolJson.gson();
+    private final String busyResponse = gson.toJson(Response.error(NetworkConstant.MESSAGE_SERVER_BUSY));
+    private final ServerMetrics metrics = ServerMetrics.getInstance();
+    private volatile ServerSocketChannel serverChannel;
+    private volatile boolean running = true;
+
+    public NioServerEngine(int port, SecuritySystemController controller, CSVLogger csvLogger,
+                           int ioThreads, int workerThreads, int workerQueueCapacity, int maxSessions) {
+        this.port = port;
+        this.maxSessions = Math.max(1, maxSessions);
+        this.systemController = controller;
+        this.csvLogger = csvLogger;
+        this.reactors = new Reactor[Math.max(1, ioThreads)];
+        int threads = Math.max(1, workerThreads);
+        this.workers = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, workerQueueCapacity)), runnable -> {
+                    Thread thread = new Thread(runnable, "nio-worker");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * Принимает подключения в текущем потоке до вызова {@link #shutdown()}
+     */
+    public void start() throws IOException {
+        for (int i = 0; i < reactors.length; i++) {
+            reactors[i] = new Reactor(Selector.open());
+            Thread thread = new Thread(reactors[i], "nio-io-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        try (ServerSocketChannel channel = ServerSocketChannel.open()) {
+            serverChannel = channel;
+            channel.bind(new InetSocketAddress(port), 1024);
+            int next = 0;
+            while (running) {
+                SocketChannel client;
+                try {
+                    client = channel.accept();
+                } catch (IOException e) {
+                    if (running) {
+                        System.err.println("Ошибка при принятии подключения: " + e.getMessage());
+                    }
+                    continue;
+                }
+                if (metrics.getActiveSessions() + metrics.getQueuedSessions() >= maxSessions) {
+                    rejectSession(client);
+                    continue;
+                }
+                metrics.sessionQueued();
+                try {
+                    client.configureBlocking(false);
+                    client.socket().setTcpNoDelay(true);
+                } catch (IOException e) {
+                    metrics.sessionDequeued();
+                    closeQuietly(client);
+                    continue;
+                }
+                reactors[next].register(client);
+                next = (next + 1) % reactors.length;
+            }
+        } finally {
+            shutdown();
+        }
+    }
+
+    public void shutdown() {
+        running = false;
+        ServerSocketChannel channel = serverChannel;
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // канал уже закрыт
+            }
+        }
+        for (Reactor reactor : reactors) {
+            if (reactor != null) {
+                reactor.close();
+            }
+        }
+        workers.shutdown();
+    }
+
+    /**
+     * Отвечает отказом и закрывает подключение. Канал еще блокирующий, а ответ короче буфера сокета
+     */
+    private void rejectSession(SocketChannel client) {
+        metrics.sessionRejected();
+        String address = describe(client);
+        try {
+            client.write(ByteBuffer.wrap((busyResponse + "\n").getBytes(StandardCharsets.UTF_8)));
+        } catch (IOException e) {
+            // клиент уже отключился
+        }
+        closeQuietly(client);
+        csvLogger.logSystemEvent(EventType.WARNING, "Подключение отклонено, сервер перегружен: " + address);
+    }
+
+    /**
+     * Передает накопленные строки подключения в пул обработчиков, если они еще не обрабатываются
+     */
+    private void schedule(Connection connection) {
+        synchronized (connection) {
+            // При переполненной очереди записи обработку возобновит write(), когда клиент заберет ответы
+            if (connection.processing || connection.pendingLines.isEmpty()
+                    || connection.queuedBytes > MAX_QUEUED_BYTES) {
+                return;
+            }
+            connection.processing = true;
+        }
+        try {
+            workers.execute(() -> process(connection));
+        } catch (RejectedExecutionException e) {
+            // Пул переполнен: отвечаем на все ожидающие запросы отказом, сохраняя их порядок и id
+            synchronized (connection) {
+                String line;
+                while ((line = connection.pendingLines.poll()) != null) {
+                    metrics.requestRejected();
+                    Response busy = Response.error(NetworkConstant.MESSAGE_SERVER_BUSY);
+                    busy.setId(requestId(line));
+                    connection.reactor.send(connection, gson.toJson(busy));
+                }
+                connection.processing = false;
+            }
+            connection.reactor.resumeReading(connection);
+        }
+    }
+
+    /**
+     * id запроса из строки, которую не удалось передать обработчику; null, если строка не разбирается
+     */
+    private Long requestId(String line) {
+        try {
+            Request request = gson.fromJson(line, Request.class);
+            return request != null ? request.getId() : null;
+        } catch (JsonParseException e) {
+            return null;
+        }
+    }
+
+    private void process(Connection connection) {
+        while (true) {
+            String line;
+            synchronized (connection) {
+                // Клиент не забирает ответы: следующую строку запланирует write() после разгрузки очереди
+                line = connection.queuedBytes > MAX_QUEUED_BYTES ? null : connection.pendingLines.poll();
+                if (line == null || connection.closed) {
+                    connection.processing = false;
+                    break;
+                }
+            }
+            connection.reactor.send(connection, connection.handler.handleLine(line));
+        }
+        connection.reactor.resumeReading(connection);
+    }
+
+    /**
+     * Поток ввода-вывода: читает строки запросов и пишет ответы своих подключений
+     */
+    private final class Reactor implements Runnable {
+        private final Selector selector;
+        private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+        // Действия других потоков, выполняемые в потоке селектора
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+        Reactor(Selector selector) {
+            this.selector = selector;
+        }
+
+        void register(SocketChannel channel) {
+            execute(() -> {
+                String address = describe(channel);
+                Connection connection = new Connection(this, channel,
+                        new ClientHandler(address, systemController, csvLogger));
+                connection.handler.setPartialSender(part -> sendAndWait(connection, connection.handler.encodeLine(part)));
+                connection.handler.setPushSender(part -> trySend(connection, connection.handler.encodeLine(part)));
+                connection.handler.setSessionCloser(() -> execute(() -> close(connection)));
+                try {
+                    connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+                    metrics.sessionStarted();
+                    connection.handler.onConnect();
+                } catch (IOException e) {
+                    metrics.sessionDequeued();
+                    closeQuietly(channel);
+                }
+            });
+        }
+
+        /**
+         * Ставит ответ в очередь записи подключения. Вызывается из потоков обработчиков
+         */
+        void send(Connection connection, String response) {
+            byte[] bytes = (response + "\n").getBytes(StandardCharsets.UTF_8);
+            boolean overLimit;
+            synchronized (connection) {
+                connection.queuedBytes += bytes.length;
+                overLimit = connection.queuedBytes > MAX_QUEUED_BYTES;
+            }
+            connection.writeQueue.add(ByteBuffer.wrap(bytes));
+            execute(() -> {
+                enableWrite(connection);
+                if (overLimit) {
+                    pauseReadingIfBacklogged(connection);
+                }
+            });
+        }
+
+        /**
+         * Ставит событие подписки в очередь записи, если у подключения нет долга сверх предела.
+         * Не блокируется: медленный клиент теряет свои события, а не задерживает рассылку другим
+         *
+         * @return false, если подключение закрыто или его очередь записи переполнена
+         */
+        boolean trySend(Connection connection, String line) {
+            synchronized (connection) {
+                if (connection.closed || connection.queuedBytes > MAX_QUEUED_BYTES) {
+                    return false;
+                }
+            }
+            send(connection, line);
+            return true;
+        }
+
+        /**
+         * Ставит часть потокового ответа в очередь и ждет, пока очередь записи не опустеет ниже предела.
+         * Вызывается из потока обработчика
+         */
+        void sendAndWait(Connection connection, String part) {
+            send(connection, part);
+            synchronized (connection) {
+                while (connection.queuedBytes > MAX_QUEUED_BYTES && !connection.closed) {
+                    try {
+                        connection.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        // Как и при закрытии соединения, прерывает формирование оставшихся частей
+                        throw new UncheckedIOException(new InterruptedIOException("Передача ответа прервана"));
+                    }
+                }
+                if (connection.closed) {
+                    // Прерывает формирование оставшихся частей ответа
+                    throw new UncheckedIOException(new IOException("Соединение закрыто"));
+                }
+            }
+        }
+
+        void resumeReading(Connection connection) {
+            execute(() -> resumeReadingIfReady(connection));
+        }
+
+        /**
+         * Снимает интерес к чтению, пока у подключения много необработанных строк или неотправленных байт.
+         * Вызывается в потоке селектора
+         */
+        private void pauseReadingIfBacklogged(Connection connection) {
+            synchronized (connection) {
+                if (connection.readPaused || connection.closed
+                        || (connection.pendingLines.size() < MAX_PENDING_LINES
+                        && connection.queuedBytes <= MAX_QUEUED_BYTES)) {
+                    return;
+                }
+                connection.readPaused = true;
+            }
+            if (connection.key.isValid()) {
+                connection.key.interestOps(connection.key.interestOps() & ~SelectionKey.OP_READ);
+            }
+        }
+
+        /**
+         * Возобновляет чтение, когда очередь строк ушла ниже половины предела, а очередь записи - ниже предела.
+         * Вызывается в потоке селектора
+         */
+        private void resumeReadingIfReady(Connection connection) {
+            synchronized (connection) {
+                if (!connection.readPaused || connection.pendingLines.size() >= MAX_PENDING_LINES / 2
+                        || connection.queuedBytes > MAX_QUEUED_BYTES) {
+                    return;
+                }
+                connection.readPaused = false;
+            }
+            if (connection.key.isValid()) {
+                connection.key.interestOps(connection.key.interestOps() | SelectionKey.OP_READ);
+            }
+        }
+
+        private void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    selector.select();
+                    Runnable task;
+                    while ((task = tasks.poll()) != null) {
+                        task.run();
+                    }
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        Connection connection = (Connection) key.attachment();
+                        try {
+                            if (key.isValid() && key.isReadable()) {
+                                read(connection);
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                write(connection);
+                            }
+                        } catch (IOException e) {
+                            close(connection);
+                        }
+                    }
+                }
+            } catch (IOException | ClosedSelectorException e) {
+                if (running) {
+                    System.err.println("Ошибка потока ввода-вывода: " + e.getMessage());
+                }
+            } finally {
+                closeAll();
+            }
+        }
+
+        private void read(Connection connection) throws IOException {
+            readBuffer.clear();
+            int read = connection.channel.read(readBuffer);
+            if (read < 0) {
+                close(connection);
+                return;
+            }
+            metrics.bytesReceived(read);
+            readBuffer.flip();
+            boolean newLines = false;
+            while (readBuffer.hasRemaining()) {
+                byte b = readBuffer.get();
+                if (b != '\n') {
+                    if (connection.lineBuffer.size() >= MAX_LINE_BYTES) {
+                        throw new IOException("Слишком длинный запрос");
+                    }
+                    connection.lineBuffer.write(b);
+                    continue;
+                }
+                String line = decode(connection.lineBuffer);
+                connection.lineBuffer.reset();
+                if (line.isBlank()) {
+                    continue;
+                }
+                synchronized (connection) {
+                    connection.pendingLines.add(line);
+                }
+                newLines = true;
+            }
+            if (!newLines) {
+                return;
+            }
+            pauseReadingIfBacklogged(connection);
+            schedule(connection);
+        }
+
+        private void enableWrite(Connection connection) {
+            if (connection.key != null && connection.key.isValid()) {
+                connection.key.interestOps(connection.key.interestOps() | SelectionKey.OP_WRITE);
+            }
+        }
+
+        private void write(Connection connection) throws IOException {
+            ByteBuffer buffer;
+            boolean drained = false;
+            while ((buffer = connection.writeQueue.peek()) != null) {
+                metrics.bytesSent(connection.channel.write(buffer));
+                if (buffer.hasRemaining()) {
+                    break;
+                }
+                connection.writeQueue.poll();
+                synchronized (connection) {
+                    boolean wasOverLimit = connection.queuedBytes > MAX_QUEUED_BYTES;
+                    connection.queuedBytes -= buffer.capacity();
+                    if (connection.queuedBytes <= MAX_QUEUED_BYTES) {
+                        drained |= wasOverLimit;
+                        connection.notifyAll();
+                    }
+                }
+            }
+            if (buffer == null) {
+                connection.key.interestOps(connection.key.interestOps() & ~SelectionKey.OP_WRITE);
+                // Ответ мог быть добавлен между проверкой очереди и снятием интереса к записи
+                if (!connection.writeQueue.isEmpty()) {
+                    enableWrite(connection);
+                }
+            }
+            if (drained) {
+                // Клиент забрал ответы: продолжаем чтение и обработку отложенных строк
+                resumeReadingIfReady(connection);
+                schedule(connection);
+            }
+        }
+
+        private void close(Connection connection) {
+            synchronized (connection) {
+                if (connection.closed) {
+                    return;
+                }
+                connection.closed = true;
+                connection.pendingLines.clear();
+                connection.notifyAll();
+            }
+            connection.key.cancel();
+            closeQuietly(connection.channel);
+            metrics.sessionFinished();
+            connection.handler.onDisconnect();
+        }
+
+        /**
+         * Останавливает поток: после выхода из цикла выбора он закрывает все свои подключения
+         */
+        void close() {
+            selector.wakeup();
+        }
+
+        private void closeAll() {
+            try {
+                for (SelectionKey key : selector.keys()) {
+                    if (key.attachment() instanceof Connection connection) {
+                        close(connection);
+                    }
+                }
+                selector.close();
+            } catch (IOException | ClosedSelectorException e) {
+                // селектор уже закрыт
+            }
+        }
+    }
+
+    private static String decode(ByteArrayOutputStream line) {
+        byte[] bytes = line.toByteArray();
+        int length = bytes.length;
+        if (length > 0 && bytes[length - 1] == '\r') {
+            length--;
+        }
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private static String describe(SocketChannel channel) {
+        try {
+            InetSocketAddress address = (InetSocketAddress) channel.getRemoteAddress();
+            return address.getAddress().getHostAddress() + ":" + address.getPort();
+        } catch (IOException e) {
+            return "unknown";
+        }
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // соединение уже закрыто
+        }
+    }
+
+    /**
+     * Состояние одного подключения. Буфер строки меняет только поток ввода-вывода,
+     * очередь строк, счетчик неотправленных байт и флаги защищены монитором подключения
+     */
+    private static final class Connection {
+        final Reactor reactor;
+        final SocketChannel channel;
+        final ClientHandler handler;
+        final ByteArrayOutputStream lineBuffer = new ByteArrayOutputStream(256);
+        final Queue<String> pendingLines = new ArrayDeque<>();
+        final Queue<ByteBuffer> writeQueue = new ConcurrentLinkedQueue<>();
+        SelectionKey key;
+        long queuedBytes;
+        boolean processing;
+        boolean readPaused;
+        boolean closed;
+
+        Connection(Reactor reactor, SocketChannel channel, ClientHandler handler) {
+            this.reactor = reactor;
+            this.channel = channel;
+            this.handler = handler;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package server;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Счетчики клиентских сессий сервера: активные, ожидающие свободного потока и отклоненные при перегрузке,
+ * а также байты, принятые от клиентов и отправленные им.
+ * Общий экземпляр доступен всем движкам сервера и обработчикам клиентов.
+ */
+public class ServerMetrics {
+    private static final ServerMetrics INSTANCE = new ServerMetrics();
+
+    private final AtomicInteger activeSessions = new AtomicInteger();
+    private final AtomicInteger queuedSessions = new AtomicInteger();
+    private final AtomicLong acceptedSessions = new AtomicLong();
+    private final AtomicLong rejectedSessions = new AtomicLong();
+    private final AtomicLong rejectedRequests = new AtomicLong();
+    // LongAdder: счет ведут все потоки ввода-вывода на каждое чтение и запись
+    private final LongAdder bytesReceived = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+
+    public static ServerMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Сессия принята и ждет потока в очереди исполнителя
+     */
+    public void sessionQueued() {
+        acceptedSessions.incrementAndGet();
+        queuedSessions.incrementAndGet();
+    }
+
+    /**
+     * Сессия получила поток (или, для NIO-движка, зарегистрирована в селекторе)
+     */
+    public void sessionStarted() {
+        queuedSessions.decrementAndGet();
+        activeSessions.incrementAndGet();
+    }
+
+    public void sessionFinished() {
+        activeSessions.decrementAndGet();
+    }
+
+    /**
+     * Сессия так и не запустилась: исполнитель отказал после постановки в очередь
+     */
+    public void sessionDequeued() {
+        queuedSessions.decrementAndGet();
+    }
+
+    public void sessionRejected() {
+        rejectedSessions.incrementAndGet();
+    }
+
+    public void requestRejected() {
+        rejectedRequests.incrementAndGet();
+    }
+
+    public void bytesReceived(long count) {
+        bytesReceived.add(count);
+    }
+
+    public void bytesSent(long count) {
+        bytesSent.add(count);
+    }
+
+    public int getActiveSessions() {
+        return activeSessions.get();
+    }
+
+    public int getQueuedSessions() {
+        return queuedSessions.get();
+    }
+
+    public long getAcceptedSessions() {
+        return acceptedSessions.get();
+    }
+
+    public long getRejectedSessions() {
+        return rejectedSessions.get();
+    }
+
+    public long getRejectedRequests() {
+        return rejectedRequests.get();
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived.sum();
+    }
+
+    public long getBytesSent() {
+        return bytesSent.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "Сессии: активных " + getActiveSessions()
+                + ", в очереди " + getQueuedSessions()
+                + ", принято " + getAcceptedSessions()
+                + ", отклонено " + getRejectedSessions()
+                + "; отклонено запросов: " + getRejectedRequests()
+                + "; байт принято " + getBytesReceived() + ", отправлено " + getBytesSent();
+    }
+}
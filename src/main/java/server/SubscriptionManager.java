@@ -0,0 +1,192 @@
+package server;
+
+import models.CSVLogger;
+import models.EventType;
+import models.SecuritySystem;
+import models.dto.SystemChangeEvent;
+import network.Response;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Подписки клиентов на изменения систем (команда SUBSCRIBE). События приходят от {@link CSVLogger}
+ * в потоке, изменившем систему, и раскладываются по ограниченным очередям подписок. Потоки рассылки
+ * передают события в ограниченную исходящую очередь соединения, не дожидаясь записи в сокет, поэтому
+ * медленный подписчик не задерживает ни команды, ни других подписчиков.
+ * При переполнении любой из очередей события отбрасываются - подписчик видит это по пропуску sequence.
+ * Потоков отправки фиксированное число: у каждой подписки в очереди пула не больше одной задачи,
+ * так что число подписчиков не превращается в число потоков.
+ */
+public class SubscriptionManager implements CSVLogger.EventListener {
+    private static final int QUEUE_CAPACITY = 1024;
+    // Объявлено до INSTANCE: конструктор читает его при инициализации класса
+    private static final int SENDER_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+    private static final SubscriptionManager INSTANCE = new SubscriptionManager();
+
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final AtomicLong nextId = new AtomicLong();
+    private final AtomicLong droppedEvents = new AtomicLong();
+    private final ExecutorService senders = Executors.newFixedThreadPool(SENDER_THREADS, task -> {
+        Thread thread = new Thread(task, "subscription-sender");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public static SubscriptionManager getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @param owner      обработчик соединения, по которому подписки снимаются при отключении
+     * @param requestId  id запроса SUBSCRIBE; им помечаются все события подписки
+     * @param systemIds  null - все системы
+     * @param types      простые имена классов систем; null - все типы
+     * @param eventTypes null - все события систем
+     * @param sender     неблокирующая отправка события в соединение; false - событие отброшено
+     * @return id подписки для UNSUBSCRIBE
+     */
+    public long subscribe(Object owner, Long requestId, Set<String> systemIds, Set<String> types,
+                          Set<EventType> eventTypes, Predicate<Response> sender) {
+        Subscription subscription = new Subscription(nextId.incrementAndGet(), owner, requestId,
+                systemIds, types, eventTypes, sender);
+        subscriptions.add(subscription);
+        return subscription.id;
+    }
+
+    /**
+     * @return false, если у этого владельца нет такой подписки
+     */
+    public boolean unsubscribe(Object owner, long subscriptionId) {
+        for (Subscription subscription : subscriptions) {
+            if (subscription.id == subscriptionId && subscription.owner == owner) {
+                remove(subscription);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void unsubscribeAll(Object owner) {
+        for (Subscription subscription : subscriptions) {
+            if (subscription.owner == owner) {
+                remove(subscription);
+            }
+        }
+    }
+
+    private void remove(Subscription subscription) {
+        subscription.closed = true;
+        subscriptions.remove(subscription);
+    }
+
+    @Override
+    public void onEvent(SecuritySystem system, EventType eventType, String details) {
+        if (subscriptions.isEmpty()) {
+            return;
+        }
+        String type = system.getClass().getSimpleName();
+        SystemChangeEvent event = null;
+        for (Subscription subscription : subscriptions) {
+            if (subscription.matches(system.getSystemId(), type, eventType)) {
+                if (event == null) {
+                    // Снимок берется один раз для всех подписчиков, пока система не изменилась дальше
+                    long version = system.getVersion();
+                    event = new SystemChangeEvent(0, LocalDateTime.now(), system.getSystemId(), type,
+                            system.getLocation(), system.getSecurityMode(), system.isArmed(),
+                            system.getBatteryLevel(), system.getSignalStrength(), eventType, details, version);
+                }
+                subscription.offer(event);
+            }
+        }
+    }
+
+    public int getSubscriptionCount() {
+        return subscriptions.size();
+    }
+
+    public long getDroppedEvents() {
+        return droppedEvents.get();
+    }
+
+    private final class Subscription {
+        final long id;
+        final Object owner;
+        final Long requestId;
+        final Set<String> systemIds;
+        final Set<String> types;
+        final Set<EventType> eventTypes;
+        final Predicate<Response> sender;
+        final BlockingQueue<SystemChangeEvent> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        final AtomicBoolean sending = new AtomicBoolean();
+        long sequence;
+        volatile boolean closed;
+
+        Subscription(long id, Object owner, Long requestId, Set<String> systemIds, Set<String> types,
+                     Set<EventType> eventTypes, Predicate<Response> sender) {
+            this.id = id;
+            this.owner = owner;
+            this.requestId = requestId;
+            this.systemIds = systemIds;
+            this.types = types;
+            this.eventTypes = eventTypes;
+            this.sender = sender;
+        }
+
+        boolean matches(String systemId, String type, EventType eventType) {
+            return (systemIds == null || systemIds.contains(systemId))
+                    && (types == null || types.contains(type))
+                    && (eventTypes == null || eventTypes.contains(eventType));
+        }
+
+        void offer(SystemChangeEvent event) {
+            // Номер и место в очереди назначаются вместе, иначе события разных потоков перемешаются
+            synchronized (this) {
+                SystemChangeEvent numbered = event.withSequence(++sequence);
+                while (!queue.offer(numbered)) {
+                    if (queue.poll() != null) {
+                        droppedEvents.incrementAndGet();
+                    }
+                }
+            }
+            scheduleSend();
+        }
+
+        void scheduleSend() {
+            if (!closed && sending.compareAndSet(false, true)) {
+                senders.execute(this::send);
+            }
+        }
+
+        void send() {
+            try {
+                SystemChangeEvent event;
+                while (!closed && (event = queue.poll()) != null) {
+                    Response push = new Response(true, null, event);
+                    push.setId(requestId);
+                    push.setMore(true);
+                    if (!sender.test(push)) {
+                        droppedEvents.incrementAndGet();
+                    }
+                }
+            } catch (RuntimeException e) {
+                // Соединение закрыто или сломано - подписка больше не нужна
+                remove(this);
+            } finally {
+                sending.set(false);
+            }
+            if (!queue.isEmpty()) {
+                scheduleSend();
+            }
+        }
+    }
+}
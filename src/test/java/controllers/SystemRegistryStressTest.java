@@ -0,0 +1,204 @@
+package controllers;
+
+import models.HomeAlarmSystem;
+import models.SecuritySystem;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Реестр под нагрузкой 64 одновременных клиентов: ни одно добавление или удаление не теряется,
+ * а снимки, которые читают параллельно, всегда целые
+ */
+class SystemRegistryStressTest {
+    private static final int CLIENTS = 64;
+    private static final int SYSTEMS_PER_CLIENT = 2000;
+
+    @Test
+    void concurrentClientsLoseNoUpdates() throws Exception {
+        SystemRegistry registry = new SystemRegistry();
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENTS + 1);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        try {
+            Future<Integer> reader = clients.submit(() -> {
+                start.await();
+                int snapshots = 0;
+                while (writing.get()) {
+                    for (SecuritySystem system : registry.snapshot()) {
+                        assertNotNull(system);
+                    }
+                    snapshots++;
+                }
+                return snapshots;
+            });
+            List<Future<?>> writers = new ArrayList<>();
+            for (int client = 0; client < CLIENTS; client++) {
+                int id = client;
+                writers.add(clients.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < SYSTEMS_PER_CLIENT; i++) {
+                        registry.add(new HomeAlarmSystem(systemId(id, i), "client-" + id));
+                        // Каждую вторую систему клиент удаляет сразу после добавления
+                        if (i % 2 == 1) {
+                            assertNotNull(registry.removeById(systemId(id, i)));
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> writer : writers) {
+                writer.get(2, TimeUnit.MINUTES);
+            }
+            writing.set(false);
+            assertTrue(reader.get(1, TimeUnit.MINUTES) > 0);
+        } finally {
+            clients.shutdownNow();
+        }
+
+        assertEquals(CLIENTS * SYSTEMS_PER_CLIENT / 2, registry.size());
+        Set<String> ids = new HashSet<>();
+        for (SecuritySystem system : registry.snapshot()) {
+            assertTrue(ids.add(system.getSystemId()), "повтор " + system.getSystemId());
+            assertSame(system, registry.getById(system.getSystemId()));
+        }
+        for (int client = 0; client < CLIENTS; client++) {
+            for (int i = 0; i < SYSTEMS_PER_CLIENT; i++) {
+                boolean kept = i % 2 == 0;
+                assertEquals(kept, ids.contains(systemId(client, i)), systemId(client, i));
+            }
+        }
+    }
+
+    @Test
+    void removalsKeepListOrderAcrossChunks() {
+        SystemRegistry registry = new SystemRegistry();
+        List<SecuritySystem> expected = new ArrayList<>();
+        for (int i = 0; i < SystemRegistry.CHUNK_SIZE * 3 + 17; i++) {
+            SecuritySystem system = new HomeAlarmSystem(systemId(0, i), "loc");
+            registry.add(system);
+            expected.add(system);
+        }
+        Random random = new Random(42);
+        for (int i = 0; i < 1500; i++) {
+            int index = random.nextInt(expected.size());
+            if (random.nextBoolean()) {
+                assertSame(expected.remove(index), registry.remove(index));
+            } else {
+                SecuritySystem removed = expected.remove(index);
+                assertSame(removed, registry.removeById(removed.getSystemId()));
+                assertNull(registry.getById(removed.getSystemId()));
+            }
+        }
+        assertEquals(expected, registry.snapshot());
+        for (int i = 0; i < expected.size(); i++) {
+            assertSame(expected.get(i), registry.get(i));
+        }
+        assertNull(registry.get(expected.size()));
+    }
+
+    @Test
+    void keysetCursorSurvivesRemovalOfItsSystem() {
+        SystemRegistry registry = new SystemRegistry();
+        List<SecuritySystem> expected = new ArrayList<>();
+        for (int i = 0; i < SystemRegistry.CHUNK_SIZE * 2 + 5; i++) {
+            SecuritySystem system = new HomeAlarmSystem(systemId(0, i), "loc");
+            registry.add(system);
+            expected.add(system);
+        }
+        List<SecuritySystem> all = new ArrayList<>(expected);
+        List<SecuritySystem> read = new ArrayList<>();
+        SystemRegistry.Snapshot snapshot = registry.snapshot();
+        int start = 0;
+        while (start < snapshot.size()) {
+            int end = Math.min(snapshot.size(), start + 100);
+            read.addAll(snapshot.subList(start, end));
+            long cursor = snapshot.orderKey(end - 1);
+            // Система курсора удаляется между страницами - чтение продолжается со следующей
+            SecuritySystem last = snapshot.get(end - 1);
+            registry.removeById(last.getSystemId());
+            expected.remove(last);
+            snapshot = registry.snapshot();
+            start = snapshot.positionAfter(cursor);
+        }
+        assertEquals(all, read);
+        assertEquals(expected, registry.snapshot());
+    }
+
+    @Test
+    void deltaSyncSeesEveryChange() throws Exception {
+        SystemRegistry registry = new SystemRegistry();
+        List<SecuritySystem> systems = new ArrayList<>();
+        for (int i = 0; i < CLIENTS; i++) {
+            SecuritySystem system = new HomeAlarmSystem(systemId(0, i), "loc");
+            registry.add(system);
+            systems.add(system);
+        }
+        ExecutorService clients = Executors.newFixedThreadPool(8);
+        Map<String, Long> synced = new HashMap<>();
+        try {
+            List<Future<?>> writers = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                int seed = t;
+                writers.add(clients.submit(() -> {
+                    Random random = new Random(seed);
+                    for (int i = 0; i < 200_000; i++) {
+                        systems.get(random.nextInt(systems.size())).touch();
+                    }
+                    return null;
+                }));
+            }
+            long since = 0;
+            while (!writers.stream().allMatch(Future::isDone)) {
+                since = sync(registry, since, synced);
+            }
+            for (Future<?> writer : writers) {
+                writer.get();
+            }
+            sync(registry, since, synced);
+        } finally {
+            clients.shutdownNow();
+        }
+        // Клиент, синхронизированный после последнего изменения, должен видеть последние версии всех систем
+        for (SecuritySystem system : systems) {
+            assertEquals(system.getVersion(), synced.get(system.getSystemId()), system.getSystemId());
+        }
+    }
+
+    /**
+     * Разностная синхронизация, как у клиента: берет системы новее since и возвращает новую версию
+     */
+    private static long sync(SystemRegistry registry, long since, Map<String, Long> synced) {
+        SystemRegistry.Changes changes = registry.changesSince(since);
+        for (SecuritySystem system : changes.getSystems()) {
+            long version = system.getVersion();
+            if (version > since) {
+                synced.merge(system.getSystemId(), version, Math::max);
+            }
+        }
+        return changes.getVersion();
+    }
+
+    private static String systemId(int client, int number) {
+        return "SYS-" + client + "-" + number;
+    }
+}
@@ -0,0 +1,94 @@
+package models;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Строка CSV-журнала: {@link CsvLineEncoder} против прежнего String.format с LocalDateTime.toString()
+ * и записи через Writer. Обе ветки пишут одну и ту же строку в один и тот же поток.
+ * <p>
+ * Запуск: mvn test-compile, затем
+ * java -cp target/test-classes:target/classes:&lt;зависимости test&gt; org.openjdk.jmh.Main CsvLineEncoderBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CsvLineEncoderBenchmark {
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+    private static final String SYSTEM_ID = "HOME-0042";
+    private static final String LOCATION = "Москва, ул. Тверская 1";
+    private static final String MODE = "Дома";
+    private static final String DETAILS = "Проверка датчика двери";
+
+    private ByteArrayOutputStream sink;
+    private Writer writer;
+    private CsvLineEncoder encoder;
+    private Instant timestamp;
+
+    @Setup
+    public void setUp() {
+        sink = new ByteArrayOutputStream(1 << 20);
+        writer = new OutputStreamWriter(sink, StandardCharsets.UTF_8);
+        encoder = new CsvLineEncoder(ZONE);
+        timestamp = Instant.now();
+    }
+
+    @Benchmark
+    public int stringFormat() throws IOException {
+        sink.reset();
+        String description = EventType.CONNECTIVITY_CHECK.getDescription() + ": " + DETAILS;
+        String line = String.format("%s,%s,%s,%s,%s,%d,%d,%s,%s",
+                LocalDateTime.ofInstant(timestamp, ZONE),
+                SYSTEM_ID,
+                LOCATION,
+                MODE,
+                true,
+                87,
+                4,
+                EventType.CONNECTIVITY_CHECK.name(),
+                description);
+        writer.write(line);
+        writer.write(System.lineSeparator());
+        writer.flush();
+        return sink.size();
+    }
+
+    @Benchmark
+    public int lineEncoder() throws IOException {
+        sink.reset();
+        encoder.reset()
+                .appendTimestamp(timestamp).append(',')
+                .append(SYSTEM_ID).append(',')
+                .append(LOCATION).append(',')
+                .append(MODE).append(',')
+                .append(true).append(',')
+                .append(87).append(',')
+                .append(4).append(',')
+                .append(EventType.CONNECTIVITY_CHECK.name()).append(',')
+                .append(EventType.CONNECTIVITY_CHECK.getDescription())
+                .append(':').append(' ').append(DETAILS)
+                .newLine().writeTo(sink);
+        return sink.size();
+    }
+}
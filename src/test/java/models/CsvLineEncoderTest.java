@@ -0,0 +1,107 @@
+package models;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+/**
+ * {@link CsvLineEncoder} пишет в журнал те же байты, что и прежний String.format
+ * с LocalDateTime.toString() через Writer в UTF-8
+ */
+class CsvLineEncoderTest {
+    private static final ZoneId ZONE = ZoneId.of("Europe/Moscow");
+    private static final String DETAILS = "Проверка датчика двери";
+
+    @Test
+    void timestampsMatchLocalDateTimeToString() throws IOException {
+        CsvLineEncoder encoder = new CsvLineEncoder(ZONE);
+        String[] timestamps = {
+                "2026-03-15T09:30:00Z",              // целая минута: секунды не выводятся
+                "2026-03-15T09:30:07Z",              // целая секунда
+                "2026-03-15T09:30:07.120Z",          // миллисекунды
+                "2026-03-15T09:30:07.000450Z",       // микросекунды
+                "2026-03-15T09:30:07.000000001Z",    // наносекунды
+                "2026-03-15T09:31:00.5Z",            // дробная часть при нулевых секундах
+                "2026-12-31T20:59:59.999999999Z",    // последняя наносекунда суток по Москве
+                "2026-12-31T21:00:00Z",              // полночь нового года по Москве
+                "0999-01-01T00:00:00Z",              // год вне кэшируемого диапазона
+                "+10000-01-01T00:00:00Z"
+        };
+        for (String timestamp : timestamps) {
+            assertSameLine(encoder, Instant.parse(timestamp), "HOME-0042", DETAILS);
+        }
+    }
+
+    @Test
+    void timestampsWithinOneSecondReuseCachedPrefix() throws IOException {
+        CsvLineEncoder encoder = new CsvLineEncoder(ZONE);
+        Instant second = Instant.parse("2026-03-15T09:30:00Z");
+        for (int nano : new int[]{0, 1, 1_000, 1_000_000, 999_999_999, 0}) {
+            assertSameLine(encoder, second.plusNanos(nano), "HOME-0042", DETAILS);
+        }
+    }
+
+    @Test
+    void textIsEncodedAsUtf8WithoutEscaping() throws IOException {
+        CsvLineEncoder encoder = new CsvLineEncoder(ZONE);
+        Instant timestamp = Instant.parse("2026-03-15T09:30:07.120Z");
+        String[] descriptions = {
+                "",
+                "Запятые, внутри, описания",
+                "Кавычки \"двойные\" и 'одинарные'",
+                "Кириллица: ЁЖИК ёжик, щ и ъ",
+                "Смешанный текст: sensor №3 °C",
+                "Эмодзи вне BMP 🔒 после",
+                "Непарный суррогат \uD83D в середине",
+                "Длинное описание ".repeat(40)
+        };
+        for (String description : descriptions) {
+            assertSameLine(encoder, timestamp, "CAR-Ж-7", description);
+        }
+    }
+
+    private static void assertSameLine(CsvLineEncoder encoder, Instant timestamp, String systemId, String details)
+            throws IOException {
+        String description = EventType.CONNECTIVITY_CHECK.getDescription() + ": " + details;
+        String line = String.format("%s,%s,%s,%s,%s,%d,%d,%s,%s",
+                LocalDateTime.ofInstant(timestamp, ZONE),
+                systemId,
+                "Москва, ул. Тверская 1",
+                "Дома",
+                false,
+                -5,
+                100,
+                EventType.CONNECTIVITY_CHECK.name(),
+                description);
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        Writer writer = new OutputStreamWriter(expected, StandardCharsets.UTF_8);
+        writer.write(line);
+        writer.write(System.lineSeparator());
+        writer.flush();
+
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        encoder.reset()
+                .appendTimestamp(timestamp).append(',')
+                .append(systemId).append(',')
+                .append("Москва, ул. Тверская 1").append(',')
+                .append("Дома").append(',')
+                .append(false).append(',')
+                .append(-5).append(',')
+                .append(100).append(',')
+                .append(EventType.CONNECTIVITY_CHECK.name()).append(',')
+                .append(EventType.CONNECTIVITY_CHECK.getDescription())
+                .append(':').append(' ').append(details)
+                .newLine().writeTo(actual);
+
+        assertArrayEquals(expected.toByteArray(), actual.toByteArray(), line);
+    }
+}
@@ -0,0 +1,82 @@
+package models;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Индекс журнала, сохраненный на диск, используется повторно, пока журнал не заменен
+ */
+class CsvLogIndexTest {
+    private static final String HEADER = "timestamp,systemId,event\n";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void reopenUsesSavedIndex() throws IOException {
+        Path log = dir.resolve("log.csv");
+        writeLog(log, "A-1", "B-1");
+        openAndClose(log);
+
+        CsvLogIndex index = new CsvLogIndex(log);
+        assertFalse(index.open(true));
+        assertEquals(List.of("2026-01-01T00:00:01,A-1,event 1"), index.readLatest("A-1", 10));
+        index.close();
+    }
+
+    @Test
+    void logReplacedWithSameSizeRebuildsIndex() throws IOException {
+        Path log = dir.resolve("log.csv");
+        writeLog(log, "A-1", "B-1");
+        openAndClose(log);
+        long size = Files.size(log);
+
+        // Тот же размер и те же границы строк, но другие системы
+        writeLog(log, "C-1", "D-1");
+        assertEquals(size, Files.size(log));
+
+        CsvLogIndex index = new CsvLogIndex(log);
+        assertTrue(index.open(true));
+        assertTrue(index.readLatest("A-1", 10).isEmpty());
+        assertEquals(List.of("2026-01-01T00:00:01,C-1,event 1"), index.readLatest("C-1", 10));
+        index.close();
+    }
+
+    @Test
+    void logReplacedWithoutSavedHeadsRebuildsIndex() throws IOException {
+        Path log = dir.resolve("log.csv");
+        writeLog(log, "A-1", "B-1");
+        openAndClose(log);
+        // Как после сбоя: .heads не сохранен, записи индекса сверяются с журналом
+        Files.delete(dir.resolve("log.csv.idx.heads"));
+        writeLog(log, "C-1", "D-1");
+
+        CsvLogIndex index = new CsvLogIndex(log);
+        assertTrue(index.open(true));
+        assertEquals(List.of("2026-01-01T00:00:02,D-1,event 2"), index.readLatest("D-1", 10));
+        index.close();
+    }
+
+    private static void openAndClose(Path log) throws IOException {
+        CsvLogIndex index = new CsvLogIndex(log);
+        index.open(true);
+        index.close();
+    }
+
+    private static void writeLog(Path log, String first, String second) throws IOException {
+        String content = HEADER
+                + "2026-01-01T00:00:01," + first + ",event 1\n"
+                + "2026-01-01T00:00:02," + second + ",event 2\n";
+        Files.writeString(log, content, StandardCharsets.UTF_8);
+    }
+}
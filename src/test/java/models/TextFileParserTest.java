@@ -0,0 +1,173 @@
+package models;
+
+import com.google.gson.JsonObject;
+import network.ProtocolJson;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Параллельное чтение кусками через отображение в память дает тот же список систем в том же порядке
+ * и тот же отчет диагностики, что и последовательное потоковое чтение; из повторов свойства учитывается первый
+ */
+class TextFileParserTest {
+    // Значение длиннее окна поиска метки (64 КБ), чтобы метка после него попадала на границу окна
+    private static final int LONG_VALUE_CHARS = 40_000;
+
+    @TempDir
+    Path dir;
+
+    private Path fixture;
+    private long headerAfterLongValue;
+
+    @BeforeEach
+    void writeFixture() throws IOException {
+        StringBuilder text = new StringBuilder();
+        text.append("[HomeAlarmSystem]id:big location:Склад alarmsound:")
+                .append("ж".repeat(LONG_VALUE_CHARS)).append('\n');
+        headerAfterLongValue = text.toString().getBytes(StandardCharsets.UTF_8).length;
+
+        Random random = new Random(7);
+        for (int i = 0; i < 2000; i++) {
+            appendObject(text, i, random);
+        }
+        fixture = dir.resolve("systems.txt");
+        // Парсер читает в кодировке по умолчанию: режимы охраны, которые проверяются по тексту, в файл не входят,
+        // а остальной текст не в ASCII оба способа чтения декодируют одинаково
+        Files.writeString(fixture, text, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void parallelReadMatchesSequentialRead() throws IOException {
+        Parsed sequential = readSequential();
+        assertTrue(sequential.systems.size() > 1500);
+        assertTrue(sequential.report.stream().anyMatch(line -> line.contains("DUPLICATE")));
+        assertTrue(sequential.report.stream().anyMatch(line -> line.contains("UNPARSEABLE")));
+        assertTrue(sequential.report.stream().anyMatch(line -> line.contains("UNKNOWN_TYPE")));
+
+        for (long chunkSize : new long[]{1, 17, 333, 4096, 65_536, 1 << 20}) {
+            assertSameParse(sequential, readParallel(chunkSize), chunkSize);
+        }
+    }
+
+    @Test
+    void headerCutByScanWindowStartsNextChunk() throws IOException {
+        Parsed sequential = readSequential();
+        // Первый кусок кончается в длинном значении; поиск метки идет окнами по 64 КБ,
+        // и при этих размерах куска конец окна приходится на метку после значения
+        long firstWindowEnd = 64 * 1024;
+        for (long shift = -2; shift <= 20; shift++) {
+            long chunkSize = headerAfterLongValue - firstWindowEnd + shift;
+            assertSameParse(sequential, readParallel(chunkSize), chunkSize);
+        }
+    }
+
+    @Test
+    void firstOccurrenceOfPropertyWinsEvenIfEmpty() throws IOException {
+        Path file = dir.resolve("duplicates.txt");
+        Files.writeString(file, String.join("\n",
+                "[HomeAlarmSystem]id:first batterylevel:20 batterylevel:50 sensitivitylevel:2",
+                "[HomeAlarmSystem]id:empty batterylevel: batterylevel:50 sensitivitylevel:2",
+                "[CarAlarmSystem]id:bad panicmodeduration:никогда panicmodeduration:90"), StandardCharsets.UTF_8);
+        TextFileParser parser = newParser("duplicates.csv");
+        List<SecuritySystem> systems = new ArrayList<>();
+        parser.readFromFile(file.toString(), systems::add);
+
+        assertEquals(3, systems.size());
+        assertEquals(20, systems.get(0).getBatteryLevel());
+        // Пустое первое вхождение не заменяется следующим: уровень заряда остается по умолчанию
+        assertEquals(100, systems.get(1).getBatteryLevel());
+        assertEquals(2, ((HomeAlarmSystem) systems.get(1)).getSensitivityLevel());
+        assertEquals(30, ((CarAlarmSystem) systems.get(2)).getPanicModeDuration());
+
+        List<String> report = Files.readAllLines(dir.resolve("duplicates.csv"));
+        String duplicates = String.join("\n", report.subList(1, report.size()));
+        assertEquals(List.of(
+                "homealarmsystem,first,batterylevel,DUPLICATE,50",
+                "homealarmsystem,empty,batterylevel,DUPLICATE,50",
+                "caralarmsystem,bad,panicmodeduration,DUPLICATE,90"),
+                report.stream().filter(line -> line.contains("DUPLICATE"))
+                        .map(line -> line.substring(line.indexOf(',') + 1)).toList(), duplicates);
+    }
+
+    private static void appendObject(StringBuilder text, int i, Random random) {
+        String separator = i % 5 == 0 ? "\n  " : " ";
+        if (i % 7 == 0) {
+            text.append("[Gadget]id:gadget").append(i).append(" color:синий\n");
+        }
+        switch (i % 3) {
+            case 0 -> text.append("[HomeAlarmSystem]").append(separator)
+                    .append("id:home").append(i).append(separator)
+                    .append("location:Квартира [корпус ").append(i % 9).append(']').append(separator)
+                    .append("isarmed:").append(random.nextBoolean()).append(separator)
+                    .append("batterylevel:").append(i % 13 == 0 ? "много" : random.nextInt(101)).append(separator)
+                    .append("sensitivitylevel:").append(1 + random.nextInt(5))
+                    .append(" alarmsound:Звонок [1]");
+            case 1 -> text.append("[BiometricLock]").append(separator)
+                    .append("id:lock").append(i).append(separator)
+                    .append("location:Дверь, \"главная\"").append(separator)
+                    .append("failedattempts:").append(random.nextInt(4))
+                    .append(i % 11 == 0 ? " failedattempts:9" : "").append(separator)
+                    .append("lockstatus:Заблокирован autolockdelay:").append(random.nextInt(120));
+            default -> text.append("[CarAlarmSystem]").append(separator)
+                    .append("id:car").append(i).append(separator)
+                    .append("location:Парковка").append(separator)
+                    .append("shocksensoractive:").append(random.nextBoolean())
+                    .append(" alarmvolume:Высокая panicmodeduration:").append(10 + random.nextInt(50));
+        }
+        // Часть объектов идет на одной строке со следующим
+        text.append(i % 4 == 0 ? " " : "\n");
+    }
+
+    private void assertSameParse(Parsed expected, Parsed actual, long chunkSize) {
+        assertEquals(expected.systems, actual.systems, "кусок " + chunkSize);
+        assertEquals(expected.report, actual.report, "кусок " + chunkSize);
+    }
+
+    private Parsed readSequential() throws IOException {
+        TextFileParser parser = newParser("sequential.csv");
+        List<SecuritySystem> systems = new ArrayList<>();
+        parser.readFromFile(fixture.toString(), systems::add);
+        return new Parsed(systems, dir.resolve("sequential.csv"));
+    }
+
+    private Parsed readParallel(long chunkSize) throws IOException {
+        TextFileParser parser = newParser("parallel.csv");
+        return new Parsed(parser.readFromFileParallel(fixture.toString(), chunkSize), dir.resolve("parallel.csv"));
+    }
+
+    private TextFileParser newParser(String report) {
+        TextFileParser parser = new TextFileParser(fixture.toString());
+        parser.getDiagnostics().setLevel(ParseDiagnostics.Level.SILENT);
+        parser.getDiagnostics().setReportFile(dir.resolve(report).toString());
+        return parser;
+    }
+
+    /**
+     * Результат чтения: системы без версии (она у каждого чтения своя) и строки отчета диагностики
+     */
+    private static final class Parsed {
+        final List<String> systems = new ArrayList<>();
+        final List<String> report;
+
+        Parsed(List<SecuritySystem> systems, Path report) throws IOException {
+            for (SecuritySystem system : systems) {
+                JsonObject json = ProtocolJson.gson().toJsonTree(system).getAsJsonObject();
+                json.remove("version");
+                this.systems.add(json.toString());
+            }
+            this.report = Files.readAllLines(report);
+        }
+    }
+}
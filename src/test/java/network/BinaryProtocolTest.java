@@ -0,0 +1,167 @@
+package network;
+
+import models.SecuritySystem;
+import models.dto.EmergencyEvent;
+import models.dto.SystemChangeEvent;
+import models.dto.SystemStatusReport;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static network.ProtocolSamples.assertSameFields;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Кодирование запросов и ответов двоичного протокола и его кадров, в том числе сжатых
+ */
+class BinaryProtocolTest {
+
+    @Test
+    void systemsRoundTrip() throws IOException {
+        for (SecuritySystem system : ProtocolSamples.systems()) {
+            assertSameFields(system, roundTrip(system));
+        }
+    }
+
+    @Test
+    void systemListRoundTrips() throws IOException {
+        List<SecuritySystem> systems = ProtocolSamples.systems();
+        List<?> decoded = assertInstanceOf(List.class, roundTrip(new ArrayList<>(systems)));
+        assertEquals(systems.size(), decoded.size());
+        for (int i = 0; i < systems.size(); i++) {
+            assertSameFields(systems.get(i), decoded.get(i));
+        }
+    }
+
+    @Test
+    void reportsRoundTrip() throws IOException {
+        for (SystemStatusReport report : ProtocolSamples.reports()) {
+            assertSameFields(report, roundTrip(report));
+        }
+    }
+
+    @Test
+    void changeEventsRoundTrip() throws IOException {
+        for (SystemChangeEvent event : ProtocolSamples.changeEvents()) {
+            assertSameFields(event, roundTrip(event));
+        }
+    }
+
+    @Test
+    void emergencyEventTravelsAsJson() throws IOException {
+        EmergencyEvent event = ProtocolSamples.emergencyEvent();
+        // Прочие объекты передаются строкой JSON: клиент получает дерево и восстанавливает его сам
+        Object decoded = roundTrip(event);
+        assertInstanceOf(Map.class, decoded);
+        assertSameFields(event, ProtocolJson.gson().fromJson(ProtocolJson.gson().toJsonTree(decoded),
+                EmergencyEvent.class));
+    }
+
+    @Test
+    void batchResultsRoundTrip() throws IOException {
+        SecuritySystem system = ProtocolSamples.systems().get(0);
+        List<BatchResult> results = List.of(
+                new BatchResult(0, NetworkConstant.GET_SYSTEM, system.getSystemId(),
+                        Response.success("Система найдена", system)),
+                new BatchResult(1, NetworkConstant.ARM_SYSTEM, null, Response.error("Система не найдена")));
+        List<?> decoded = assertInstanceOf(List.class, roundTrip(results));
+        for (int i = 0; i < results.size(); i++) {
+            BatchResult expected = results.get(i);
+            BatchResult actual = assertInstanceOf(BatchResult.class, decoded.get(i));
+            assertEquals(expected.getIndex(), actual.getIndex());
+            assertEquals(expected.getCommand(), actual.getCommand());
+            assertEquals(expected.getSystemId(), actual.getSystemId());
+            assertEquals(expected.isSuccess(), actual.isSuccess());
+            assertEquals(expected.getMessage(), actual.getMessage());
+        }
+        assertSameFields(system, ((BatchResult) decoded.get(0)).getData());
+        assertNull(((BatchResult) decoded.get(1)).getData());
+    }
+
+    @Test
+    void responseHeaderRoundTrips() throws IOException {
+        Response response = new Response(false, null, null);
+        response.setMore(true);
+        Response decoded = BinaryProtocol.decodeResponse(BinaryProtocol.encodeResponse(response));
+        assertNull(decoded.getId());
+        assertFalse(decoded.isSuccess());
+        assertTrue(decoded.isMore());
+        assertNull(decoded.getMessage());
+        assertNull(decoded.getData());
+    }
+
+    @Test
+    void requestParamsRoundTrip() throws IOException {
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put(NetworkConstant.PARAM_INDEX, 3);
+        params.put(NetworkConstant.PARAM_SYSTEM_ID, "HOME-Ж");
+        params.put(NetworkConstant.PARAM_AFTER_KEY, Long.MAX_VALUE);
+        params.put("ratio", 0.25);
+        params.put(NetworkConstant.PARAM_STREAM, true);
+        params.put("missing", null);
+        params.put(NetworkConstant.PARAM_SYSTEM_IDS, List.of("A", "Б"));
+        params.put("nested", Map.of("key", List.of(1, 2L)));
+        Request request = new Request(NetworkConstant.GET_ALL_SYSTEMS, params);
+        request.setId(42L);
+
+        Request decoded = BinaryProtocol.decodeRequest(BinaryProtocol.encodeRequest(request));
+        assertEquals(42L, decoded.getId());
+        assertEquals(NetworkConstant.GET_ALL_SYSTEMS, decoded.getCommand());
+        assertEquals(params, decoded.getParams());
+    }
+
+    @Test
+    void compressedAndPlainFramesShareOneStream() throws IOException {
+        CompressionCodec codec = CompressionCodec.forName(DeflateCodec.NAME);
+        Response response = Response.success("Список систем", new ArrayList<>(ProtocolSamples.systems()));
+        response.setId(7L);
+        byte[] payload = BinaryProtocol.encodeResponse(response);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = BinaryProtocol.frameOutput(bytes);
+        BinaryProtocol.writeFrame(out, BinaryProtocol.FLAG_COMPRESSED, codec.compress(payload));
+        BinaryProtocol.writeFrame(out, BinaryProtocol.FLAGS_NONE, payload);
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        BinaryProtocol.Frame compressed = BinaryProtocol.readFrame(in);
+        assertEquals(BinaryProtocol.FLAG_COMPRESSED, compressed.getFlags() & BinaryProtocol.FLAG_COMPRESSED);
+        assertResponse(response, BinaryProtocol.decodeResponse(codec.decompress(compressed.getPayload())));
+
+        BinaryProtocol.Frame plain = BinaryProtocol.readFrame(in);
+        assertEquals(BinaryProtocol.FLAGS_NONE, plain.getFlags());
+        assertResponse(response, BinaryProtocol.decodeResponse(plain.getPayload()));
+
+        assertNull(BinaryProtocol.readFrame(in));
+    }
+
+    private static void assertResponse(Response expected, Response actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getMessage(), actual.getMessage());
+        List<?> systems = (List<?>) expected.getData();
+        List<?> decoded = assertInstanceOf(List.class, actual.getData());
+        assertEquals(systems.size(), decoded.size());
+        for (int i = 0; i < systems.size(); i++) {
+            assertSameFields(systems.get(i), decoded.get(i));
+        }
+    }
+
+    private static Object roundTrip(Object data) throws IOException {
+        Response response = Response.success("ok", data);
+        response.setId(1L);
+        Response decoded = BinaryProtocol.decodeResponse(BinaryProtocol.encodeResponse(response));
+        assertEquals(1L, decoded.getId());
+        return decoded.getData();
+    }
+}
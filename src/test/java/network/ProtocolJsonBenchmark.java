@@ -0,0 +1,83 @@
+package network;
+
+import com.google.gson.Gson;
+import models.BiometricLock;
+import models.CarAlarmSystem;
+import models.HomeAlarmSystem;
+import models.SecuritySystem;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Разбор ответа GET_ALL_SYSTEMS: адаптеры {@link ProtocolJson} против прежнего двойного разбора
+ * (Gson по рефлексии в LinkedTreeMap, затем каждый элемент снова в JSON, в Map для определения типа
+ * и в класс системы).
+ * <p>
+ * Запуск: mvn test-compile, затем
+ * java -cp target/test-classes:target/classes:&lt;зависимости test&gt; org.openjdk.jmh.Main ProtocolJsonBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProtocolJsonBenchmark {
+    @Param({"100", "5000"})
+    public int systems;
+
+    private final Gson reflective = new Gson();
+    private String responseLine;
+
+    @Setup
+    public void setUp() {
+        List<SecuritySystem> list = new ArrayList<>(systems);
+        for (int i = 0; i < systems; i++) {
+            switch (i % 3) {
+                case 0 -> list.add(new HomeAlarmSystem("HOME-" + i, "Дом " + i));
+                case 1 -> list.add(new CarAlarmSystem("CAR-" + i, "Парковка " + i));
+                default -> list.add(new BiometricLock("LOCK-" + i, "Дверь " + i));
+            }
+        }
+        responseLine = ProtocolJson.gson().toJson(Response.success("Список систем", list));
+    }
+
+    @Benchmark
+    public List<?> adapters() {
+        Response response = ProtocolJson.gson().fromJson(responseLine, Response.class);
+        return (List<?>) response.getData();
+    }
+
+    @Benchmark
+    public List<SecuritySystem> doubleParse() {
+        Response response = reflective.fromJson(responseLine, Response.class);
+        List<?> data = (List<?>) response.getData();
+        List<SecuritySystem> result = new ArrayList<>(data.size());
+        for (Object element : data) {
+            String json = reflective.toJson(element);
+            Map<?, ?> map = reflective.fromJson(json, Map.class);
+            if (map.containsKey("doorSensorsActive") || map.containsKey("windowSensorsActive")) {
+                result.add(reflective.fromJson(json, HomeAlarmSystem.class));
+            } else if (map.containsKey("failedAttempts") || map.containsKey("fingerprintEnabled")) {
+                result.add(reflective.fromJson(json, BiometricLock.class));
+            } else {
+                result.add(reflective.fromJson(json, CarAlarmSystem.class));
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,103 @@
+package network;
+
+import com.google.gson.Gson;
+import models.HomeAlarmSystem;
+import models.SecuritySystem;
+import models.dto.EmergencyEvent;
+import models.dto.SystemChangeEvent;
+import models.dto.SystemStatusReport;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static network.ProtocolSamples.assertSameFields;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Объекты протокола проходят через общий {@link ProtocolJson#gson()} без потерь:
+ * и как объявленный тип, и как данные ответа, тип которых задает поле type
+ */
+class ProtocolJsonTest {
+    private final Gson gson = ProtocolJson.gson();
+
+    @Test
+    void systemsRoundTrip() {
+        for (SecuritySystem system : ProtocolSamples.systems()) {
+            assertSameFields(system, gson.fromJson(gson.toJson(system), SecuritySystem.class));
+            assertSameFields(system, responseData(system));
+        }
+    }
+
+    @Test
+    void versionIsRestoredAfterSettersAndNotBumped() {
+        HomeAlarmSystem system = new HomeAlarmSystem("HOME-1", "Дом");
+        system.setSilentMode(true);
+        system.setSecurityMode("Дома");
+        system.armSystem();
+        system.setVersion(5);
+        String json = gson.toJson(system);
+
+        long clockBefore = SecuritySystem.currentVersion();
+        SecuritySystem restored = gson.fromJson(json, SecuritySystem.class);
+        // Восстановление вызывает сеттеры, и они сдвигают часы версий, но версия системы - присланная
+        assertTrue(SecuritySystem.currentVersion() > clockBefore);
+        assertEquals(5, restored.getVersion());
+        assertEquals(5, assertInstanceOf(SecuritySystem.class, responseData(system)).getVersion());
+        assertEquals(json, gson.toJson(restored));
+    }
+
+    @Test
+    void systemListRoundTrips() {
+        List<SecuritySystem> systems = ProtocolSamples.systems();
+        List<?> decoded = assertInstanceOf(List.class, responseData(new ArrayList<>(systems)));
+        assertEquals(systems.size(), decoded.size());
+        for (int i = 0; i < systems.size(); i++) {
+            assertSameFields(systems.get(i), decoded.get(i));
+        }
+    }
+
+    @Test
+    void reportsRoundTrip() {
+        for (SystemStatusReport report : ProtocolSamples.reports()) {
+            assertSameFields(report, gson.fromJson(gson.toJson(report), SystemStatusReport.class));
+            assertSameFields(report, responseData(report));
+        }
+    }
+
+    @Test
+    void eventsRoundTrip() {
+        for (SystemChangeEvent event : ProtocolSamples.changeEvents()) {
+            assertSameFields(event, gson.fromJson(gson.toJson(event), SystemChangeEvent.class));
+            assertSameFields(event, responseData(event));
+        }
+        EmergencyEvent emergency = ProtocolSamples.emergencyEvent();
+        assertSameFields(emergency, gson.fromJson(gson.toJson(emergency), EmergencyEvent.class));
+        assertSameFields(emergency, responseData(emergency));
+    }
+
+    @Test
+    void batchResultCarriesTypedData() {
+        SecuritySystem system = ProtocolSamples.systems().get(2);
+        BatchResult result = new BatchResult(3, NetworkConstant.GET_SYSTEM, system.getSystemId(),
+                Response.success("Система найдена", system));
+        BatchResult decoded = assertInstanceOf(BatchResult.class, responseData(List.of(result)) instanceof List<?> list
+                ? list.get(0) : null);
+        assertEquals(result.getIndex(), decoded.getIndex());
+        assertEquals(result.getCommand(), decoded.getCommand());
+        assertEquals(result.getSystemId(), decoded.getSystemId());
+        assertEquals(result.isSuccess(), decoded.isSuccess());
+        assertEquals(result.getMessage(), decoded.getMessage());
+        assertSameFields(system, decoded.getData());
+    }
+
+    private Object responseData(Object data) {
+        Response response = Response.success("ok", data);
+        response.setId(9L);
+        Response decoded = gson.fromJson(gson.toJson(response), Response.class);
+        assertEquals(9L, decoded.getId());
+        return decoded.getData();
+    }
+}
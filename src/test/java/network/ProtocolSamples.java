@@ -0,0 +1,132 @@
+package network;
+
+import models.BiometricLock;
+import models.CarAlarmSystem;
+import models.EventType;
+import models.HomeAlarmSystem;
+import models.SecuritySystem;
+import models.dto.BiometricLockStatusReport;
+import models.dto.CarAlarmStatusReport;
+import models.dto.EmergencyEvent;
+import models.dto.HomeAlarmStatusReport;
+import models.dto.SystemChangeEvent;
+import models.dto.SystemStatusReport;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Объекты протокола для проверок кодирования: каждый тип системы и отчета,
+ * с непустыми полями не по умолчанию и с полями null
+ */
+final class ProtocolSamples {
+    static final long VERSION = 1_234_567_890_123L;
+
+    private ProtocolSamples() {
+    }
+
+    static List<SecuritySystem> systems() {
+        HomeAlarmSystem home = new HomeAlarmSystem("HOME-1", "Москва, ул. \"Тверская\" 1");
+        home.setDoorSensorsActive(false);
+        home.setMotionSensorsActive(false);
+        home.setSensitivityLevel(5);
+        home.setSilentMode(true);
+        home.setAlarmSound("Колокол");
+        home.setSecurityMode("Отсутствие");
+        home.armSystem();
+        home.setBatteryLevel(42);
+        home.setSignalStrength(2);
+        home.setVersion(VERSION);
+
+        HomeAlarmSystem homeWithoutLocation = new HomeAlarmSystem("HOME-2", null);
+        homeWithoutLocation.setVersion(1);
+
+        CarAlarmSystem car = new CarAlarmSystem("CAR-1", "Парковка");
+        car.setShockSensorActive(false);
+        car.setTiltSensorActive(false);
+        car.setRemoteStartEnabled(true);
+        car.setAlarmVolume("Высокая");
+        car.setPanicModeDuration(90);
+        car.setSecurityMode("Дома");
+        car.setBatteryLevel(0);
+        car.setVersion(VERSION + 1);
+
+        BiometricLock lock = new BiometricLock("LOCK-1", "Офис");
+        lock.addUser("fp-1", "Иван");
+        lock.addUser("fp-2", null);
+        lock.setFailedAttempts(2);
+        lock.setFingerprintEnabled(false);
+        lock.setFaceRecognitionEnabled(true);
+        lock.setLockStatus("Заблокирован");
+        lock.setAutoLockDelay(15);
+        lock.armSystem();
+        lock.setVersion(VERSION + 2);
+
+        BiometricLock emptyLock = new BiometricLock("LOCK-2", null);
+        emptyLock.setVersion(0);
+
+        return List.of(home, homeWithoutLocation, car, lock, emptyLock);
+    }
+
+    static List<SystemStatusReport> reports() {
+        SystemStatusReport home = new HomeAlarmStatusReport("HOME-1", "Дом", "Дома", true, 77, 3,
+                true, false, true, 4, true, "Тихий");
+        home.setVersion(VERSION);
+        SystemStatusReport homeWithNulls = new HomeAlarmStatusReport("HOME-2", null, null, false, 0, 1,
+                false, false, false, 1, false, null);
+        SystemStatusReport car = new CarAlarmStatusReport("CAR-1", "Парковка", "Отсутствие", true, 15, 5,
+                false, true, false, true, "Низкая", 45);
+        car.setVersion(VERSION + 1);
+        SystemStatusReport carWithNulls = new CarAlarmStatusReport("CAR-2", null, null, false, 100, 5,
+                true, true, true, false, null, 0);
+        SystemStatusReport lock = new BiometricLockStatusReport("LOCK-1", "Офис", "Выключен", false, 64, 4,
+                3, 1, true, false, "Открыт", 60);
+        lock.setVersion(VERSION + 2);
+        SystemStatusReport lockWithNulls = new BiometricLockStatusReport("LOCK-2", null, null, true, 1, 1,
+                0, 0, false, true, null, 0);
+        return List.of(home, homeWithNulls, car, carWithNulls, lock, lockWithNulls);
+    }
+
+    static List<SystemChangeEvent> changeEvents() {
+        return List.of(
+                new SystemChangeEvent(7, LocalDateTime.of(2026, 3, 15, 9, 30, 7, 120_000_000), "HOME-1",
+                        "HomeAlarmSystem", "Дом, кв. 5", "Дома", true, 80, 4, EventType.SYSTEM_ARMED,
+                        "Клиент: 127.0.0.1", VERSION),
+                new SystemChangeEvent(8, null, "CAR-1", null, null, null, false, 0, 1,
+                        EventType.SYSTEM_REMOVED, null, 0));
+    }
+
+    static EmergencyEvent emergencyEvent() {
+        return new EmergencyEvent("HOME-1", "HomeAlarmSystem", "Разбито окно",
+                "Экстренная ситуация, \"окно\"", LocalDateTime.of(2026, 3, 15, 9, 30, 7, 123_456_789), true);
+    }
+
+    /**
+     * Сравнивает все сохраняемые поля объектов, включая поля суперклассов; transient-поля не сравниваются
+     */
+    static void assertSameFields(Object expected, Object actual) {
+        assertNotNull(actual);
+        assertSame(expected.getClass(), actual.getClass());
+        for (Class<?> type = expected.getClass(); type != Object.class; type = type.getSuperclass()) {
+            for (Field field : type.getDeclaredFields()) {
+                int modifiers = field.getModifiers();
+                if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers)) {
+                    continue;
+                }
+                field.setAccessible(true);
+                try {
+                    assertEquals(field.get(expected), field.get(actual),
+                            type.getSimpleName() + "." + field.getName() + " у " + expected);
+                } catch (IllegalAccessException e) {
+                    throw new AssertionError(e);
+                }
+            }
+        }
+    }
+}
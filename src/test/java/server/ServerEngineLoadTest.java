@@ -0,0 +1,305 @@
+package server;
+
+import com.google.gson.Gson;
+import controllers.SecuritySystemController;
+import models.CSVLogger;
+import models.TextFileParser;
+import network.NetworkConstant;
+import network.ProtocolJson;
+import network.Request;
+import network.Response;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Нагрузочный тест движков сервера: одновременно открытые подключения, по запросу PING на каждое.
+ * Проверка предела сессий NIO-движка выполняется всегда. Сравнение движков на 10 000 подключений
+ * запускается явно: mvn test -Dtest=ServerEngineLoadTest -Dload.test=true [-Dload.connections=N].
+ * Клиенты и сервер живут в одном процессе, поэтому нужно около 2N открытых файлов (ulimit -n)
+ */
+class ServerEngineLoadTest {
+    private static final int CLIENT_THREADS = 8;
+    private static final Gson GSON = ProtocolJson.gson();
+
+    private static CSVLogger csvLogger;
+    private static SecuritySystemController controller;
+
+    @BeforeAll
+    static void setUp() {
+        csvLogger = new CSVLogger("load-test");
+        controller = new SecuritySystemController(new TextFileParser(), csvLogger, "load-test.txt");
+    }
+
+    @AfterAll
+    static void tearDown() {
+        csvLogger.close();
+    }
+
+    @Test
+    void nioEngineRejectsSessionsOverLimit() throws Exception {
+        awaitNoSessions();
+        int port = freePort();
+        NioServerEngine engine = new NioServerEngine(port, controller, csvLogger, 1, 2, 16, 2);
+        Thread acceptor = startEngine(engine);
+        try {
+            List<Socket> admitted = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                Socket socket = connect(port);
+                admitted.add(socket);
+                assertTrue(ping(socket).isSuccess());
+            }
+            try (Socket rejected = connect(port)) {
+                Response response = GSON.fromJson(readLine(rejected), Response.class);
+                assertFalse(response.isSuccess());
+                assertEquals(NetworkConstant.MESSAGE_SERVER_BUSY, response.getMessage());
+                assertEquals(-1, rejected.getInputStream().read());
+            }
+            for (Socket socket : admitted) {
+                socket.close();
+            }
+            awaitNoSessions();
+            try (Socket again = connect(port)) {
+                assertTrue(ping(again).isSuccess());
+            }
+        } finally {
+            engine.shutdown();
+            acceptor.join(10_000);
+        }
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "load.test", matches = "true")
+    void tenThousandConnectionsNioVersusBlocking() throws Exception {
+        int connections = Integer.getInteger("load.connections", 10_000);
+
+        awaitNoSessions();
+        int nioPort = freePort();
+        NioServerEngine nio = new NioServerEngine(nioPort, controller, csvLogger, 2, 8, 10_000, connections);
+        Thread acceptor = startEngine(nio);
+        long nioNanos;
+        int nioThreads;
+        try {
+            long started = System.nanoTime();
+            assertEquals(connections, pingConcurrently(nioPort, connections));
+            nioNanos = System.nanoTime() - started;
+            nioThreads = ManagementFactory.getThreadMXBean().getThreadCount();
+        } finally {
+            nio.shutdown();
+            acceptor.join(10_000);
+        }
+
+        awaitNoSessions();
+        int blockingPort = freePort();
+        BlockingEngine blocking = new BlockingEngine(blockingPort, connections);
+        long blockingNanos;
+        int blockingThreads;
+        try {
+            long started = System.nanoTime();
+            assertEquals(connections, pingConcurrently(blockingPort, connections));
+            blockingNanos = System.nanoTime() - started;
+            blockingThreads = blocking.peakThreads();
+        } finally {
+            blocking.close();
+        }
+
+        System.out.printf("%d подключений: nio %d мс, потоков %d; blocking %d мс, потоков %d%n",
+                connections, TimeUnit.NANOSECONDS.toMillis(nioNanos), nioThreads,
+                TimeUnit.NANOSECONDS.toMillis(blockingNanos), blockingThreads);
+    }
+
+    /**
+     * Открывает connections подключений, дожидается, пока открыты все, и отправляет PING в каждое
+     * @return число полученных ответов PONG
+     */
+    private static int pingConcurrently(int port, int connections) throws Exception {
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENT_THREADS);
+        CyclicBarrier allOpen = new CyclicBarrier(CLIENT_THREADS);
+        byte[] ping = (GSON.toJson(new Request(NetworkConstant.PING)) + "\n").getBytes(StandardCharsets.UTF_8);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int t = 0; t < CLIENT_THREADS; t++) {
+                int share = connections / CLIENT_THREADS + (t < connections % CLIENT_THREADS ? 1 : 0);
+                results.add(clients.submit(() -> {
+                    List<SocketChannel> channels = new ArrayList<>(share);
+                    try {
+                        for (int i = 0; i < share; i++) {
+                            channels.add(SocketChannel.open(new InetSocketAddress("127.0.0.1", port)));
+                        }
+                        allOpen.await(2, TimeUnit.MINUTES);
+                        for (SocketChannel channel : channels) {
+                            channel.write(ByteBuffer.wrap(ping));
+                        }
+                        int pongs = 0;
+                        for (SocketChannel channel : channels) {
+                            Response response = GSON.fromJson(readLine(channel), Response.class);
+                            if (response != null && response.isSuccess()) {
+                                pongs++;
+                            }
+                        }
+                        return pongs;
+                    } finally {
+                        for (SocketChannel channel : channels) {
+                            channel.close();
+                        }
+                    }
+                }));
+            }
+            int pongs = 0;
+            for (Future<Integer> result : results) {
+                pongs += result.get(5, TimeUnit.MINUTES);
+            }
+            return pongs;
+        } finally {
+            clients.shutdownNow();
+        }
+    }
+
+    /**
+     * Блокирующий движок как в Server при server.executor=platform: поток пула на сессию,
+     * server.sessions.max = connections
+     */
+    private static final class BlockingEngine {
+        private final ServerSocket serverSocket;
+        private final ThreadPoolExecutor pool;
+        private final Thread acceptor;
+
+        BlockingEngine(int port, int maxSessions) throws IOException {
+            serverSocket = new ServerSocket(port, 1024);
+            pool = new ThreadPoolExecutor(maxSessions, maxSessions, 60L, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(1));
+            pool.allowCoreThreadTimeOut(true);
+            acceptor = new Thread(this::acceptLoop, "blocking-acceptor");
+            acceptor.start();
+        }
+
+        private void acceptLoop() {
+            while (!serverSocket.isClosed()) {
+                try {
+                    Socket socket = serverSocket.accept();
+                    ClientHandler handler = new ClientHandler(socket, controller, csvLogger);
+                    ServerMetrics.getInstance().sessionQueued();
+                    try {
+                        pool.execute(() -> {
+                            ServerMetrics.getInstance().sessionStarted();
+                            try {
+                                handler.run();
+                            } finally {
+                                ServerMetrics.getInstance().sessionFinished();
+                            }
+                        });
+                    } catch (RejectedExecutionException e) {
+                        ServerMetrics.getInstance().sessionDequeued();
+                        socket.close();
+                    }
+                } catch (IOException e) {
+                    // сокет сервера закрыт
+                }
+            }
+        }
+
+        int peakThreads() {
+            return pool.getLargestPoolSize();
+        }
+
+        void close() throws Exception {
+            serverSocket.close();
+            acceptor.join(10_000);
+            pool.shutdown();
+            pool.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+
+    private static Thread startEngine(NioServerEngine engine) throws InterruptedException {
+        Thread acceptor = new Thread(() -> {
+            try {
+                engine.start();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }, "nio-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return acceptor;
+    }
+
+    private static Socket connect(int port) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (true) {
+            try {
+                Socket socket = new Socket("127.0.0.1", port);
+                socket.setSoTimeout(10_000);
+                return socket;
+            } catch (IOException e) {
+                if (System.nanoTime() > deadline) {
+                    throw e;
+                }
+                Thread.sleep(20);
+            }
+        }
+    }
+
+    private static Response ping(Socket socket) throws IOException {
+        socket.getOutputStream().write((GSON.toJson(new Request(NetworkConstant.PING)) + "\n")
+                .getBytes(StandardCharsets.UTF_8));
+        return GSON.fromJson(readLine(socket), Response.class);
+    }
+
+    private static String readLine(Socket socket) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(64);
+        int b;
+        while ((b = socket.getInputStream().read()) != -1 && b != '\n') {
+            line.write(b);
+        }
+        return line.toString(StandardCharsets.UTF_8);
+    }
+
+    private static String readLine(SocketChannel channel) throws IOException {
+        ByteBuffer one = ByteBuffer.allocate(1);
+        ByteArrayOutputStream line = new ByteArrayOutputStream(64);
+        while (channel.read(one.clear()) > 0 && one.get(0) != '\n') {
+            line.write(one.get(0));
+        }
+        return line.toString(StandardCharsets.UTF_8);
+    }
+
+    private static void awaitNoSessions() throws InterruptedException {
+        ServerMetrics metrics = ServerMetrics.getInstance();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (metrics.getActiveSessions() + metrics.getQueuedSessions() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(0, metrics.getActiveSessions() + metrics.getQueuedSessions());
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}